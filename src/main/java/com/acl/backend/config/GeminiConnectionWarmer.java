@@ -0,0 +1,103 @@
+package com.acl.backend.config;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Precalienta el pool de conexiones a Gemini al arrancar: abre N conexiones en paralelo (DNS,
+ * TCP y TLS) con una petición ligera, para que las primeras peticiones de usuarios no paguen el
+ * handshake. Spring Boot no marca la aplicación como lista (readiness ACCEPTING_TRAFFIC) hasta
+ * que terminan los ApplicationRunner, así que la readiness se retiene hasta el final del
+ * precalentamiento, acotado por timeout-seconds. Un fallo no impide arrancar.
+ */
+@Component
+public class GeminiConnectionWarmer implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(GeminiConnectionWarmer.class);
+
+    private final WebClient.Builder webClientBuilder;
+    private final MeterRegistry meterRegistry;
+    private final String apiUrl;
+    private final String apiKey;
+    private final boolean enabled;
+    private final int connections;
+    private final long timeoutSeconds;
+
+    public GeminiConnectionWarmer(WebClient.Builder webClientBuilder, MeterRegistry meterRegistry,
+                                  @Value("${gemini.api.url:https://generativelanguage.googleapis.com}") String apiUrl,
+                                  @Value("${gemini.api.key:}") String apiKey,
+                                  @Value("${gemini.pool.warmup.enabled:true}") boolean enabled,
+                                  @Value("${gemini.pool.warmup.connections:4}") int connections,
+                                  @Value("${gemini.pool.warmup.timeout-seconds:10}") long timeoutSeconds) {
+        this.webClientBuilder = webClientBuilder;
+        this.meterRegistry = meterRegistry;
+        this.apiUrl = apiUrl;
+        this.apiKey = apiKey;
+        this.enabled = enabled;
+        this.connections = connections;
+        this.timeoutSeconds = timeoutSeconds;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!enabled || connections <= 0 || apiKey == null || apiKey.isBlank()) {
+            log.info("Precalentamiento del pool de Gemini desactivado");
+            return;
+        }
+        warmUp();
+    }
+
+    /**
+     * Devuelve cuántas conexiones se establecieron. Cualquier respuesta HTTP (incluso un error)
+     * cuenta: la conexión TLS ya quedó abierta y vuelve al pool.
+     */
+    public int warmUp() {
+        // clone(): el builder es compartido con GeminiService
+        WebClient client = webClientBuilder.clone().baseUrl(apiUrl).build();
+        AtomicInteger warmed = new AtomicInteger();
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "success";
+
+        try {
+            // Todas a la vez: cada una necesita su propia conexión
+            Flux.range(0, connections)
+                    .flatMap(i -> client.get()
+                            .uri("/v1beta/models?pageSize=1&key={key}", apiKey)
+                            .retrieve()
+                            .toBodilessEntity()
+                            .then(Mono.fromRunnable(warmed::incrementAndGet))
+                            .onErrorResume(WebClientResponseException.class, e -> {
+                                warmed.incrementAndGet();
+                                return Mono.empty();
+                            })
+                            .onErrorResume(e -> {
+                                log.warn("No se pudo abrir una conexión a Gemini: {}", e.getMessage());
+                                return Mono.empty();
+                            }), connections)
+                    .then()
+                    .block(Duration.ofSeconds(timeoutSeconds));
+            if (warmed.get() < connections) outcome = "partial";
+        } catch (Exception e) {
+            outcome = "timeout";
+            log.warn("Precalentamiento del pool de Gemini incompleto tras {}s", timeoutSeconds);
+        }
+
+        long ms = Duration.ofNanos(sample.stop(meterRegistry.timer("gemini.pool.warmup", "outcome", outcome))).toMillis();
+        log.info("Pool de Gemini precalentado: {}/{} conexiones en {} ms", warmed.get(), connections, ms);
+        return warmed.get();
+    }
+}
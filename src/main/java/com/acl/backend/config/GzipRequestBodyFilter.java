@@ -0,0 +1,69 @@
+package com.acl.backend.config;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.zip.GZIPOutputStream;
+
+import org.reactivestreams.Publisher;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.client.reactive.ClientHttpRequestDecorator;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Comprime con gzip los cuerpos de petición de al menos minBytes (Content-Encoding: gzip).
+ * Los prompts de análisis con el contrato completo pesan decenas de KB; los chicos se envían
+ * tal cual porque comprimirlos no compensa.
+ */
+public class GzipRequestBodyFilter implements ExchangeFilterFunction {
+
+    private final int minBytes;
+
+    public GzipRequestBodyFilter(int minBytes) {
+        this.minBytes = minBytes;
+    }
+
+    @Override
+    public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+        ClientRequest compressed = ClientRequest.from(request)
+                .body((outputMessage, context) -> request.body().insert(new ClientHttpRequestDecorator(outputMessage) {
+                    @Override
+                    public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+                        return DataBufferUtils.join(body).flatMap(buffer -> {
+                            if (buffer.readableByteCount() < minBytes) {
+                                return super.writeWith(Mono.just(buffer));
+                            }
+                            byte[] gzipped = gzip(buffer);
+                            DataBufferUtils.release(buffer);
+                            getHeaders().set(HttpHeaders.CONTENT_ENCODING, "gzip");
+                            getHeaders().setContentLength(gzipped.length);
+                            return super.writeWith(Mono.just(bufferFactory().wrap(gzipped)));
+                        });
+                    }
+                }, context))
+                .build();
+        return next.exchange(compressed);
+    }
+
+    private static byte[] gzip(DataBuffer buffer) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(32, buffer.readableByteCount() / 4));
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            byte[] chunk = new byte[8192];
+            while (buffer.readableByteCount() > 0) {
+                int length = Math.min(chunk.length, buffer.readableByteCount());
+                buffer.read(chunk, 0, length);
+                gzip.write(chunk, 0, length);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,80 @@
+package com.acl.backend.config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.context.annotation.ClassPathScanningCandidateComponentProvider;
+import org.springframework.core.type.filter.AnnotationTypeFilter;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.index.IndexResolver;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.stereotype.Component;
+
+/**
+ * Crea al arrancar los índices declarados con @Indexed / @CompoundIndex en los documentos de
+ * com.acl.backend.model. MongoConfig construye su propio MongoTemplate, cuyo contexto de mapeo
+ * no tiene la creación automática de índices activada: sin esto los índices TTL (cache de
+ * análisis, jobs, huellas, consumo de tokens) nunca existirían y las colecciones crecerían sin
+ * límite. createIndex es idempotente; un índice que falla (p. ej. uno existente con otras
+ * opciones) se registra y no impide arrancar.
+ */
+@Component
+public class MongoIndexInitializer implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(MongoIndexInitializer.class);
+    private static final String MODEL_PACKAGE = "com.acl.backend.model";
+
+    private final MongoTemplate mongoTemplate;
+
+    public MongoIndexInitializer(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        createIndexes();
+    }
+
+    /**
+     * Devuelve cuántos índices se crearon o ya existían con la misma definición
+     */
+    public int createIndexes() {
+        IndexResolver resolver = IndexResolver.create(mongoTemplate.getConverter().getMappingContext());
+        int created = 0;
+        for (Class<?> document : documentClasses()) {
+            IndexOperations indexOps = mongoTemplate.indexOps(document);
+            for (IndexDefinition index : resolver.resolveIndexFor(document)) {
+                try {
+                    indexOps.createIndex(index);
+                    created++;
+                } catch (Exception e) {
+                    log.warn("No se pudo crear el índice {} de {}: {}",
+                            index.getIndexKeys().toJson(), document.getSimpleName(), e.getMessage());
+                }
+            }
+        }
+        log.info("Índices de MongoDB verificados: {}", created);
+        return created;
+    }
+
+    private List<Class<?>> documentClasses() {
+        ClassPathScanningCandidateComponentProvider scanner = new ClassPathScanningCandidateComponentProvider(false);
+        scanner.addIncludeFilter(new AnnotationTypeFilter(Document.class));
+        List<Class<?>> classes = new ArrayList<>();
+        for (BeanDefinition candidate : scanner.findCandidateComponents(MODEL_PACKAGE)) {
+            try {
+                classes.add(Class.forName(candidate.getBeanClassName()));
+            } catch (ClassNotFoundException e) {
+                log.warn("No se pudo cargar el documento {}: {}", candidate.getBeanClassName(), e.getMessage());
+            }
+        }
+        return classes;
+    }
+}
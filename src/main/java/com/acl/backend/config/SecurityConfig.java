@@ -17,6 +17,8 @@ import org.springframework.security.web.authentication.UsernamePasswordAuthentic
 import com.acl.backend.security.JwtAuthenticationFilter;
 import com.acl.backend.service.CustomUserDetailsService;
 
+import jakarta.servlet.DispatcherType;
+
 @Configuration
 @EnableMethodSecurity
 public class SecurityConfig {
@@ -49,6 +51,9 @@ public class SecurityConfig {
                         // Permitir preflight requests (OPTIONS)
                         .requestMatchers(HttpMethod.OPTIONS, "/**").permitAll()
 
+                        // Respuestas diferidas (Mono/SSE): la petición original ya fue autorizada
+                        .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
+
                         // Endpoints públicos sin autenticación
                         .requestMatchers(
                                 "/api/auth/**",
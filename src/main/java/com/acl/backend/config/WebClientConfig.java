@@ -2,7 +2,9 @@ package com.acl.backend.config;
 
 import java.time.Duration;
 import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.client.reactive.ReactorClientHttpConnector;
@@ -12,22 +14,74 @@ import io.netty.channel.ChannelOption;
 import io.netty.handler.timeout.ReadTimeoutHandler;
 import io.netty.handler.timeout.WriteTimeoutHandler;
 import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
 
 @Configuration
 public class WebClientConfig {
 
+    private static final Pattern CACHED_CONTENT_ID = Pattern.compile("(/cachedContents/)[^/:]+");
+    private static final Pattern MODEL_NAME = Pattern.compile("(/models/)[^/:]+");
+
+    /**
+     * Pool de conexiones propio para Gemini (no el global de Reactor Netty), con tamaño, cola de
+     * espera y expulsión de conexiones inactivas configurables. Publica métricas del pool
+     * (reactor.netty.connection.provider.*: conexiones activas, inactivas y pendientes).
+     */
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider geminiConnectionProvider(
+            @Value("${gemini.pool.max-connections:50}") int maxConnections,
+            @Value("${gemini.pool.pending-acquire-max-count:200}") int pendingAcquireMaxCount,
+            @Value("${gemini.pool.pending-acquire-timeout-ms:30000}") long pendingAcquireTimeoutMs,
+            @Value("${gemini.pool.max-idle-time-seconds:120}") long maxIdleTimeSeconds,
+            @Value("${gemini.pool.max-life-time-seconds:600}") long maxLifeTimeSeconds,
+            @Value("${gemini.pool.evict-interval-seconds:30}") long evictIntervalSeconds) {
+        return ConnectionProvider.builder("gemini")
+                .maxConnections(maxConnections)
+                .pendingAcquireMaxCount(pendingAcquireMaxCount)
+                .pendingAcquireTimeout(Duration.ofMillis(pendingAcquireTimeoutMs))
+                .maxIdleTime(Duration.ofSeconds(maxIdleTimeSeconds))
+                .maxLifeTime(Duration.ofSeconds(maxLifeTimeSeconds))
+                .evictInBackground(Duration.ofSeconds(evictIntervalSeconds))
+                // Las conexiones más recientes primero: las viejas quedan inactivas y se expulsan
+                .lifo()
+                .metrics(true)
+                .build();
+    }
+
     @Bean
-    public WebClient.Builder webClientBuilder() {
+    public WebClient.Builder webClientBuilder(
+            ConnectionProvider geminiConnectionProvider,
+            @Value("${gemini.request.gzip.enabled:false}") boolean gzipEnabled,
+            @Value("${gemini.request.gzip.min-bytes:8192}") int gzipMinBytes) {
         // Configurar timeouts
-        HttpClient httpClient = HttpClient.create()
+        HttpClient httpClient = HttpClient.create(geminiConnectionProvider)
                 .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, 30000)
                 .responseTimeout(Duration.ofSeconds(60))
+                // Respuestas comprimidas (Accept-Encoding: gzip)
+                .compress(true)
+                // Tiempos de DNS, conexión, TLS y respuesta, etiquetados con la plantilla de la URI
+                .metrics(true, WebClientConfig::uriTemplate)
                 .doOnConnected(conn ->
                         conn.addHandlerLast(new ReadTimeoutHandler(60, TimeUnit.SECONDS))
                                 .addHandlerLast(new WriteTimeoutHandler(60, TimeUnit.SECONDS))
                 );
 
-        return WebClient.builder()
+        WebClient.Builder builder = WebClient.builder()
                 .clientConnector(new ReactorClientHttpConnector(httpClient));
+        if (gzipEnabled) {
+            builder.filter(new GzipRequestBodyFilter(gzipMinBytes));
+        }
+        return builder;
+    }
+
+    /**
+     * Etiqueta uri de las métricas: sin query (lleva la API key) y con los identificadores
+     * reemplazados, para que cada contexto cacheado o modelo no cree series nuevas.
+     */
+    public static String uriTemplate(String uri) {
+        int query = uri.indexOf('?');
+        String path = query >= 0 ? uri.substring(0, query) : uri;
+        path = CACHED_CONTENT_ID.matcher(path).replaceFirst("$1{id}");
+        return MODEL_NAME.matcher(path).replaceFirst("$1{model}");
     }
-}
\ No newline at end of file
+}
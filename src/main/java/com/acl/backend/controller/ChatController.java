@@ -4,7 +4,9 @@ import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -21,37 +23,51 @@ import com.acl.backend.repository.ChatRepository;
 import com.acl.backend.repository.UserRepository;
 import com.acl.backend.service.AIAnalysisService;
 import com.acl.backend.service.ContractService;
+import com.acl.backend.service.ConversationMemoryService;
 import com.acl.backend.service.NLPAnalysisService;
+import com.acl.backend.service.UsageContext;
 
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotBlank;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 @RestController
 @RequestMapping("/api/chat")
 public class ChatController {
 
+    private static final List<String> GENERAL_SUGGESTIONS = List.of(
+            "¿Qué es una cláusula de confidencialidad?",
+            "¿Cuáles son los elementos esenciales de un contrato?",
+            "¿Qué es la jurisdicción en un contrato?"
+    );
+
     private final NLPAnalysisService nlpAnalysisService;
     private final AIAnalysisService aiAnalysisService;
     private final ContractService contractService;
     private final UserRepository userRepository;
     private final ChatRepository chatRepository;
+    private final ConversationMemoryService conversationMemoryService;
 
     public ChatController(
             NLPAnalysisService nlpAnalysisService,
             AIAnalysisService aiAnalysisService,
             ContractService contractService,
             UserRepository userRepository,
-            ChatRepository chatRepository) {
+            ChatRepository chatRepository,
+            ConversationMemoryService conversationMemoryService) {
         this.nlpAnalysisService = nlpAnalysisService;
         this.aiAnalysisService = aiAnalysisService;
         this.contractService = contractService;
         this.userRepository = userRepository;
         this.chatRepository = chatRepository;
+        this.conversationMemoryService = conversationMemoryService;
     }
 
     // Chat sobre un contrato específico con historial
     @PostMapping("/{contractId}")
-    public ResponseEntity<ChatResponse> chat(
+    public Mono<ResponseEntity<ChatResponse>> chat(
             @PathVariable String contractId,
             @Valid @RequestBody ChatRequest request,
             @AuthenticationPrincipal UserDetails userDetails) {
@@ -67,7 +83,7 @@ public class ChatController {
             userId = user.getId();
 
             if (contract.getUserId() != null && !contract.getUserId().equals(userId)) {
-                return ResponseEntity.status(403).build();
+                return Mono.just(ResponseEntity.status(403).build());
             }
         }
 
@@ -81,40 +97,43 @@ public class ChatController {
         userMessage.setTimestamp(Instant.now());
         chatRepository.save(userMessage);
 
-        // Obtener respuesta de la IA
-        List<String> answers = nlpAnalysisService.answerQuestions(
-                contract.getContent(),
-                request.getMessage()
-        );
-
-        String responseText = String.join("\n\n", answers);
-
-        // Guardar respuesta del asistente
-        ChatMessage assistantMessage = new ChatMessage();
-        assistantMessage.setContractId(contractId);
-        assistantMessage.setUserId(userId);
-        assistantMessage.setMessage(responseText);
-        assistantMessage.setRole("assistant");
-        assistantMessage.setConversationId(request.getConversationId());
-        assistantMessage.setTimestamp(Instant.now());
-        chatRepository.save(assistantMessage);
-
-        // Generar sugerencias de preguntas
-        List<String> suggestions = generateSuggestions(contract.getType());
-
-        ChatResponse response = new ChatResponse();
-        response.setMessage(responseText);
-        response.setContractName(contract.getName());
-        response.setTimestamp(Instant.now());
-        response.setSuggestions(suggestions);
-
-        return ResponseEntity.ok(response);
+        // Obtener respuesta de la IA sin bloquear el hilo de Tomcat, con la memoria de la conversación
+        final Long ownerId = userId;
+        return conversationMemoryService.load(request.getConversationId(), userMessage.getTimestamp())
+                .flatMap(memory -> nlpAnalysisService.answerQuestionsAsync(contract, request.getMessage(), memory))
+                .publishOn(Schedulers.boundedElastic())
+                .map(answers -> {
+                    String responseText = String.join("\n\n", answers);
+
+                    // Guardar respuesta del asistente
+                    ChatMessage assistantMessage = new ChatMessage();
+                    assistantMessage.setContractId(contractId);
+                    assistantMessage.setUserId(ownerId);
+                    assistantMessage.setMessage(responseText);
+                    assistantMessage.setRole("assistant");
+                    assistantMessage.setConversationId(request.getConversationId());
+                    assistantMessage.setTimestamp(Instant.now());
+                    chatRepository.save(assistantMessage);
+                    conversationMemoryService.onTurnCompleted(request.getConversationId(), ownerId);
+
+                    // Generar sugerencias de preguntas
+                    List<String> suggestions = generateSuggestions(contract.getType());
+
+                    ChatResponse response = new ChatResponse();
+                    response.setMessage(responseText);
+                    response.setContractName(contract.getName());
+                    response.setTimestamp(Instant.now());
+                    response.setSuggestions(suggestions);
+
+                    return ResponseEntity.ok(response);
+                })
+                .contextWrite(UsageContext.user(ownerId));
     }
 
 
     // Chat legal general (sin contrato específico)
     @PostMapping("/general")
-    public ResponseEntity<ChatResponse> generalChat(
+    public Mono<ResponseEntity<ChatResponse>> generalChat(
             @Valid @RequestBody ChatRequest request,
             @AuthenticationPrincipal UserDetails userDetails) {
 
@@ -134,29 +153,90 @@ public class ChatController {
         userMessage.setTimestamp(Instant.now());
         chatRepository.save(userMessage);
 
-        // Usar prompt específico para preguntas legales generales
-        String prompt = buildGeneralLegalPrompt(request.getMessage());
-        String answer = aiAnalysisService.generateContent(prompt);
-
-        // Guardar respuesta del asistente
-        ChatMessage assistantMessage = new ChatMessage();
-        assistantMessage.setUserId(userId);
-        assistantMessage.setMessage(answer);
-        assistantMessage.setRole("assistant");
-        assistantMessage.setConversationId(request.getConversationId());
-        assistantMessage.setTimestamp(Instant.now());
-        chatRepository.save(assistantMessage);
-
-        ChatResponse response = new ChatResponse();
-        response.setMessage(answer);
-        response.setTimestamp(Instant.now());
-        response.setSuggestions(List.of(
-                "¿Qué es una cláusula de confidencialidad?",
-                "¿Cuáles son los elementos esenciales de un contrato?",
-                "¿Qué es la jurisdicción en un contrato?"
-        ));
-
-        return ResponseEntity.ok(response);
+        final Long ownerId = userId;
+        // Prompt específico para preguntas legales generales. Sin historial, las preguntas
+        // frecuentes se responden desde la cache semántica sin llamar a Gemini
+        return conversationMemoryService.load(request.getConversationId(), userMessage.getTimestamp())
+                .flatMap(memory -> aiAnalysisService.answerGeneralChatAsync(request.getMessage(),
+                        buildGeneralLegalPrompt(request.getMessage(), memory.getHistory()), !memory.isEmpty()))
+                .publishOn(Schedulers.boundedElastic())
+                .map(answer -> {
+                    // Guardar respuesta del asistente
+                    ChatMessage assistantMessage = new ChatMessage();
+                    assistantMessage.setUserId(ownerId);
+                    assistantMessage.setMessage(answer);
+                    assistantMessage.setRole("assistant");
+                    assistantMessage.setConversationId(request.getConversationId());
+                    assistantMessage.setTimestamp(Instant.now());
+                    chatRepository.save(assistantMessage);
+                    conversationMemoryService.onTurnCompleted(request.getConversationId(), ownerId);
+
+                    ChatResponse response = new ChatResponse();
+                    response.setMessage(answer);
+                    response.setTimestamp(Instant.now());
+                    response.setSuggestions(GENERAL_SUGGESTIONS);
+
+                    return ResponseEntity.ok(response);
+                })
+                .contextWrite(UsageContext.operation(UsageContext.GENERAL_CHAT))
+                .contextWrite(UsageContext.user(ownerId));
+    }
+
+    // Chat sobre un contrato en streaming (SSE): envía la respuesta por fragmentos
+    @PostMapping(value = "/{contractId}/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<Flux<ServerSentEvent<Object>>> chatStream(
+            @PathVariable String contractId,
+            @Valid @RequestBody ChatRequest request,
+            @AuthenticationPrincipal UserDetails userDetails) {
+
+        // Validar acceso al contrato
+        Contract contract = contractService.findById(contractId)
+                .orElseThrow(() -> new RuntimeException("Contrato no encontrado"));
+
+        Long userId = null;
+        if (userDetails != null) {
+            User user = userRepository.findByEmail(userDetails.getUsername())
+                    .orElseThrow(() -> new RuntimeException("Usuario no encontrado"));
+            userId = user.getId();
+
+            if (contract.getUserId() != null && !contract.getUserId().equals(userId)) {
+                return ResponseEntity.status(403).build();
+            }
+        }
+
+        // Guardar mensaje del usuario
+        ChatMessage userMessage = saveMessage(contractId, userId, request.getMessage(), "user", request.getConversationId());
+
+        Flux<String> chunks = conversationMemoryService.load(request.getConversationId(), userMessage.getTimestamp())
+                .flatMapMany(memory -> nlpAnalysisService.streamAnswer(contract, request.getMessage(), memory))
+                .contextWrite(UsageContext.user(userId));
+        return sseResponse(streamAndPersist(chunks, contractId, userId, request.getConversationId(),
+                contract.getName(), generateSuggestions(contract.getType())));
+    }
+
+    // Chat legal general en streaming (SSE)
+    @PostMapping(value = "/general/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<Flux<ServerSentEvent<Object>>> generalChatStream(
+            @Valid @RequestBody ChatRequest request,
+            @AuthenticationPrincipal UserDetails userDetails) {
+
+        Long userId = null;
+        if (userDetails != null) {
+            User user = userRepository.findByEmail(userDetails.getUsername())
+                    .orElseThrow(() -> new RuntimeException("Usuario no encontrado"));
+            userId = user.getId();
+        }
+
+        // Guardar mensaje del usuario
+        ChatMessage userMessage = saveMessage(null, userId, request.getMessage(), "user", request.getConversationId());
+
+        Flux<String> chunks = conversationMemoryService.load(request.getConversationId(), userMessage.getTimestamp())
+                .flatMapMany(memory -> aiAnalysisService.streamGeneralChat(request.getMessage(),
+                        buildGeneralLegalPrompt(request.getMessage(), memory.getHistory()), !memory.isEmpty()))
+                .contextWrite(UsageContext.operation(UsageContext.GENERAL_CHAT))
+                .contextWrite(UsageContext.user(userId));
+        return sseResponse(streamAndPersist(chunks, null, userId, request.getConversationId(),
+                null, GENERAL_SUGGESTIONS));
     }
 
     /**
@@ -228,7 +308,63 @@ public class ChatController {
 
     // Metodos Auxiliares
 
-    private String buildGeneralLegalPrompt(String question) {
+    /**
+     * Reenvía cada fragmento como evento "chunk". Al completar el stream guarda el mensaje
+     * completo del asistente y emite un evento "done" con la respuesta final.
+     * Si el cliente cancela antes de terminar, no se guarda nada.
+     */
+    private Flux<ServerSentEvent<Object>> streamAndPersist(Flux<String> chunks, String contractId, Long userId,
+                                                           String conversationId, String contractName,
+                                                           List<String> suggestions) {
+        StringBuilder fullText = new StringBuilder();
+
+        Flux<ServerSentEvent<Object>> events = chunks
+                .doOnNext(fullText::append)
+                .map(chunk -> ServerSentEvent.<Object>builder(chunk).event("chunk").build());
+
+        Mono<ServerSentEvent<Object>> done = Mono.fromCallable(() -> {
+                    String responseText = fullText.toString();
+                    saveMessage(contractId, userId, responseText, "assistant", conversationId);
+                    conversationMemoryService.onTurnCompleted(conversationId, userId);
+
+                    ChatResponse response = new ChatResponse();
+                    response.setMessage(responseText);
+                    response.setContractName(contractName);
+                    response.setTimestamp(Instant.now());
+                    response.setSuggestions(suggestions);
+                    return ServerSentEvent.<Object>builder(response).event("done").build();
+                })
+                .subscribeOn(Schedulers.boundedElastic());
+
+        return Flux.concat(events, done);
+    }
+
+    private ResponseEntity<Flux<ServerSentEvent<Object>>> sseResponse(Flux<ServerSentEvent<Object>> events) {
+        // Evitar que proxies (nginx) acumulen el stream antes de enviarlo
+        return ResponseEntity.ok()
+                .header("X-Accel-Buffering", "no")
+                .body(events);
+    }
+
+    private ChatMessage saveMessage(String contractId, Long userId, String text, String role, String conversationId) {
+        ChatMessage message = new ChatMessage();
+        message.setContractId(contractId);
+        message.setUserId(userId);
+        message.setMessage(text);
+        message.setRole(role);
+        message.setConversationId(conversationId);
+        message.setTimestamp(Instant.now());
+        chatRepository.save(message);
+        return message;
+    }
+
+    private String buildGeneralLegalPrompt(String question, String history) {
+        // Con historial, la conversación previa va antes de la pregunta
+        String conversation = history == null ? "" : """
+            CONVERSACIÓN PREVIA (úsala solo para entender a qué se refiere la pregunta):
+            %s
+
+            """.formatted(history);
         return String.format("""
             Eres un asistente legal experto. Solo responde preguntas sobre temas legales.
             
@@ -238,9 +374,9 @@ public class ChatController {
             Si la pregunta SÍ es sobre derecho, responde de forma clara y profesional.
             Si requiere asesoría legal específica, recomienda consultar un abogado.
             
-            PREGUNTA:
+            %sPREGUNTA:
             %s
-            """, question);
+            """, conversation, question);
     }
 
     private List<String> generateSuggestions(String contractType) {
@@ -20,6 +20,7 @@ import com.acl.backend.model.User;
 import com.acl.backend.repository.ChatRepository;
 import com.acl.backend.repository.ConversationRepository;
 import com.acl.backend.repository.UserRepository;
+import com.acl.backend.service.ConversationMemoryService;
 
 import jakarta.validation.constraints.NotBlank;
 
@@ -30,13 +31,16 @@ public class ChatsController {
     private final ConversationRepository conversationRepository;
     private final UserRepository userRepository;
     private final ChatRepository chatRepository;
+    private final ConversationMemoryService conversationMemoryService;
 
     public ChatsController(ConversationRepository conversationRepository,
                            UserRepository userRepository,
-                           ChatRepository chatRepository) {
+                           ChatRepository chatRepository,
+                           ConversationMemoryService conversationMemoryService) {
         this.conversationRepository = conversationRepository;
         this.userRepository = userRepository;
         this.chatRepository = chatRepository;
+        this.conversationMemoryService = conversationMemoryService;
     }
 
     @GetMapping
@@ -117,6 +121,7 @@ public class ChatsController {
         }
         conversationRepository.deleteById(id);
         try { chatRepository.deleteByConversationId(id); } catch (Exception ignored) {}
+        try { conversationMemoryService.forget(id); } catch (Exception ignored) {}
         return ResponseEntity.ok().build();
     }
 }
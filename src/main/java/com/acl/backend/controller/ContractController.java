@@ -1,9 +1,12 @@
 package com.acl.backend.controller;
 
+import java.io.InputStream;
+import java.net.URI;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.util.List;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.ContentDisposition;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
@@ -15,24 +18,37 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
 import org.springframework.web.multipart.MultipartFile;
 
 import com.acl.backend.data.AnalysisData;
+import com.acl.backend.data.JobData;
 import com.acl.backend.model.Contract;
 import com.acl.backend.model.DeletedContract;
 import com.acl.backend.model.User;
 import com.acl.backend.repository.ChatRepository;
 import com.acl.backend.repository.DeletedContractRepository;
 import com.acl.backend.repository.UserRepository;
+import com.acl.backend.model.AnalysisBatch;
+import com.acl.backend.model.AnalysisJob;
+import com.acl.backend.service.AnalysisDepth;
+import com.acl.backend.service.AnalysisJobService;
+import com.acl.backend.service.BulkUploadService;
 import com.acl.backend.service.ContractService;
 import com.acl.backend.service.NLPAnalysisService;
 import com.acl.backend.service.ReportService;
 import com.acl.backend.service.TextExtractionService;
+import com.acl.backend.service.TokenUsageService;
+import com.acl.backend.service.UploadPipeline;
+import com.acl.backend.service.UsageContext;
 
 import jakarta.validation.Valid;
+import reactor.core.publisher.Mono;
 
 @RestController
 @RequestMapping("/api/contracts")
@@ -45,6 +61,11 @@ public class ContractController {
     private final UserRepository userRepository;
     private final ChatRepository chatRepository;
     private final DeletedContractRepository deletedContractRepository;
+    private final TokenUsageService tokenUsageService;
+    private final AnalysisJobService analysisJobService;
+    private final BulkUploadService bulkUploadService;
+    private final UploadPipeline uploadPipeline;
+    private final long maxFileBytes;
 
     public ContractController(ContractService contractService,
                               TextExtractionService textExtractionService,
@@ -52,7 +73,12 @@ public class ContractController {
                               ReportService reportService,
                               UserRepository userRepository,
                               ChatRepository chatRepository,
-                              DeletedContractRepository deletedContractRepository) {
+                              DeletedContractRepository deletedContractRepository,
+                              TokenUsageService tokenUsageService,
+                              AnalysisJobService analysisJobService,
+                              BulkUploadService bulkUploadService,
+                              UploadPipeline uploadPipeline,
+                              @Value("${upload.max-file-size:10MB}") DataSize maxFileSize) {
         this.contractService = contractService;
         this.textExtractionService = textExtractionService;
         this.nlpAnalysisService = nlpAnalysisService;
@@ -60,22 +86,92 @@ public class ContractController {
         this.userRepository = userRepository;
         this.chatRepository = chatRepository;
         this.deletedContractRepository = deletedContractRepository;
+        this.tokenUsageService = tokenUsageService;
+        this.analysisJobService = analysisJobService;
+        this.bulkUploadService = bulkUploadService;
+        this.uploadPipeline = uploadPipeline;
+        this.maxFileBytes = maxFileSize.toBytes();
     }
 
     // Sube y analiza un contrato (PDF/DOCX)
+    // Con async=true (o "Prefer: respond-async") responde 202 con el id del job y analiza en segundo plano
+    // Con progressive=true responde al instante con el análisis por reglas (provisional), ya guardado,
+    // y lo reemplaza por el de la IA en segundo plano (aviso por /api/jobs/{id}/events)
 
     @PostMapping(value = "/upload", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
-    public ResponseEntity<AnalysisData.UploadResponse> upload (
+    public Mono<ResponseEntity<?>> upload (
             @RequestParam("file") MultipartFile file,
             @RequestParam(value = "name", required = false) String name,
+            @RequestParam(value = "depth", required = false) String depth,
+            @RequestParam(value = "async", defaultValue = "false") boolean async,
+            @RequestParam(value = "progressive", defaultValue = "false") boolean progressive,
+            @RequestHeader(value = "Prefer", required = false) String prefer,
             @AuthenticationPrincipal UserDetails userDetails
     ) throws Exception {
 
-        // Extrar texto del archivo
-        String text = textExtractionService.extractText(file);
+        checkFileSize(file);
+        // quick | standard | deep: nivel de modelo del análisis
+        AnalysisDepth analysisDepth = AnalysisDepth.parse(depth);
         String contractName = name != null ? name : file.getOriginalFilename();
 
-        // Obtener userId del usuario autenticado
+        boolean respondAsync = async || (prefer != null && prefer.contains("respond-async"));
+        if (respondAsync || progressive) {
+            Long userId = null;
+            if (userDetails != null) {
+                User user = userRepository.findByEmail(userDetails.getUsername())
+                        .orElseThrow(() -> new RuntimeException("Usuario no encontrado"));
+                userId = user.getId();
+            }
+
+            if (progressive) {
+                String text = textExtractionService.extractText(file);
+                Contract saved = contractService.saveProvisional(contractName, text, userId);
+                AnalysisData.ProgressiveUploadResponse resp = new AnalysisData.ProgressiveUploadResponse();
+                resp.setContractId(saved.getId());
+                resp.setAnalysis(saved.getAnalysis());
+                resp.setProvisional(saved.isPendingReanalysis());
+                if (saved.isPendingReanalysis()) {
+                    AnalysisJob job = analysisJobService.submitUpgrade(saved, analysisDepth);
+                    resp.setJobId(job.getId());
+                    resp.setEventsUrl("/api/jobs/" + job.getId() + "/events");
+                }
+                return Mono.just(ResponseEntity.ok(resp));
+            }
+
+            AnalysisJob job = analysisJobService.submit(file.getOriginalFilename(), file.getBytes(),
+                    contractName, userId, analysisDepth);
+            JobData.JobAccepted accepted = new JobData.JobAccepted();
+            accepted.setJobId(job.getId());
+            accepted.setStatus(job.getStatus().name());
+            accepted.setStatusUrl("/api/jobs/" + job.getId());
+            accepted.setEventsUrl("/api/jobs/" + job.getId() + "/events");
+            return Mono.just(ResponseEntity.accepted()
+                    .location(URI.create(accepted.getStatusUrl()))
+                    .body(accepted));
+        }
+
+        // Extracción || usuario, luego análisis || cláusulas, en hilos virtuales (el hilo de Tomcat queda libre)
+        String email = userDetails != null ? userDetails.getUsername() : null;
+        return uploadPipeline.uploadAsync(file, contractName, email, analysisDepth)
+                .<ResponseEntity<?>>map(result -> {
+                    AnalysisData.UploadResponse resp = new AnalysisData.UploadResponse();
+                    resp.setContractId(result.getContract().getId());
+                    resp.setAnalysis(result.getContract().getAnalysis());
+                    return ResponseEntity.ok()
+                            .header("Server-Timing", result.serverTiming())
+                            .body(resp);
+                });
+    }
+
+    // Carga masiva: un ZIP con varios contratos (PDF/DOCX). Responde 202 con el id del lote;
+    // los archivos únicos se analizan en segundo plano y los repetidos se resuelven con el original
+    @PostMapping(value = "/bulk", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<JobData.BatchStatus> bulkUpload(
+            @RequestParam("file") MultipartFile file,
+            @RequestParam(value = "depth", required = false) String depth,
+            @AuthenticationPrincipal UserDetails userDetails) throws Exception {
+
+        AnalysisDepth analysisDepth = AnalysisDepth.parse(depth);
         Long userId = null;
         if (userDetails != null) {
             User user = userRepository.findByEmail(userDetails.getUsername())
@@ -83,15 +179,32 @@ public class ContractController {
             userId = user.getId();
         }
 
-        // Guardar y analizar
-        Contract saved = contractService.saveWithAnalysis(contractName, text, userId);
-        AnalysisData.AnalysisResult analysis = nlpAnalysisService.analyze(text);
+        AnalysisBatch batch;
+        try (InputStream in = file.getInputStream()) {
+            batch = bulkUploadService.submit(in, userId, analysisDepth);
+        }
+        JobData.BatchStatus status = bulkUploadService.status(batch);
+        return ResponseEntity.accepted()
+                .location(URI.create(status.getStatusUrl()))
+                .body(status);
+    }
 
-        AnalysisData.UploadResponse resp = new AnalysisData.UploadResponse();
-        resp.setContractId(saved.getId());
-        resp.setAnalysis(analysis);
+    // Estado por archivo de una carga masiva
+    @GetMapping("/bulk/{batchId}")
+    public ResponseEntity<JobData.BatchStatus> bulkStatus(
+            @PathVariable String batchId,
+            @AuthenticationPrincipal UserDetails userDetails) {
+        AnalysisBatch batch = bulkUploadService.find(batchId).orElse(null);
+        if (batch == null) return ResponseEntity.notFound().build();
 
-        return ResponseEntity.ok(resp);
+        if (userDetails != null) {
+            User user = userRepository.findByEmail(userDetails.getUsername())
+                    .orElseThrow(() -> new RuntimeException("Usuario no encontrado"));
+            if (batch.getUserId() != null && !batch.getUserId().equals(user.getId())) {
+                return ResponseEntity.status(403).build();
+            }
+        }
+        return ResponseEntity.ok(bulkUploadService.status(batch));
     }
 
     // Eliminar contrato y registrar en "deleted_contracts"
@@ -125,11 +238,51 @@ public class ContractController {
 
     // Analiza texto directo sin subir archivo
     @PostMapping(value = "/analyze-text", consumes = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<AnalysisData.AnalysisResult> analyzeText (
-            @Valid @RequestBody AnalysisData.AnalyzeTextRequest req) {
+    public Mono<ResponseEntity<AnalysisData.AnalysisResult>> analyzeText (
+            @Valid @RequestBody AnalysisData.AnalyzeTextRequest req,
+            @RequestParam(value = "depth", required = false) String depth,
+            @AuthenticationPrincipal UserDetails userDetails) {
 
-        AnalysisData.AnalysisResult result = nlpAnalysisService.analyze(req.getText());
-        return ResponseEntity.ok(result);
+        AnalysisDepth analysisDepth = AnalysisDepth.parse(depth);
+        Long userId = null;
+        if (userDetails != null) {
+            User user = userRepository.findByEmail(userDetails.getUsername())
+                    .orElseThrow(() -> new RuntimeException("Usuario no encontrado"));
+            userId = user.getId();
+        }
+
+        return nlpAnalysisService.analyzeAsync(req.getText(), analysisDepth)
+                .map(ResponseEntity::ok)
+                .contextWrite(UsageContext.user(userId));
+    }
+
+    // Estima tokens y latencia de analizar un texto antes de subirlo
+    @PostMapping(value = "/estimate", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<AnalysisData.EstimateResponse> estimate(
+            @Valid @RequestBody AnalysisData.AnalyzeTextRequest req,
+            @RequestParam(value = "depth", required = false) String depth,
+            @AuthenticationPrincipal UserDetails userDetails) {
+        if (req.getText() == null || req.getText().isBlank()) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(withRemainingQuota(
+                nlpAnalysisService.estimate(req.getText(), AnalysisDepth.parse(depth)), userDetails));
+    }
+
+    // Estima tokens y latencia de analizar un archivo (PDF/DOCX) sin guardarlo
+    @PostMapping(value = "/estimate", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<AnalysisData.EstimateResponse> estimateFile(
+            @RequestParam("file") MultipartFile file,
+            @RequestParam(value = "depth", required = false) String depth,
+            @AuthenticationPrincipal UserDetails userDetails) throws Exception {
+        checkFileSize(file);
+        String text = textExtractionService.extractText(file);
+        return ResponseEntity.ok(withRemainingQuota(nlpAnalysisService.estimate(text, AnalysisDepth.parse(depth)), userDetails));
+    }
+
+    // El límite de multipart es el de la carga masiva; los archivos sueltos tienen el suyo
+    private void checkFileSize(MultipartFile file) {
+        if (file.getSize() > maxFileBytes) throw new MaxUploadSizeExceededException(maxFileBytes);
     }
 
     // Lista todos los contratos del usuario autenticado
@@ -169,13 +322,24 @@ public class ContractController {
         return ResponseEntity.ok(contract);
     }
 
-    // Generar Reporte PDF del análisis de un contrato
+    // Generar Reporte PDF del análisis de un contrato. El GET no inicia análisis (tienen costo):
+    // sin análisis guardado responde 202 con el job en curso, o 404 (con el último job si falló);
+    // el análisis se pide con POST /{id}/reanalyze
     @GetMapping("/{id}/report")
-    public ResponseEntity<byte[]> getReport(@PathVariable String id) throws Exception {
+    public ResponseEntity<?> getReport(@PathVariable String id) throws Exception {
         var contract = contractService.findById(id).orElse(null);
         if (contract == null) return ResponseEntity.notFound().build();
 
-        var analysis = nlpAnalysisService.analyze(contract.getContent());
+        var analysis = contract.getAnalysis();
+        if (analysis == null) {
+            JobData.JobStatus job = analysisJobService.findLatestByContract(id)
+                    .map(JobData.JobStatus::from)
+                    .orElse(null);
+            if (job != null && !job.isFinished()) {
+                return ResponseEntity.accepted().body(job);
+            }
+            return job != null ? ResponseEntity.status(404).body(job) : ResponseEntity.notFound().build();
+        }
         byte[] pdf = reportService.generatePdf(contract, analysis);
 
         String filename = URLEncoder.encode("reporte-" + contract.getName() + ".pdf", StandardCharsets.UTF_8);
@@ -186,17 +350,57 @@ public class ContractController {
         return ResponseEntity.ok().headers(headers).body(pdf);
     }
 
+    // Re-analiza un contrato bajo petición explícita y reemplaza el análisis guardado
+    @PostMapping("/{id}/reanalyze")
+    public Mono<ResponseEntity<AnalysisData.AnalysisResult>> reanalyze(
+            @PathVariable String id,
+            @AuthenticationPrincipal UserDetails userDetails) {
+        Contract contract = contractService.findById(id).orElse(null);
+        if (contract == null) return Mono.just(ResponseEntity.notFound().build());
+
+        if (userDetails != null) {
+            User user = userRepository.findByEmail(userDetails.getUsername())
+                    .orElseThrow(() -> new RuntimeException("Usuario no encontrado"));
+            if (contract.getUserId() != null && !contract.getUserId().equals(user.getId())) {
+                return Mono.just(ResponseEntity.status(403).build());
+            }
+        }
+
+        // Pedido explícito: no se responde con el análisis en cache del mismo contenido
+        return contractService.refreshAnalysisAsync(contract)
+                .map(updated -> ResponseEntity.ok(updated.getAnalysis()));
+    }
+
+    private AnalysisData.EstimateResponse withRemainingQuota(AnalysisData.EstimateResponse estimate,
+                                                            UserDetails userDetails) {
+        if (userDetails != null && tokenUsageService.getDailyTokenBudget() > 0) {
+            User user = userRepository.findByEmail(userDetails.getUsername())
+                    .orElseThrow(() -> new RuntimeException("Usuario no encontrado"));
+            estimate.setRemainingDailyTokens(tokenUsageService.getRemainingToday(user.getId()));
+        }
+        return estimate;
+    }
+
     // Q&A Responde preguntas sobre un contrato
     @GetMapping("/{id}/qa")
-    public ResponseEntity<List<String>> qa(
+    public Mono<ResponseEntity<List<String>>> qa(
             @PathVariable String id,
-            @RequestParam("q") String question
+            @RequestParam("q") String question,
+            @AuthenticationPrincipal UserDetails userDetails
     ) {
         var contract = contractService.findById(id).orElse(null);
-        if (contract == null) return ResponseEntity.notFound().build();
+        if (contract == null) return Mono.just(ResponseEntity.notFound().build());
+
+        Long userId = null;
+        if (userDetails != null) {
+            User user = userRepository.findByEmail(userDetails.getUsername())
+                    .orElseThrow(() -> new RuntimeException("Usuario no encontrado"));
+            userId = user.getId();
+        }
 
-        var answers = nlpAnalysisService.answerQuestions(contract.getContent(), question);
-        return ResponseEntity.ok(answers);
+        return nlpAnalysisService.answerQuestionsAsync(contract, question)
+                .map(ResponseEntity::ok)
+                .contextWrite(UsageContext.user(userId));
     }
 
 
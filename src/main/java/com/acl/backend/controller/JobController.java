@@ -0,0 +1,78 @@
+package com.acl.backend.controller;
+
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.acl.backend.data.JobData.JobStatus;
+import com.acl.backend.model.AnalysisJob;
+import com.acl.backend.model.User;
+import com.acl.backend.repository.UserRepository;
+import com.acl.backend.service.AnalysisJobService;
+
+import reactor.core.publisher.Flux;
+
+/**
+ * Estado de los análisis asíncronos (POST /api/contracts/upload?async=true)
+ */
+@RestController
+@RequestMapping("/api/jobs")
+public class JobController {
+
+    private final AnalysisJobService analysisJobService;
+    private final UserRepository userRepository;
+
+    public JobController(AnalysisJobService analysisJobService, UserRepository userRepository) {
+        this.analysisJobService = analysisJobService;
+        this.userRepository = userRepository;
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<JobStatus> getStatus(
+            @PathVariable String id,
+            @AuthenticationPrincipal UserDetails userDetails) {
+        AnalysisJob job = analysisJobService.find(id).orElse(null);
+        if (job == null) return ResponseEntity.notFound().build();
+        if (!canAccess(job, userDetails)) return ResponseEntity.status(403).build();
+        return ResponseEntity.ok(JobStatus.from(job));
+    }
+
+    // Avance por SSE: eventos "progress" y un evento final "done" o "failed"
+    @GetMapping(value = "/{id}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<Flux<ServerSentEvent<JobStatus>>> events(
+            @PathVariable String id,
+            @AuthenticationPrincipal UserDetails userDetails) {
+        AnalysisJob job = analysisJobService.find(id).orElse(null);
+        if (job == null) return ResponseEntity.notFound().build();
+        if (!canAccess(job, userDetails)) return ResponseEntity.status(403).build();
+
+        Flux<ServerSentEvent<JobStatus>> events = analysisJobService.events(id)
+                .map(status -> ServerSentEvent.builder(status)
+                        .id(status.getStage() + ":" + status.getChunksDone())
+                        .event(eventName(status))
+                        .build());
+        // Evitar que proxies (nginx) acumulen el stream antes de enviarlo
+        return ResponseEntity.ok()
+                .header("X-Accel-Buffering", "no")
+                .body(events);
+    }
+
+    private String eventName(JobStatus status) {
+        if (AnalysisJob.Status.DONE.name().equals(status.getStatus())) return "done";
+        if (AnalysisJob.Status.FAILED.name().equals(status.getStatus())) return "failed";
+        return "progress";
+    }
+
+    private boolean canAccess(AnalysisJob job, UserDetails userDetails) {
+        if (userDetails == null || job.getUserId() == null) return true;
+        User user = userRepository.findByEmail(userDetails.getUsername())
+                .orElseThrow(() -> new RuntimeException("Usuario no encontrado"));
+        return job.getUserId().equals(user.getId());
+    }
+}
@@ -0,0 +1,70 @@
+package com.acl.backend.controller;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.acl.backend.data.UsageData.UsageReport;
+import com.acl.backend.service.TokenUsageService;
+
+/**
+ * Consumo de tokens de IA para administradores (correos en usage.admin-emails)
+ */
+@RestController
+@RequestMapping("/api/admin/usage")
+public class UsageController {
+
+    private static final int MAX_RANGE_DAYS = 92;
+
+    private final TokenUsageService tokenUsageService;
+    private final Set<String> adminEmails;
+
+    public UsageController(TokenUsageService tokenUsageService,
+                           @Value("${usage.admin-emails:}") String adminEmails) {
+        this.tokenUsageService = tokenUsageService;
+        this.adminEmails = Arrays.stream(adminEmails.split(","))
+                .map(String::trim)
+                .filter(s -> !s.isEmpty())
+                .map(String::toLowerCase)
+                .collect(Collectors.toSet());
+    }
+
+    /**
+     * Totales por operación, por día y usuarios con mayor consumo en el rango (días UTC).
+     * Por defecto, los últimos 7 días.
+     */
+    @GetMapping
+    public ResponseEntity<UsageReport> getUsage(
+            @RequestParam(value = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(value = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(value = "top", defaultValue = "10") int top,
+            @AuthenticationPrincipal UserDetails userDetails) {
+
+        if (userDetails == null) {
+            return ResponseEntity.status(401).build();
+        }
+        if (!adminEmails.contains(userDetails.getUsername().toLowerCase())) {
+            return ResponseEntity.status(403).build();
+        }
+
+        LocalDate end = to != null ? to : LocalDate.now(ZoneOffset.UTC);
+        LocalDate start = from != null ? from : end.minusDays(6);
+        if (start.isAfter(end) || start.plusDays(MAX_RANGE_DAYS).isBefore(end)) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        return ResponseEntity.ok(tokenUsageService.report(start, end, Math.max(1, Math.min(top, 100))));
+    }
+}
@@ -24,6 +24,10 @@ public class AnalysisData {
         private double riskScore;
         private List<String> recommendations;
         private String summary;
+        private List<String> legalBasis;
+        private List<KeyDate> keyDates;
+        // Resultado por reglas generado porque la IA no estaba disponible; se re-analiza más tarde
+        private boolean provisional;
 
         public String getType() { return type; }
         public void setType(String type) { this.type = type; }
@@ -37,6 +41,26 @@ public class AnalysisData {
         public void setRecommendations(List<String> recommendations) { this.recommendations = recommendations; }
         public String getSummary() { return summary; }
         public void setSummary(String summary) { this.summary = summary; }
+        public List<String> getLegalBasis() { return legalBasis; }
+        public void setLegalBasis(List<String> legalBasis) { this.legalBasis = legalBasis; }
+        public List<KeyDate> getKeyDates() { return keyDates; }
+        public void setKeyDates(List<KeyDate> keyDates) { this.keyDates = keyDates; }
+        public boolean isProvisional() { return provisional; }
+        public void setProvisional(boolean provisional) { this.provisional = provisional; }
+    }
+
+    // Fecha o plazo relevante del contrato (inicio, terminación, pago, aviso, renovación)
+    public static class KeyDate {
+        private String type;
+        private String value;
+        private String importance;
+
+        public String getType() { return type; }
+        public void setType(String type) { this.type = type; }
+        public String getValue() { return value; }
+        public void setValue(String value) { this.value = value; }
+        public String getImportance() { return importance; }
+        public void setImportance(String importance) { this.importance = importance; }
     }
 
     public static class UploadResponse {
@@ -48,4 +72,56 @@ public class AnalysisData {
         public AnalysisResult getAnalysis() { return analysis; }
         public void setAnalysis(AnalysisResult analysis) { this.analysis = analysis; }
     }
+
+    /**
+     * Respuesta de la subida progresiva: el análisis por reglas (provisional) de inmediato y
+     * el job que lo reemplaza por el de la IA; eventsUrl avisa por SSE cuando termina.
+     */
+    public static class ProgressiveUploadResponse {
+        private String contractId;
+        private AnalysisResult analysis;
+        private boolean provisional;
+        private String jobId;
+        private String eventsUrl;
+
+        public String getContractId() { return contractId; }
+        public void setContractId(String contractId) { this.contractId = contractId; }
+        public AnalysisResult getAnalysis() { return analysis; }
+        public void setAnalysis(AnalysisResult analysis) { this.analysis = analysis; }
+        public boolean isProvisional() { return provisional; }
+        public void setProvisional(boolean provisional) { this.provisional = provisional; }
+        public String getJobId() { return jobId; }
+        public void setJobId(String jobId) { this.jobId = jobId; }
+        public String getEventsUrl() { return eventsUrl; }
+        public void setEventsUrl(String eventsUrl) { this.eventsUrl = eventsUrl; }
+    }
+
+    // Costo esperado de analizar un texto, calculado sin llamar a la IA
+    public static class EstimateResponse {
+        private int characters;
+        private int inputTokens;
+        private int outputTokens;
+        private int chunks;
+        private long latencyMs;
+        private boolean cached;
+        private boolean aiEnabled;
+        private Long remainingDailyTokens;
+
+        public int getCharacters() { return characters; }
+        public void setCharacters(int characters) { this.characters = characters; }
+        public int getInputTokens() { return inputTokens; }
+        public void setInputTokens(int inputTokens) { this.inputTokens = inputTokens; }
+        public int getOutputTokens() { return outputTokens; }
+        public void setOutputTokens(int outputTokens) { this.outputTokens = outputTokens; }
+        public int getChunks() { return chunks; }
+        public void setChunks(int chunks) { this.chunks = chunks; }
+        public long getLatencyMs() { return latencyMs; }
+        public void setLatencyMs(long latencyMs) { this.latencyMs = latencyMs; }
+        public boolean isCached() { return cached; }
+        public void setCached(boolean cached) { this.cached = cached; }
+        public boolean isAiEnabled() { return aiEnabled; }
+        public void setAiEnabled(boolean aiEnabled) { this.aiEnabled = aiEnabled; }
+        public Long getRemainingDailyTokens() { return remainingDailyTokens; }
+        public void setRemainingDailyTokens(Long remainingDailyTokens) { this.remainingDailyTokens = remainingDailyTokens; }
+    }
 }
\ No newline at end of file
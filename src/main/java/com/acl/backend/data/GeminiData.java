@@ -1,12 +1,17 @@
 package com.acl.backend.data;
 import java.util.List;
+import java.util.Map;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.google.gson.annotations.SerializedName;
 
 public class GeminiData {
+    @JsonInclude(JsonInclude.Include.NON_NULL)
     public static class GeminiRequest {
         private List<Content> contents;
         private GenerationConfig generationConfig;
+        // Nombre de un contexto cacheado (cachedContents/...) que antecede a contents
+        private String cachedContent;
 
         public GeminiRequest(String text) {
             this.contents = List.of(new Content(List.of(new Part(text))));
@@ -22,15 +27,29 @@ public class GeminiData {
         public void setContents(List<Content> contents) { this.contents = contents; }
         public GenerationConfig getGenerationConfig() { return generationConfig; }
         public void setGenerationConfig(GenerationConfig config) { this.generationConfig = config; }
+        public String getCachedContent() { return cachedContent; }
+        public void setCachedContent(String cachedContent) { this.cachedContent = cachedContent; }
     }
 
+    @JsonInclude(JsonInclude.Include.NON_NULL)
     public static class Content {
+        private String role;
         private List<Part> parts;
 
+        public Content() {
+        }
+
         public Content(List<Part> parts) {
             this.parts = parts;
         }
 
+        public Content(String role, List<Part> parts) {
+            this.role = role;
+            this.parts = parts;
+        }
+
+        public String getRole() { return role; }
+        public void setRole(String role) { this.role = role; }
         public List<Part> getParts() { return parts; }
         public void setParts(List<Part> parts) { this.parts = parts; }
     }
@@ -46,6 +65,7 @@ public class GeminiData {
         public void setText(String text) { this.text = text; }
     }
 
+    @JsonInclude(JsonInclude.Include.NON_NULL)
     public static class GenerationConfig {
         private Double temperature;
         private Integer maxOutputTokens;
@@ -53,6 +73,9 @@ public class GeminiData {
         private Integer topK;
         @SerializedName("topP")
         private Double topP;
+        // Modo JSON: "application/json" y el esquema (subconjunto OpenAPI) que debe cumplir la respuesta
+        private String responseMimeType;
+        private Map<String, Object> responseSchema;
 
         public GenerationConfig() {
             this.temperature = 0.3;
@@ -76,6 +99,43 @@ public class GeminiData {
         public void setTopK(Integer topK) { this.topK = topK; }
         public Double getTopP() { return topP; }
         public void setTopP(Double topP) { this.topP = topP; }
+        public String getResponseMimeType() { return responseMimeType; }
+        public void setResponseMimeType(String responseMimeType) { this.responseMimeType = responseMimeType; }
+        public Map<String, Object> getResponseSchema() { return responseSchema; }
+        public void setResponseSchema(Map<String, Object> responseSchema) { this.responseSchema = responseSchema; }
+    }
+
+    // ========== CONTEXT CACHE ==========
+    public static class CachedContentRequest {
+        private String model;
+        private List<Content> contents;
+        private String ttl;
+
+        public CachedContentRequest(String model, String text, long ttlSeconds) {
+            this.model = "models/" + model;
+            this.contents = List.of(new Content("user", List.of(new Part(text))));
+            this.ttl = ttlSeconds + "s";
+        }
+
+        public String getModel() { return model; }
+        public void setModel(String model) { this.model = model; }
+        public List<Content> getContents() { return contents; }
+        public void setContents(List<Content> contents) { this.contents = contents; }
+        public String getTtl() { return ttl; }
+        public void setTtl(String ttl) { this.ttl = ttl; }
+    }
+
+    public static class CachedContent {
+        private String name;
+        private String expireTime;
+        private UsageMetadata usageMetadata;
+
+        public String getName() { return name; }
+        public void setName(String name) { this.name = name; }
+        public String getExpireTime() { return expireTime; }
+        public void setExpireTime(String expireTime) { this.expireTime = expireTime; }
+        public UsageMetadata getUsageMetadata() { return usageMetadata; }
+        public void setUsageMetadata(UsageMetadata usageMetadata) { this.usageMetadata = usageMetadata; }
     }
 
     // ========== RESPONSE ==========
@@ -130,6 +190,7 @@ public class GeminiData {
         private Integer promptTokenCount;
         private Integer candidatesTokenCount;
         private Integer totalTokenCount;
+        private Integer cachedContentTokenCount;
 
         public Integer getPromptTokenCount() { return promptTokenCount; }
         public void setPromptTokenCount(Integer promptTokenCount) { this.promptTokenCount = promptTokenCount; }
@@ -137,5 +198,7 @@ public class GeminiData {
         public void setCandidatesTokenCount(Integer candidatesTokenCount) { this.candidatesTokenCount = candidatesTokenCount; }
         public Integer getTotalTokenCount() { return totalTokenCount; }
         public void setTotalTokenCount(Integer totalTokenCount) { this.totalTokenCount = totalTokenCount; }
+        public Integer getCachedContentTokenCount() { return cachedContentTokenCount; }
+        public void setCachedContentTokenCount(Integer cachedContentTokenCount) { this.cachedContentTokenCount = cachedContentTokenCount; }
     }
 }
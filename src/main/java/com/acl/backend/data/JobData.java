@@ -0,0 +1,227 @@
+package com.acl.backend.data;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Objects;
+
+import com.acl.backend.model.AnalysisBatch;
+import com.acl.backend.model.AnalysisJob;
+
+public class JobData {
+
+    // Respuesta 202 de una subida asíncrona
+    public static class JobAccepted {
+        private String jobId;
+        private String status;
+        private String statusUrl;
+        private String eventsUrl;
+
+        public String getJobId() { return jobId; }
+        public void setJobId(String jobId) { this.jobId = jobId; }
+        public String getStatus() { return status; }
+        public void setStatus(String status) { this.status = status; }
+        public String getStatusUrl() { return statusUrl; }
+        public void setStatusUrl(String statusUrl) { this.statusUrl = statusUrl; }
+        public String getEventsUrl() { return eventsUrl; }
+        public void setEventsUrl(String eventsUrl) { this.eventsUrl = eventsUrl; }
+    }
+
+    // Estado de un job (GET /api/jobs/{id} y eventos SSE); no incluye el archivo
+    public static class JobStatus {
+        private String jobId;
+        private String status;
+        private String stage;
+        private int chunksDone;
+        private int chunksTotal;
+        private String contractName;
+        private String contractId;
+        private boolean provisional;
+        private String error;
+        private int attempts;
+        private Instant createdAt;
+        private Instant updatedAt;
+
+        public static JobStatus from(AnalysisJob job) {
+            JobStatus s = new JobStatus();
+            s.jobId = job.getId();
+            s.status = job.getStatus().name();
+            s.stage = job.getStage();
+            s.chunksDone = job.getChunksDone();
+            s.chunksTotal = job.getChunksTotal();
+            s.contractName = job.getContractName();
+            s.contractId = job.getContractId();
+            s.provisional = job.isProvisional();
+            s.error = job.getError();
+            s.attempts = job.getAttempts();
+            s.createdAt = job.getCreatedAt();
+            s.updatedAt = job.getUpdatedAt();
+            return s;
+        }
+
+        public boolean isFinished() {
+            return AnalysisJob.Status.DONE.name().equals(status) || AnalysisJob.Status.FAILED.name().equals(status);
+        }
+
+        // Mismo avance visible: no se reenvía por SSE
+        public boolean sameProgress(JobStatus other) {
+            return Objects.equals(status, other.status) && Objects.equals(stage, other.stage)
+                    && chunksDone == other.chunksDone && chunksTotal == other.chunksTotal;
+        }
+
+        public String getJobId() { return jobId; }
+        public void setJobId(String jobId) { this.jobId = jobId; }
+        public String getStatus() { return status; }
+        public void setStatus(String status) { this.status = status; }
+        public String getStage() { return stage; }
+        public void setStage(String stage) { this.stage = stage; }
+        public int getChunksDone() { return chunksDone; }
+        public void setChunksDone(int chunksDone) { this.chunksDone = chunksDone; }
+        public int getChunksTotal() { return chunksTotal; }
+        public void setChunksTotal(int chunksTotal) { this.chunksTotal = chunksTotal; }
+        public String getContractName() { return contractName; }
+        public void setContractName(String contractName) { this.contractName = contractName; }
+        public String getContractId() { return contractId; }
+        public void setContractId(String contractId) { this.contractId = contractId; }
+        public boolean isProvisional() { return provisional; }
+        public void setProvisional(boolean provisional) { this.provisional = provisional; }
+        public String getError() { return error; }
+        public void setError(String error) { this.error = error; }
+        public int getAttempts() { return attempts; }
+        public void setAttempts(int attempts) { this.attempts = attempts; }
+        public Instant getCreatedAt() { return createdAt; }
+        public void setCreatedAt(Instant createdAt) { this.createdAt = createdAt; }
+        public Instant getUpdatedAt() { return updatedAt; }
+        public void setUpdatedAt(Instant updatedAt) { this.updatedAt = updatedAt; }
+    }
+
+    /**
+     * Estado de una carga masiva (POST /api/contracts/bulk y GET /api/contracts/bulk/{id}).
+     * Los contadores se calculan sobre el estado actual de cada archivo.
+     */
+    public static class BatchStatus {
+        private String batchId;
+        private String statusUrl;
+        private int total;
+        private int queued;
+        private int running;
+        private int done;
+        private int duplicates;
+        private int skipped;
+        private int failed;
+        private boolean finished;
+        // EXTRACTING mientras se lee el ZIP, READY o FAILED (error)
+        private String extraction;
+        private String error;
+        private Instant createdAt;
+        private List<BatchFileStatus> files;
+
+        public static BatchStatus from(AnalysisBatch batch, List<BatchFileStatus> files) {
+            BatchStatus s = new BatchStatus();
+            s.batchId = batch.getId();
+            s.statusUrl = "/api/contracts/bulk/" + batch.getId();
+            s.createdAt = batch.getCreatedAt();
+            s.files = files;
+            s.total = files.size();
+            for (BatchFileStatus file : files) {
+                switch (file.getStatus()) {
+                    case "QUEUED" -> s.queued++;
+                    case "RUNNING" -> s.running++;
+                    case "DONE" -> s.done++;
+                    case "DUPLICATE" -> s.duplicates++;
+                    case "SKIPPED" -> s.skipped++;
+                    default -> s.failed++;
+                }
+            }
+            AnalysisBatch.Status extraction = batch.getStatus() != null ? batch.getStatus() : AnalysisBatch.Status.READY;
+            s.extraction = extraction.name();
+            s.error = batch.getError();
+            s.finished = extraction != AnalysisBatch.Status.EXTRACTING && s.queued == 0 && s.running == 0;
+            return s;
+        }
+
+        public String getBatchId() { return batchId; }
+        public void setBatchId(String batchId) { this.batchId = batchId; }
+        public String getStatusUrl() { return statusUrl; }
+        public void setStatusUrl(String statusUrl) { this.statusUrl = statusUrl; }
+        public int getTotal() { return total; }
+        public void setTotal(int total) { this.total = total; }
+        public int getQueued() { return queued; }
+        public void setQueued(int queued) { this.queued = queued; }
+        public int getRunning() { return running; }
+        public void setRunning(int running) { this.running = running; }
+        public int getDone() { return done; }
+        public void setDone(int done) { this.done = done; }
+        public int getDuplicates() { return duplicates; }
+        public void setDuplicates(int duplicates) { this.duplicates = duplicates; }
+        public int getSkipped() { return skipped; }
+        public void setSkipped(int skipped) { this.skipped = skipped; }
+        public int getFailed() { return failed; }
+        public void setFailed(int failed) { this.failed = failed; }
+        public boolean isFinished() { return finished; }
+        public void setFinished(boolean finished) { this.finished = finished; }
+        public String getExtraction() { return extraction; }
+        public void setExtraction(String extraction) { this.extraction = extraction; }
+        public String getError() { return error; }
+        public void setError(String error) { this.error = error; }
+        public Instant getCreatedAt() { return createdAt; }
+        public void setCreatedAt(Instant createdAt) { this.createdAt = createdAt; }
+        public List<BatchFileStatus> getFiles() { return files; }
+        public void setFiles(List<BatchFileStatus> files) { this.files = files; }
+    }
+
+    /**
+     * Un archivo de la carga masiva. status es el del job (QUEUED, RUNNING, DONE, FAILED)
+     * o DUPLICATE / SKIPPED / FAILED si no se analizó. Un repetido lleva el contractId del
+     * original (duplicateOf) cuando este termina.
+     */
+    public static class BatchFileStatus {
+        private String fileName;
+        private String status;
+        private String jobId;
+        private String stage;
+        private int chunksDone;
+        private int chunksTotal;
+        private String contractId;
+        private String duplicateOf;
+        private String error;
+
+        public static BatchFileStatus from(AnalysisBatch.BatchFile file, AnalysisJob job) {
+            BatchFileStatus s = new BatchFileStatus();
+            s.fileName = file.getFileName();
+            s.jobId = file.getJobId();
+            s.duplicateOf = file.getDuplicateOf();
+            s.error = file.getError();
+            s.status = file.getStatus().name();
+            if (job != null) {
+                if (file.getStatus() == AnalysisBatch.BatchFile.Status.QUEUED) {
+                    s.status = job.getStatus().name();
+                    s.stage = job.getStage();
+                    s.chunksDone = job.getChunksDone();
+                    s.chunksTotal = job.getChunksTotal();
+                    s.error = job.getError();
+                }
+                s.contractId = job.getContractId();
+            }
+            return s;
+        }
+
+        public String getFileName() { return fileName; }
+        public void setFileName(String fileName) { this.fileName = fileName; }
+        public String getStatus() { return status; }
+        public void setStatus(String status) { this.status = status; }
+        public String getJobId() { return jobId; }
+        public void setJobId(String jobId) { this.jobId = jobId; }
+        public String getStage() { return stage; }
+        public void setStage(String stage) { this.stage = stage; }
+        public int getChunksDone() { return chunksDone; }
+        public void setChunksDone(int chunksDone) { this.chunksDone = chunksDone; }
+        public int getChunksTotal() { return chunksTotal; }
+        public void setChunksTotal(int chunksTotal) { this.chunksTotal = chunksTotal; }
+        public String getContractId() { return contractId; }
+        public void setContractId(String contractId) { this.contractId = contractId; }
+        public String getDuplicateOf() { return duplicateOf; }
+        public void setDuplicateOf(String duplicateOf) { this.duplicateOf = duplicateOf; }
+        public String getError() { return error; }
+        public void setError(String error) { this.error = error; }
+    }
+}
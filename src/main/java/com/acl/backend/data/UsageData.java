@@ -0,0 +1,67 @@
+package com.acl.backend.data;
+
+import java.util.List;
+import java.util.Map;
+
+public class UsageData {
+
+    public static class UsageTotals {
+        private long calls;
+        private long errors;
+        private long promptTokens;
+        private long candidateTokens;
+        private long totalTokens;
+        private double avgLatencyMs;
+
+        public long getCalls() { return calls; }
+        public void setCalls(long calls) { this.calls = calls; }
+        public long getErrors() { return errors; }
+        public void setErrors(long errors) { this.errors = errors; }
+        public long getPromptTokens() { return promptTokens; }
+        public void setPromptTokens(long promptTokens) { this.promptTokens = promptTokens; }
+        public long getCandidateTokens() { return candidateTokens; }
+        public void setCandidateTokens(long candidateTokens) { this.candidateTokens = candidateTokens; }
+        public long getTotalTokens() { return totalTokens; }
+        public void setTotalTokens(long totalTokens) { this.totalTokens = totalTokens; }
+        public double getAvgLatencyMs() { return avgLatencyMs; }
+        public void setAvgLatencyMs(double avgLatencyMs) { this.avgLatencyMs = avgLatencyMs; }
+    }
+
+    public static class UserUsage {
+        private Long userId;
+        private UsageTotals totals;
+
+        public Long getUserId() { return userId; }
+        public void setUserId(Long userId) { this.userId = userId; }
+        public UsageTotals getTotals() { return totals; }
+        public void setTotals(UsageTotals totals) { this.totals = totals; }
+    }
+
+    public static class UsageReport {
+        private String from;
+        private String to;
+        private long dailyTokenBudget;
+        private UsageTotals totals;
+        private Map<String, UsageTotals> byOperation;
+        private Map<String, UsageTotals> byTier;
+        private Map<String, UsageTotals> byDay;
+        private List<UserUsage> topUsers;
+
+        public String getFrom() { return from; }
+        public void setFrom(String from) { this.from = from; }
+        public String getTo() { return to; }
+        public void setTo(String to) { this.to = to; }
+        public long getDailyTokenBudget() { return dailyTokenBudget; }
+        public void setDailyTokenBudget(long dailyTokenBudget) { this.dailyTokenBudget = dailyTokenBudget; }
+        public UsageTotals getTotals() { return totals; }
+        public void setTotals(UsageTotals totals) { this.totals = totals; }
+        public Map<String, UsageTotals> getByOperation() { return byOperation; }
+        public void setByOperation(Map<String, UsageTotals> byOperation) { this.byOperation = byOperation; }
+        public Map<String, UsageTotals> getByTier() { return byTier; }
+        public void setByTier(Map<String, UsageTotals> byTier) { this.byTier = byTier; }
+        public Map<String, UsageTotals> getByDay() { return byDay; }
+        public void setByDay(Map<String, UsageTotals> byDay) { this.byDay = byDay; }
+        public List<UserUsage> getTopUsers() { return topUsers; }
+        public void setTopUsers(List<UserUsage> topUsers) { this.topUsers = topUsers; }
+    }
+}
@@ -0,0 +1,11 @@
+package com.acl.backend.exception;
+
+/**
+ * Gemini no está disponible (circuito abierto). Quien llama debe usar el fallback sin esperar.
+ */
+public class GeminiUnavailableException extends RuntimeException {
+
+    public GeminiUnavailableException(String message) {
+        super(message);
+    }
+}
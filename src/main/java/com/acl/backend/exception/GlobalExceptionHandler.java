@@ -1,6 +1,7 @@
 package com.acl.backend.exception;
 
 import java.time.Instant;
+import java.util.concurrent.TimeoutException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -13,6 +14,7 @@ import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
 import org.springframework.web.multipart.MaxUploadSizeExceededException;
 
+
 @RestControllerAdvice
 public class GlobalExceptionHandler {
 
@@ -30,6 +32,30 @@ public class GlobalExceptionHandler {
         return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(error);
     }
 
+    @ExceptionHandler(GeminiUnavailableException.class)
+    public ResponseEntity<ErrorResponse> handleGeminiUnavailable(GeminiUnavailableException ex) {
+        log.warn("GeminiUnavailableException: {}", ex.getMessage());
+        ErrorResponse error = new ErrorResponse(
+                HttpStatus.SERVICE_UNAVAILABLE.value(),
+                "Servicio de IA no disponible",
+                "El servicio de IA no está disponible en este momento. Por favor, intenta de nuevo más tarde",
+                Instant.now()
+        );
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(error);
+    }
+
+    @ExceptionHandler(QuotaExceededException.class)
+    public ResponseEntity<ErrorResponse> handleQuotaExceeded(QuotaExceededException ex) {
+        log.warn("QuotaExceededException: {}", ex.getMessage());
+        ErrorResponse error = new ErrorResponse(
+                HttpStatus.TOO_MANY_REQUESTS.value(),
+                "Cuota de IA agotada",
+                ex.getMessage(),
+                Instant.now()
+        );
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(error);
+    }
+
     @ExceptionHandler(AccessDeniedException.class)
     public ResponseEntity<ErrorResponse> handleAccessDenied(AccessDeniedException ex) {
         log.warn("AccessDeniedException: {}", ex.getMessage());
@@ -77,7 +103,9 @@ public class GlobalExceptionHandler {
         ErrorResponse error = new ErrorResponse(
                 HttpStatus.PAYLOAD_TOO_LARGE.value(),
                 "Archivo demasiado grande",
-                "El archivo excede el tamaño máximo permitido (10MB)",
+                ex.getMaxUploadSize() > 0
+                        ? "El archivo excede el tamaño máximo permitido (" + ex.getMaxUploadSize() / (1024 * 1024) + "MB)"
+                        : "El archivo excede el tamaño máximo permitido",
                 Instant.now()
         );
         return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).body(error);
@@ -95,6 +123,18 @@ public class GlobalExceptionHandler {
         return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(error);
     }
 
+    @ExceptionHandler(TimeoutException.class)
+    public ResponseEntity<ErrorResponse> handleTimeout(TimeoutException ex) {
+        log.warn("TimeoutException: {}", ex.getMessage());
+        ErrorResponse error = new ErrorResponse(
+                HttpStatus.GATEWAY_TIMEOUT.value(),
+                "Tiempo de espera agotado",
+                ex.getMessage(),
+                Instant.now()
+        );
+        return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).body(error);
+    }
+
     @ExceptionHandler(Exception.class)
     public ResponseEntity<ErrorResponse> handleGenericException(Exception ex) {
         log.error("Exception: {}", ex.getMessage(), ex);
@@ -0,0 +1,11 @@
+package com.acl.backend.exception;
+
+/**
+ * El usuario agotó su presupuesto diario de tokens de IA. Se lanza antes de llamar a Gemini.
+ */
+public class QuotaExceededException extends RuntimeException {
+
+    public QuotaExceededException(String message) {
+        super(message);
+    }
+}
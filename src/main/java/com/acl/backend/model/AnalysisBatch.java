@@ -0,0 +1,105 @@
+package com.acl.backend.model;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * Carga masiva de contratos (POST /api/contracts/bulk con un ZIP).
+ *
+ * Guarda el resultado de la extracción de cada archivo del ZIP. Los archivos únicos se
+ * analizan como jobs asíncronos (AnalysisJob.batchId); los repetidos dentro del lote
+ * apuntan al primero con el mismo contenido y no se analizan de nuevo. Mientras el ZIP se
+ * lee en segundo plano el lote está EXTRACTING y sin archivos; si el ZIP no es válido queda
+ * FAILED con el motivo en error.
+ */
+@Document(collection = "analysis_batches")
+public class AnalysisBatch {
+
+    public enum Status { EXTRACTING, READY, FAILED }
+
+    @Id
+    private String id;
+
+    // null en lotes anteriores a la lectura en segundo plano: equivale a READY
+    private Status status;
+    private String error;
+
+    @Indexed
+    private Long userId;
+
+    private String depth;
+    private List<BatchFile> files = new ArrayList<>();
+
+    // Los lotes se borran después de una semana, igual que sus jobs
+    @Indexed(expireAfter = "7d")
+    private Instant createdAt = Instant.now();
+
+    public AnalysisBatch() {}
+
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+
+    public Status getStatus() { return status; }
+    public void setStatus(Status status) { this.status = status; }
+
+    public String getError() { return error; }
+    public void setError(String error) { this.error = error; }
+
+    public Long getUserId() { return userId; }
+    public void setUserId(Long userId) { this.userId = userId; }
+
+    public String getDepth() { return depth; }
+    public void setDepth(String depth) { this.depth = depth; }
+
+    public List<BatchFile> getFiles() { return files; }
+    public void setFiles(List<BatchFile> files) { this.files = files; }
+
+    public Instant getCreatedAt() { return createdAt; }
+    public void setCreatedAt(Instant createdAt) { this.createdAt = createdAt; }
+
+    /**
+     * Un archivo del ZIP. status: QUEUED (tiene job), DUPLICATE (mismo contenido que
+     * duplicateOf), SKIPPED (formato no soportado) o FAILED (no se pudo extraer).
+     */
+    public static class BatchFile {
+
+        public enum Status { QUEUED, DUPLICATE, SKIPPED, FAILED }
+
+        private String fileName;
+        private Status status;
+        private String jobId;
+        private String duplicateOf;
+        private String contentHash;
+        private String error;
+
+        public BatchFile() {}
+
+        public BatchFile(String fileName, Status status) {
+            this.fileName = fileName;
+            this.status = status;
+        }
+
+        public String getFileName() { return fileName; }
+        public void setFileName(String fileName) { this.fileName = fileName; }
+
+        public Status getStatus() { return status; }
+        public void setStatus(Status status) { this.status = status; }
+
+        public String getJobId() { return jobId; }
+        public void setJobId(String jobId) { this.jobId = jobId; }
+
+        public String getDuplicateOf() { return duplicateOf; }
+        public void setDuplicateOf(String duplicateOf) { this.duplicateOf = duplicateOf; }
+
+        public String getContentHash() { return contentHash; }
+        public void setContentHash(String contentHash) { this.contentHash = contentHash; }
+
+        public String getError() { return error; }
+        public void setError(String error) { this.error = error; }
+    }
+}
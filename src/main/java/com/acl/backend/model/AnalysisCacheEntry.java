@@ -0,0 +1,51 @@
+package com.acl.backend.model;
+
+import java.time.Instant;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import com.acl.backend.data.AnalysisData.AnalysisResult;
+
+@Document(collection = "analysis_cache")
+public class AnalysisCacheEntry {
+
+    // Clave: hash del texto normalizado + versión de prompt + modelo
+    @Id
+    private String id;
+
+    @Indexed
+    private String contentHash;
+
+    private String promptVersion;
+
+    private String model;
+
+    private AnalysisResult result;
+
+    @Indexed(expireAfter = "30d")
+    private Instant createdAt;
+
+    public AnalysisCacheEntry() {
+        this.createdAt = Instant.now();
+    }
+
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+
+    public String getContentHash() { return contentHash; }
+    public void setContentHash(String contentHash) { this.contentHash = contentHash; }
+
+    public String getPromptVersion() { return promptVersion; }
+    public void setPromptVersion(String promptVersion) { this.promptVersion = promptVersion; }
+
+    public String getModel() { return model; }
+    public void setModel(String model) { this.model = model; }
+
+    public AnalysisResult getResult() { return result; }
+    public void setResult(AnalysisResult result) { this.result = result; }
+
+    public Instant getCreatedAt() { return createdAt; }
+    public void setCreatedAt(Instant createdAt) { this.createdAt = createdAt; }
+}
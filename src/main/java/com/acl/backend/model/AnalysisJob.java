@@ -0,0 +1,133 @@
+package com.acl.backend.model;
+
+import java.time.Instant;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * Análisis asíncrono de un contrato subido (POST /api/contracts/upload?async=true).
+ *
+ * Los workers de cualquier instancia toman el job con un lease (leaseOwner/leaseUntil):
+ * si la instancia cae, el lease vence y otra lo vuelve a tomar. El archivo se guarda en el
+ * job hasta terminar para poder reintentar la extracción.
+ */
+@Document(collection = "analysis_jobs")
+public class AnalysisJob {
+
+    public enum Status { QUEUED, RUNNING, DONE, FAILED }
+
+    @Id
+    private String id;
+
+    @Indexed
+    private Long userId;
+
+    // Carga masiva a la que pertenece (null en subidas individuales)
+    @Indexed
+    private String batchId;
+
+    @Indexed
+    private Status status = Status.QUEUED;
+
+    // queued | extracting | analyzing | saved | failed
+    private String stage = "queued";
+    private int chunksDone;
+    private int chunksTotal;
+
+    private String contractName;
+    private String fileName;
+    private byte[] file;
+    // Texto ya extraído (carga masiva): el worker no vuelve a extraer
+    private String text;
+    private String depth;
+
+    // En los jobs de mejora (subida progresiva) viene desde el inicio: el contrato ya existe
+    // con el análisis por reglas y el job solo lo reemplaza por el de la IA
+    @Indexed
+    private String contractId;
+    // El análisis guardado sigue siendo provisional (la IA falló); lo retoma ReanalysisScheduler
+    private boolean provisional;
+    private String error;
+    private int attempts;
+
+    private String leaseOwner;
+    @Indexed
+    private Instant leaseUntil;
+
+    @Indexed
+    private Instant createdAt = Instant.now();
+    private Instant updatedAt = Instant.now();
+
+    // Los jobs terminados se borran después de una semana
+    @Indexed(expireAfter = "7d")
+    private Instant finishedAt;
+
+    public boolean isFinished() {
+        return status == Status.DONE || status == Status.FAILED;
+    }
+
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+
+    public Long getUserId() { return userId; }
+    public void setUserId(Long userId) { this.userId = userId; }
+
+    public Status getStatus() { return status; }
+    public void setStatus(Status status) { this.status = status; }
+
+    public String getStage() { return stage; }
+    public void setStage(String stage) { this.stage = stage; }
+
+    public int getChunksDone() { return chunksDone; }
+    public void setChunksDone(int chunksDone) { this.chunksDone = chunksDone; }
+
+    public int getChunksTotal() { return chunksTotal; }
+    public void setChunksTotal(int chunksTotal) { this.chunksTotal = chunksTotal; }
+
+    public String getContractName() { return contractName; }
+    public void setContractName(String contractName) { this.contractName = contractName; }
+
+    public String getFileName() { return fileName; }
+    public void setFileName(String fileName) { this.fileName = fileName; }
+
+    public byte[] getFile() { return file; }
+    public void setFile(byte[] file) { this.file = file; }
+
+    public String getText() { return text; }
+    public void setText(String text) { this.text = text; }
+
+    public String getBatchId() { return batchId; }
+    public void setBatchId(String batchId) { this.batchId = batchId; }
+
+    public String getDepth() { return depth; }
+    public void setDepth(String depth) { this.depth = depth; }
+
+    public boolean isProvisional() { return provisional; }
+    public void setProvisional(boolean provisional) { this.provisional = provisional; }
+
+    public String getContractId() { return contractId; }
+    public void setContractId(String contractId) { this.contractId = contractId; }
+
+    public String getError() { return error; }
+    public void setError(String error) { this.error = error; }
+
+    public int getAttempts() { return attempts; }
+    public void setAttempts(int attempts) { this.attempts = attempts; }
+
+    public String getLeaseOwner() { return leaseOwner; }
+    public void setLeaseOwner(String leaseOwner) { this.leaseOwner = leaseOwner; }
+
+    public Instant getLeaseUntil() { return leaseUntil; }
+    public void setLeaseUntil(Instant leaseUntil) { this.leaseUntil = leaseUntil; }
+
+    public Instant getCreatedAt() { return createdAt; }
+    public void setCreatedAt(Instant createdAt) { this.createdAt = createdAt; }
+
+    public Instant getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(Instant updatedAt) { this.updatedAt = updatedAt; }
+
+    public Instant getFinishedAt() { return finishedAt; }
+    public void setFinishedAt(Instant finishedAt) { this.finishedAt = finishedAt; }
+}
@@ -25,6 +25,7 @@ public class ChatMessage {
     @Indexed
     private Instant timestamp;
 
+    @Indexed
     private String conversationId;
 
     public ChatMessage() {
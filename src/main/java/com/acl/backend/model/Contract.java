@@ -4,8 +4,11 @@ import java.time.Instant;
 import java.util.List;
 
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
+import com.acl.backend.data.AnalysisData.AnalysisResult;
+
 @Document(collection = "contracts")
 public class Contract {
     @Id
@@ -16,10 +19,26 @@ public class Contract {
     private String content;
 
     private List<String> keyClauses;
+
+    // Cláusulas segmentadas al subir el contrato (índice para preguntas y respuestas)
+    private List<ContractClause> clauses;
     private List<String> risks;
 
     private double riskScore;
 
+    // Resultado completo del análisis (incluye resumen y recomendaciones)
+    private AnalysisResult analysis;
+    private Integer analysisVersion;
+    private Instant analyzedAt;
+
+    // Analizado con el fallback por reglas; pendiente de análisis con IA
+    @Indexed
+    private boolean pendingReanalysis;
+
+    // Reintentos fallidos del re-análisis en segundo plano y cuándo toca el próximo (backoff)
+    private int reanalysisAttempts;
+    private Instant nextReanalysisAt;
+
     private Instant uploadedAt = Instant.now();
 
     private Long userId;
@@ -59,6 +78,13 @@ public class Contract {
         this.keyClauses = keyClauses;
     }
 
+    public List<ContractClause> getClauses() {
+        return clauses;
+    }
+    public void setClauses(List<ContractClause> clauses) {
+        this.clauses = clauses;
+    }
+
     public List<String> getRisks() {
         return risks;
     }
@@ -73,6 +99,48 @@ public class Contract {
         this.riskScore = riskScore;
     }
 
+    public AnalysisResult getAnalysis() {
+        return analysis;
+    }
+    public void setAnalysis(AnalysisResult analysis) {
+        this.analysis = analysis;
+    }
+
+    public Integer getAnalysisVersion() {
+        return analysisVersion;
+    }
+    public void setAnalysisVersion(Integer analysisVersion) {
+        this.analysisVersion = analysisVersion;
+    }
+
+    public Instant getAnalyzedAt() {
+        return analyzedAt;
+    }
+    public void setAnalyzedAt(Instant analyzedAt) {
+        this.analyzedAt = analyzedAt;
+    }
+
+    public boolean isPendingReanalysis() {
+        return pendingReanalysis;
+    }
+    public void setPendingReanalysis(boolean pendingReanalysis) {
+        this.pendingReanalysis = pendingReanalysis;
+    }
+
+    public int getReanalysisAttempts() {
+        return reanalysisAttempts;
+    }
+    public void setReanalysisAttempts(int reanalysisAttempts) {
+        this.reanalysisAttempts = reanalysisAttempts;
+    }
+
+    public Instant getNextReanalysisAt() {
+        return nextReanalysisAt;
+    }
+    public void setNextReanalysisAt(Instant nextReanalysisAt) {
+        this.nextReanalysisAt = nextReanalysisAt;
+    }
+
     public Instant getUploadedAt() {
         return uploadedAt;
     }
@@ -0,0 +1,57 @@
+package com.acl.backend.model;
+
+/**
+ * Cláusula del contrato segmentada al subirlo. Guarda solo los límites (start/end)
+ * dentro de Contract.content para no duplicar el texto en Mongo.
+ */
+public class ContractClause {
+
+    private int index;
+    private String heading;
+    private int start;
+    private int end;
+
+    public ContractClause() {
+    }
+
+    public ContractClause(int index, String heading, int start, int end) {
+        this.index = index;
+        this.heading = heading;
+        this.start = start;
+        this.end = end;
+    }
+
+    // Texto de la cláusula dentro del contenido del contrato
+    public String textOf(String content) {
+        if (content == null || start < 0 || end > content.length() || start >= end) return "";
+        return content.substring(start, end);
+    }
+
+    public int getIndex() {
+        return index;
+    }
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
+    public String getHeading() {
+        return heading;
+    }
+    public void setHeading(String heading) {
+        this.heading = heading;
+    }
+
+    public int getStart() {
+        return start;
+    }
+    public void setStart(int start) {
+        this.start = start;
+    }
+
+    public int getEnd() {
+        return end;
+    }
+    public void setEnd(int end) {
+        this.end = end;
+    }
+}
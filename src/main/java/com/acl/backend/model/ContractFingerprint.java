@@ -0,0 +1,93 @@
+package com.acl.backend.model;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * Huella MinHash de un contrato analizado con IA (ver NearDuplicateService).
+ *
+ * bands es el índice LSH: el índice multikey de Mongo hace de tabla de cubetas, por usuario
+ * (userId + bands) y global (bands). analysisKey apunta al análisis en analysis_cache; las
+ * cláusulas (hash del texto normalizado y encabezado) permiten enviar a Gemini solo las que
+ * cambian en un contrato casi igual.
+ */
+@Document(collection = "contract_fingerprints")
+@CompoundIndex(name = "user_bands", def = "{'userId': 1, 'bands': 1}")
+public class ContractFingerprint {
+
+    // analysisKey + usuario: el mismo contenido subido por dos usuarios tiene una huella por cada uno
+    @Id
+    private String id;
+
+    private Long userId;
+    private String analysisKey;
+    private String model;
+    private String promptVersion;
+    private List<Integer> signature = new ArrayList<>();
+
+    @Indexed
+    private List<String> bands = new ArrayList<>();
+
+    private List<ClauseHash> clauses = new ArrayList<>();
+
+    // Misma vida que la entrada de cache a la que apunta
+    @Indexed(expireAfter = "30d")
+    private Instant createdAt = Instant.now();
+
+    public ContractFingerprint() {}
+
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+
+    public Long getUserId() { return userId; }
+    public void setUserId(Long userId) { this.userId = userId; }
+
+    public String getAnalysisKey() { return analysisKey; }
+    public void setAnalysisKey(String analysisKey) { this.analysisKey = analysisKey; }
+
+    public String getModel() { return model; }
+    public void setModel(String model) { this.model = model; }
+
+    public String getPromptVersion() { return promptVersion; }
+    public void setPromptVersion(String promptVersion) { this.promptVersion = promptVersion; }
+
+    public List<Integer> getSignature() { return signature; }
+    public void setSignature(List<Integer> signature) { this.signature = signature; }
+
+    public List<String> getBands() { return bands; }
+    public void setBands(List<String> bands) { this.bands = bands; }
+
+    public List<ClauseHash> getClauses() { return clauses; }
+    public void setClauses(List<ClauseHash> clauses) { this.clauses = clauses; }
+
+    public Instant getCreatedAt() { return createdAt; }
+    public void setCreatedAt(Instant createdAt) { this.createdAt = createdAt; }
+
+    /**
+     * Una cláusula del contrato: hash del texto normalizado y encabezado para nombrarla.
+     */
+    public static class ClauseHash {
+
+        private String hash;
+        private String heading;
+
+        public ClauseHash() {}
+
+        public ClauseHash(String hash, String heading) {
+            this.hash = hash;
+            this.heading = heading;
+        }
+
+        public String getHash() { return hash; }
+        public void setHash(String hash) { this.hash = hash; }
+
+        public String getHeading() { return heading; }
+        public void setHeading(String heading) { this.heading = heading; }
+    }
+}
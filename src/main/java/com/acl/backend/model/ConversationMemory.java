@@ -0,0 +1,49 @@
+package com.acl.backend.model;
+
+import java.time.Instant;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * Memoria de una conversación de chat: resumen acumulado de los mensajes antiguos.
+ * Los mensajes recientes se leen de chatMessages; summarizedUntil marca el último
+ * mensaje ya incluido en el resumen.
+ */
+@Document(collection = "conversation_memory")
+public class ConversationMemory {
+
+    // Mismo id que la conversación (ChatMessage.conversationId)
+    @Id
+    private String id;
+
+    private String summary;
+
+    private Instant summarizedUntil;
+
+    private int summarizedMessages;
+
+    private Instant updatedAt;
+
+    public ConversationMemory() {
+    }
+
+    public ConversationMemory(String id) {
+        this.id = id;
+    }
+
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+
+    public String getSummary() { return summary; }
+    public void setSummary(String summary) { this.summary = summary; }
+
+    public Instant getSummarizedUntil() { return summarizedUntil; }
+    public void setSummarizedUntil(Instant summarizedUntil) { this.summarizedUntil = summarizedUntil; }
+
+    public int getSummarizedMessages() { return summarizedMessages; }
+    public void setSummarizedMessages(int summarizedMessages) { this.summarizedMessages = summarizedMessages; }
+
+    public Instant getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(Instant updatedAt) { this.updatedAt = updatedAt; }
+}
@@ -0,0 +1,82 @@
+package com.acl.backend.model;
+
+import java.time.Instant;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * Consumo de tokens agregado por día, usuario, operación y nivel de modelo.
+ * Un documento por combinación; cada llamada a Gemini lo actualiza con $inc.
+ */
+@Document(collection = "token_usage")
+@CompoundIndex(name = "user_day", def = "{'userId': 1, 'day': 1}")
+public class TokenUsageBucket {
+
+    // Clave: día (UTC) + usuario + operación + nivel de modelo
+    @Id
+    private String id;
+
+    @Indexed
+    private String day;
+
+    private Long userId;
+
+    private String operation;
+
+    // Nivel de modelo (lite | standard | deep); null en documentos anteriores al enrutamiento
+    private String tier;
+
+    private long calls;
+
+    private long errors;
+
+    private long promptTokens;
+
+    private long candidateTokens;
+
+    private long totalTokens;
+
+    private long latencyMs;
+
+    @Indexed(expireAfter = "400d")
+    private Instant bucketStart;
+
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+
+    public String getDay() { return day; }
+    public void setDay(String day) { this.day = day; }
+
+    public Long getUserId() { return userId; }
+    public void setUserId(Long userId) { this.userId = userId; }
+
+    public String getOperation() { return operation; }
+    public void setOperation(String operation) { this.operation = operation; }
+
+    public String getTier() { return tier; }
+    public void setTier(String tier) { this.tier = tier; }
+
+    public long getCalls() { return calls; }
+    public void setCalls(long calls) { this.calls = calls; }
+
+    public long getErrors() { return errors; }
+    public void setErrors(long errors) { this.errors = errors; }
+
+    public long getPromptTokens() { return promptTokens; }
+    public void setPromptTokens(long promptTokens) { this.promptTokens = promptTokens; }
+
+    public long getCandidateTokens() { return candidateTokens; }
+    public void setCandidateTokens(long candidateTokens) { this.candidateTokens = candidateTokens; }
+
+    public long getTotalTokens() { return totalTokens; }
+    public void setTotalTokens(long totalTokens) { this.totalTokens = totalTokens; }
+
+    public long getLatencyMs() { return latencyMs; }
+    public void setLatencyMs(long latencyMs) { this.latencyMs = latencyMs; }
+
+    public Instant getBucketStart() { return bucketStart; }
+    public void setBucketStart(Instant bucketStart) { this.bucketStart = bucketStart; }
+}
@@ -0,0 +1,8 @@
+package com.acl.backend.repository;
+
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+import com.acl.backend.model.AnalysisCacheEntry;
+
+public interface AnalysisCacheRepository extends MongoRepository<AnalysisCacheEntry, String> {
+}
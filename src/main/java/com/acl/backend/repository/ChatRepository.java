@@ -3,6 +3,7 @@ package com.acl.backend.repository;
 import java.time.Instant;
 import java.util.List;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.mongodb.repository.MongoRepository;
 
 import com.acl.backend.model.ChatMessage;
@@ -17,6 +18,13 @@ public interface ChatRepository extends MongoRepository<ChatMessage, String> {
 
     List<ChatMessage> findByUserIdAndTimestampAfterOrderByTimestampDesc(Long userId, Instant after);
 
+    // Mensajes de una conversación entre dos instantes (exclusivos), del más reciente al más antiguo
+    List<ChatMessage> findByConversationIdAndTimestampBetweenOrderByTimestampDesc(
+            String conversationId, Instant from, Instant to, Pageable pageable);
+
+    List<ChatMessage> findByConversationIdAndTimestampAfterOrderByTimestampAsc(
+            String conversationId, Instant after, Pageable pageable);
+
     void deleteByContractId(String contractId);
     void deleteByUserId(Long userId);
     Long countByContractId(String contractId);
@@ -1,11 +1,20 @@
 package com.acl.backend.repository;
 
+import java.time.Instant;
 import java.util.List;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
 
 import com.acl.backend.model.Contract;
 
 public interface ContractRepository extends MongoRepository<Contract, String> {
     List<Contract> findByUserId(Long userId);
+
+    // Pendientes de re-análisis con reintentos disponibles y cuyo backoff ya venció; primero los nunca reintentados
+    @Query(value = "{ 'pendingReanalysis': true, 'uploadedAt': { $lt: ?0 }, 'reanalysisAttempts': { $not: { $gte: ?1 } },"
+            + " $or: [ { 'nextReanalysisAt': null }, { 'nextReanalysisAt': { $lte: ?2 } } ] }",
+            sort = "{ 'nextReanalysisAt': 1, 'uploadedAt': 1 }")
+    List<Contract> findPendingReanalysis(Instant uploadedBefore, int maxAttempts, Instant now, Pageable page);
 }
@@ -0,0 +1,8 @@
+package com.acl.backend.repository;
+
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+import com.acl.backend.model.ConversationMemory;
+
+public interface ConversationMemoryRepository extends MongoRepository<ConversationMemory, String> {
+}
@@ -0,0 +1,13 @@
+package com.acl.backend.repository;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+import com.acl.backend.model.TokenUsageBucket;
+
+public interface TokenUsageRepository extends MongoRepository<TokenUsageBucket, String> {
+    List<TokenUsageBucket> findByUserIdAndDay(Long userId, String day);
+    List<TokenUsageBucket> findByDayIn(Collection<String> days);
+}
@@ -1,17 +1,30 @@
 package com.acl.backend.service;
 
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import com.acl.backend.data.AnalysisData.AnalysisResult;
+import com.acl.backend.data.AnalysisData.EstimateResponse;
+import com.acl.backend.data.AnalysisData.KeyDate;
+import com.acl.backend.exception.QuotaExceededException;
+import com.acl.backend.service.ClauseRetrievalService.RetrievedClause;
 import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
 /**
  * Servicio principal que orquesta el análisis de contratos usando IA
  */
@@ -19,15 +32,40 @@ import com.google.gson.JsonParser;
 public class AIAnalysisService {
 
     private static final Logger log = LoggerFactory.getLogger(AIAnalysisService.class);
-    private static final int MAX_CONTRACT_LENGTH = 30000; // ~20 páginas
+    private static final int MAX_CONTRACT_TOKENS = 8000; // ~20 páginas (~30000 caracteres en español)
+    public static final String FALLBACK_TYPE = "Error en análisis";
 
     private final GeminiService geminiService;
     private final PromptService promptService;
+    private final ContractChunkingService chunkingService;
+    private final TokenEstimator tokenEstimator;
+    private final GeminiContextCacheService contextCacheService;
+    private final SemanticAnswerCache semanticAnswerCache;
     private final Gson gson;
 
-    public AIAnalysisService(GeminiService geminiService, PromptService promptService) {
+    @Value("${analysis.chunking.enabled:true}")
+    private boolean chunkingEnabled;
+
+    @Value("${analysis.chunking.max-concurrency:4}")
+    private int chunkConcurrency;
+
+    @Value("${analysis.chunking.max-chunks:20}")
+    private int maxChunks;
+
+    // Modo JSON con responseSchema; desactivarlo vuelve al texto libre con limpieza de markdown
+    @Value("${analysis.structured-output.enabled:true}")
+    private boolean structuredOutput;
+
+    public AIAnalysisService(GeminiService geminiService, PromptService promptService,
+                             ContractChunkingService chunkingService, TokenEstimator tokenEstimator,
+                             GeminiContextCacheService contextCacheService,
+                             SemanticAnswerCache semanticAnswerCache) {
         this.geminiService = geminiService;
         this.promptService = promptService;
+        this.chunkingService = chunkingService;
+        this.tokenEstimator = tokenEstimator;
+        this.contextCacheService = contextCacheService;
+        this.semanticAnswerCache = semanticAnswerCache;
         this.gson = new Gson();
     }
 
@@ -35,107 +73,340 @@ public class AIAnalysisService {
      * Analiza un contrato completo con IA
      */
     public AnalysisResult analyzeContract(String contractText) {
-        try {
-            log.info("Iniciando análisis de contrato ({} caracteres)", contractText.length());
+        return analyzeContractAsync(contractText).block();
+    }
 
-            // Validar longitud
-            if (contractText.length() > MAX_CONTRACT_LENGTH) {
-                log.warn("Contrato muy largo, truncando...");
-                contractText = contractText.substring(0, MAX_CONTRACT_LENGTH) +
-                        "\n\n[NOTA: Contrato truncado por límite de tamaño]";
+    /**
+     * Analiza un contrato completo con IA sin bloquear el hilo que llama
+     */
+    public Mono<AnalysisResult> analyzeContractAsync(String contractText) {
+        // depth=quick: una sola llamada con el modelo ligero, sin análisis por bloques
+        return Mono.deferContextual(ctx -> {
+            boolean quick = UsageContext.depth(ctx) == AnalysisDepth.QUICK;
+            if (!quick && chunkingEnabled && tokenEstimator.estimateTokens(contractText) > MAX_CONTRACT_TOKENS) {
+                return analyzeInChunks(contractText);
             }
+            return analyzeSingle(contractText);
+        });
+    }
 
-            // Construir prompt y llamar a Gemini
-            String prompt = promptService.buildAnalysisPrompt(contractText);
-            String jsonResponse = geminiService.generateContent(prompt);
-
-            jsonResponse = cleanJsonResponse(jsonResponse);
-
-            // Parsear JSON a objeto
-            AnalysisResult result = parseAnalysisResult(jsonResponse);
+    private Mono<AnalysisResult> analyzeSingle(String contractText) {
+        return Mono.deferContextual(ctx -> {
+                    log.info("Iniciando análisis de contrato ({} caracteres)", contractText.length());
+                    AnalysisProgress progress = AnalysisProgress.from(ctx);
+                    progress.onChunks(0, 1);
+
+                    // Validar longitud
+                    String text = geminiService.truncateIfNeeded(contractText, MAX_CONTRACT_TOKENS);
+
+                    // Una sola llamada devuelve tipo, base legal, cláusulas, riesgos, puntaje, resumen y fechas
+                    return generateAnalysis(promptService.buildAnalysisPrompt(text))
+                            .doOnNext(result -> progress.onChunks(1, 1));
+                })
+                .doOnNext(result -> log.info("Análisis completado exitosamente"))
+                // El error se propaga: NLPAnalysisService decide el fallback (no se persiste un puntaje ficticio)
+                .doOnError(e -> log.error("Error en análisis de contrato: {}", e.getMessage()))
+                .contextWrite(UsageContext.operation(UsageContext.ANALYSIS));
+    }
 
-            log.info("Análisis completado exitosamente");
-            return result;
+    /**
+     * Análisis map-reduce para contratos que superan MAX_CONTRACT_TOKENS.
+     * Map: cada bloque (cortado en límites de cláusulas) se analiza en paralelo con concurrencia acotada.
+     * Reduce: se combinan cláusulas, riesgos y recomendaciones, y se pondera el puntaje por tamaño del bloque.
+     */
+    private Mono<AnalysisResult> analyzeInChunks(String contractText) {
+        return Mono.deferContextual(ctx -> {
+                    // El chunker corta por caracteres: se usa la relación caracteres/token de este documento
+                    List<String> chunks = chunkingService.chunk(contractText,
+                            tokenEstimator.charsForTokens(contractText, MAX_CONTRACT_TOKENS));
+                    boolean truncated = chunks.size() > maxChunks;
+                    if (truncated) {
+                        log.warn("Contrato con {} bloques, se analizan solo los primeros {}", chunks.size(), maxChunks);
+                        chunks = chunks.subList(0, maxChunks);
+                    }
+
+                    int total = chunks.size();
+                    log.info("Análisis por bloques: {} caracteres en {} bloques", contractText.length(), total);
+
+                    // Progreso por bloque terminado (en el orden en que terminan)
+                    AnalysisProgress progress = AnalysisProgress.from(ctx);
+                    AtomicInteger done = new AtomicInteger();
+                    progress.onChunks(0, total);
+
+                    List<String> parts = chunks;
+                    return Flux.range(0, total)
+                            .flatMapSequential(i -> analyzeChunk(parts.get(i), i + 1, total)
+                                    .doOnNext(r -> progress.onChunks(done.incrementAndGet(), total)), chunkConcurrency)
+                            .collectList()
+                            .map(results -> mergeChunkResults(results, parts, truncated));
+                })
+                .doOnError(e -> log.error("Error en análisis por bloques: {}", e.getMessage()))
+                .contextWrite(UsageContext.operation(UsageContext.ANALYSIS));
+    }
 
-        } catch (Exception e) {
-            log.error("Error en análisis de contrato: {}", e.getMessage(), e);
-            return createFallbackAnalysis(e.getMessage());
+    /**
+     * Análisis de un contrato casi igual a uno ya analizado (ver NearDuplicateService): a Gemini
+     * van el análisis previo y solo las cláusulas que cambian. Si no cambia ninguna cláusula
+     * (solo espacios o el orden) se devuelve una copia del análisis previo sin llamar a la IA.
+     * Si el análisis previo es de otro usuario (otherOwner) no se le envían su resumen ni sus
+     * fechas clave, que describen a ese contrato: Gemini los genera de nuevo.
+     */
+    public Mono<AnalysisResult> analyzeChangesAsync(AnalysisResult previous, List<String> changedClauses,
+                                                    List<String> removedHeadings, boolean otherOwner) {
+        if (changedClauses.isEmpty() && removedHeadings.isEmpty()) {
+            AnalysisResult copy = gson.fromJson(gson.toJson(previous), AnalysisResult.class);
+            copy.setProvisional(false);
+            return Mono.just(copy);
         }
+        return Mono.deferContextual(ctx -> {
+                    log.info("Actualizando análisis previo con {} cláusulas modificadas y {} eliminadas",
+                            changedClauses.size(), removedHeadings.size());
+                    AnalysisProgress progress = AnalysisProgress.from(ctx);
+                    progress.onChunks(0, 1);
+
+                    JsonObject previousJson = gson.toJsonTree(previous).getAsJsonObject();
+                    previousJson.remove("provisional");
+                    if (otherOwner) {
+                        previousJson.remove("summary");
+                        previousJson.remove("keyDates");
+                    }
+                    String changed = geminiService.truncateIfNeeded(String.join("\n\n", changedClauses), MAX_CONTRACT_TOKENS);
+
+                    return generateAnalysis(promptService.buildChangedClausesPrompt(previousJson.toString(), changed,
+                                    removedHeadings, otherOwner))
+                            .doOnNext(result -> progress.onChunks(1, 1));
+                })
+                .doOnError(e -> log.error("Error actualizando análisis previo: {}", e.getMessage()))
+                .contextWrite(UsageContext.operation(UsageContext.ANALYSIS));
     }
 
     /**
-     * Responde preguntas sobre un contrato específico
+     * Estima tokens y latencia del análisis sin llamar a la IA. Sigue el mismo camino que
+     * analyzeContractAsync: una llamada, o un bloque por llamada con concurrencia acotada.
      */
-    public List<String> answerQuestion(String contractText, String question) {
-        try {
-            log.info("Respondiendo pregunta: {}", question);
+    public EstimateResponse estimateAnalysis(String contractText) {
+        String op = UsageContext.ANALYSIS;
+        int outputPerCall = tokenEstimator.expectedOutputTokens(op);
+
+        List<String> prompts = new ArrayList<>();
+        if (chunkingEnabled && tokenEstimator.estimateTokens(contractText) > MAX_CONTRACT_TOKENS) {
+            List<String> chunks = chunkingService.chunk(contractText,
+                    tokenEstimator.charsForTokens(contractText, MAX_CONTRACT_TOKENS));
+            int total = Math.min(chunks.size(), maxChunks);
+            for (int i = 0; i < total; i++) {
+                prompts.add(promptService.buildChunkAnalysisPrompt(chunks.get(i), i + 1, total));
+            }
+        } else {
+            String text = tokenEstimator.truncateToTokens(contractText, MAX_CONTRACT_TOKENS);
+            prompts.add(promptService.buildAnalysisPrompt(text));
+        }
 
-            contractText = geminiService.truncateIfNeeded(contractText, MAX_CONTRACT_LENGTH);
+        int inputTokens = 0;
+        long slowestCall = 0;
+        for (String prompt : prompts) {
+            int tokens = tokenEstimator.estimateTokens(prompt);
+            inputTokens += tokens;
+            slowestCall = Math.max(slowestCall, tokenEstimator.expectedLatencyMs(op, tokens, outputPerCall));
+        }
+        // Los bloques se procesan en tandas de chunkConcurrency llamadas
+        int waves = (prompts.size() + chunkConcurrency - 1) / chunkConcurrency;
+
+        EstimateResponse estimate = new EstimateResponse();
+        estimate.setCharacters(contractText.length());
+        estimate.setInputTokens(inputTokens);
+        estimate.setOutputTokens(outputPerCall * prompts.size());
+        estimate.setChunks(prompts.size());
+        estimate.setLatencyMs(slowestCall * waves);
+        return estimate;
+    }
 
-            String prompt = promptService.buildQuestionPrompt(contractText, question);
-            String jsonResponse = geminiService.generateContent(prompt);
-            jsonResponse = cleanJsonResponse(jsonResponse);
+    private Mono<AnalysisResult> analyzeChunk(String chunk, int index, int total) {
+        return Mono.defer(() -> generateAnalysis(promptService.buildChunkAnalysisPrompt(chunk, index, total)))
+                .onErrorResume(e -> {
+                    log.warn("Error analizando bloque {}/{}: {}", index, total, e.getMessage());
+                    return Mono.just(createFallbackAnalysis(e.getMessage()));
+                });
+    }
 
-            // Parsear respuesta
-            JsonObject json = JsonParser.parseString(jsonResponse).getAsJsonObject();
+    private AnalysisResult mergeChunkResults(List<AnalysisResult> results, List<String> chunks, boolean truncated) {
+        Set<String> clauses = new LinkedHashSet<>();
+        Set<String> risks = new LinkedHashSet<>();
+        Set<String> recommendations = new LinkedHashSet<>();
+        Set<String> legalBasis = new LinkedHashSet<>();
+        Set<String> dateKeys = new LinkedHashSet<>();
+        List<KeyDate> keyDates = new ArrayList<>();
+        List<String> summaries = new ArrayList<>();
+        String type = null;
+        double weightedScore = 0;
+        long analyzedChars = 0;
+        int failed = 0;
+
+        for (int i = 0; i < results.size(); i++) {
+            AnalysisResult r = results.get(i);
+            if (FALLBACK_TYPE.equals(r.getType())) {
+                failed++;
+                risks.add("No se pudo analizar la parte " + (i + 1) + " del contrato. Revísela manualmente.");
+                continue;
+            }
+            // El tipo lo define la primera parte que lo identifique (normalmente el encabezado)
+            if (type == null && r.getType() != null && !r.getType().equalsIgnoreCase("Indeterminado")) {
+                type = r.getType();
+            }
+            addAllNormalized(clauses, r.getKeyClauses());
+            addAllNormalized(risks, r.getRisks());
+            addAllNormalized(recommendations, r.getRecommendations());
+            addAllNormalized(legalBasis, r.getLegalBasis());
+            if (r.getKeyDates() != null) {
+                for (KeyDate date : r.getKeyDates()) {
+                    if (date.getValue() != null && dateKeys.add((date.getType() + "|" + date.getValue()).toLowerCase())) {
+                        keyDates.add(date);
+                    }
+                }
+            }
+            if (r.getSummary() != null && !r.getSummary().isBlank()) {
+                summaries.add(r.getSummary().trim());
+            }
 
-            List<String> answers = new ArrayList<>();
-            answers.add(json.get("answer").getAsString());
+            int weight = chunks.get(i).length();
+            weightedScore += r.getRiskScore() * weight;
+            analyzedChars += weight;
+        }
 
-            // Agregar referencias si existen
-            if (json.has("references") && json.get("references").isJsonArray()) {
-                json.getAsJsonArray("references").forEach(ref ->
-                        answers.add("Referencia: " + ref.getAsString())
-                );
-            }
+        if (failed == results.size()) {
+            throw new RuntimeException("No se pudo analizar ninguna parte del contrato");
+        }
+        if (truncated) {
+            risks.add("El contrato excede el número máximo de partes analizables; las últimas secciones no se analizaron.");
+        }
 
-            return answers;
+        AnalysisResult merged = new AnalysisResult();
+        merged.setType(type != null ? type : "General");
+        merged.setKeyClauses(new ArrayList<>(clauses));
+        merged.setRisks(new ArrayList<>(risks));
+        merged.setRecommendations(new ArrayList<>(recommendations));
+        merged.setLegalBasis(new ArrayList<>(legalBasis));
+        merged.setKeyDates(keyDates);
+        merged.setRiskScore(weightedScore / analyzedChars);
+        merged.setSummary(String.join(" ", summaries));
+        // Si faltó alguna parte, el resultado queda pendiente de re-análisis
+        merged.setProvisional(failed > 0);
+        return merged;
+    }
 
-        } catch (Exception e) {
-            log.error("Error respondiendo pregunta: {}", e.getMessage());
-            return List.of("Lo siento, no pude procesar tu pregunta. Error: " + e.getMessage());
+    // Agrega elementos evitando duplicados que solo difieren en mayúsculas o espacios
+    private void addAllNormalized(Set<String> target, List<String> items) {
+        if (items == null) return;
+        for (String item : items) {
+            if (item == null || item.isBlank()) continue;
+            String key = item.trim().replaceAll("\\s+", " ");
+            boolean duplicate = target.stream().anyMatch(existing -> existing.equalsIgnoreCase(key));
+            if (!duplicate) target.add(key);
         }
     }
 
     /**
-     * Genera un resumen ejecutivo del contrato
+     * Responde preguntas sobre un contrato específico
      */
-    public String generateSummary(String contractText) {
-        try {
-            contractText = geminiService.truncateIfNeeded(contractText, MAX_CONTRACT_LENGTH);
+    public List<String> answerQuestion(String contractText, String question) {
+        return answerQuestionAsync(contractText, question).block();
+    }
 
-            String prompt = promptService.buildSummaryPrompt(contractText);
-            String jsonResponse = geminiService.generateContent(prompt);
-            jsonResponse = cleanJsonResponse(jsonResponse);
+    public Mono<List<String>> answerQuestionAsync(String contractText, String question) {
+        return answerQuestionAsync(contractText, question, null);
+    }
 
-            JsonObject json = JsonParser.parseString(jsonResponse).getAsJsonObject();
-            return json.get("summary").getAsString();
+    // history: memoria de la conversación (ConversationMemoryService), null si no hay
+    public Mono<List<String>> answerQuestionAsync(String contractText, String question, String history) {
+        return Mono.defer(() -> {
+                    log.info("Respondiendo pregunta: {}", question);
+
+                    String text = geminiService.truncateIfNeeded(contractText, MAX_CONTRACT_TOKENS);
+
+                    // El contrato se cachea en Gemini en la primera pregunta; las siguientes envían solo la pregunta
+                    return contextCacheService.generate(promptService.buildContractContext(text),
+                            promptService.buildQuestionInstructions(question, history));
+                })
+                .map(this::toAnswers)
+                // La cuota agotada se propaga para responder 429
+                .onErrorResume(e -> !(e instanceof QuotaExceededException), e -> {
+                    log.error("Error respondiendo pregunta: {}", e.getMessage());
+                    return Mono.just(List.of("Lo siento, no pude procesar tu pregunta. Error: " + e.getMessage()));
+                })
+                .contextWrite(UsageContext.operation(UsageContext.QA));
+    }
 
-        } catch (Exception e) {
-            log.error("Error generando resumen: {}", e.getMessage());
-            return "No se pudo generar el resumen.";
+    /**
+     * Responde una pregunta con solo las cláusulas recuperadas del contrato.
+     * El prompt cambia con cada pregunta, así que no usa el contexto cacheado.
+     */
+    public Mono<List<String>> answerFromClausesAsync(List<RetrievedClause> clauses, String question, String history) {
+        return Mono.defer(() -> {
+                    log.info("Respondiendo pregunta con {} cláusulas: {}", clauses.size(), question);
+                    return geminiService.generateContentAsync(promptService.buildRetrievedQuestionPrompt(clauses, question, history));
+                })
+                .map(this::toAnswers)
+                .onErrorResume(e -> !(e instanceof QuotaExceededException), e -> {
+                    log.error("Error respondiendo pregunta: {}", e.getMessage());
+                    return Mono.just(List.of("Lo siento, no pude procesar tu pregunta. Error: " + e.getMessage()));
+                })
+                .contextWrite(UsageContext.operation(UsageContext.QA));
+    }
+
+    // Decodifica la respuesta JSON de una pregunta: respuesta seguida de sus referencias
+    private List<String> toAnswers(String response) {
+        QuestionAnswer qa = gson.fromJson(cleanJsonResponse(response), QuestionAnswer.class);
+        if (qa == null || qa.answer == null) {
+            throw new IllegalArgumentException("Respuesta sin campo answer");
         }
+
+        List<String> answers = new ArrayList<>();
+        answers.add(qa.answer);
+
+        // Agregar referencias si existen
+        if (qa.references != null) {
+            qa.references.forEach(ref -> answers.add("Referencia: " + ref));
+        }
+
+        return answers;
     }
 
     /**
-     * Detecta el tipo de contrato
+     * Responde preguntas sobre un contrato en streaming (texto plano por fragmentos)
      */
-    public String detectContractType(String contractText) {
-        try {
-            // Para tipo solo necesitamos el inicio del contrato
-            String snippet = contractText.substring(0, Math.min(5000, contractText.length()));
+    public Flux<String> streamAnswerQuestion(String contractText, String question) {
+        return streamAnswerQuestion(contractText, question, null);
+    }
 
-            String prompt = promptService.buildTypeDetectionPrompt(snippet);
-            String jsonResponse = geminiService.generateContent(prompt);
-            jsonResponse = cleanJsonResponse(jsonResponse);
+    public Flux<String> streamAnswerQuestion(String contractText, String question, String history) {
+        return Flux.defer(() -> {
+                    log.info("Respondiendo pregunta en streaming: {}", question);
 
-            JsonObject json = JsonParser.parseString(jsonResponse).getAsJsonObject();
-            return json.get("type").getAsString();
+                    String text = geminiService.truncateIfNeeded(contractText, MAX_CONTRACT_TOKENS);
 
-        } catch (Exception e) {
-            log.error("Error detectando tipo: {}", e.getMessage());
-            return "General";
-        }
+                    return contextCacheService.stream(promptService.buildContractContext(text),
+                            promptService.buildStreamingQuestionInstructions(question, history));
+                })
+                .onErrorResume(e -> !(e instanceof QuotaExceededException), e -> {
+                    log.error("Error respondiendo pregunta en streaming: {}", e.getMessage());
+                    return Flux.just("Lo siento, no pude procesar tu pregunta. Error: " + e.getMessage());
+                })
+                .contextWrite(UsageContext.operation(UsageContext.QA));
+    }
+
+    /**
+     * Igual que answerFromClausesAsync, en streaming (texto plano por fragmentos)
+     */
+    public Flux<String> streamAnswerFromClauses(List<RetrievedClause> clauses, String question, String history) {
+        return Flux.defer(() -> {
+                    log.info("Respondiendo pregunta en streaming con {} cláusulas: {}", clauses.size(), question);
+                    return geminiService.generateContentStream(
+                            promptService.buildStreamingRetrievedQuestionPrompt(clauses, question, history));
+                })
+                .onErrorResume(e -> !(e instanceof QuotaExceededException), e -> {
+                    log.error("Error respondiendo pregunta en streaming: {}", e.getMessage());
+                    return Flux.just("Lo siento, no pude procesar tu pregunta. Error: " + e.getMessage());
+                })
+                .contextWrite(UsageContext.operation(UsageContext.QA));
     }
 
     /**
@@ -143,8 +414,8 @@ public class AIAnalysisService {
      */
     public JsonObject compareContracts(String contract1, String contract2) {
         try {
-            contract1 = geminiService.truncateIfNeeded(contract1, MAX_CONTRACT_LENGTH / 2);
-            contract2 = geminiService.truncateIfNeeded(contract2, MAX_CONTRACT_LENGTH / 2);
+            contract1 = geminiService.truncateIfNeeded(contract1, MAX_CONTRACT_TOKENS / 2);
+            contract2 = geminiService.truncateIfNeeded(contract2, MAX_CONTRACT_TOKENS / 2);
 
             String prompt = promptService.buildComparisonPrompt(contract1, contract2);
             String jsonResponse = geminiService.generateContent(prompt);
@@ -158,6 +429,24 @@ public class AIAnalysisService {
         }
     }
 
+    /**
+     * Análisis decodificado directo a AnalysisResult: con responseSchema Gemini devuelve JSON válido
+     * con la forma esperada. Sin modo estructurado se pide texto libre y se limpia el markdown.
+     */
+    private Mono<AnalysisResult> generateAnalysis(String prompt) {
+        Mono<AnalysisResult> result = structuredOutput
+                ? geminiService.generateStructuredAsync(prompt, PromptService.ANALYSIS_SCHEMA, AnalysisResult.class)
+                : geminiService.generateContentAsync(prompt)
+                        .map(this::cleanJsonResponse)
+                        .map(json -> gson.fromJson(json, AnalysisResult.class));
+        return result
+                .map(this::validateAnalysis)
+                .onErrorMap(JsonParseException.class, e -> {
+                    log.error("Error parseando JSON: {}", e.getMessage());
+                    return new RuntimeException("Error procesando respuesta de IA", e);
+                });
+    }
+
     /**
      * Limpia la respuesta JSON que a veces viene con markdown
      */
@@ -177,36 +466,20 @@ public class AIAnalysisService {
     }
 
     /**
-     * Parsea el JSON de análisis a objeto AnalysisResult
+     * Verifica los campos obligatorios del análisis decodificado.
+     * legalBasis y keyDates son opcionales.
      */
-    private AnalysisResult parseAnalysisResult(String jsonResponse) {
-        try {
-            JsonObject json = JsonParser.parseString(jsonResponse).getAsJsonObject();
-
-            AnalysisResult result = new AnalysisResult();
-            result.setType(json.get("type").getAsString());
-            result.setSummary(json.get("summary").getAsString());
-            result.setRiskScore(json.get("riskScore").getAsDouble());
-
-            // Parsear arrays
-            List<String> clauses = new ArrayList<>();
-            json.getAsJsonArray("keyClauses").forEach(e -> clauses.add(e.getAsString()));
-            result.setKeyClauses(clauses);
-
-            List<String> risks = new ArrayList<>();
-            json.getAsJsonArray("risks").forEach(e -> risks.add(e.getAsString()));
-            result.setRisks(risks);
-
-            List<String> recommendations = new ArrayList<>();
-            json.getAsJsonArray("recommendations").forEach(e -> recommendations.add(e.getAsString()));
-            result.setRecommendations(recommendations);
-
-            return result;
-
-        } catch (Exception e) {
-            log.error("Error parseando JSON: {}", e.getMessage());
-            throw new RuntimeException("Error procesando respuesta de IA", e);
+    private AnalysisResult validateAnalysis(AnalysisResult result) {
+        if (result == null || result.getType() == null || result.getSummary() == null
+                || result.getKeyClauses() == null || result.getRisks() == null || result.getRecommendations() == null) {
+            log.error("Respuesta de análisis incompleta");
+            throw new RuntimeException("Error procesando respuesta de IA: faltan campos obligatorios");
         }
+        if (result.getLegalBasis() == null) result.setLegalBasis(List.of());
+        if (result.getKeyDates() == null) result.setKeyDates(List.of());
+        // El modelo no decide si el resultado es provisional
+        result.setProvisional(false);
+        return result;
     }
 
     /**
@@ -214,7 +487,7 @@ public class AIAnalysisService {
      */
     private AnalysisResult createFallbackAnalysis(String errorMessage) {
         AnalysisResult result = new AnalysisResult();
-        result.setType("Error en análisis");
+        result.setType(FALLBACK_TYPE);
         result.setSummary("No se pudo completar el análisis automático. " + errorMessage);
         result.setRiskScore(50.0);
         result.setKeyClauses(List.of("No se pudieron detectar cláusulas"));
@@ -227,47 +500,137 @@ public class AIAnalysisService {
         return result;
     }
 
+    // Respuesta JSON de preguntas sobre un contrato (ver PromptService.buildQuestionInstructions)
+    private static class QuestionAnswer {
+        private String answer;
+        private List<String> references;
+    }
+
     // Responde preguntas legales generales (sin contrato específico)
 
     public String answerGeneralLegalQuestion(String question) {
-        try {
-            log.info("Respondiendo pregunta legal general: {}", question);
+        return answerGeneralLegalQuestionAsync(question).block();
+    }
 
-            String prompt = String.format("""
-                Eres un asistente legal experto. Responde la siguiente pregunta legal de manera clara, 
-                precisa y profesional.
+    public Mono<String> answerGeneralLegalQuestionAsync(String question) {
+        return Mono.defer(() -> {
+                    log.info("Respondiendo pregunta legal general: {}", question);
 
-                PREGUNTA:
-                %s
+                    String prompt = String.format("""
+                        Eres un asistente legal experto. Responde la siguiente pregunta legal de manera clara, 
+                        precisa y profesional.
 
-                Proporciona una respuesta educativa y profesional. Si la pregunta requiere asesoría 
-                legal específica para un caso particular, recomienda consultar con un abogado profesional.
+                        PREGUNTA:
+                        %s
 
-                IMPORTANTE: Responde de forma directa en texto plano, SIN formato JSON.
-                """, question);
+                        Proporciona una respuesta educativa y profesional. Si la pregunta requiere asesoría 
+                        legal específica para un caso particular, recomienda consultar con un abogado profesional.
 
-            return geminiService.generateContent(prompt);
+                        IMPORTANTE: Responde de forma directa en texto plano, SIN formato JSON.
+                        """, question);
 
-        } catch (Exception e) {
-            log.error("Error respondiendo pregunta general: {}", e.getMessage());
-            return "Lo siento, no pude procesar tu pregunta en este momento. Por favor, intenta de nuevo o consulta con un profesional legal.";
+                    return geminiService.generateContentAsync(prompt);
+                })
+                .onErrorResume(e -> !(e instanceof QuotaExceededException), e -> {
+                    log.error("Error respondiendo pregunta general: {}", e.getMessage());
+                    return Mono.just("Lo siento, no pude procesar tu pregunta en este momento. Por favor, intenta de nuevo o consulta con un profesional legal.");
+                })
+                .contextWrite(UsageContext.operation(UsageContext.GENERAL_CHAT));
+    }
+
+    /**
+     * Chat legal general con cache semántica: una pregunta igual o casi igual a una ya respondida
+     * recibe la respuesta guardada sin llamar a Gemini. Solo se guardan respuestas exitosas.
+     */
+    public Mono<String> answerGeneralChatAsync(String question, String prompt) {
+        return answerGeneralChatAsync(question, prompt, false);
+    }
+
+    /**
+     * withHistory: el prompt incluye la memoria de la conversación. La respuesta depende
+     * de lo conversado, así que no se busca ni se guarda en la cache semántica.
+     */
+    public Mono<String> answerGeneralChatAsync(String question, String prompt, boolean withHistory) {
+        if (withHistory) {
+            return geminiService.generateContentAsync(prompt)
+                    .onErrorResume(e -> !(e instanceof QuotaExceededException), e -> {
+                        log.error("Error respondiendo chat general: {}", e.getMessage());
+                        return Mono.just("Error al generar contenido con la IA: " + e.getMessage());
+                    });
         }
+        return Mono.defer(() -> {
+                    Optional<String> cached = semanticAnswerCache.lookup(question);
+                    if (cached.isPresent()) {
+                        return Mono.just(cached.get());
+                    }
+                    return geminiService.generateContentAsync(prompt)
+                            .doOnNext(answer -> semanticAnswerCache.put(question, answer));
+                })
+                .onErrorResume(e -> !(e instanceof QuotaExceededException), e -> {
+                    log.error("Error respondiendo chat general: {}", e.getMessage());
+                    return Mono.just("Error al generar contenido con la IA: " + e.getMessage());
+                });
+    }
+
+    // Igual que answerGeneralChatAsync, en streaming; con hit en cache se emite la respuesta completa
+    public Flux<String> streamGeneralChat(String question, String prompt) {
+        return streamGeneralChat(question, prompt, false);
+    }
+
+    public Flux<String> streamGeneralChat(String question, String prompt, boolean withHistory) {
+        if (withHistory) {
+            return geminiService.generateContentStream(prompt)
+                    .onErrorResume(e -> !(e instanceof QuotaExceededException), e -> {
+                        log.error("Error en streaming de chat general: {}", e.getMessage());
+                        return Flux.just("Error al generar contenido con la IA: " + e.getMessage());
+                    });
+        }
+        return Flux.defer(() -> {
+                    Optional<String> cached = semanticAnswerCache.lookup(question);
+                    if (cached.isPresent()) {
+                        return Flux.just(cached.get());
+                    }
+                    StringBuilder full = new StringBuilder();
+                    return geminiService.generateContentStream(prompt)
+                            .doOnNext(full::append)
+                            // Solo si el stream terminó completo (ni error ni cancelación)
+                            .doOnComplete(() -> semanticAnswerCache.put(question, full.toString()));
+                })
+                .onErrorResume(e -> !(e instanceof QuotaExceededException), e -> {
+                    log.error("Error en streaming de chat general: {}", e.getMessage());
+                    return Flux.just("Error al generar contenido con la IA: " + e.getMessage());
+                });
     }
 
     public String generateContent(String prompt) {
-        try {
-            log.info("Generando contenido desde AIAnalysisService (prompt directo).");
+        return generateContentAsync(prompt).block();
+    }
 
-            if (prompt == null || prompt.isBlank()) {
-                return "El prompt no puede estar vacío.";
-            }
+    // Contenido en streaming a partir de un prompt directo
+    public Flux<String> streamContent(String prompt) {
+        if (prompt == null || prompt.isBlank()) {
+            return Flux.just("El prompt no puede estar vacío.");
+        }
+
+        return geminiService.generateContentStream(prompt)
+                .onErrorResume(e -> !(e instanceof QuotaExceededException), e -> {
+                    log.error("Error al generar contenido en streaming: {}", e.getMessage());
+                    return Flux.just("Error al generar contenido con la IA: " + e.getMessage());
+                });
+    }
 
-            // Llama al servicio Gemini directamente
-            return geminiService.generateContent(prompt);
+    public Mono<String> generateContentAsync(String prompt) {
+        log.info("Generando contenido desde AIAnalysisService (prompt directo).");
 
-        } catch (Exception e) {
-            log.error("Error al generar contenido en AIAnalysisService: {}", e.getMessage(), e);
-            return "Error al generar contenido con la IA: " + e.getMessage();
+        if (prompt == null || prompt.isBlank()) {
+            return Mono.just("El prompt no puede estar vacío.");
         }
+
+        // Llama al servicio Gemini directamente
+        return geminiService.generateContentAsync(prompt)
+                .onErrorResume(e -> !(e instanceof QuotaExceededException), e -> {
+                    log.error("Error al generar contenido en AIAnalysisService: {}", e.getMessage(), e);
+                    return Mono.just("Error al generar contenido con la IA: " + e.getMessage());
+                });
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,150 @@
+package com.acl.backend.service;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.acl.backend.data.AnalysisData.AnalysisResult;
+import com.acl.backend.model.AnalysisCacheEntry;
+import com.acl.backend.repository.AnalysisCacheRepository;
+import com.acl.backend.util.HashUtils;
+import com.google.gson.Gson;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Cache de análisis direccionada por contenido.
+ * Nivel 1: LRU acotada en memoria. Nivel 2: colección Mongo compartida entre réplicas.
+ * La clave incluye la versión del prompt y el modelo, así un cambio de prompt invalida las entradas.
+ *
+ * AnalysisResult es mutable y los llamadores lo ajustan (validación, resumen propio, fusión de
+ * bloques): la LRU guarda el JSON y cada lectura devuelve una copia nueva, así ningún llamador
+ * modifica lo que reciben los siguientes.
+ */
+@Service
+public class AnalysisCacheService {
+
+    private static final Logger log = LoggerFactory.getLogger(AnalysisCacheService.class);
+
+    private final AnalysisCacheRepository cacheRepository;
+    private final Map<String, String> localCache;
+    private final Gson gson = new Gson();
+
+    private final Counter localHits;
+    private final Counter sharedHits;
+    private final Counter misses;
+    private final Timer missLatency;
+
+    @Value("${gemini.api.model:gemini-2.5-flash}")
+    private String model;
+
+    public AnalysisCacheService(AnalysisCacheRepository cacheRepository,
+                                MeterRegistry meterRegistry,
+                                @Value("${analysis.cache.max-entries:500}") int maxEntries) {
+        this.cacheRepository = cacheRepository;
+        this.localCache = Collections.synchronizedMap(
+                new LinkedHashMap<>(16, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                        return size() > maxEntries;
+                    }
+                });
+
+        this.localHits = Counter.builder("analysis.cache.requests").tag("result", "hit_local")
+                .description("Análisis servidos desde la cache en memoria").register(meterRegistry);
+        this.sharedHits = Counter.builder("analysis.cache.requests").tag("result", "hit_shared")
+                .description("Análisis servidos desde la cache compartida en Mongo").register(meterRegistry);
+        this.misses = Counter.builder("analysis.cache.requests").tag("result", "miss")
+                .description("Análisis que requirieron llamar a la IA").register(meterRegistry);
+        // Latencia de los fallos: hits x media = tiempo ahorrado
+        this.missLatency = Timer.builder("analysis.cache.miss.latency")
+                .description("Duración del análisis cuando no hubo hit en cache").register(meterRegistry);
+        meterRegistry.gauge("analysis.cache.local.size", localCache, Map::size);
+    }
+
+    public String keyFor(String text) {
+        return keyFor(text, model);
+    }
+
+    // Clave para el análisis hecho con un modelo concreto (ver GeminiModelRouter)
+    public String keyFor(String text, String analysisModel) {
+        return HashUtils.contentHash(text) + ":" + PromptService.PROMPT_VERSION + ":" + analysisModel;
+    }
+
+    public Optional<AnalysisResult> get(String key) {
+        AnalysisResult local = local(key);
+        if (local != null) {
+            localHits.increment();
+            return Optional.of(local);
+        }
+
+        try {
+            Optional<AnalysisCacheEntry> shared = cacheRepository.findById(key);
+            if (shared.isPresent() && shared.get().getResult() != null) {
+                sharedHits.increment();
+                // El documento leído de Mongo ya es una instancia propia de este llamador
+                localCache.put(key, gson.toJson(shared.get().getResult()));
+                return Optional.of(shared.get().getResult());
+            }
+        } catch (Exception e) {
+            log.warn("No se pudo leer la cache compartida de análisis: {}", e.getMessage());
+        }
+
+        misses.increment();
+        return Optional.empty();
+    }
+
+    /**
+     * Entrada de la cache sin contar hit ni miss: la usan la estimación de costo y la reutilización
+     * de análisis de contratos casi iguales (NearDuplicateService), que tiene sus propias métricas.
+     */
+    public Optional<AnalysisResult> peek(String key) {
+        AnalysisResult local = local(key);
+        if (local != null) return Optional.of(local);
+        try {
+            return cacheRepository.findById(key).map(AnalysisCacheEntry::getResult);
+        } catch (Exception e) {
+            log.warn("No se pudo leer la cache compartida de análisis: {}", e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    public void put(String key, String text, AnalysisResult result) {
+        put(key, text, model, result);
+    }
+
+    public void put(String key, String text, String analysisModel, AnalysisResult result) {
+        localCache.put(key, gson.toJson(result));
+
+        AnalysisCacheEntry entry = new AnalysisCacheEntry();
+        entry.setId(key);
+        entry.setContentHash(HashUtils.contentHash(text));
+        entry.setPromptVersion(PromptService.PROMPT_VERSION);
+        entry.setModel(analysisModel);
+        entry.setResult(result);
+        try {
+            cacheRepository.save(entry);
+        } catch (Exception e) {
+            log.warn("No se pudo guardar en la cache compartida de análisis: {}", e.getMessage());
+        }
+    }
+
+    // Copia nueva del análisis guardado en memoria, o null si no está
+    private AnalysisResult local(String key) {
+        String json = localCache.get(key);
+        return json != null ? gson.fromJson(json, AnalysisResult.class) : null;
+    }
+
+    public void recordMissLatency(long millis) {
+        missLatency.record(millis, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,24 @@
+package com.acl.backend.service;
+
+import java.util.Locale;
+
+/**
+ * Profundidad de análisis pedida por el cliente (parámetro depth=quick|standard|deep).
+ * Define el nivel de modelo: quick usa el modelo ligero en una sola llamada,
+ * deep usa el modelo más capaz.
+ */
+public enum AnalysisDepth {
+    QUICK,
+    STANDARD,
+    DEEP;
+
+    // null si el cliente no lo envía (se aplica el enrutamiento por defecto)
+    public static AnalysisDepth parse(String value) {
+        if (value == null || value.isBlank()) return null;
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("depth debe ser quick, standard o deep");
+        }
+    }
+}
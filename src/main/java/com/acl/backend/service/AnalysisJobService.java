@@ -0,0 +1,391 @@
+package com.acl.backend.service;
+
+import java.io.ByteArrayInputStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.acl.backend.data.JobData.JobStatus;
+import com.acl.backend.model.AnalysisJob;
+import com.acl.backend.model.AnalysisJob.Status;
+import com.acl.backend.model.Contract;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Cola de análisis asíncronos respaldada en Mongo (colección analysis_jobs).
+ *
+ * La subida guarda el job y responde 202 de inmediato. Los workers de cada instancia toman
+ * jobs con findAndModify y un lease con vencimiento; mientras el job avanza el lease se renueva,
+ * y si la instancia cae otro worker lo vuelve a tomar cuando vence (hasta max-attempts intentos).
+ * Cada instancia solo toma tantos jobs como caben en su executor acotado (workers + cola local).
+ */
+@Service
+public class AnalysisJobService {
+
+    private static final Logger log = LoggerFactory.getLogger(AnalysisJobService.class);
+
+    private final MongoTemplate mongoTemplate;
+    private final TextExtractionService textExtractionService;
+    private final ContractService contractService;
+    private final MeterRegistry meterRegistry;
+
+    private final String instanceId;
+    private final int workers;
+    private final int queueCapacity;
+    private final long leaseMs;
+    private final int maxAttempts;
+    private final long streamPollMs;
+    private final long streamMaxMs;
+
+    private final ThreadPoolExecutor executor;
+    // Jobs tomados por esta instancia y aún sin terminar (corriendo o en la cola local)
+    private final Set<String> claimed = ConcurrentHashMap.newKeySet();
+    private final AtomicLong queuedInStore = new AtomicLong();
+    private final Object dispatchLock = new Object();
+
+    // Cambios de estado de los jobs de esta instancia, para los streams SSE
+    private final Sinks.Many<JobStatus> updates = Sinks.many().multicast().directBestEffort();
+
+    public AnalysisJobService(MongoTemplate mongoTemplate,
+                              TextExtractionService textExtractionService,
+                              ContractService contractService,
+                              MeterRegistry meterRegistry,
+                              @Value("${jobs.instance-id:}") String instanceId,
+                              @Value("${jobs.workers:2}") int workers,
+                              @Value("${jobs.queue-capacity:4}") int queueCapacity,
+                              @Value("${jobs.lease-seconds:120}") long leaseSeconds,
+                              @Value("${jobs.max-attempts:3}") int maxAttempts,
+                              @Value("${jobs.stream.poll-ms:2000}") long streamPollMs,
+                              @Value("${jobs.stream.max-minutes:15}") long streamMaxMinutes) {
+        this.mongoTemplate = mongoTemplate;
+        this.textExtractionService = textExtractionService;
+        this.contractService = contractService;
+        this.meterRegistry = meterRegistry;
+        this.instanceId = instanceId == null || instanceId.isBlank() ? UUID.randomUUID().toString() : instanceId;
+        this.workers = workers;
+        this.queueCapacity = queueCapacity;
+        this.leaseMs = leaseSeconds * 1000;
+        this.maxAttempts = maxAttempts;
+        this.streamPollMs = streamPollMs;
+        this.streamMaxMs = streamMaxMinutes * 60_000;
+
+        AtomicInteger threads = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)),
+                r -> {
+                    Thread t = new Thread(r, "analysis-job-" + threads.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+
+        meterRegistry.gauge("jobs.queue.depth", Tags.of("scope", "store"), queuedInStore);
+        meterRegistry.gauge("jobs.queue.depth", Tags.of("scope", "local"), executor, e -> e.getQueue().size());
+        meterRegistry.gauge("jobs.workers.active", executor, ThreadPoolExecutor::getActiveCount);
+    }
+
+    /**
+     * Encola el análisis de un archivo y lo intenta tomar de inmediato en esta instancia.
+     */
+    public AnalysisJob submit(String fileName, byte[] file, String contractName, Long userId, AnalysisDepth depth) {
+        if (!textExtractionService.isSupported(fileName)) {
+            throw new IllegalArgumentException("Formato no soportado. Use PDF o DOCX.");
+        }
+        AnalysisJob job = new AnalysisJob();
+        job.setFileName(fileName);
+        job.setFile(file);
+        job.setContractName(contractName);
+        job.setUserId(userId);
+        job.setDepth(depth != null ? depth.name() : null);
+        AnalysisJob saved = enqueue(job);
+        dispatch();
+        return saved;
+    }
+
+    /**
+     * Encola el análisis de un texto ya extraído que pertenece a una carga masiva.
+     * No despacha: quien arma el lote llama a dispatch() una vez al final.
+     */
+    public AnalysisJob submitText(String batchId, String fileName, String text, String contractName,
+                                  Long userId, AnalysisDepth depth) {
+        AnalysisJob job = new AnalysisJob();
+        job.setBatchId(batchId);
+        job.setFileName(fileName);
+        job.setText(text);
+        job.setContractName(contractName);
+        job.setUserId(userId);
+        job.setDepth(depth != null ? depth.name() : null);
+        return enqueue(job);
+    }
+
+    /**
+     * Subida progresiva: el contrato ya está guardado con el análisis por reglas; el job
+     * lo reemplaza por el de la IA y avisa por los mismos eventos SSE.
+     */
+    public AnalysisJob submitUpgrade(Contract contract, AnalysisDepth depth) {
+        AnalysisJob job = new AnalysisJob();
+        job.setContractId(contract.getId());
+        job.setContractName(contract.getName());
+        job.setUserId(contract.getUserId());
+        job.setDepth(depth != null ? depth.name() : null);
+        job.setProvisional(true);
+        AnalysisJob saved = enqueue(job);
+        dispatch();
+        return saved;
+    }
+
+    // Jobs de una carga masiva, sin archivo ni texto
+    public List<AnalysisJob> findByBatch(String batchId) {
+        Query query = Query.query(Criteria.where("batchId").is(batchId));
+        query.fields().exclude("file").exclude("text");
+        return mongoTemplate.find(query, AnalysisJob.class);
+    }
+
+    private AnalysisJob enqueue(AnalysisJob job) {
+        AnalysisJob saved = mongoTemplate.save(job);
+        meterRegistry.counter("jobs.submitted").increment();
+        log.info("Job de análisis {} encolado ({})", saved.getId(), job.getFileName());
+        return saved;
+    }
+
+    // Último job del contrato (mejora progresiva o subida ya guardada), sin archivo ni texto
+    public Optional<AnalysisJob> findLatestByContract(String contractId) {
+        Query query = Query.query(Criteria.where("contractId").is(contractId))
+                .with(Sort.by(Sort.Direction.DESC, "createdAt"));
+        query.fields().exclude("file").exclude("text");
+        return Optional.ofNullable(mongoTemplate.findOne(query, AnalysisJob.class));
+    }
+
+    public Optional<AnalysisJob> find(String id) {
+        return Optional.ofNullable(findStatus(id));
+    }
+
+    // Estado del job sin archivo ni texto: solo el worker que tiene el lease lee el contenido subido
+    private AnalysisJob findStatus(String id) {
+        Query query = Query.query(Criteria.where("_id").is(id));
+        query.fields().exclude("file").exclude("text");
+        return mongoTemplate.findOne(query, AnalysisJob.class);
+    }
+
+    /**
+     * Toma jobs pendientes (o con lease vencido) mientras haya lugar en el executor local.
+     */
+    @Scheduled(fixedDelayString = "${jobs.poll-interval-ms:2000}")
+    public void dispatch() {
+        synchronized (dispatchLock) {
+            try {
+                queuedInStore.set(mongoTemplate.count(Query.query(Criteria.where("status").is(Status.QUEUED)),
+                        AnalysisJob.class));
+                while (claimed.size() < workers + queueCapacity) {
+                    AnalysisJob job = claimNext();
+                    if (job == null) break;
+                    claimed.add(job.getId());
+                    executor.execute(() -> run(job));
+                }
+            } catch (Exception e) {
+                log.warn("No se pudieron tomar jobs de análisis: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Extiende el lease de los jobs de esta instancia. Los que corren reciben además
+     * una renovación con cada avance (ver progress).
+     */
+    @Scheduled(fixedDelayString = "${jobs.lease-renew-ms:30000}")
+    public void renewLeases() {
+        if (claimed.isEmpty()) return;
+        try {
+            mongoTemplate.updateMulti(
+                    Query.query(Criteria.where("_id").in(claimed).and("leaseOwner").is(instanceId)
+                            .and("status").is(Status.RUNNING)),
+                    new Update().set("leaseUntil", Instant.now().plusMillis(leaseMs)),
+                    AnalysisJob.class);
+        } catch (Exception e) {
+            log.warn("No se pudieron renovar los leases de jobs: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Estado del job: el primero de inmediato y luego cada cambio hasta que termina.
+     * Los avances de esta instancia llegan al instante; los de otras, por consulta periódica.
+     */
+    public Flux<JobStatus> events(String id) {
+        Flux<JobStatus> polled = Flux.interval(Duration.ZERO, Duration.ofMillis(streamPollMs))
+                // Si una consulta tarda más que el intervalo se salta el tick en lugar de fallar el stream
+                .onBackpressureDrop()
+                .concatMap(tick -> Mono.fromCallable(() -> findStatus(id))
+                        .subscribeOn(Schedulers.boundedElastic()))
+                .map(JobStatus::from);
+        Flux<JobStatus> local = updates.asFlux().filter(status -> id.equals(status.getJobId()));
+
+        return Flux.merge(local, polled)
+                .distinctUntilChanged(status -> status, JobStatus::sameProgress)
+                .takeUntil(JobStatus::isFinished)
+                .take(Duration.ofMillis(streamMaxMs));
+    }
+
+    private AnalysisJob claimNext() {
+        Instant now = Instant.now();
+        Query query = new Query(new Criteria().orOperator(
+                Criteria.where("status").is(Status.QUEUED),
+                Criteria.where("status").is(Status.RUNNING).and("leaseUntil").lt(now)))
+                .with(Sort.by("createdAt"));
+        Update update = new Update()
+                .set("status", Status.RUNNING)
+                .set("leaseOwner", instanceId)
+                .set("leaseUntil", now.plusMillis(leaseMs))
+                .set("updatedAt", now)
+                .inc("attempts", 1);
+        return mongoTemplate.findAndModify(query, update, FindAndModifyOptions.options().returnNew(true),
+                AnalysisJob.class);
+    }
+
+    private void run(AnalysisJob job) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "done";
+        try {
+            if (job.getAttempts() > maxAttempts) {
+                outcome = "failed";
+                fail(job, "Se agotaron los intentos de análisis");
+                return;
+            }
+
+            AnalysisDepth depth = AnalysisDepth.parse(job.getDepth());
+            Contract saved;
+            if (job.getContractId() != null) {
+                progress(job, "analyzing", 0, 0);
+                saved = contractService.upgradeAnalysisAsync(job.getContractId(), depth)
+                        .contextWrite(AnalysisProgress.listener((done, total) -> progress(job, "analyzing", done, total)))
+                        .block();
+                if (saved == null) {
+                    outcome = "failed";
+                    fail(job, "El contrato fue eliminado antes de terminar el análisis");
+                    return;
+                }
+            } else {
+                String text = job.getText();
+                if (text == null) {
+                    progress(job, "extracting", 0, 0);
+                    text = textExtractionService.extractText(job.getFileName(), new ByteArrayInputStream(job.getFile()));
+                }
+
+                progress(job, "analyzing", 0, 0);
+                saved = contractService.saveWithAnalysisAsync(job.getContractName(), text, job.getUserId(), depth)
+                        .contextWrite(AnalysisProgress.listener((done, total) -> progress(job, "analyzing", done, total)))
+                        .block();
+            }
+
+            complete(job, saved);
+        } catch (Exception e) {
+            outcome = "failed";
+            log.error("Job de análisis {} falló: {}", job.getId(), e.getMessage());
+            fail(job, e.getMessage());
+        } finally {
+            claimed.remove(job.getId());
+            sample.stop(meterRegistry.timer("jobs.duration", "status", outcome));
+            meterRegistry.counter("jobs.completed", "status", outcome).increment();
+        }
+    }
+
+    // Guarda el avance y renueva el lease; solo si el job sigue siendo de esta instancia.
+    // Los bloques terminan en paralelo: se serializa por job
+    private void progress(AnalysisJob job, String stage, int done, int total) {
+        synchronized (job) {
+            saveProgress(job, stage, done, total);
+        }
+    }
+
+    private void saveProgress(AnalysisJob job, String stage, int done, int total) {
+        Instant now = Instant.now();
+        job.setStage(stage);
+        job.setChunksDone(done);
+        job.setChunksTotal(total);
+        job.setUpdatedAt(now);
+        try {
+            long matched = mongoTemplate.updateFirst(owned(job),
+                    new Update().set("stage", stage).set("chunksDone", done).set("chunksTotal", total)
+                            .set("updatedAt", now).set("leaseUntil", now.plusMillis(leaseMs)),
+                    AnalysisJob.class).getMatchedCount();
+            if (matched == 0) log.warn("El job {} ya no tiene lease en esta instancia", job.getId());
+        } catch (Exception e) {
+            log.warn("No se pudo guardar el avance del job {}: {}", job.getId(), e.getMessage());
+        }
+        publish(JobStatus.from(job));
+    }
+
+    private void complete(AnalysisJob job, Contract saved) {
+        job.setContractId(saved.getId());
+        job.setProvisional(saved.isPendingReanalysis());
+        finish(job, Status.DONE, "saved", new Update().set("contractId", saved.getId())
+                .set("provisional", saved.isPendingReanalysis()));
+        log.info("Job de análisis {} terminado: contrato {}", job.getId(), saved.getId());
+    }
+
+    private void fail(AnalysisJob job, String error) {
+        job.setError(error);
+        finish(job, Status.FAILED, "failed", new Update().set("error", error));
+    }
+
+    private void finish(AnalysisJob job, Status status, String stage, Update update) {
+        Instant now = Instant.now();
+        update.set("status", status).set("stage", stage).set("updatedAt", now).set("finishedAt", now)
+                .unset("file").unset("text").unset("leaseUntil");
+        try {
+            mongoTemplate.updateFirst(owned(job), update, AnalysisJob.class);
+        } catch (Exception e) {
+            log.warn("No se pudo guardar el resultado del job {}: {}", job.getId(), e.getMessage());
+        }
+        job.setStatus(status);
+        job.setStage(stage);
+        job.setUpdatedAt(now);
+        job.setFile(null);
+        job.setText(null);
+        publish(JobStatus.from(job));
+    }
+
+    // El sink no admite emisiones concurrentes
+    private void publish(JobStatus status) {
+        synchronized (updates) {
+            updates.tryEmitNext(status);
+        }
+    }
+
+    private Query owned(AnalysisJob job) {
+        return Query.query(Criteria.where("_id").is(job.getId()).and("leaseOwner").is(instanceId));
+    }
+
+    // Los jobs en curso quedan con lease vigente y otra instancia los retoma al vencer
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,31 @@
+package com.acl.backend.service;
+
+import java.util.function.Function;
+
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+
+/**
+ * Avance del análisis de un contrato (bloques analizados de un total).
+ * Se pasa en el contexto de Reactor para que quien lanza el análisis (p. ej. un job
+ * asíncrono) reciba el progreso sin cambiar las firmas de los servicios.
+ *
+ * Uso: {@code mono.contextWrite(AnalysisProgress.listener((done, total) -> ...))}
+ */
+@FunctionalInterface
+public interface AnalysisProgress {
+
+    AnalysisProgress NONE = (done, total) -> { };
+
+    String CONTEXT_KEY = "analysis.progress";
+
+    void onChunks(int done, int total);
+
+    static Function<Context, Context> listener(AnalysisProgress progress) {
+        return ctx -> progress == null ? ctx : ctx.put(CONTEXT_KEY, progress);
+    }
+
+    static AnalysisProgress from(ContextView ctx) {
+        return ctx.getOrDefault(CONTEXT_KEY, NONE);
+    }
+}
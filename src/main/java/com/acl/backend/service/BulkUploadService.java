@@ -0,0 +1,348 @@
+package com.acl.backend.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipInputStream;
+
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Service;
+
+import com.acl.backend.data.JobData.BatchFileStatus;
+import com.acl.backend.data.JobData.BatchStatus;
+import com.acl.backend.model.AnalysisBatch;
+import com.acl.backend.model.AnalysisBatch.BatchFile;
+import com.acl.backend.model.AnalysisJob;
+import com.acl.backend.util.HashUtils;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Carga masiva de contratos desde un ZIP.
+ *
+ * La petición solo copia el ZIP a un archivo temporal y guarda el lote (EXTRACTING): responde
+ * enseguida con su id y el resto sigue en un hilo lector en segundo plano. Si la instancia se
+ * reinicia durante la lectura el lote queda EXTRACTING hasta que vence (7 días).
+ *
+ * El ZIP se lee como stream, entrada por entrada, sin descomprimirlo entero: cada archivo se
+ * pasa a un executor de extracción del tamaño de los núcleos disponibles, con cola acotada;
+ * si la cola se llena, el hilo que lee el ZIP extrae él mismo y deja de leer (backpressure),
+ * así en memoria solo hay unos pocos archivos a la vez.
+ *
+ * Con el texto extraído se descartan los repetidos del lote (hash del contenido normalizado)
+ * y cada contrato único se encola como job de análisis (AnalysisJobService), de modo que las
+ * llamadas a Gemini quedan acotadas por los workers de la cola y el GeminiConcurrencyLimiter.
+ */
+@Service
+public class BulkUploadService {
+
+    private static final Logger log = LoggerFactory.getLogger(BulkUploadService.class);
+
+    private final MongoTemplate mongoTemplate;
+    private final TextExtractionService textExtractionService;
+    private final AnalysisJobService analysisJobService;
+    private final MeterRegistry meterRegistry;
+    private final Timer extractionTimer;
+
+    private final int maxFiles;
+    private final long maxFileBytes;
+    private final long maxTotalBytes;
+
+    private final ThreadPoolExecutor extractor;
+    // Un lote a la vez por instancia: cada uno ya usa todos los hilos de extracción
+    private final ExecutorService reader;
+
+    public BulkUploadService(MongoTemplate mongoTemplate,
+                             TextExtractionService textExtractionService,
+                             AnalysisJobService analysisJobService,
+                             MeterRegistry meterRegistry,
+                             @Value("${bulk.max-files:500}") int maxFiles,
+                             @Value("${bulk.max-file-bytes:20971520}") long maxFileBytes,
+                             @Value("${bulk.max-total-bytes:524288000}") long maxTotalBytes,
+                             @Value("${bulk.extraction-threads:0}") int extractionThreads) {
+        this.mongoTemplate = mongoTemplate;
+        this.textExtractionService = textExtractionService;
+        this.analysisJobService = analysisJobService;
+        this.meterRegistry = meterRegistry;
+        this.maxFiles = maxFiles;
+        this.maxFileBytes = maxFileBytes;
+        this.maxTotalBytes = maxTotalBytes;
+
+        // 0 = uno por núcleo (la extracción de PDF es CPU)
+        int threads = extractionThreads > 0 ? extractionThreads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger count = new AtomicInteger();
+        this.extractor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(threads),
+                r -> {
+                    Thread t = new Thread(r, "bulk-extract-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+
+        this.reader = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "bulk-reader");
+            t.setDaemon(true);
+            return t;
+        });
+
+        this.extractionTimer = Timer.builder("bulk.extraction")
+                .description("Tiempo de extracción de texto por archivo de una carga masiva")
+                .register(meterRegistry);
+        meterRegistry.gauge("bulk.extraction.active", extractor, ThreadPoolExecutor::getActiveCount);
+    }
+
+    /**
+     * Guarda el ZIP en un archivo temporal y el lote sin archivos (EXTRACTING), y devuelve el
+     * lote. La lectura, la extracción y el encolado de los análisis siguen en segundo plano.
+     */
+    public AnalysisBatch submit(InputStream zip, Long userId, AnalysisDepth depth) throws IOException {
+        Path archive = Files.createTempFile("bulk-", ".zip");
+        try {
+            Files.copy(zip, archive, StandardCopyOption.REPLACE_EXISTING);
+
+            AnalysisBatch batch = new AnalysisBatch();
+            batch.setId(new ObjectId().toHexString());
+            batch.setUserId(userId);
+            batch.setDepth(depth != null ? depth.name() : null);
+            batch.setStatus(AnalysisBatch.Status.EXTRACTING);
+            AnalysisBatch saved = mongoTemplate.save(batch);
+
+            reader.execute(() -> process(saved.getId(), userId, depth, archive));
+            return saved;
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(archive);
+            throw e;
+        }
+    }
+
+    /**
+     * Lee el ZIP, extrae en paralelo, descarta repetidos y encola el análisis de los únicos.
+     * Guarda el lote completo (READY) o con el motivo del fallo (FAILED); siempre borra el ZIP.
+     * Trabaja sobre su propia copia del lote: la devuelta por submit no cambia.
+     */
+    private void process(String batchId, Long userId, AnalysisDepth depth, Path archive) {
+        AnalysisBatch batch = new AnalysisBatch();
+        batch.setId(batchId);
+        batch.setUserId(userId);
+        batch.setDepth(depth != null ? depth.name() : null);
+
+        List<Future<Extracted>> pending = new ArrayList<>();
+        Map<String, BatchFile> firstByHash = new HashMap<>();
+        try (InputStream zip = Files.newInputStream(archive)) {
+            readEntries(zip, pending);
+            // En el orden del ZIP: el primero de cada contenido es el que se analiza
+            for (Future<Extracted> future : pending) {
+                Extracted extracted = await(future);
+                batch.getFiles().add(extracted.file);
+                if (extracted.text != null) enqueueUnique(batch, extracted, depth, firstByHash);
+            }
+            if (batch.getFiles().isEmpty()) {
+                throw new IllegalArgumentException("El ZIP no contiene archivos");
+            }
+            batch.setStatus(AnalysisBatch.Status.READY);
+        } catch (Exception e) {
+            pending.forEach(f -> f.cancel(true));
+            log.warn("Carga masiva {} fallida: {}", batchId, e.getMessage());
+            batch.setStatus(AnalysisBatch.Status.FAILED);
+            batch.setError(e instanceof IllegalArgumentException
+                    ? e.getMessage()
+                    : "No se pudo leer el ZIP: " + e.getMessage());
+        } finally {
+            try {
+                Files.deleteIfExists(archive);
+            } catch (IOException e) {
+                log.warn("No se pudo borrar el ZIP temporal {}: {}", archive, e.getMessage());
+            }
+        }
+
+        try {
+            mongoTemplate.save(batch);
+        } catch (Exception e) {
+            log.error("No se pudo guardar la carga masiva {}: {}", batchId, e.getMessage());
+            return;
+        }
+        for (BatchFile file : batch.getFiles()) {
+            meterRegistry.counter("bulk.files", "result", file.getStatus().name().toLowerCase()).increment();
+        }
+        log.info("Carga masiva {}: {} archivos, {} encolados", batchId, batch.getFiles().size(),
+                batch.getFiles().stream().filter(f -> f.getStatus() == BatchFile.Status.QUEUED).count());
+
+        // Los jobs encolados antes de un fallo también se procesan
+        analysisJobService.dispatch();
+    }
+
+    public Optional<AnalysisBatch> find(String batchId) {
+        return Optional.ofNullable(mongoTemplate.findById(batchId, AnalysisBatch.class));
+    }
+
+    /**
+     * Estado por archivo: el de su job, y para los repetidos el del archivo original
+     * (mismo contractId cuando termina).
+     */
+    public BatchStatus status(AnalysisBatch batch) {
+        Map<String, AnalysisJob> jobs = new HashMap<>();
+        for (AnalysisJob job : analysisJobService.findByBatch(batch.getId())) jobs.put(job.getId(), job);
+
+        List<BatchFileStatus> files = new ArrayList<>();
+        for (BatchFile file : batch.getFiles()) {
+            files.add(BatchFileStatus.from(file, file.getJobId() != null ? jobs.get(file.getJobId()) : null));
+        }
+        return BatchStatus.from(batch, files);
+    }
+
+    // Recorre el ZIP y manda cada entrada soportada al executor de extracción
+    private void readEntries(InputStream zip, List<Future<Extracted>> pending) throws IOException {
+        long totalBytes = 0;
+        int files = 0;
+        try (ZipInputStream in = new ZipInputStream(zip)) {
+            ZipEntry entry;
+            while ((entry = in.getNextEntry()) != null) {
+                if (entry.isDirectory() || isHidden(entry.getName())) continue;
+                String fileName = baseName(entry.getName());
+                if (++files > maxFiles) {
+                    throw new IllegalArgumentException("El ZIP supera el máximo de " + maxFiles + " archivos");
+                }
+                if (!textExtractionService.isSupported(fileName)) {
+                    pending.add(done(fileName, BatchFile.Status.SKIPPED, "Formato no soportado. Use PDF o DOCX."));
+                    continue;
+                }
+
+                byte[] bytes = readEntry(in, Math.min(maxFileBytes, maxTotalBytes - totalBytes));
+                if (bytes == null) {
+                    if (totalBytes + maxFileBytes > maxTotalBytes) {
+                        throw new IllegalArgumentException("El contenido descomprimido del ZIP excede el máximo permitido");
+                    }
+                    pending.add(done(fileName, BatchFile.Status.FAILED, "El archivo excede el tamaño máximo permitido"));
+                    continue;
+                }
+                totalBytes += bytes.length;
+                pending.add(extractor.submit(() -> extract(fileName, bytes)));
+            }
+        } catch (ZipException e) {
+            throw new IllegalArgumentException("ZIP inválido: " + e.getMessage());
+        }
+    }
+
+    private Extracted extract(String fileName, byte[] bytes) {
+        BatchFile file = new BatchFile(fileName, BatchFile.Status.QUEUED);
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            String text = textExtractionService.extractText(fileName, new ByteArrayInputStream(bytes));
+            if (text == null || text.isBlank()) {
+                file.setStatus(BatchFile.Status.FAILED);
+                file.setError("No se encontró texto en el archivo");
+                return new Extracted(file, null);
+            }
+            file.setContentHash(HashUtils.contentHash(text));
+            return new Extracted(file, text);
+        } catch (Exception e) {
+            log.warn("No se pudo extraer {} de la carga masiva: {}", fileName, e.getMessage());
+            file.setStatus(BatchFile.Status.FAILED);
+            file.setError("No se pudo leer el archivo: " + e.getMessage());
+            return new Extracted(file, null);
+        } finally {
+            sample.stop(extractionTimer);
+        }
+    }
+
+    // El primero de cada contenido se encola; los siguientes quedan como repetidos
+    private void enqueueUnique(AnalysisBatch batch, Extracted extracted, AnalysisDepth depth,
+                               Map<String, BatchFile> firstByHash) {
+        BatchFile file = extracted.file;
+        BatchFile original = firstByHash.putIfAbsent(file.getContentHash(), file);
+        if (original != null) {
+            file.setStatus(BatchFile.Status.DUPLICATE);
+            file.setDuplicateOf(original.getFileName());
+            file.setJobId(original.getJobId());
+            return;
+        }
+        AnalysisJob job = analysisJobService.submitText(batch.getId(), file.getFileName(), extracted.text,
+                file.getFileName(), batch.getUserId(), depth);
+        file.setJobId(job.getId());
+    }
+
+    private static Extracted await(Future<Extracted> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Carga masiva interrumpida", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Error al extraer el ZIP", e.getCause());
+        }
+    }
+
+    private static Future<Extracted> done(String fileName, BatchFile.Status status, String error) {
+        BatchFile file = new BatchFile(fileName, status);
+        file.setError(error);
+        return CompletableFuture.completedFuture(new Extracted(file, null));
+    }
+
+    // Lee la entrada actual; null si supera maxBytes (protección contra ZIP bombs)
+    private static byte[] readEntry(ZipInputStream in, long maxBytes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        long total = 0;
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            total += read;
+            if (total > maxBytes) return null;
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    // Metadatos de macOS y archivos ocultos
+    private static boolean isHidden(String entryName) {
+        return entryName.startsWith("__MACOSX/") || entryName.contains("/__MACOSX/")
+                || baseName(entryName).startsWith(".");
+    }
+
+    private static String baseName(String entryName) {
+        String name = entryName.replace('\\', '/');
+        return name.substring(name.lastIndexOf('/') + 1);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        reader.shutdownNow();
+        extractor.shutdownNow();
+    }
+
+    private static final class Extracted {
+        private final BatchFile file;
+        private final String text;
+
+        private Extracted(BatchFile file, String text) {
+            this.file = file;
+            this.text = text;
+        }
+    }
+}
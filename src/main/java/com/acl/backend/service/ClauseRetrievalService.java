@@ -0,0 +1,309 @@
+package com.acl.backend.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.acl.backend.model.Contract;
+import com.acl.backend.model.ContractClause;
+import com.acl.backend.util.HashUtils;
+import com.acl.backend.util.TextEmbedding;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Recuperación de cláusulas para preguntas sobre un contrato.
+ *
+ * En lugar de enviar el contrato completo a Gemini en cada pregunta, se indexan sus cláusulas
+ * (segmentadas al subirlo, ver ContractChunkingService.segmentClauses) y se envían solo las k
+ * más relevantes. El puntaje combina BM25 sobre los términos normalizados (TextEmbedding.terms)
+ * con la similitud coseno de los vectores locales, que cubre variantes de escritura que BM25 no
+ * empareja. El índice de cada contrato se construye una vez y se guarda en memoria (LRU).
+ */
+@Service
+public class ClauseRetrievalService {
+
+    private static final Logger log = LoggerFactory.getLogger(ClauseRetrievalService.class);
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    private final ContractChunkingService chunkingService;
+    private final TokenEstimator tokenEstimator;
+    private final boolean enabled;
+    private final int topK;
+    private final int clauseMaxChars;
+    private final int maxContextChars;
+    private final int preambleMaxChars;
+    private final int minContractTokens;
+    private final double vectorWeight;
+    private final int dimensions;
+    private final int maxIndexes;
+
+    private final MeterRegistry meterRegistry;
+    private final DistributionSummary contextChars;
+    private final DistributionSummary contextRatio;
+
+    // Índices por contrato y contenido en orden de uso (LRU)
+    private final LinkedHashMap<String, ClauseIndex> indexes = new LinkedHashMap<>(16, 0.75f, true);
+
+    public ClauseRetrievalService(ContractChunkingService chunkingService,
+                                  TokenEstimator tokenEstimator,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${qa.retrieval.enabled:true}") boolean enabled,
+                                  @Value("${qa.retrieval.top-k:6}") int topK,
+                                  @Value("${qa.retrieval.clause-max-chars:2500}") int clauseMaxChars,
+                                  @Value("${qa.retrieval.max-context-chars:12000}") int maxContextChars,
+                                  @Value("${qa.retrieval.preamble-max-chars:1200}") int preambleMaxChars,
+                                  @Value("${qa.retrieval.min-contract-tokens:8000}") int minContractTokens,
+                                  @Value("${qa.retrieval.vector-weight:0.3}") double vectorWeight,
+                                  @Value("${qa.retrieval.dimensions:256}") int dimensions,
+                                  @Value("${qa.retrieval.max-indexes:200}") int maxIndexes) {
+        this.chunkingService = chunkingService;
+        this.tokenEstimator = tokenEstimator;
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.topK = topK;
+        this.clauseMaxChars = clauseMaxChars;
+        this.maxContextChars = maxContextChars;
+        this.preambleMaxChars = preambleMaxChars;
+        this.minContractTokens = minContractTokens;
+        this.vectorWeight = vectorWeight;
+        this.dimensions = dimensions;
+        this.maxIndexes = maxIndexes;
+
+        this.contextChars = DistributionSummary.builder("qa.retrieval.context.chars")
+                .description("Caracteres del contrato enviados a Gemini por pregunta")
+                .register(meterRegistry);
+        this.contextRatio = DistributionSummary.builder("qa.retrieval.context.ratio")
+                .description("Fracción del contrato enviada a Gemini por pregunta")
+                .register(meterRegistry);
+        meterRegistry.gauge("qa.retrieval.indexes", indexes, this::sizeOf);
+    }
+
+    // Cláusulas que se guardan con el contrato al subirlo
+    public List<ContractClause> segment(String content) {
+        return chunkingService.segmentClauses(content, clauseMaxChars);
+    }
+
+    /**
+     * Indica si conviene responder con cláusulas recuperadas. Los contratos de hasta
+     * qa.retrieval.min-contract-tokens se envían completos por GeminiContextCacheService, que los
+     * cachea a partir de gemini.context-cache.min-tokens: con el contrato cacheado cada pregunta
+     * cobra sus tokens a tarifa reducida y cuesta menos que las cláusulas recuperadas
+     * (max-context-chars sin cachear, distintas en cada pregunta). Por eso el umbral de
+     * recuperación debe quedar bien por encima del mínimo de la cache; si se acercan, la cache de
+     * contexto deja de usarse en la práctica. Por encima del umbral el contrato completo pesa
+     * más que la tarifa reducida y conviene enviar solo las cláusulas.
+     */
+    public boolean shouldRetrieve(String content) {
+        return enabled && content != null && tokenEstimator.estimateTokens(content) > minContractTokens;
+    }
+
+    /**
+     * Las cláusulas más relevantes para la pregunta, en el orden del contrato. El primer segmento
+     * compite como cualquier otro; si es un preámbulo sin encabezado (partes, objeto) además se
+     * incluye siempre, recortado, salvo que entre completo por relevancia.
+     */
+    public List<RetrievedClause> retrieve(Contract contract, String question) {
+        String content = contract.getContent();
+        ClauseIndex index = indexFor(contract);
+        if (index.size() == 0) return List.of();
+
+        double[] scores = index.score(question, dimensions, vectorWeight);
+        List<Integer> ranked = new ArrayList<>();
+        for (int i = 0; i < scores.length; i++) {
+            if (scores[i] > 0) ranked.add(i);
+        }
+        ranked.sort(Comparator.comparingDouble((Integer i) -> scores[i]).reversed());
+
+        List<RetrievedClause> selected = new ArrayList<>();
+        RetrievedClause preamble = null;
+        int chars = 0;
+        if (index.preamble) {
+            preamble = new RetrievedClause(1, index.headings.get(0), cap(index.texts.get(0), preambleMaxChars), scores[0]);
+            selected.add(preamble);
+            chars = preamble.getText().length();
+        }
+
+        int retrieved = 0;
+        for (int i : ranked) {
+            if (retrieved >= topK) break;
+            String text = index.texts.get(i);
+            // El preámbulo recuperado reemplaza a su copia recortada
+            int added = i == 0 && preamble != null ? text.length() - preamble.getText().length() : text.length();
+            if (chars + added > maxContextChars) continue;
+            if (i == 0 && preamble != null) selected.remove(preamble);
+            selected.add(new RetrievedClause(i + 1, index.headings.get(i), text, scores[i]));
+            chars += added;
+            retrieved++;
+        }
+        selected.sort(Comparator.comparingInt(RetrievedClause::getNumber));
+
+        contextChars.record(chars);
+        if (!content.isEmpty()) contextRatio.record((double) chars / content.length());
+        log.debug("Q&A con {} de {} cláusulas ({} de {} caracteres)",
+                selected.size(), index.size(), chars, content.length());
+        return selected;
+    }
+
+    public int indexCount() {
+        synchronized (indexes) {
+            return indexes.size();
+        }
+    }
+
+    private ClauseIndex indexFor(Contract contract) {
+        String content = contract.getContent();
+        String key = HashUtils.sha256(contract.getId(), content);
+        synchronized (indexes) {
+            ClauseIndex cached = indexes.get(key);
+            if (cached != null) {
+                meterRegistry.counter("qa.retrieval.index.requests", "result", "hit").increment();
+                return cached;
+            }
+        }
+
+        // Contratos subidos antes de guardar las cláusulas: se segmentan al vuelo
+        List<ContractClause> clauses = contract.getClauses();
+        if (clauses == null || clauses.isEmpty()) clauses = segment(content);
+        ClauseIndex index = new ClauseIndex(content, clauses, dimensions);
+        index.preamble = index.size() > 0 && !chunkingService.startsWithSection(index.texts.get(0));
+        meterRegistry.counter("qa.retrieval.index.requests", "result", "miss").increment();
+
+        synchronized (indexes) {
+            indexes.put(key, index);
+            if (indexes.size() > maxIndexes) {
+                String eldest = indexes.keySet().iterator().next();
+                indexes.remove(eldest);
+            }
+        }
+        return index;
+    }
+
+    private static String cap(String text, int maxChars) {
+        return text.length() <= maxChars ? text : text.substring(0, maxChars) + "…";
+    }
+
+    private double sizeOf(Map<String, ClauseIndex> map) {
+        synchronized (indexes) {
+            return map.size();
+        }
+    }
+
+    /**
+     * Índice de un contrato: frecuencias de términos por cláusula para BM25 y vector local.
+     */
+    private static final class ClauseIndex {
+        private final List<String> headings = new ArrayList<>();
+        private final List<String> texts = new ArrayList<>();
+        private final List<Map<String, Integer>> termFrequencies = new ArrayList<>();
+        private final Map<String, Integer> documentFrequencies = new HashMap<>();
+        private final List<Integer> lengths = new ArrayList<>();
+        private final List<float[]> vectors = new ArrayList<>();
+        private final double averageLength;
+        // El primer segmento es texto anterior a la primera cláusula
+        private boolean preamble;
+
+        private ClauseIndex(String content, List<ContractClause> clauses, int dimensions) {
+            long totalLength = 0;
+            for (ContractClause clause : clauses) {
+                String text = clause.textOf(content);
+                if (text.isBlank()) continue;
+
+                List<String> terms = TextEmbedding.terms(text);
+                Map<String, Integer> tf = new HashMap<>();
+                for (String term : terms) tf.merge(term, 1, Integer::sum);
+                for (String term : tf.keySet()) documentFrequencies.merge(term, 1, Integer::sum);
+
+                headings.add(clause.getHeading());
+                texts.add(text);
+                termFrequencies.add(tf);
+                lengths.add(terms.size());
+                vectors.add(TextEmbedding.embedTerms(terms, dimensions));
+                totalLength += terms.size();
+            }
+            this.averageLength = texts.isEmpty() ? 1 : Math.max(1, (double) totalLength / texts.size());
+        }
+
+        private int size() {
+            return texts.size();
+        }
+
+        // Puntaje por cláusula: BM25 normalizado al máximo, mezclado con el coseno
+        private double[] score(String question, int dimensions, double vectorWeight) {
+            List<String> queryTerms = TextEmbedding.terms(question);
+            float[] queryVector = TextEmbedding.embedTerms(queryTerms, dimensions);
+            int n = size();
+
+            double[] bm25 = new double[n];
+            double max = 0;
+            for (int i = 0; i < n; i++) {
+                Map<String, Integer> tf = termFrequencies.get(i);
+                double norm = K1 * (1 - B + B * lengths.get(i) / averageLength);
+                double s = 0;
+                for (String term : new LinkedHashSet<>(queryTerms)) {
+                    Integer f = tf.get(term);
+                    if (f == null) continue;
+                    int df = documentFrequencies.get(term);
+                    double idf = Math.log(1 + (n - df + 0.5) / (df + 0.5));
+                    s += idf * f * (K1 + 1) / (f + norm);
+                }
+                bm25[i] = s;
+                max = Math.max(max, s);
+            }
+
+            double[] scores = new double[n];
+            for (int i = 0; i < n; i++) {
+                double lexical = max > 0 ? bm25[i] / max : 0;
+                double semantic = Math.max(0, TextEmbedding.cosine(queryVector, vectors.get(i)));
+                scores[i] = (1 - vectorWeight) * lexical + vectorWeight * semantic;
+            }
+            return scores;
+        }
+    }
+
+    /**
+     * Cláusula recuperada para el prompt. number es la posición en el contrato (desde 1)
+     * y sirve de referencia en la respuesta ("[3] CLÁUSULA TERCERA").
+     */
+    public static class RetrievedClause {
+        private final int number;
+        private final String heading;
+        private final String text;
+        private final double score;
+
+        public RetrievedClause(int number, String heading, String text, double score) {
+            this.number = number;
+            this.heading = heading;
+            this.text = text;
+            this.score = score;
+        }
+
+        public int getNumber() {
+            return number;
+        }
+
+        public String getHeading() {
+            return heading;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public double getScore() {
+            return score;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.acl.backend.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.springframework.stereotype.Service;
+
+import com.acl.backend.model.ContractClause;
+
+/**
+ * Divide contratos largos respetando los límites de cláusulas y secciones
+ */
+@Service
+public class ContractChunkingService {
+
+    // Inicio de línea con encabezado de cláusula, artículo, capítulo, ordinal o numeración ("1.", "2.3)")
+    private static final Pattern SECTION_START = Pattern.compile(
+            "^[ \\t]*(?:(?:CL[AÁ]USULA|ART[IÍ]CULO|CAP[IÍ]TULO|SECCI[OÓ]N|T[IÍ]TULO|PAR[AÁ]GRAFO)\\b"
+                    + "|(?:PRIMER[AO]?|SEGUND[AO]|TERCER[AO]?|CUART[AO]|QUINT[AO]|SEXT[AO]|S[EÉ]PTIM[AO]"
+                    + "|OCTAV[AO]|NOVEN[AO]|D[EÉ]CIM[AO])\\s*[.:\\-–]"
+                    + "|\\d{1,3}(?:\\.\\d{1,3})*[.)]\\s+\\S)",
+            Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE | Pattern.MULTILINE);
+
+    private static final Pattern PARAGRAPH_BREAK = Pattern.compile("\\n\\s*\\n");
+    private static final Pattern SENTENCE_END = Pattern.compile("(?<=[.;:])\\s+");
+    private static final int MAX_HEADING_CHARS = 80;
+
+    /**
+     * Separa el texto en secciones usando los encabezados de cláusulas.
+     * El texto previo al primer encabezado (partes, considerandos) queda como primera sección.
+     */
+    public List<String> splitSections(String text) {
+        List<String> sections = new ArrayList<>();
+        if (text == null || text.isBlank()) return sections;
+
+        Matcher m = SECTION_START.matcher(text);
+        int last = 0;
+        while (m.find()) {
+            if (m.start() > last) {
+                addIfNotBlank(sections, text.substring(last, m.start()));
+            }
+            last = m.start();
+        }
+        addIfNotBlank(sections, text.substring(last));
+        return sections;
+    }
+
+    /**
+     * Agrupa secciones consecutivas en bloques de como máximo maxChars caracteres.
+     * Una sección más larga que el límite se corta por párrafos, luego por oraciones.
+     */
+    public List<String> chunk(String text, int maxChars) {
+        List<String> chunks = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+
+        for (String section : splitSections(text)) {
+            for (String piece : fitToLimit(section, maxChars)) {
+                if (current.length() > 0 && current.length() + piece.length() + 1 > maxChars) {
+                    chunks.add(current.toString());
+                    current.setLength(0);
+                }
+                if (current.length() > 0) current.append('\n');
+                current.append(piece);
+            }
+        }
+        if (current.length() > 0) chunks.add(current.toString());
+        return chunks;
+    }
+
+    /**
+     * Segmenta el contrato en cláusulas con sus posiciones dentro del texto.
+     * Igual que splitSections, pero una sección más larga que maxChars se parte por párrafos
+     * (o por oraciones) en varias cláusulas con el mismo encabezado.
+     */
+    public List<ContractClause> segmentClauses(String text, int maxChars) {
+        List<ContractClause> clauses = new ArrayList<>();
+        if (text == null || text.isBlank()) return clauses;
+
+        List<Integer> starts = new ArrayList<>();
+        starts.add(0);
+        Matcher m = SECTION_START.matcher(text);
+        while (m.find()) {
+            if (m.start() > 0) starts.add(m.start());
+        }
+        starts.add(text.length());
+
+        for (int i = 0; i < starts.size() - 1; i++) {
+            int start = starts.get(i);
+            int end = starts.get(i + 1);
+            String heading = headingOf(text, start, end);
+            while (end - start > maxChars) {
+                int cut = cutPoint(text, start, start + maxChars);
+                addClause(clauses, text, start, cut, heading);
+                start = cut;
+            }
+            addClause(clauses, text, start, end, heading);
+        }
+        return clauses;
+    }
+
+    // Si el texto empieza con un encabezado de sección (cláusula, artículo, numeral...); si no, es un preámbulo
+    public boolean startsWithSection(String text) {
+        return text != null && SECTION_START.matcher(text).lookingAt();
+    }
+
+    // Último salto de párrafo, de línea, fin de oración o espacio en la segunda mitad del tramo
+    private int cutPoint(String text, int start, int limit) {
+        int min = start + (limit - start) / 2;
+        String window = text.substring(min, limit);
+        int cut = window.lastIndexOf("\n\n");
+        if (cut < 0) cut = window.lastIndexOf('\n');
+        if (cut < 0) {
+            int sentence = Math.max(window.lastIndexOf(". "), window.lastIndexOf("; "));
+            cut = sentence >= 0 ? sentence + 1 : -1;
+        }
+        if (cut < 0) cut = window.lastIndexOf(' ');
+        return cut > 0 ? min + cut : limit;
+    }
+
+    private void addClause(List<ContractClause> clauses, String text, int start, int end, String heading) {
+        while (start < end && Character.isWhitespace(text.charAt(start))) start++;
+        while (end > start && Character.isWhitespace(text.charAt(end - 1))) end--;
+        if (start < end) clauses.add(new ContractClause(clauses.size(), heading, start, end));
+    }
+
+    // Primera línea de la sección, recortada
+    private String headingOf(String text, int start, int end) {
+        String section = text.substring(start, end).strip();
+        int newline = section.indexOf('\n');
+        String line = (newline >= 0 ? section.substring(0, newline) : section).strip();
+        return line.length() > MAX_HEADING_CHARS ? line.substring(0, MAX_HEADING_CHARS) + "…" : line;
+    }
+
+    private List<String> fitToLimit(String section, int maxChars) {
+        if (section.length() <= maxChars) return List.of(section);
+
+        List<String> pieces = new ArrayList<>();
+        for (String paragraph : PARAGRAPH_BREAK.split(section)) {
+            if (paragraph.length() <= maxChars) {
+                addIfNotBlank(pieces, paragraph);
+                continue;
+            }
+            StringBuilder buf = new StringBuilder();
+            for (String sentence : SENTENCE_END.split(paragraph)) {
+                // Oración sin puntuación más larga que el límite: corte duro
+                while (sentence.length() > maxChars) {
+                    pieces.add(sentence.substring(0, maxChars));
+                    sentence = sentence.substring(maxChars);
+                }
+                if (buf.length() > 0 && buf.length() + sentence.length() + 1 > maxChars) {
+                    pieces.add(buf.toString());
+                    buf.setLength(0);
+                }
+                if (buf.length() > 0) buf.append(' ');
+                buf.append(sentence);
+            }
+            addIfNotBlank(pieces, buf.toString());
+        }
+        return pieces;
+    }
+
+    private void addIfNotBlank(List<String> target, String s) {
+        String trimmed = s.strip();
+        if (!trimmed.isEmpty()) target.add(trimmed);
+    }
+}
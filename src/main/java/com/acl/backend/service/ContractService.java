@@ -1,42 +1,127 @@
 package com.acl.backend.service;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 
 import com.acl.backend.data.AnalysisData;
 import com.acl.backend.model.Contract;
+import com.acl.backend.model.ContractClause;
 import com.acl.backend.repository.ContractRepository;
 
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
 @Service
 public class ContractService {
 
+    /**
+     * Versión del análisis persistido. Se incrementa cuando cambia el formato
+     * o el prompt de análisis, para poder distinguir resultados antiguos.
+     */
+    public static final int ANALYSIS_VERSION = 1;
+
+    // Margen para que el job de mejora de una subida progresiva termine (con reintentos)
+    private static final Duration PROGRESSIVE_UPGRADE_GRACE = Duration.ofMinutes(10);
+
     private final ContractRepository contractRepository;
     private final NLPAnalysisService nlpAnalysisService;
+    private final ClauseRetrievalService clauseRetrievalService;
 
     public ContractService(
             ContractRepository contractRepository,
-            NLPAnalysisService nlpAnalysisService) {
+            NLPAnalysisService nlpAnalysisService,
+            ClauseRetrievalService clauseRetrievalService) {
         this.contractRepository = contractRepository;
         this.nlpAnalysisService = nlpAnalysisService;
+        this.clauseRetrievalService = clauseRetrievalService;
     }
 
     public Contract saveWithAnalysis(String name, String content, Long userId) {
-        AnalysisData.AnalysisResult analysis = nlpAnalysisService.analyze(content);
+        return saveWithAnalysisAsync(name, content, userId).block();
+    }
 
+    // Analiza sin bloquear y guarda en el scheduler elastico (el repositorio de Mongo es bloqueante)
+    public Mono<Contract> saveWithAnalysisAsync(String name, String content, Long userId) {
+        return saveWithAnalysisAsync(name, content, userId, null);
+    }
+
+    // depth elige el nivel de modelo del análisis (null = estándar)
+    public Mono<Contract> saveWithAnalysisAsync(String name, String content, Long userId, AnalysisDepth depth) {
+        return nlpAnalysisService.analyzeAsync(content, depth)
+                .publishOn(Schedulers.boundedElastic())
+                .map(analysis -> saveAnalyzed(name, content, clauseRetrievalService.segment(content), userId, analysis))
+                // Consumo de tokens y cuota del dueño del contrato
+                .contextWrite(UsageContext.user(userId));
+    }
+
+    /**
+     * Subida progresiva: guarda el contrato con el análisis por reglas (provisional) sin
+     * esperar a la IA. upgradeAnalysisAsync lo reemplaza después.
+     */
+    public Contract saveProvisional(String name, String content, Long userId) {
+        return saveAnalyzed(name, content, clauseRetrievalService.segment(content), userId,
+                nlpAnalysisService.quickAnalysis(content));
+    }
+
+    /**
+     * Reemplaza el análisis guardado del contrato por el de la IA.
+     * Vacío si el contrato se borró mientras tanto.
+     */
+    public Mono<Contract> upgradeAnalysisAsync(String contractId, AnalysisDepth depth) {
+        return Mono.fromCallable(() -> contractRepository.findById(contractId))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(found -> found.map(contract -> reanalyzeAsync(contract, depth)).orElseGet(Mono::empty));
+    }
+
+    // Guarda un contrato ya analizado y segmentado (el pipeline de subida hace ambas cosas en paralelo)
+    public Contract saveAnalyzed(String name, String content, List<ContractClause> clauses, Long userId,
+                                 AnalysisData.AnalysisResult analysis) {
         Contract c = new Contract();
         c.setName(name);
         c.setContent(content);
-        c.setType(analysis.getType());
-        c.setKeyClauses(analysis.getKeyClauses());
-        c.setRisks(analysis.getRisks());
-        c.setRiskScore(analysis.getRiskScore());
+        c.setClauses(clauses);
         c.setUserId(userId);
+        applyAnalysis(c, analysis);
+        return contractRepository.save(c);
+    }
 
-        Contract saved = contractRepository.save(c);
-        return saved;
+    /**
+     * Vuelve a analizar el contrato y reemplaza el resultado guardado
+     */
+    public Contract reanalyze(Contract contract) {
+        return reanalyzeAsync(contract).block();
+    }
+
+    public Mono<Contract> reanalyzeAsync(Contract contract) {
+        return reanalyzeAsync(contract, null);
+    }
+
+    public Mono<Contract> reanalyzeAsync(Contract contract, AnalysisDepth depth) {
+        return saveAnalysisAsync(contract, nlpAnalysisService.analyzeAsync(contract.getContent(), depth));
+    }
+
+    /**
+     * Re-análisis pedido por el usuario: llama a la IA aunque haya un análisis en cache para el
+     * mismo contenido (un cambio de criterio no se vería de otro modo) y actualiza esa entrada.
+     */
+    public Mono<Contract> refreshAnalysisAsync(Contract contract) {
+        return saveAnalysisAsync(contract, nlpAnalysisService.analyzeFreshAsync(contract.getContent(), null));
+    }
+
+    private Mono<Contract> saveAnalysisAsync(Contract contract, Mono<AnalysisData.AnalysisResult> result) {
+        return result
+                .publishOn(Schedulers.boundedElastic())
+                .map(analysis -> {
+                    applyAnalysis(contract, analysis);
+                    return contractRepository.save(contract);
+                })
+                .contextWrite(UsageContext.user(contract.getUserId()));
     }
 
     public Optional<Contract> findById(String id) {
@@ -47,6 +132,22 @@ public class ContractService {
         return contractRepository.findAll();
     }
 
+    // Contratos con análisis provisional (por reglas) a la espera de la IA
+    // Los recién subidos se saltean: en la subida progresiva los mejora su propio job.
+    // Los que agotaron maxAttempts o esperan su backoff (nextReanalysisAt) quedan fuera
+    public List<Contract> findPendingReanalysis(int maxAttempts, int limit) {
+        Instant now = Instant.now();
+        return contractRepository.findPendingReanalysis(now.minus(PROGRESSIVE_UPGRADE_GRACE), maxAttempts, now,
+                PageRequest.of(0, limit));
+    }
+
+    // Guarda el próximo intento de re-análisis (reintentos y backoff los decide ReanalysisScheduler)
+    public Contract scheduleReanalysis(Contract contract, int attempts, Instant nextAttemptAt) {
+        contract.setReanalysisAttempts(attempts);
+        contract.setNextReanalysisAt(nextAttemptAt);
+        return contractRepository.save(contract);
+    }
+
     public List<Contract> listByUser(Long userId) {
         return contractRepository.findByUserId(userId);
     }
@@ -55,6 +156,21 @@ public class ContractService {
         contractRepository.deleteById(id);
     }
 
+    private void applyAnalysis(Contract c, AnalysisData.AnalysisResult analysis) {
+        c.setType(analysis.getType());
+        c.setKeyClauses(analysis.getKeyClauses());
+        c.setRisks(analysis.getRisks());
+        c.setRiskScore(analysis.getRiskScore());
+        c.setAnalysis(analysis);
+        c.setAnalysisVersion(ANALYSIS_VERSION);
+        c.setAnalyzedAt(Instant.now());
+        c.setPendingReanalysis(analysis.isProvisional());
+        if (!analysis.isProvisional()) {
+            c.setReanalysisAttempts(0);
+            c.setNextReanalysisAt(null);
+        }
+    }
+
     /**
      * Detecta cláusulas importantes que faltan en el contrato
      */
@@ -0,0 +1,250 @@
+package com.acl.backend.service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import com.acl.backend.model.ChatMessage;
+import com.acl.backend.model.ConversationMemory;
+import com.acl.backend.repository.ChatRepository;
+import com.acl.backend.repository.ConversationMemoryRepository;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Memoria acotada de las conversaciones de chat (por conversationId).
+ *
+ * El prompt lleva los últimos N turnos textuales y un resumen acumulado de los mensajes
+ * anteriores, todo dentro de un presupuesto fijo de tokens. El resumen se actualiza fuera
+ * de la petición: al terminar un turno, si quedaron suficientes mensajes fuera de la ventana
+ * reciente, se incorporan al resumen con una llamada aparte a Gemini (modelo ligero). Hasta
+ * entonces esos mensajes siguen en el prompt como texto, dentro del mismo presupuesto.
+ */
+@Service
+public class ConversationMemoryService {
+
+    private static final Logger log = LoggerFactory.getLogger(ConversationMemoryService.class);
+
+    // Tope de mensajes leídos para resumir en una sola pasada
+    private static final int MAX_SUMMARY_BATCH = 100;
+
+    private final ChatRepository chatRepository;
+    private final ConversationMemoryRepository memoryRepository;
+    private final GeminiService geminiService;
+    private final PromptService promptService;
+    private final TokenEstimator tokenEstimator;
+    private final MeterRegistry meterRegistry;
+    private final DistributionSummary memoryTokens;
+
+    private final boolean enabled;
+    private final int recentMessages;
+    private final int maxTokens;
+    private final int summaryMaxTokens;
+    private final int messageMaxTokens;
+    private final int summarizeBatch;
+
+    // Conversaciones con un resumen en curso: no se lanzan dos a la vez
+    private final Set<String> summarizing = ConcurrentHashMap.newKeySet();
+
+    public ConversationMemoryService(ChatRepository chatRepository,
+                                     ConversationMemoryRepository memoryRepository,
+                                     GeminiService geminiService,
+                                     PromptService promptService,
+                                     TokenEstimator tokenEstimator,
+                                     MeterRegistry meterRegistry,
+                                     @Value("${chat.memory.enabled:true}") boolean enabled,
+                                     @Value("${chat.memory.recent-turns:4}") int recentTurns,
+                                     @Value("${chat.memory.max-tokens:1500}") int maxTokens,
+                                     @Value("${chat.memory.summary-max-tokens:400}") int summaryMaxTokens,
+                                     @Value("${chat.memory.message-max-tokens:300}") int messageMaxTokens,
+                                     @Value("${chat.memory.summarize-batch:4}") int summarizeBatch) {
+        this.chatRepository = chatRepository;
+        this.memoryRepository = memoryRepository;
+        this.geminiService = geminiService;
+        this.promptService = promptService;
+        this.tokenEstimator = tokenEstimator;
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.recentMessages = recentTurns * 2;
+        this.maxTokens = maxTokens;
+        this.summaryMaxTokens = summaryMaxTokens;
+        this.messageMaxTokens = messageMaxTokens;
+        this.summarizeBatch = summarizeBatch;
+
+        this.memoryTokens = DistributionSummary.builder("chat.memory.tokens")
+                .description("Tokens estimados de la memoria de conversación en el prompt")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Memoria de la conversación antes del mensaje actual (before, exclusivo).
+     * Sin conversationId o sin historial devuelve Memory.EMPTY.
+     */
+    public Mono<Memory> load(String conversationId, Instant before) {
+        if (!enabled || conversationId == null || conversationId.isBlank()) return Mono.just(Memory.EMPTY);
+        return Mono.fromCallable(() -> loadBlocking(conversationId, before))
+                .subscribeOn(Schedulers.boundedElastic())
+                .onErrorResume(e -> {
+                    log.warn("No se pudo leer la memoria de la conversación {}: {}", conversationId, e.getMessage());
+                    return Mono.just(Memory.EMPTY);
+                });
+    }
+
+    private Memory loadBlocking(String conversationId, Instant before) {
+        ConversationMemory memory = memoryRepository.findById(conversationId).orElse(null);
+        Instant from = memory != null && memory.getSummarizedUntil() != null ? memory.getSummarizedUntil() : Instant.EPOCH;
+        // Además de la ventana reciente, los que salieron de ella pero aún no están en el resumen
+        // (se resumen de a summarizeBatch); si no, se perderían hasta el próximo resumen
+        List<ChatMessage> newestFirst = chatRepository.findByConversationIdAndTimestampBetweenOrderByTimestampDesc(
+                conversationId, from, before, PageRequest.of(0, recentMessages + summarizeBatch));
+
+        String summary = memory != null ? memory.getSummary() : null;
+        if (summary != null) summary = tokenEstimator.truncateToTokens(summary, summaryMaxTokens);
+        int budget = maxTokens - tokenEstimator.estimateTokens(summary);
+
+        // Del más reciente al más antiguo mientras quepan en el presupuesto
+        List<ChatMessage> recent = new ArrayList<>();
+        for (ChatMessage message : newestFirst) {
+            ChatMessage capped = capped(message);
+            int tokens = tokenEstimator.estimateTokens(capped.getMessage());
+            if (tokens > budget) break;
+            budget -= tokens;
+            recent.add(capped);
+        }
+        Collections.reverse(recent);
+
+        String history = promptService.buildConversationHistory(summary, recent);
+        if (history == null) return Memory.EMPTY;
+        memoryTokens.record(tokenEstimator.estimateTokens(history));
+        String lastUserMessage = null;
+        for (ChatMessage message : recent) {
+            if (!"assistant".equalsIgnoreCase(message.getRole())) lastUserMessage = message.getMessage();
+        }
+        return new Memory(history, lastUserMessage);
+    }
+
+    /**
+     * Llamar al terminar un turno. Actualiza el resumen en segundo plano; la respuesta
+     * al usuario no espera por él y sus errores solo se registran.
+     */
+    public void onTurnCompleted(String conversationId, Long userId) {
+        if (!enabled || conversationId == null || conversationId.isBlank()) return;
+        if (!summarizing.add(conversationId)) return;
+
+        summarize(conversationId)
+                .contextWrite(UsageContext.operation(UsageContext.CHAT_MEMORY))
+                .contextWrite(UsageContext.user(userId))
+                .doFinally(signal -> summarizing.remove(conversationId))
+                .subscribe(
+                        updated -> {},
+                        e -> {
+                            meterRegistry.counter("chat.memory.summaries", "result", "error").increment();
+                            log.warn("No se pudo actualizar el resumen de la conversación {}: {}", conversationId, e.getMessage());
+                        });
+    }
+
+    // Borra la memoria al eliminar la conversación
+    public void forget(String conversationId) {
+        if (conversationId != null) memoryRepository.deleteById(conversationId);
+    }
+
+    /**
+     * Incorpora al resumen los mensajes que quedaron fuera de la ventana reciente,
+     * solo cuando ya son al menos summarizeBatch (evita una llamada por turno).
+     */
+    private Mono<Boolean> summarize(String conversationId) {
+        return Mono.fromCallable(() -> {
+                    ConversationMemory memory = memoryRepository.findById(conversationId)
+                            .orElseGet(() -> new ConversationMemory(conversationId));
+                    Instant from = memory.getSummarizedUntil() != null ? memory.getSummarizedUntil() : Instant.EPOCH;
+                    List<ChatMessage> pending = chatRepository.findByConversationIdAndTimestampAfterOrderByTimestampAsc(
+                            conversationId, from, PageRequest.of(0, MAX_SUMMARY_BATCH + recentMessages));
+                    int foldCount = Math.min(pending.size() - recentMessages, MAX_SUMMARY_BATCH);
+                    if (foldCount < summarizeBatch) return new PendingSummary(memory, List.of());
+                    return new PendingSummary(memory, pending.subList(0, foldCount));
+                })
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(pending -> {
+                    if (pending.messages.isEmpty()) return Mono.just(false);
+
+                    List<ChatMessage> messages = pending.messages.stream().map(this::capped).toList();
+                    // ~0.75 palabras por token en texto legal en español
+                    int maxWords = Math.max(50, summaryMaxTokens * 3 / 4);
+                    String prompt = promptService.buildConversationSummaryPrompt(
+                            pending.memory.getSummary(), messages, maxWords);
+                    return geminiService.generateContentAsync(prompt)
+                            .publishOn(Schedulers.boundedElastic())
+                            .map(summary -> {
+                                ConversationMemory memory = pending.memory;
+                                memory.setSummary(tokenEstimator.truncateToTokens(summary.strip(), summaryMaxTokens));
+                                memory.setSummarizedUntil(pending.messages.get(pending.messages.size() - 1).getTimestamp());
+                                memory.setSummarizedMessages(memory.getSummarizedMessages() + pending.messages.size());
+                                memory.setUpdatedAt(Instant.now());
+                                memoryRepository.save(memory);
+                                meterRegistry.counter("chat.memory.summaries", "result", "success").increment();
+                                log.debug("Resumen de la conversación {} actualizado con {} mensajes",
+                                        conversationId, pending.messages.size());
+                                return true;
+                            });
+                });
+    }
+
+    // Copia del mensaje con el texto recortado al máximo por mensaje
+    private ChatMessage capped(ChatMessage message) {
+        ChatMessage copy = new ChatMessage(message.getContractId(), message.getUserId(),
+                tokenEstimator.truncateToTokens(message.getMessage(), messageMaxTokens), message.getRole());
+        copy.setTimestamp(message.getTimestamp());
+        copy.setConversationId(message.getConversationId());
+        return copy;
+    }
+
+    private static final class PendingSummary {
+        private final ConversationMemory memory;
+        private final List<ChatMessage> messages;
+
+        private PendingSummary(ConversationMemory memory, List<ChatMessage> messages) {
+            this.memory = memory;
+            this.messages = messages;
+        }
+    }
+
+    /**
+     * Memoria lista para el prompt. lastUserMessage sirve para completar preguntas de
+     * seguimiento ("¿y la otra parte?") al buscar cláusulas.
+     */
+    public static class Memory {
+        public static final Memory EMPTY = new Memory(null, null);
+
+        private final String history;
+        private final String lastUserMessage;
+
+        public Memory(String history, String lastUserMessage) {
+            this.history = history;
+            this.lastUserMessage = lastUserMessage;
+        }
+
+        public boolean isEmpty() {
+            return history == null;
+        }
+
+        public String getHistory() {
+            return history;
+        }
+
+        public String getLastUserMessage() {
+            return lastUserMessage;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.acl.backend.service;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeoutException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Circuit breaker para Gemini con ventana deslizante por número de llamadas.
+ * CLOSED: las llamadas pasan y se registra su resultado.
+ * OPEN: se rechazan de inmediato durante open-duration, sin esperar timeouts.
+ * HALF_OPEN: se permiten pocas llamadas de prueba; si salen bien se cierra, si fallan se vuelve a abrir.
+ */
+@Component
+public class GeminiCircuitBreaker {
+
+    private static final Logger log = LoggerFactory.getLogger(GeminiCircuitBreaker.class);
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final int windowSize;
+    private final int minCalls;
+    private final double failureRateThreshold;
+    private final long openDurationMs;
+    private final int halfOpenMaxCalls;
+
+    private final boolean[] window;
+    private int windowIndex;
+    private int windowCount;
+    private int windowFailures;
+
+    private State state = State.CLOSED;
+    private long openedAt;
+    private int halfOpenInFlight;
+
+    private final Counter rejectedCounter;
+
+    public GeminiCircuitBreaker(MeterRegistry meterRegistry,
+                                @Value("${gemini.circuit.window-size:20}") int windowSize,
+                                @Value("${gemini.circuit.min-calls:5}") int minCalls,
+                                @Value("${gemini.circuit.failure-rate-threshold:0.5}") double failureRateThreshold,
+                                @Value("${gemini.circuit.open-duration-ms:30000}") long openDurationMs,
+                                @Value("${gemini.circuit.half-open-max-calls:1}") int halfOpenMaxCalls) {
+        this.windowSize = Math.max(1, windowSize);
+        this.minCalls = Math.max(1, Math.min(minCalls, this.windowSize));
+        this.failureRateThreshold = failureRateThreshold;
+        this.openDurationMs = openDurationMs;
+        this.halfOpenMaxCalls = Math.max(1, halfOpenMaxCalls);
+        this.window = new boolean[this.windowSize];
+
+        meterRegistry.gauge("gemini.circuit.state", this, cb -> cb.getState().ordinal());
+        this.rejectedCounter = Counter.builder("gemini.circuit.rejected")
+                .description("Llamadas rechazadas con el circuito abierto").register(meterRegistry);
+    }
+
+    /**
+     * Indica si se puede llamar a Gemini. En HALF_OPEN reserva uno de los cupos de prueba.
+     */
+    public synchronized boolean tryAcquire() {
+        if (state == State.OPEN) {
+            if (System.currentTimeMillis() - openedAt < openDurationMs) {
+                rejectedCounter.increment();
+                return false;
+            }
+            state = State.HALF_OPEN;
+            halfOpenInFlight = 0;
+            log.info("Circuito de Gemini en HALF_OPEN, probando disponibilidad");
+        }
+        if (state == State.HALF_OPEN) {
+            if (halfOpenInFlight >= halfOpenMaxCalls) {
+                rejectedCounter.increment();
+                return false;
+            }
+            halfOpenInFlight++;
+        }
+        return true;
+    }
+
+    // Para decidir rutas sin reservar cupo (p.ej. usar el análisis legacy directamente)
+    public synchronized boolean isOpen() {
+        return state == State.OPEN && System.currentTimeMillis() - openedAt < openDurationMs;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public synchronized void onSuccess() {
+        if (state == State.HALF_OPEN) {
+            log.info("Gemini respondió correctamente, cerrando circuito");
+            close();
+            return;
+        }
+        record(false);
+    }
+
+    public synchronized void onError(Throwable error) {
+        if (!isTransientFailure(error)) {
+            // Errores del cliente (400, 403...) no indican caída del servicio
+            onIgnored();
+            return;
+        }
+        if (state == State.HALF_OPEN) {
+            open();
+            return;
+        }
+        record(true);
+        if (windowCount >= minCalls && (double) windowFailures / windowCount >= failureRateThreshold) {
+            open();
+        }
+    }
+
+    // Llamada cancelada o con error no atribuible a Gemini: solo libera el cupo de prueba
+    public synchronized void onIgnored() {
+        if (state == State.HALF_OPEN && halfOpenInFlight > 0) {
+            halfOpenInFlight--;
+        }
+    }
+
+    public static boolean isTransientFailure(Throwable error) {
+        if (error instanceof TimeoutException || error instanceof WebClientRequestException) return true;
+        if (error instanceof WebClientResponseException wcre) {
+            int status = wcre.getStatusCode().value();
+            return status == 429 || status >= 500;
+        }
+        return false;
+    }
+
+    private void record(boolean failure) {
+        if (windowCount == windowSize) {
+            if (window[windowIndex]) windowFailures--;
+        } else {
+            windowCount++;
+        }
+        window[windowIndex] = failure;
+        if (failure) windowFailures++;
+        windowIndex = (windowIndex + 1) % windowSize;
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = System.currentTimeMillis();
+        log.warn("Circuito de Gemini ABIERTO durante {} ms (fallos {}/{})", openDurationMs, windowFailures, windowCount);
+    }
+
+    private void close() {
+        state = State.CLOSED;
+        windowIndex = 0;
+        windowCount = 0;
+        windowFailures = 0;
+        Arrays.fill(window, false);
+    }
+}
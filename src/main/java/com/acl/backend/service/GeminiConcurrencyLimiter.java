@@ -0,0 +1,219 @@
+package com.acl.backend.service;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+/**
+ * Limitador adaptativo (AIMD) de llamadas concurrentes a Gemini.
+ * - Aumento aditivo: con latencia estable el límite crece ~1 permiso por cada "límite" llamadas exitosas.
+ * - Disminución multiplicativa: ante 429, 5xx, timeouts o latencia muy por encima de la media.
+ * Las llamadas que exceden el límite esperan en una cola acotada, con tiempo máximo de espera.
+ */
+@Component
+public class GeminiConcurrencyLimiter {
+
+    private static final Logger log = LoggerFactory.getLogger(GeminiConcurrencyLimiter.class);
+
+    private static final int WAITING = 0;
+    private static final int GRANTED = 1;
+    private static final int ABANDONED = 2;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final int maxQueue;
+    private final Duration maxWait;
+    private final double latencyTolerance;
+
+    private final Deque<Waiter> waiters = new ArrayDeque<>();
+    private double limit;
+    private int inFlight;
+    private double avgLatencyMs;
+
+    private final Counter rejectedCounter;
+    private final Counter timeoutCounter;
+
+    public GeminiConcurrencyLimiter(MeterRegistry meterRegistry,
+                                    @Value("${gemini.limiter.initial-limit:4}") int initialLimit,
+                                    @Value("${gemini.limiter.min-limit:1}") int minLimit,
+                                    @Value("${gemini.limiter.max-limit:32}") int maxLimit,
+                                    @Value("${gemini.limiter.max-queue:100}") int maxQueue,
+                                    @Value("${gemini.limiter.max-wait-ms:30000}") long maxWaitMs,
+                                    @Value("${gemini.limiter.latency-tolerance:2.0}") double latencyTolerance) {
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.maxQueue = maxQueue;
+        this.maxWait = Duration.ofMillis(maxWaitMs);
+        this.latencyTolerance = latencyTolerance;
+        this.limit = Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit));
+
+        meterRegistry.gauge("gemini.limiter.limit", this, GeminiConcurrencyLimiter::getLimit);
+        meterRegistry.gauge("gemini.limiter.inflight", this, GeminiConcurrencyLimiter::getInFlight);
+        meterRegistry.gauge("gemini.limiter.queue", this, GeminiConcurrencyLimiter::getQueueDepth);
+        this.rejectedCounter = Counter.builder("gemini.limiter.rejected")
+                .description("Llamadas rechazadas por cola llena").register(meterRegistry);
+        this.timeoutCounter = Counter.builder("gemini.limiter.wait.timeouts")
+                .description("Llamadas que superaron el tiempo máximo de espera en cola").register(meterRegistry);
+    }
+
+    // Ejecuta una llamada de respuesta única cuando haya un permiso disponible
+    public <T> Mono<T> execute(Supplier<Mono<T>> call) {
+        return acquire().flatMap(permit -> {
+            long start = System.nanoTime();
+            return Mono.defer(call)
+                    .doOnSuccess(v -> release(permit, null, System.nanoTime() - start))
+                    .doOnError(e -> release(permit, e, System.nanoTime() - start))
+                    .doOnCancel(() -> release(permit, null, -1));
+        });
+    }
+
+    // Ejecuta una llamada en streaming; el permiso se mantiene hasta que termina el stream
+    public <T> Flux<T> executeMany(Supplier<Flux<T>> call) {
+        return acquire().flatMapMany(permit -> {
+            long start = System.nanoTime();
+            return Flux.defer(call)
+                    .doOnComplete(() -> release(permit, null, System.nanoTime() - start))
+                    .doOnError(e -> release(permit, e, System.nanoTime() - start))
+                    .doOnCancel(() -> release(permit, null, -1));
+        });
+    }
+
+    public synchronized double getLimit() {
+        return limit;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    public synchronized int getQueueDepth() {
+        return waiters.size();
+    }
+
+    private Mono<Permit> acquire() {
+        return Mono.defer(() -> {
+            Waiter waiter;
+            synchronized (this) {
+                if (inFlight < effectiveLimit()) {
+                    inFlight++;
+                    return Mono.just(new Permit());
+                }
+                if (waiters.size() >= maxQueue) {
+                    rejectedCounter.increment();
+                    return Mono.error(new RuntimeException("Demasiadas solicitudes a Gemini en cola, intenta más tarde"));
+                }
+                waiter = new Waiter();
+                waiters.addLast(waiter);
+            }
+
+            return waiter.sink.asMono()
+                    .timeout(maxWait, Mono.defer(() -> {
+                        if (waiter.state.compareAndSet(WAITING, ABANDONED)) {
+                            removeWaiter(waiter);
+                            timeoutCounter.increment();
+                            return Mono.error(new RuntimeException("Tiempo de espera agotado en la cola de Gemini"));
+                        }
+                        // El permiso llegó justo al vencer el plazo
+                        return Mono.justOrEmpty(waiter.permit);
+                    }))
+                    .doOnCancel(() -> {
+                        if (waiter.state.compareAndSet(WAITING, ABANDONED)) {
+                            removeWaiter(waiter);
+                        } else if (waiter.permit != null) {
+                            release(waiter.permit, null, -1);
+                        }
+                    });
+        });
+    }
+
+    private synchronized void removeWaiter(Waiter waiter) {
+        waiters.remove(waiter);
+    }
+
+    /**
+     * Libera el permiso, ajusta el límite según el resultado y cede permisos a la cola.
+     * elapsedNanos negativo indica cancelación: no se usa para ajustar el límite.
+     */
+    private void release(Permit permit, Throwable error, long elapsedNanos) {
+        if (!permit.released.compareAndSet(false, true)) return;
+
+        List<Waiter> granted = new ArrayList<>();
+        synchronized (this) {
+            inFlight--;
+            if (elapsedNanos >= 0) {
+                adjustLimit(error, elapsedNanos / 1_000_000.0);
+            }
+            while (inFlight < effectiveLimit() && !waiters.isEmpty()) {
+                Waiter next = waiters.pollFirst();
+                if (next.state.compareAndSet(WAITING, GRANTED)) {
+                    inFlight++;
+                    next.permit = new Permit();
+                    granted.add(next);
+                }
+            }
+        }
+        granted.forEach(w -> w.sink.tryEmitValue(w.permit));
+    }
+
+    // Se llama con el monitor tomado
+    private void adjustLimit(Throwable error, double latencyMs) {
+        if (error != null) {
+            if (isOverloadSignal(error)) {
+                limit = Math.max(minLimit, limit * 0.5);
+                log.warn("Gemini sobrecargado ({}), límite de concurrencia reducido a {}",
+                        error.getClass().getSimpleName(), String.format("%.1f", limit));
+            }
+            return;
+        }
+
+        boolean latencyRising = avgLatencyMs > 0 && latencyMs > avgLatencyMs * latencyTolerance;
+        avgLatencyMs = avgLatencyMs == 0 ? latencyMs : avgLatencyMs * 0.9 + latencyMs * 0.1;
+
+        if (latencyRising) {
+            limit = Math.max(minLimit, limit * 0.9);
+        } else {
+            limit = Math.min(maxLimit, limit + 1.0 / limit);
+        }
+    }
+
+    private boolean isOverloadSignal(Throwable error) {
+        if (error instanceof TimeoutException) return true;
+        if (error instanceof WebClientResponseException wcre) {
+            int status = wcre.getStatusCode().value();
+            return status == 429 || status >= 500;
+        }
+        return false;
+    }
+
+    private int effectiveLimit() {
+        return Math.max(minLimit, (int) limit);
+    }
+
+    private static final class Permit {
+        private final AtomicBoolean released = new AtomicBoolean(false);
+    }
+
+    private static final class Waiter {
+        private final Sinks.One<Permit> sink = Sinks.one();
+        private final AtomicInteger state = new AtomicInteger(WAITING);
+        private volatile Permit permit;
+    }
+}
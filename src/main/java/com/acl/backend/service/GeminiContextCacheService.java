@@ -0,0 +1,276 @@
+package com.acl.backend.service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import com.acl.backend.util.HashUtils;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Cache de contexto de Gemini (cachedContents) para prefijos de prompt que se repiten,
+ * como el texto de un contrato en una sesión de preguntas.
+ *
+ * El prefijo se sube una vez y las llamadas siguientes envían solo la parte variable.
+ * Modos (gemini.context-cache.mode):
+ *  - remote: usa la API de cachedContents de Gemini.
+ *  - local: sustituto sin red que guarda el prefijo en memoria y envía el prompt completo;
+ *    mantiene el mismo ciclo de vida (TTL, desalojo, métricas) para probar sin la API.
+ *  - off: siempre prompt completo.
+ *
+ * Gemini exige un mínimo de tokens para cachear; los prefijos más cortos van sin cache.
+ */
+@Service
+public class GeminiContextCacheService {
+
+    private static final Logger log = LoggerFactory.getLogger(GeminiContextCacheService.class);
+
+    // No usar una entrada a la que le queda menos de este margen antes de expirar en Gemini
+    private static final Duration EXPIRY_MARGIN = Duration.ofSeconds(60);
+
+    private final GeminiService geminiService;
+    private final TokenEstimator tokenEstimator;
+    private final MeterRegistry meterRegistry;
+
+    private final String mode;
+    private final long ttlSeconds;
+    private final int minTokens;
+    private final int maxEntries;
+
+    // Entradas vigentes por hash del prefijo, en orden de uso (LRU)
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    // Creaciones en curso: preguntas simultáneas sobre el mismo contrato comparten una sola creación
+    private final ConcurrentHashMap<String, Mono<Entry>> creating = new ConcurrentHashMap<>();
+
+    public GeminiContextCacheService(GeminiService geminiService,
+                                     TokenEstimator tokenEstimator,
+                                     MeterRegistry meterRegistry,
+                                     @Value("${gemini.context-cache.mode:local}") String mode,
+                                     @Value("${gemini.context-cache.ttl-seconds:1800}") long ttlSeconds,
+                                     @Value("${gemini.context-cache.min-tokens:1024}") int minTokens,
+                                     @Value("${gemini.context-cache.max-entries:200}") int maxEntries) {
+        this.geminiService = geminiService;
+        this.tokenEstimator = tokenEstimator;
+        this.meterRegistry = meterRegistry;
+        this.mode = mode.trim().toLowerCase();
+        this.ttlSeconds = ttlSeconds;
+        this.minTokens = minTokens;
+        this.maxEntries = maxEntries;
+        meterRegistry.gauge("gemini.context-cache.entries", entries, this::sizeOf);
+    }
+
+    /**
+     * Genera la respuesta para prefix + suffix reutilizando el prefijo cacheado si existe.
+     */
+    public Mono<String> generate(String prefix, String suffix) {
+        if (!shouldCache(prefix)) {
+            count("bypass");
+            return geminiService.generateContentAsync(join(prefix, suffix));
+        }
+
+        String key = HashUtils.sha256(prefix);
+        return acquire(key, prefix)
+                .flatMap(entry -> callWith(entry, suffix)
+                        .onErrorResume(GeminiContextCacheService::isMissingCache, e -> {
+                            // Gemini ya no tiene el contexto (expiró o se borró): se olvida y se envía completo
+                            log.warn("Contexto cacheado no disponible en Gemini, se envía el prompt completo");
+                            invalidate(key);
+                            count("fallback");
+                            return geminiService.generateContentAsync(join(prefix, suffix));
+                        }))
+                .switchIfEmpty(Mono.defer(() -> {
+                    count("fallback");
+                    return geminiService.generateContentAsync(join(prefix, suffix));
+                }));
+    }
+
+    /**
+     * Variante en streaming de generate. Un contexto perdido solo se reintenta completo
+     * si aún no se emitió ningún fragmento.
+     */
+    public Flux<String> stream(String prefix, String suffix) {
+        if (!shouldCache(prefix)) {
+            count("bypass");
+            return geminiService.generateContentStream(join(prefix, suffix));
+        }
+
+        String key = HashUtils.sha256(prefix);
+        return acquire(key, prefix)
+                .flatMapMany(entry -> streamWith(entry, suffix)
+                        .onErrorResume(GeminiContextCacheService::isMissingCache, e -> {
+                            log.warn("Contexto cacheado no disponible en Gemini, se envía el prompt completo");
+                            invalidate(key);
+                            count("fallback");
+                            return geminiService.generateContentStream(join(prefix, suffix));
+                        }))
+                .switchIfEmpty(Flux.defer(() -> {
+                    count("fallback");
+                    return geminiService.generateContentStream(join(prefix, suffix));
+                }));
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    // Elimina las entradas vencidas (y su recurso en Gemini)
+    @Scheduled(fixedDelayString = "${gemini.context-cache.cleanup-interval-ms:60000}")
+    public void evictExpired() {
+        List<Entry> expired = new ArrayList<>();
+        Instant now = Instant.now();
+        synchronized (entries) {
+            Iterator<Entry> it = entries.values().iterator();
+            while (it.hasNext()) {
+                Entry e = it.next();
+                if (!e.isUsable(now)) {
+                    it.remove();
+                    expired.add(e);
+                }
+            }
+        }
+        expired.forEach(e -> release(e, "expired"));
+    }
+
+    private boolean shouldCache(String prefix) {
+        return !"off".equals(mode) && tokenEstimator.estimateTokens(prefix) >= minTokens;
+    }
+
+    /**
+     * Entrada vigente para el prefijo, creándola si hace falta. Vacío si no se pudo crear.
+     */
+    private Mono<Entry> acquire(String key, String prefix) {
+        return Mono.defer(() -> {
+            Entry existing;
+            synchronized (entries) {
+                existing = entries.get(key);
+            }
+            if (existing != null && existing.isUsable(Instant.now())) {
+                count("hit");
+                return Mono.just(existing);
+            }
+
+            return creating.computeIfAbsent(key, k -> create(k, prefix)
+                    .doFinally(signal -> creating.remove(k))
+                    .cache());
+        });
+    }
+
+    private Mono<Entry> create(String key, String prefix) {
+        count("miss");
+        Mono<Entry> created;
+        if ("remote".equals(mode)) {
+            created = geminiService.createCachedContent(prefix, ttlSeconds)
+                    .map(cached -> new Entry(key, cached.getName(), null, expiresAt()));
+        } else {
+            created = Mono.fromSupplier(() -> new Entry(key, null, prefix, expiresAt()));
+        }
+
+        return created
+                .doOnNext(this::store)
+                .onErrorResume(e -> {
+                    log.warn("No se pudo cachear el contexto, se usará el prompt completo: {}", e.getMessage());
+                    return Mono.empty();
+                });
+    }
+
+    private Mono<String> callWith(Entry entry, String suffix) {
+        if (entry.remoteName != null) {
+            return geminiService.generateContentAsync(suffix, entry.remoteName);
+        }
+        return geminiService.generateContentAsync(join(entry.localPrefix, suffix));
+    }
+
+    private Flux<String> streamWith(Entry entry, String suffix) {
+        if (entry.remoteName != null) {
+            return geminiService.generateContentStream(suffix, entry.remoteName);
+        }
+        return geminiService.generateContentStream(join(entry.localPrefix, suffix));
+    }
+
+    private void store(Entry entry) {
+        List<Entry> evicted = new ArrayList<>();
+        synchronized (entries) {
+            Entry previous = entries.put(entry.key, entry);
+            if (previous != null && previous != entry) evicted.add(previous);
+            Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+            while (entries.size() > maxEntries && it.hasNext()) {
+                evicted.add(it.next().getValue());
+                it.remove();
+            }
+        }
+        evicted.forEach(e -> release(e, "evicted"));
+    }
+
+    private void invalidate(String key) {
+        synchronized (entries) {
+            entries.remove(key);
+        }
+    }
+
+    // Borra el recurso remoto sin esperar; si falla, Gemini lo elimina al vencer el TTL
+    private void release(Entry entry, String reason) {
+        meterRegistry.counter("gemini.context-cache.evictions", "reason", reason).increment();
+        if (entry.remoteName != null) {
+            geminiService.deleteCachedContent(entry.remoteName)
+                    .subscribe(null, e -> log.debug("No se pudo borrar {}: {}", entry.remoteName, e.getMessage()));
+        }
+    }
+
+    private Instant expiresAt() {
+        return Instant.now().plusSeconds(ttlSeconds);
+    }
+
+    private void count(String result) {
+        meterRegistry.counter("gemini.context-cache.requests", "result", result).increment();
+    }
+
+    private int sizeOf(Map<String, Entry> map) {
+        synchronized (entries) {
+            return map.size();
+        }
+    }
+
+    private static String join(String prefix, String suffix) {
+        return prefix + "\n\n" + suffix;
+    }
+
+    private static boolean isMissingCache(Throwable e) {
+        return e instanceof WebClientResponseException wcre
+                && (wcre.getStatusCode().value() == 404 || wcre.getStatusCode().value() == 403);
+    }
+
+    private static final class Entry {
+        private final String key;
+        private final String remoteName;
+        private final String localPrefix;
+        private final Instant expiresAt;
+
+        private Entry(String key, String remoteName, String localPrefix, Instant expiresAt) {
+            this.key = key;
+            this.remoteName = remoteName;
+            this.localPrefix = localPrefix;
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean isUsable(Instant now) {
+            return now.plus(EXPIRY_MARGIN).isBefore(expiresAt);
+        }
+    }
+}
@@ -0,0 +1,299 @@
+package com.acl.backend.service;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.Mono;
+
+/**
+ * Peticiones con cobertura (hedging) para las operaciones interactivas (Q&A y chat general).
+ *
+ * Si la llamada no responde dentro del percentil configurado de las latencias recientes de la
+ * operación, se lanza una segunda idéntica; se usa la primera que responde y la otra se cancela.
+ * En streaming cuenta el primer fragmento. Las coberturas salen de un presupuesto que crece
+ * max-rate por petición (con tope burst), así nunca superan esa fracción del tráfico.
+ */
+@Component
+public class GeminiHedger {
+
+    private static final Logger log = LoggerFactory.getLogger(GeminiHedger.class);
+
+    private final MeterRegistry meterRegistry;
+    private final boolean enabled;
+    private final Set<String> operations;
+    private final double percentile;
+    private final long minDelayMs;
+    private final long maxDelayMs;
+    private final long initialDelayMs;
+    private final int window;
+    private final int minSamples;
+    private final double maxRate;
+    private final double burst;
+
+    private final ConcurrentHashMap<String, LatencyWindow> latencies = new ConcurrentHashMap<>();
+    private double budget;
+
+    public GeminiHedger(MeterRegistry meterRegistry,
+                        @Value("${gemini.hedging.enabled:true}") boolean enabled,
+                        @Value("${gemini.hedging.operations:qa,general_chat}") String operations,
+                        @Value("${gemini.hedging.percentile:0.95}") double percentile,
+                        @Value("${gemini.hedging.min-delay-ms:1000}") long minDelayMs,
+                        @Value("${gemini.hedging.max-delay-ms:20000}") long maxDelayMs,
+                        @Value("${gemini.hedging.initial-delay-ms:10000}") long initialDelayMs,
+                        @Value("${gemini.hedging.window:200}") int window,
+                        @Value("${gemini.hedging.min-samples:20}") int minSamples,
+                        @Value("${gemini.hedging.max-rate:0.05}") double maxRate,
+                        @Value("${gemini.hedging.burst:5}") double burst) {
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.operations = Arrays.stream(operations.split(","))
+                .map(String::trim)
+                .filter(s -> !s.isEmpty())
+                .collect(Collectors.toSet());
+        this.percentile = percentile;
+        this.minDelayMs = minDelayMs;
+        this.maxDelayMs = maxDelayMs;
+        this.initialDelayMs = initialDelayMs;
+        this.window = Math.max(1, window);
+        this.minSamples = minSamples;
+        this.maxRate = maxRate;
+        this.burst = Math.max(1, burst);
+        // Se empieza con el presupuesto lleno: una cobertura no espera a que haya tráfico
+        this.budget = this.burst;
+    }
+
+    public boolean appliesTo(String operation) {
+        return enabled && operations.contains(operation);
+    }
+
+    /**
+     * La llamada con cobertura si la operación la usa; si no, la llamada tal cual.
+     */
+    public <T> Mono<T> hedge(String operation, Supplier<Mono<T>> call) {
+        return hedge(operation, call, null);
+    }
+
+    /**
+     * Igual que hedge; onDiscarded se ejecuta cuando se cancela el intento perdedor de una carrera
+     * con cobertura. Gemini ya lo recibió y lo factura aunque su respuesta se descarte.
+     */
+    public <T> Mono<T> hedge(String operation, Supplier<Mono<T>> call, Runnable onDiscarded) {
+        if (!appliesTo(operation)) return Mono.defer(call);
+        return hedgeMany(operation, () -> call.get().flux(), onDiscarded).next();
+    }
+
+    // Streaming: la carrera se decide por el primer fragmento; después sigue solo el ganador
+    public <T> Flux<T> hedgeMany(String operation, Supplier<Flux<T>> call) {
+        return hedgeMany(operation, call, null);
+    }
+
+    public <T> Flux<T> hedgeMany(String operation, Supplier<Flux<T>> call, Runnable onDiscarded) {
+        if (!appliesTo(operation)) return Flux.defer(call);
+        return Flux.create(sink -> new Race<>(operation, call, sink, onDiscarded).start());
+    }
+
+    // Espera antes de lanzar la cobertura: percentil de las latencias recientes, acotado
+    public long delayMs(String operation) {
+        LatencyWindow latency = latencies.get(operation);
+        if (latency == null || latency.size() < minSamples) return initialDelayMs;
+        return Math.max(minDelayMs, Math.min(maxDelayMs, latency.percentile(percentile)));
+    }
+
+    private synchronized void onRequest() {
+        budget = Math.min(burst, budget + maxRate);
+    }
+
+    private synchronized boolean tryAcquire() {
+        if (budget < 1) return false;
+        budget -= 1;
+        return true;
+    }
+
+    private void recordLatency(String operation, long ms) {
+        latencies.computeIfAbsent(operation, op -> {
+            LatencyWindow created = new LatencyWindow(window);
+            Gauge.builder("gemini.hedge.delay", this, h -> h.delayMs(op))
+                    .description("Espera antes de lanzar la cobertura (ms)")
+                    .tag("operation", op)
+                    .register(meterRegistry);
+            return created;
+        }).add(ms);
+    }
+
+    private void count(String name, String operation) {
+        meterRegistry.counter(name, "operation", operation).increment();
+    }
+
+    /**
+     * Carrera entre la llamada original (0) y la cobertura (1). Gana la primera que emite un
+     * valor (o termina vacía); un error solo se propaga cuando no queda otra en curso.
+     */
+    private final class Race<T> {
+        private final String operation;
+        private final Supplier<Flux<T>> call;
+        private final FluxSink<T> sink;
+        private final Runnable onDiscarded;
+
+        private Disposable primary;
+        private Disposable hedge;
+        private Disposable timer;
+        private int winner = -1;
+        private boolean hedgeLaunched;
+        private int failures;
+        private boolean finished;
+
+        private Race(String operation, Supplier<Flux<T>> call, FluxSink<T> sink, Runnable onDiscarded) {
+            this.operation = operation;
+            this.call = call;
+            this.sink = sink;
+            this.onDiscarded = onDiscarded;
+        }
+
+        private void start() {
+            onRequest();
+            sink.onDispose(this::cancelAll);
+            synchronized (this) {
+                primary = subscribe(0);
+                if (winner == -1 && !finished) {
+                    timer = Mono.delay(Duration.ofMillis(delayMs(operation))).subscribe(t -> launchHedge());
+                }
+            }
+        }
+
+        private Disposable subscribe(int attempt) {
+            long start = System.nanoTime();
+            return Flux.defer(call)
+                    .contextWrite(sink.contextView())
+                    .subscribe(value -> onNext(attempt, value, start),
+                            error -> onError(attempt, error),
+                            () -> onComplete(attempt, start));
+        }
+
+        private void launchHedge() {
+            synchronized (this) {
+                if (winner != -1 || finished) return;
+                if (!tryAcquire()) {
+                    count("gemini.hedge.skipped", operation);
+                    return;
+                }
+                hedgeLaunched = true;
+                count("gemini.hedge.fired", operation);
+                log.debug("Cobertura de {} lanzada tras {} ms", operation, delayMs(operation));
+                hedge = subscribe(1);
+            }
+        }
+
+        private void onNext(int attempt, T value, long start) {
+            boolean discarded = false;
+            synchronized (this) {
+                if (winner == -1) discarded = win(attempt, start);
+                if (winner != attempt) return;
+            }
+            if (discarded) discarded();
+            sink.next(value);
+        }
+
+        private void onComplete(int attempt, long start) {
+            boolean discarded = false;
+            synchronized (this) {
+                if (winner == -1) discarded = win(attempt, start);
+                if (winner != attempt) return;
+                finished = true;
+            }
+            if (discarded) discarded();
+            sink.complete();
+        }
+
+        private void onError(int attempt, Throwable error) {
+            synchronized (this) {
+                if (finished) return;
+                if (winner == -1) {
+                    failures++;
+                    // Si la otra sigue en curso se espera su resultado. Un fallo de la original antes
+                    // de la cobertura se propaga: la cobertura no es un reintento
+                    boolean otherRunning = hedgeLaunched && failures < 2;
+                    if (otherRunning) return;
+                } else if (winner != attempt) {
+                    return;
+                }
+                finished = true;
+                dispose(timer);
+            }
+            sink.error(error);
+        }
+
+        // Se llama con el lock tomado. Indica si se canceló un perdedor aún en curso
+        private boolean win(int attempt, long start) {
+            winner = attempt;
+            recordLatency(operation, (System.nanoTime() - start) / 1_000_000);
+            dispose(timer);
+            dispose(attempt == 0 ? hedge : primary);
+            if (attempt == 1) count("gemini.hedge.won", operation);
+            // Con un fallo previo el perdedor ya había terminado: no queda nada en curso que cancelar
+            return hedgeLaunched && failures == 0;
+        }
+
+        private void discarded() {
+            if (onDiscarded == null) return;
+            try {
+                onDiscarded.run();
+            } catch (RuntimeException e) {
+                log.warn("Error registrando el intento descartado de {}: {}", operation, e.getMessage());
+            }
+        }
+
+        private synchronized void cancelAll() {
+            dispose(timer);
+            dispose(primary);
+            dispose(hedge);
+        }
+
+        private void dispose(Disposable disposable) {
+            if (disposable != null) disposable.dispose();
+        }
+    }
+
+    /**
+     * Últimas N latencias (ms) de una operación en un buffer circular.
+     */
+    private static final class LatencyWindow {
+        private final long[] samples;
+        private int next;
+        private int count;
+
+        private LatencyWindow(int size) {
+            this.samples = new long[size];
+        }
+
+        private synchronized void add(long ms) {
+            samples[next] = ms;
+            next = (next + 1) % samples.length;
+            if (count < samples.length) count++;
+        }
+
+        private synchronized int size() {
+            return count;
+        }
+
+        private synchronized long percentile(double p) {
+            long[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(p * count) - 1;
+            return sorted[Math.max(0, Math.min(count - 1, index))];
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.acl.backend.service;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Elige el modelo de Gemini de cada llamada según la operación, el tamaño del prompt
+ * y la profundidad pedida por el cliente.
+ *
+ * - depth explícito: quick → lite, standard → standard, deep → deep.
+ * - Operaciones ligeras (chat general, prompts directos) con prompts cortos → lite.
+ * - Llamadas sobre un contexto cacheado → standard: el contexto pertenece al modelo que lo creó.
+ * - Todo lo demás (análisis completo, preguntas sobre contratos) → standard.
+ */
+@Service
+public class GeminiModelRouter {
+
+    private static final Logger log = LoggerFactory.getLogger(GeminiModelRouter.class);
+
+    public enum Tier {
+        LITE,
+        STANDARD,
+        DEEP;
+
+        // Valor de la etiqueta en métricas y en token_usage
+        public String tag() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private final Map<Tier, String> models = new EnumMap<>(Tier.class);
+    private final TokenEstimator tokenEstimator;
+    private final MeterRegistry meterRegistry;
+    private final boolean enabled;
+    private final int liteMaxPromptTokens;
+    private final Set<String> lightOperations;
+
+    public GeminiModelRouter(TokenEstimator tokenEstimator, MeterRegistry meterRegistry,
+                             @Value("${gemini.models.lite:gemini-2.5-flash-lite}") String liteModel,
+                             @Value("${gemini.models.standard:${gemini.api.model:gemini-2.5-flash}}") String standardModel,
+                             @Value("${gemini.models.deep:gemini-2.5-pro}") String deepModel,
+                             @Value("${gemini.routing.enabled:true}") boolean enabled,
+                             @Value("${gemini.routing.lite-max-prompt-tokens:2000}") int liteMaxPromptTokens,
+                             @Value("${gemini.routing.light-operations:general_chat,other,chat_memory}") String lightOperations) {
+        this.tokenEstimator = tokenEstimator;
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.liteMaxPromptTokens = liteMaxPromptTokens;
+        this.lightOperations = Arrays.stream(lightOperations.split(","))
+                .map(String::trim)
+                .filter(s -> !s.isEmpty())
+                .collect(Collectors.toSet());
+        models.put(Tier.LITE, liteModel);
+        models.put(Tier.STANDARD, standardModel);
+        models.put(Tier.DEEP, deepModel);
+        log.info("Modelos de Gemini: lite={}, standard={}, deep={} (enrutamiento {})",
+                liteModel, standardModel, deepModel, enabled ? "activo" : "desactivado");
+    }
+
+    /**
+     * Nivel de modelo para una llamada y registro de la decisión en métricas
+     * (gemini.routing.decisions{operation,tier}).
+     */
+    public Tier route(String operation, AnalysisDepth depth, String prompt, boolean cachedContext) {
+        Tier tier = decide(operation, depth, prompt, cachedContext);
+        meterRegistry.counter("gemini.routing.decisions", "operation", operation, "tier", tier.tag()).increment();
+        return tier;
+    }
+
+    // Nivel que corresponde a una profundidad; sin profundidad, el modelo estándar
+    public Tier tierFor(AnalysisDepth depth) {
+        if (!enabled || depth == null) return Tier.STANDARD;
+        return switch (depth) {
+            case QUICK -> Tier.LITE;
+            case STANDARD -> Tier.STANDARD;
+            case DEEP -> Tier.DEEP;
+        };
+    }
+
+    public String modelFor(Tier tier) {
+        return models.get(tier);
+    }
+
+    private Tier decide(String operation, AnalysisDepth depth, String prompt, boolean cachedContext) {
+        if (!enabled || cachedContext) return Tier.STANDARD;
+        if (depth != null) return tierFor(depth);
+        if (lightOperations.contains(operation) && tokenEstimator.estimateTokens(prompt) <= liteMaxPromptTokens) {
+            return Tier.LITE;
+        }
+        return Tier.STANDARD;
+    }
+}
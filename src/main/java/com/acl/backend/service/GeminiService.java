@@ -1,51 +1,129 @@
 package com.acl.backend.service;
 
+import java.io.IOException;
+import java.io.StringReader;
 import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
 
 import com.acl.backend.data.GeminiData.*;
 import com.acl.backend.data.GeminiData.GeminiRequest;
 import com.acl.backend.data.GeminiData.GeminiResponse;
+import com.acl.backend.exception.GeminiUnavailableException;
+import com.acl.backend.service.GeminiModelRouter.Tier;
+import com.acl.backend.util.HashUtils;
 import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+import reactor.util.retry.Retry;
 
 @Service
 public class GeminiService {
 
     private static final Logger log = LoggerFactory.getLogger(GeminiService.class);
+    // Cada evento se decodifica directo a GeminiResponse (sin pasar por un String intermedio)
+    private static final ParameterizedTypeReference<ServerSentEvent<GeminiResponse>> SSE_TYPE =
+            new ParameterizedTypeReference<>() {};
 
     private final WebClient webClient;
     private final Gson gson;
 
+    // Llamadas en curso por hash de prompt: los llamadores concurrentes comparten una sola petición
+    private final ConcurrentHashMap<String, Mono<GeminiResponse>> inFlight = new ConcurrentHashMap<>();
+    private final Counter coalescedCounter;
+    private final Timer firstTokenTimer;
+
     @Value("${gemini.api.key}")
     private String apiKey;
 
-    @Value("${gemini.api.url:https://generativelanguage.googleapis.com}")
-    private String apiUrl;
-
-    @Value("${gemini.api.model:gemini-2.5-flash}")
-    private String model;
-
     @Value("${gemini.api.max-tokens:15000}")
     private int maxTokens;
 
     @Value("${gemini.api.temperature:0.2}")
     private double temperature;
 
-    public GeminiService(WebClient.Builder webClientBuilder){
+    private final GeminiConcurrencyLimiter concurrencyLimiter;
+    private final GeminiCircuitBreaker circuitBreaker;
+    private final TokenUsageService tokenUsageService;
+    private final TokenEstimator tokenEstimator;
+    private final GeminiModelRouter modelRouter;
+    private final GeminiHedger hedger;
+    private final Counter retryCounter;
+
+    @Value("${gemini.retry.max-retries:2}")
+    private int maxRetries;
+
+    @Value("${gemini.retry.initial-backoff-ms:500}")
+    private long initialBackoffMs;
+
+    @Value("${gemini.retry.max-backoff-ms:5000}")
+    private long maxBackoffMs;
+
+    // Las respuestas se registran recortadas: siempre en DEBUG, y en INFO solo una muestra
+    @Value("${gemini.log.payload-max-chars:500}")
+    private int payloadMaxChars;
+
+    @Value("${gemini.log.payload-sample-rate:0.01}")
+    private double payloadSampleRate;
+
+    public GeminiService(WebClient.Builder webClientBuilder, MeterRegistry meterRegistry,
+                         GeminiConcurrencyLimiter concurrencyLimiter,
+                         GeminiCircuitBreaker circuitBreaker,
+                         TokenUsageService tokenUsageService,
+                         TokenEstimator tokenEstimator,
+                         GeminiModelRouter modelRouter,
+                         GeminiHedger hedger,
+                         @Value("${gemini.api.url:https://generativelanguage.googleapis.com}") String apiUrl){
+        // URL configurable: permite apuntar a un servidor simulado en pruebas y benchmarks
         this.webClient = webClientBuilder
-                .baseUrl("https://generativelanguage.googleapis.com")
+                .baseUrl(apiUrl)
                 .defaultHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
                 .build();
         this.gson = new Gson();
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.circuitBreaker = circuitBreaker;
+        this.tokenUsageService = tokenUsageService;
+        this.tokenEstimator = tokenEstimator;
+        this.modelRouter = modelRouter;
+        this.hedger = hedger;
+        this.retryCounter = Counter.builder("gemini.requests.retries")
+                .description("Reintentos de llamadas a Gemini por errores transitorios")
+                .register(meterRegistry);
+        this.coalescedCounter = Counter.builder("gemini.requests.coalesced")
+                .description("Llamadas a Gemini que reutilizaron una petición idéntica en curso")
+                .register(meterRegistry);
+        meterRegistry.gauge("gemini.requests.inflight.unique", inFlight, ConcurrentHashMap::size);
+        this.firstTokenTimer = Timer.builder("gemini.stream.first-token")
+                .description("Tiempo hasta el primer fragmento en respuestas en streaming")
+                .register(meterRegistry);
     }
 
     // Genera contenido usando Gemini API
@@ -53,22 +131,13 @@ public class GeminiService {
         try {
             log.info("Llamando Api");
 
-            GeminiRequest request = new GeminiRequest(prompt, temperature, maxTokens);
-
-            String endpoint = String.format("/v1beta/models/%s:generateContent?key=%s",
-                    model, apiKey);
-
-            GeminiResponse response = webClient.post()
-                    .uri(endpoint)
-                    .bodyValue(request)
-                    .retrieve()
-                    .bodyToMono(GeminiResponse.class)
-                    .timeout(Duration.ofSeconds(60))
-                    .block();
+            // Sin contexto de Reactor: operación "other", el modelo depende del tamaño del prompt
+            Tier tier = route(Context.empty(), prompt, null);
+            GeminiResponse response = sharedCall(tier, prompt, null, null).block();
 
             if(response != null){
                 String result = response.getGeneratedText();
-                log.info("Respuesta de Gemini: {}", result);
+                logPayload(result);
                 return result;
             }
 
@@ -79,42 +148,327 @@ public class GeminiService {
         }
     }
 
+    /**
+     * La cuota del usuario (contexto de Reactor, ver UsageContext) se verifica antes de llamar,
+     * también cuando la llamada se comparte con una petición idéntica en curso.
+     */
     public Mono<String> generateContentAsync(String prompt) {
-        try {
-            GeminiRequest request = new GeminiRequest(prompt, temperature, maxTokens);
+        return generateContentAsync(prompt, null);
+    }
 
-            String endpoint = String.format("/v1beta/models/%s:generateContent?key=%s",
-                    model, apiKey);
+    /**
+     * Igual que generateContentAsync, pero el prompt se agrega a un contexto cacheado
+     * (cachedContents/...). Con cachedContent nulo es una llamada normal.
+     */
+    public Mono<String> generateContentAsync(String prompt, String cachedContent) {
+        return Mono.deferContextual(ctx -> {
+                    Tier tier = route(ctx, prompt, cachedContent);
+                    return tokenUsageService.checkQuota(UsageContext.userId(ctx))
+                            .then(Mono.defer(() -> sharedCall(tier, prompt, cachedContent, null)));
+                })
+                .map(GeminiResponse::getGeneratedText)
+                .doOnNext(this::logPayload)
+                .doOnError(e -> log.error("Error en llamada async a Gemini: {}", e.getMessage()));
+    }
 
-            return webClient.post()
-                    .uri(endpoint)
-                    .bodyValue(request)
-                    .retrieve()
-                    .bodyToMono(GeminiResponse.class)
-                    .timeout(Duration.ofSeconds(60))
-                    .map(GeminiResponse::getGeneratedText)
-                    .doOnError(e -> log.error("Error en llamada async a Gemini: {}", e.getMessage()));
+    /**
+     * Respuesta en modo JSON (responseMimeType application/json) restringida al esquema dado,
+     * decodificada directo al tipo pedido con el TypeAdapter de Gson (sin árbol JSON intermedio).
+     * Gemini garantiza JSON válido con esa forma: no hay markdown que limpiar.
+     *
+     * El JSON llega como valor string escapado dentro de la parte del candidato, así que cualquier
+     * lector tiene que desescaparlo a un String antes de decodificarlo: ese String es el texto de
+     * la parte ya decodificado con la respuesta, no una copia adicional.
+     */
+    public <T> Mono<T> generateStructuredAsync(String prompt, Map<String, Object> responseSchema, Class<T> type) {
+        TypeAdapter<T> adapter = gson.getAdapter(type);
+        return Mono.deferContextual(ctx -> {
+                    Tier tier = route(ctx, prompt, null);
+                    return tokenUsageService.checkQuota(UsageContext.userId(ctx))
+                            .then(Mono.defer(() -> sharedCall(tier, prompt, null, responseSchema)));
+                })
+                .map(GeminiResponse::getGeneratedText)
+                .doOnNext(this::logPayload)
+                .map(json -> decodeStructured(json, adapter))
+                .doOnError(e -> log.error("Error en llamada estructurada a Gemini: {}", e.getMessage()));
+    }
 
-        } catch (Exception e) {
-            log.error("Error preparando llamada async: {}", e.getMessage());
-            return Mono.error(e);
+    // Una respuesta vacía (p. ej. cortada por seguridad) es un error de formato, no un resultado nulo
+    private static <T> T decodeStructured(String json, TypeAdapter<T> adapter) {
+        T value = null;
+        if (!json.isBlank()) {
+            try (JsonReader reader = new JsonReader(new StringReader(json))) {
+                value = adapter.read(reader);
+                if (reader.peek() != JsonToken.END_DOCUMENT) {
+                    throw new JsonParseException("Contenido adicional después del JSON");
+                }
+            } catch (IOException | IllegalStateException e) {
+                throw new JsonParseException(e.getMessage(), e);
+            }
+        }
+        if (value == null) {
+            throw new JsonParseException("Respuesta estructurada vacía");
         }
+        return value;
+    }
+
+    /**
+     * Genera contenido en streaming (streamGenerateContent con alt=sse).
+     * Emite cada fragmento de texto a medida que Gemini lo produce.
+     */
+    public Flux<String> generateContentStream(String prompt) {
+        return generateContentStream(prompt, null);
+    }
+
+    public Flux<String> generateContentStream(String prompt, String cachedContent) {
+        return Flux.deferContextual(ctx -> {
+            Long userId = UsageContext.userId(ctx);
+            String operation = UsageContext.operation(ctx);
+            Tier tier = route(ctx, prompt, cachedContent);
+            return tokenUsageService.checkQuota(userId)
+                    .thenMany(Flux.defer(() -> streamRequest(tier, prompt, cachedContent, userId, operation)));
+        });
+    }
+
+    private Flux<String> streamRequest(Tier tier, String prompt, String cachedContent, Long userId, String operation) {
+        GeminiRequest request = new GeminiRequest(prompt, temperature, maxTokens);
+        request.setCachedContent(cachedContent);
+
+        String endpoint = String.format("/v1beta/models/%s:streamGenerateContent?alt=sse&key=%s",
+                modelRouter.modelFor(tier), apiKey);
+
+        long start = System.nanoTime();
+        AtomicBoolean first = new AtomicBoolean(true);
+        // Gemini envía el consumo acumulado en cada fragmento; se registra el último
+        AtomicReference<UsageMetadata> usage = new AtomicReference<>();
+
+        // Sin reintentos: el cliente ya puede haber recibido fragmentos. En chat y Q&A, si el primer
+        // fragmento se demora se abre un segundo stream y sigue el que responda antes (GeminiHedger)
+        Supplier<Flux<GeminiResponse>> attempt = () -> {
+            if (!circuitBreaker.tryAcquire()) {
+                return Flux.error(new GeminiUnavailableException("Gemini no disponible temporalmente"));
+            }
+            return concurrencyLimiter.executeMany(() -> webClient.post()
+                            .uri(endpoint)
+                            .accept(MediaType.TEXT_EVENT_STREAM)
+                            .bodyValue(request)
+                            .retrieve()
+                            .bodyToFlux(SSE_TYPE)
+                            // Tiempo máximo entre fragmentos
+                            .timeout(Duration.ofSeconds(60)))
+                    .doOnComplete(circuitBreaker::onSuccess)
+                    .doOnError(circuitBreaker::onError)
+                    .doOnCancel(circuitBreaker::onIgnored)
+                    .map(ServerSentEvent::data)
+                    .filter(Objects::nonNull);
+        };
+
+        return hedger.hedgeMany(operation, attempt, () -> recordHedged(userId, operation, tier, prompt))
+                .doOnNext(response -> {
+                    if (response.getUsageMetadata() != null) usage.set(response.getUsageMetadata());
+                })
+                .map(GeminiResponse::getGeneratedText)
+                .filter(text -> !text.isEmpty())
+                .doOnNext(text -> {
+                    if (first.compareAndSet(true, false)) {
+                        firstTokenTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                    }
+                })
+                .doOnComplete(() -> {
+                    tokenUsageService.record(userId, operation, tier.tag(), usage.get(), elapsedMs(start), true);
+                    // Con contexto cacheado el prompt enviado no es todo lo facturado: no se calibra
+                    tokenEstimator.observe(operation, cachedContent == null ? prompt : null, usage.get(), elapsedMs(start));
+                })
+                .doOnError(e -> {
+                    tokenUsageService.record(userId, operation, tier.tag(), usage.get(), elapsedMs(start), false);
+                    log.error("Error en streaming de Gemini: {}", e.getMessage());
+                });
+    }
+
+    // El intento descartado de una cobertura no trae usageMetadata: se registra el prompt estimado
+    private void recordHedged(Long userId, String operation, Tier tier, String prompt) {
+        tokenUsageService.recordHedged(userId, operation, tier.tag(), tokenEstimator.estimateTokens(prompt));
+    }
+
+    /**
+     * Devuelve la llamada en curso para el mismo prompt o inicia una nueva.
+     * Todos los llamadores reciben el mismo resultado o el mismo error.
+     */
+    private Mono<GeminiResponse> sharedCall(Tier tier, String prompt, String cachedContent,
+                                            Map<String, Object> responseSchema) {
+        // Las partes se hashean por bloques, sin concatenar el prompt en otro String
+        String key = HashUtils.sha256(modelRouter.modelFor(tier), temperature, maxTokens, cachedContent,
+                responseSchema != null ? responseSchema.hashCode() : null, prompt);
+
+        AtomicReference<Mono<GeminiResponse>> self = new AtomicReference<>();
+        Mono<GeminiResponse> call = executeRequest(tier, prompt, cachedContent, responseSchema)
+                .doFinally(signal -> inFlight.remove(key, self.get()))
+                .share();
+        self.set(call);
+
+        Mono<GeminiResponse> existing = inFlight.putIfAbsent(key, call);
+        if (existing != null) {
+            log.debug("Reutilizando llamada en curso a Gemini");
+            coalescedCounter.increment();
+            return existing;
+        }
+        return call;
+    }
+
+    private Mono<GeminiResponse> executeRequest(Tier tier, String prompt, String cachedContent,
+                                                Map<String, Object> responseSchema) {
+        GeminiRequest request = new GeminiRequest(prompt, temperature, maxTokens);
+        request.setCachedContent(cachedContent);
+        if (responseSchema != null) {
+            request.getGenerationConfig().setResponseMimeType(MediaType.APPLICATION_JSON_VALUE);
+            request.getGenerationConfig().setResponseSchema(responseSchema);
+        }
+
+        String endpoint = String.format("/v1beta/models/%s:generateContent?key=%s",
+                modelRouter.modelFor(tier), apiKey);
+
+        // El consumo se atribuye al contexto del primer llamador (una llamada compartida se cuenta una vez)
+        return Mono.deferContextual(ctx -> {
+            Long userId = UsageContext.userId(ctx);
+            String operation = UsageContext.operation(ctx);
+            long start = System.nanoTime();
+
+            // Cada intento pasa por el circuit breaker y por el limitador adaptativo; en chat y Q&A
+            // un intento lento se cubre con una segunda petición idéntica (GeminiHedger)
+            return Mono.defer(() -> hedger.hedge(operation, () -> guardedAttempt(() -> webClient.post()
+                            .uri(endpoint)
+                            .bodyValue(request)
+                            .retrieve()
+                            .bodyToMono(GeminiResponse.class)
+                            .timeout(Duration.ofSeconds(60))),
+                            () -> recordHedged(userId, operation, tier, prompt)))
+                    .retryWhen(Retry.backoff(maxRetries, Duration.ofMillis(initialBackoffMs))
+                            .maxBackoff(Duration.ofMillis(maxBackoffMs))
+                            .jitter(0.5)
+                            .filter(GeminiService::isRetryable)
+                            .doBeforeRetry(signal -> {
+                                retryCounter.increment();
+                                log.warn("Reintentando llamada a Gemini (intento {}): {}",
+                                        signal.totalRetries() + 1, signal.failure().getMessage());
+                            })
+                            .onRetryExhaustedThrow((spec, signal) -> signal.failure()))
+                    .doOnSuccess(response -> {
+                        UsageMetadata usage = response != null ? response.getUsageMetadata() : null;
+                        long latencyMs = elapsedMs(start);
+                        tokenUsageService.record(userId, operation, tier.tag(), usage, latencyMs, true);
+                        tokenEstimator.observe(operation, cachedContent == null ? prompt : null, usage, latencyMs);
+                    })
+                    .doOnError(e -> tokenUsageService.record(userId, operation, tier.tag(), null, elapsedMs(start), false));
+        });
+    }
+
+    /**
+     * Crea un contexto cacheado (cachedContents) con el texto dado como primer turno del usuario.
+     * Devuelve el nombre del recurso para usarlo en generateContentAsync(prompt, cachedContent).
+     */
+    public Mono<CachedContent> createCachedContent(String text, long ttlSeconds) {
+        return Mono.deferContextual(ctx -> {
+            Long userId = UsageContext.userId(ctx);
+            long start = System.nanoTime();
+            // Las llamadas con contexto cacheado usan siempre el modelo estándar (ver GeminiModelRouter)
+            CachedContentRequest request = new CachedContentRequest(modelRouter.modelFor(Tier.STANDARD), text, ttlSeconds);
+
+            return tokenUsageService.checkQuota(userId)
+                    .then(Mono.defer(() -> guardedAttempt(() -> webClient.post()
+                            .uri(String.format("/v1beta/cachedContents?key=%s", apiKey))
+                            .bodyValue(request)
+                            .retrieve()
+                            .bodyToMono(CachedContent.class)
+                            .timeout(Duration.ofSeconds(60)))))
+                    .doOnSuccess(cached -> {
+                        // La creación se factura como tokens de entrada
+                        UsageMetadata usage = null;
+                        if (cached != null && cached.getUsageMetadata() != null) {
+                            usage = new UsageMetadata();
+                            usage.setPromptTokenCount(cached.getUsageMetadata().getTotalTokenCount());
+                            usage.setTotalTokenCount(cached.getUsageMetadata().getTotalTokenCount());
+                        }
+                        tokenUsageService.record(userId, UsageContext.CONTEXT_CACHE, Tier.STANDARD.tag(), usage,
+                                elapsedMs(start), true);
+                    })
+                    .doOnError(e -> log.warn("No se pudo crear el contexto cacheado en Gemini: {}", e.getMessage()));
+        });
+    }
+
+    // Elimina un contexto cacheado (deja de cobrarse su almacenamiento)
+    public Mono<Void> deleteCachedContent(String name) {
+        return webClient.delete()
+                // name ya incluye el prefijo "cachedContents/"
+                .uri(String.format("/v1beta/%s?key=%s", name, apiKey))
+                .retrieve()
+                .bodyToMono(Void.class)
+                .timeout(Duration.ofSeconds(30));
+    }
+
+    private Tier route(ContextView ctx, String prompt, String cachedContent) {
+        return modelRouter.route(UsageContext.operation(ctx), UsageContext.depth(ctx), prompt, cachedContent != null);
+    }
+
+    // Registra la respuesta recortada a payloadMaxChars (DEBUG, o INFO por muestreo)
+    private void logPayload(String text) {
+        if (text == null) return;
+        boolean sampled = payloadSampleRate > 0 && ThreadLocalRandom.current().nextDouble() < payloadSampleRate;
+        if (!log.isDebugEnabled() && !sampled) return;
+
+        String preview = text.length() > payloadMaxChars ? text.substring(0, payloadMaxChars) + "..." : text;
+        if (log.isDebugEnabled()) {
+            log.debug("Respuesta de Gemini ({} caracteres): {}", text.length(), preview);
+        } else {
+            log.info("Respuesta de Gemini (muestra, {} caracteres): {}", text.length(), preview);
+        }
+    }
+
+    private static long elapsedMs(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    private <T> Mono<T> guardedAttempt(Supplier<Mono<T>> call) {
+        if (!circuitBreaker.tryAcquire()) {
+            return Mono.error(new GeminiUnavailableException("Gemini no disponible temporalmente"));
+        }
+        return concurrencyLimiter.execute(call)
+                .doOnSuccess(v -> circuitBreaker.onSuccess())
+                .doOnError(circuitBreaker::onError)
+                .doOnCancel(circuitBreaker::onIgnored);
+    }
+
+    /**
+     * Reintentables: 429, 500, 502, 503, 504 y errores de conexión.
+     * Los timeouts no se reintentan: ya consumieron el tiempo máximo de la llamada.
+     */
+    private static boolean isRetryable(Throwable error) {
+        if (error instanceof WebClientRequestException) return true;
+        if (error instanceof WebClientResponseException wcre) {
+            int status = wcre.getStatusCode().value();
+            return status == 429 || status == 500 || status == 502 || status == 503 || status == 504;
+        }
+        return false;
+    }
+
+    // Permite a los servicios elegir el fallback sin esperar cuando Gemini está caído
+    public boolean isAvailable() {
+        return !circuitBreaker.isOpen();
     }
 
     // Valida que el texto no exceda el limite de tokens
     public boolean ValidateTextLength(String text){
-        // 1 token = 4 caracteres aprox.
-        int estimatedTokens = text.length() / 4;
+        int estimatedTokens = tokenEstimator.estimateTokens(text);
         return estimatedTokens <= (maxTokens * 0.6);
         // Dejamos un 40% de margen para la respuesta
     }
 
-    // Trunca el texto si es muy largo
-    public String truncateIfNeeded(String text, int maxChars) {
-        if(text.length() > maxChars){
-            log.warn("Texto truncado de {} a {} caracteres", text.length(), maxChars);
-            return text.substring(0, maxChars) + "\n\n[TEXTO TRUNCADO]";
+    // Trunca el texto si supera maxTokens (estimador calibrado, corte en límite de palabra)
+    public String truncateIfNeeded(String text, int maxTokens) {
+        String truncated = tokenEstimator.truncateToTokens(text, maxTokens);
+        if (truncated.length() < text.length()) {
+            log.warn("Texto truncado de {} a {} caracteres (~{} tokens)", text.length(), truncated.length(), maxTokens);
+            return truncated + "\n\n[TEXTO TRUNCADO]";
         }
         return text;
     }
-}
\ No newline at end of file
+}
@@ -1,6 +1,8 @@
 package com.acl.backend.service;
 
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -8,6 +10,16 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import com.acl.backend.data.AnalysisData.AnalysisResult;
+import com.acl.backend.data.AnalysisData.EstimateResponse;
+import com.acl.backend.exception.QuotaExceededException;
+import com.acl.backend.model.Contract;
+import com.acl.backend.service.ConversationMemoryService.Memory;
+import com.acl.backend.service.NearDuplicateService.Fingerprint;
+import com.acl.backend.service.NearDuplicateService.NearDuplicate;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 /**
  * Servicio de análisis que ahora usa IA (Gemini) como metodo principal
@@ -20,72 +32,268 @@ public class NLPAnalysisService {
 
     private final AIAnalysisService aiAnalysisService;
     private final LegacyAnalysisService legacyAnalysisService;
+    private final AnalysisCacheService analysisCacheService;
+    private final GeminiService geminiService;
+    private final GeminiModelRouter modelRouter;
+    private final ClauseRetrievalService clauseRetrievalService;
+    private final NearDuplicateService nearDuplicateService;
 
     @Value("${analysis.use-ai:true}")
     private boolean useAI;
 
     public NLPAnalysisService(AIAnalysisService aiAnalysisService,
-                              LegacyAnalysisService legacyAnalysisService) {
+                              LegacyAnalysisService legacyAnalysisService,
+                              AnalysisCacheService analysisCacheService,
+                              GeminiService geminiService,
+                              GeminiModelRouter modelRouter,
+                              ClauseRetrievalService clauseRetrievalService,
+                              NearDuplicateService nearDuplicateService) {
         this.aiAnalysisService = aiAnalysisService;
         this.legacyAnalysisService = legacyAnalysisService;
+        this.analysisCacheService = analysisCacheService;
+        this.geminiService = geminiService;
+        this.modelRouter = modelRouter;
+        this.clauseRetrievalService = clauseRetrievalService;
+        this.nearDuplicateService = nearDuplicateService;
     }
 
     // Metodo principal de analisis - Usa IA o Fallback
     public AnalysisResult analyze(String text) {
-        if (useAI) {
-            try {
-                log.info("Usando análisis con IA");
-                return aiAnalysisService.analyzeContract(text);
-            } catch (Exception e) {
-                log.warn("Fallo en análisis con IA, usando método legacy: {}", e.getMessage());
-                return legacyAnalysisService.analyzeWithRegex(text);
-            }
-        } else {
+        return analyzeAsync(text).block();
+    }
+
+    // Version no bloqueante: la cache (Mongo) se consulta en el scheduler elastico, nunca en el hilo de Netty
+    public Mono<AnalysisResult> analyzeAsync(String text) {
+        return analyzeAsync(text, null);
+    }
+
+    /**
+     * Análisis con la profundidad pedida por el cliente (null = estándar).
+     * Cada nivel de modelo tiene su propia entrada en la cache.
+     */
+    public Mono<AnalysisResult> analyzeAsync(String text, AnalysisDepth depth) {
+        return analyzeAsync(text, depth, false);
+    }
+
+    /**
+     * Re-análisis pedido explícitamente: no se sirve desde la cache ni reutiliza el análisis de un
+     * contrato casi igual. El resultado nuevo reemplaza la entrada cacheada.
+     */
+    public Mono<AnalysisResult> analyzeFreshAsync(String text, AnalysisDepth depth) {
+        return analyzeAsync(text, depth, true);
+    }
+
+    private Mono<AnalysisResult> analyzeAsync(String text, AnalysisDepth depth, boolean fresh) {
+        if (!useAI) {
             log.info("Usando análisis legacy (regex)");
-            return legacyAnalysisService.analyzeWithRegex(text);
+            return Mono.fromCallable(() -> legacyAnalysisService.analyzeWithRegex(text));
         }
+
+        String model = modelRouter.modelFor(modelRouter.tierFor(depth));
+        String cacheKey = analysisCacheService.keyFor(text, model);
+        return Mono.fromCallable(() -> fresh ? Optional.<AnalysisResult>empty() : analysisCacheService.get(cacheKey))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(cached -> {
+                    if (cached.isPresent()) {
+                        log.info("Análisis obtenido de cache");
+                        return Mono.just(cached.get());
+                    }
+                    // Con el circuito abierto solo se pierde la llamada a Gemini: lo ya cacheado se sirve igual
+                    if (!geminiService.isAvailable()) {
+                        log.warn("Gemini no disponible (circuito abierto), usando análisis legacy provisional");
+                        return provisionalLegacyAnalysis(text);
+                    }
+
+                    return analyzeWithAI(text, depth, model, cacheKey, fresh);
+                })
+                // La cuota agotada se propaga (429 en la subida, job fallido): un provisional se re-analizaría en bucle
+                .onErrorResume(e -> !(e instanceof QuotaExceededException), e -> {
+                    log.warn("Fallo en análisis con IA, usando método legacy: {}", e.getMessage());
+                    return provisionalLegacyAnalysis(text);
+                });
+    }
+
+    /**
+     * Análisis con IA tras un miss en la cache. Un contrato casi igual a otro ya analizado (misma
+     * plantilla) reutiliza ese análisis y solo envía a Gemini las cláusulas que cambian; si esa
+     * actualización falla se hace el análisis completo. Corre en el scheduler elástico (Mongo).
+     */
+    private Mono<AnalysisResult> analyzeWithAI(String text, AnalysisDepth depth, String model, String cacheKey,
+                                               boolean fresh) {
+        return Mono.deferContextual(ctx -> {
+            Long userId = UsageContext.userId(ctx);
+            long start = System.currentTimeMillis();
+
+            Fingerprint fingerprint = nearDuplicateService.isEnabled() ? nearDuplicateService.fingerprint(text) : null;
+            Optional<NearDuplicate> nearDuplicate = fingerprint != null && !fresh
+                    ? nearDuplicateService.find(fingerprint, userId, model)
+                    : Optional.empty();
+            Optional<AnalysisResult> previous = nearDuplicate
+                    .flatMap(match -> analysisCacheService.peek(match.getAnalysisKey()));
+
+            Mono<AnalysisResult> full = Mono.defer(() -> {
+                log.info("Usando análisis con IA");
+                return aiAnalysisService.analyzeContractAsync(text);
+            });
+            // Solo se indexan análisis completos (ver NearDuplicateService.index)
+            AtomicBoolean reused = new AtomicBoolean(previous.isPresent());
+            Mono<AnalysisResult> analysis = previous.isPresent()
+                    ? aiAnalysisService.analyzeChangesAsync(previous.get(),
+                                    nearDuplicate.get().getChangedClauses(), nearDuplicate.get().getRemovedHeadings(),
+                                    "global".equals(nearDuplicate.get().getScope()))
+                            .onErrorResume(e -> {
+                                log.warn("No se pudo reutilizar el análisis previo, análisis completo: {}", e.getMessage());
+                                reused.set(false);
+                                return full;
+                            })
+                    : full;
+
+            return analysis
+                    .contextWrite(UsageContext.depth(depth))
+                    .publishOn(Schedulers.boundedElastic())
+                    .doOnNext(result -> {
+                        analysisCacheService.recordMissLatency(System.currentTimeMillis() - start);
+
+                        // No cachear resultados de respaldo ni provisionales
+                        if (!AIAnalysisService.FALLBACK_TYPE.equals(result.getType()) && !result.isProvisional()) {
+                            analysisCacheService.put(cacheKey, text, model, result);
+                            if (fingerprint != null && !reused.get()) {
+                                nearDuplicateService.index(fingerprint, userId, model, cacheKey);
+                            }
+                        }
+                    });
+        });
+    }
+
+    /**
+     * Costo esperado de analizar el texto con la profundidad pedida (null = estándar). Si ya hay
+     * un análisis en cache para ese modelo no se llamará a la IA.
+     */
+    public EstimateResponse estimate(String text, AnalysisDepth depth) {
+        if (!useAI) {
+            EstimateResponse estimate = new EstimateResponse();
+            estimate.setCharacters(text.length());
+            return estimate;
+        }
+
+        EstimateResponse estimate = aiAnalysisService.estimateAnalysis(text);
+        estimate.setAiEnabled(true);
+        // peek: consultar el costo no cuenta como hit ni miss de la cache
+        String model = modelRouter.modelFor(modelRouter.tierFor(depth));
+        if (analysisCacheService.peek(analysisCacheService.keyFor(text, model)).isPresent()) {
+            estimate.setCached(true);
+            estimate.setLatencyMs(0);
+        }
+        return estimate;
+    }
+
+    /**
+     * Análisis inmediato por reglas (milisegundos) para la subida progresiva. Con IA activa queda
+     * provisional hasta que el análisis de Gemini lo reemplaza; sin IA ya es el definitivo.
+     */
+    public AnalysisResult quickAnalysis(String text) {
+        AnalysisResult result = legacyAnalysisService.analyzeWithRegex(text);
+        result.setProvisional(useAI);
+        return result;
+    }
+
+    // Resultado por reglas marcado como provisional para que se re-analice con IA más tarde
+    private Mono<AnalysisResult> provisionalLegacyAnalysis(String text) {
+        return Mono.fromCallable(() -> {
+            AnalysisResult result = legacyAnalysisService.analyzeWithRegex(text);
+            result.setProvisional(true);
+            return result;
+        });
     }
 
     // Responde preguntas sobre el contrato
     public List<String> answerQuestions(String text, String question) {
-        if(useAI){
-            try {
-                return aiAnalysisService.answerQuestion(text, question);
-            } catch (Exception e) {
-                log.warn("Fallo en Q&A con IA: {}", e.getMessage());
-                return legacyAnalysisService.answerQuestionWithRegex(text, question);
-            }
-        } else {
-            return legacyAnalysisService.answerQuestionWithRegex(text, question);
+        return answerQuestionsAsync(text, question).block();
+    }
+
+    public Mono<List<String>> answerQuestionsAsync(String text, String question) {
+        if (useAI && geminiService.isAvailable()) {
+            return aiAnalysisService.answerQuestionAsync(text, question)
+                    .onErrorResume(e -> !(e instanceof QuotaExceededException), e -> {
+                        log.warn("Fallo en Q&A con IA: {}", e.getMessage());
+                        return Mono.fromCallable(() -> legacyAnalysisService.answerQuestionWithRegex(text, question));
+                    });
         }
+        return Mono.fromCallable(() -> legacyAnalysisService.answerQuestionWithRegex(text, question));
     }
 
-    // Genera resumen del contrato
-    public String generateSummary(String text) {
-        if (useAI) {
-            try {
-                return aiAnalysisService.generateSummary(text);
-            } catch (Exception e) {
-                log.warn("Fallo en resumen con IA: {}", e.getMessage());
-                return "Resumen no disponible.";
-            }
+    // Responde preguntas sobre el contrato en streaming
+    public Flux<String> streamAnswer(String text, String question) {
+        if (useAI && geminiService.isAvailable()) {
+            return aiAnalysisService.streamAnswerQuestion(text, question);
         }
-        return "Resumen no disponible (IA deshabilitada";
+        return Mono.fromCallable(() -> String.join("\n\n", legacyAnalysisService.answerQuestionWithRegex(text, question)))
+                .flux();
     }
 
-    // Detecta tipo de contrato
-    public String detectType(String text) {
-        if (useAI) {
-            try {
-                return aiAnalysisService.detectContractType(text);
-            } catch (Exception e) {
-                log.warn("Fallo en detección de tipo con IA: {}", e.getMessage());
-                return legacyAnalysisService.detectTypeWithRegex(text);
-            }
-        } else {
-            return legacyAnalysisService.detectTypeWithRegex(text);
+    /**
+     * Responde preguntas sobre un contrato guardado. Los contratos largos se responden con las
+     * cláusulas recuperadas para la pregunta (ClauseRetrievalService) en lugar del texto completo,
+     * así que el límite de truncado ya no deja cláusulas finales fuera de alcance.
+     */
+    public Mono<List<String>> answerQuestionsAsync(Contract contract, String question) {
+        return answerQuestionsAsync(contract, question, Memory.EMPTY);
+    }
+
+    // Con la memoria de la conversación: va en el prompt y completa la búsqueda de cláusulas
+    public Mono<List<String>> answerQuestionsAsync(Contract contract, String question, Memory memory) {
+        String text = contract.getContent();
+        if (!useAI || !geminiService.isAvailable()) {
+            return answerQuestionsAsync(text, question);
         }
+        Mono<List<String>> answer = clauseRetrievalService.shouldRetrieve(text)
+                ? Mono.fromCallable(() -> clauseRetrievalService.retrieve(contract, retrievalQuery(question, memory)))
+                        .flatMap(clauses -> aiAnalysisService.answerFromClausesAsync(clauses, question, memory.getHistory()))
+                : aiAnalysisService.answerQuestionAsync(text, question, memory.getHistory());
+        return answer.onErrorResume(e -> !(e instanceof QuotaExceededException), e -> {
+            log.warn("Fallo en Q&A con IA: {}", e.getMessage());
+            return Mono.fromCallable(() -> legacyAnalysisService.answerQuestionWithRegex(text, question));
+        });
     }
 
+    // Igual que answerQuestionsAsync(Contract, String), en streaming
+    public Flux<String> streamAnswer(Contract contract, String question) {
+        return streamAnswer(contract, question, Memory.EMPTY);
+    }
 
+    public Flux<String> streamAnswer(Contract contract, String question, Memory memory) {
+        String text = contract.getContent();
+        if (!useAI || !geminiService.isAvailable()) {
+            return streamAnswer(text, question);
+        }
+        if (!clauseRetrievalService.shouldRetrieve(text)) {
+            return aiAnalysisService.streamAnswerQuestion(text, question, memory.getHistory());
+        }
+        return Mono.fromCallable(() -> clauseRetrievalService.retrieve(contract, retrievalQuery(question, memory)))
+                .flatMapMany(clauses -> aiAnalysisService.streamAnswerFromClauses(clauses, question, memory.getHistory()));
+    }
+
+    // Las preguntas de seguimiento ("¿y la otra parte?") se buscan junto con la anterior del usuario
+    private String retrievalQuery(String question, Memory memory) {
+        String previous = memory.getLastUserMessage();
+        return previous == null ? question : previous + "\n" + question;
+    }
+
+    // Resumen del contrato: sale del mismo análisis (una sola llamada a la IA, cacheada por contenido)
+    public String generateSummary(String text) {
+        return generateSummaryAsync(text).block();
+    }
+
+    public Mono<String> generateSummaryAsync(String text) {
+        return analyzeAsync(text).map(AnalysisResult::getSummary);
+    }
+
+    // Tipo de contrato: también sale del análisis; sin IA lo detecta el análisis por reglas
+    public String detectType(String text) {
+        return detectTypeAsync(text).block();
+    }
+
+    public Mono<String> detectTypeAsync(String text) {
+        return analyzeAsync(text).map(AnalysisResult::getType);
+    }
 }
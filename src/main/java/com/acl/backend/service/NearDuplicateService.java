@@ -0,0 +1,290 @@
+package com.acl.backend.service;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import com.acl.backend.model.ContractClause;
+import com.acl.backend.model.ContractFingerprint;
+import com.acl.backend.model.ContractFingerprint.ClauseHash;
+import com.acl.backend.util.HashUtils;
+import com.acl.backend.util.MinHash;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Detección de contratos casi iguales para reutilizar análisis previos.
+ *
+ * Muchos contratos son la misma plantilla con otras partes, fechas o montos: el hash exacto de
+ * AnalysisCacheService no los reconoce. Cada contrato analizado con IA guarda su firma MinHash
+ * en un índice LSH (ContractFingerprint); uno nuevo busca entre los del mismo usuario y, si se
+ * activa global, después entre los de los demás. Con una similitud estimada de al menos threshold
+ * se comparan las cláusulas por hash y a Gemini solo van las que cambian, junto con el análisis
+ * previo (de uno ajeno, sin su resumen ni sus fechas clave).
+ */
+@Service
+public class NearDuplicateService {
+
+    private static final Logger log = LoggerFactory.getLogger(NearDuplicateService.class);
+
+    private final MongoTemplate mongoTemplate;
+    private final ClauseRetrievalService clauseRetrievalService;
+    private final MeterRegistry meterRegistry;
+    private final DistributionSummary changedRatio;
+    private final MinHash minHash;
+    private final boolean enabled;
+    private final boolean global;
+    private final double threshold;
+    private final int bands;
+    private final int maxCandidates;
+    private final double maxChangedRatio;
+
+    public NearDuplicateService(MongoTemplate mongoTemplate,
+                                ClauseRetrievalService clauseRetrievalService,
+                                MeterRegistry meterRegistry,
+                                @Value("${analysis.near-duplicate.enabled:true}") boolean enabled,
+                                @Value("${analysis.near-duplicate.global:false}") boolean global,
+                                @Value("${analysis.near-duplicate.threshold:0.7}") double threshold,
+                                @Value("${analysis.near-duplicate.hashes:100}") int hashes,
+                                @Value("${analysis.near-duplicate.bands:20}") int bands,
+                                @Value("${analysis.near-duplicate.shingle-words:5}") int shingleWords,
+                                @Value("${analysis.near-duplicate.max-candidates:20}") int maxCandidates,
+                                @Value("${analysis.near-duplicate.max-changed-ratio:0.5}") double maxChangedRatio) {
+        this.mongoTemplate = mongoTemplate;
+        this.clauseRetrievalService = clauseRetrievalService;
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.global = global;
+        this.threshold = threshold;
+        this.minHash = new MinHash(hashes, shingleWords);
+        this.bands = bands;
+        this.maxCandidates = maxCandidates;
+        this.maxChangedRatio = maxChangedRatio;
+
+        this.changedRatio = DistributionSummary.builder("analysis.near-duplicate.changed.ratio")
+                .description("Fracción del contrato enviada a Gemini al reutilizar un análisis casi igual")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Firma, bandas y cláusulas del texto. Se calcula una vez para buscar y, si el análisis
+     * termina completo, para indexar.
+     */
+    public Fingerprint fingerprint(String text) {
+        int[] signature = minHash.signature(text);
+        List<ContractClause> segments = clauseRetrievalService.segment(text);
+        List<Clause> clauses = new ArrayList<>(segments.size());
+        for (ContractClause segment : segments) {
+            String clauseText = segment.textOf(text);
+            if (clauseText.isBlank()) continue;
+            clauses.add(new Clause(HashUtils.contentHash(clauseText), segment.getHeading(), clauseText));
+        }
+        return new Fingerprint(signature, MinHash.bands(signature, bands), clauses, text.length());
+    }
+
+    /**
+     * El contrato analizado más parecido (primero del usuario, después global) con las cláusulas
+     * que difieren. Vacío si no hay ninguno sobre el umbral o si cambia más de max-changed-ratio.
+     */
+    public Optional<NearDuplicate> find(Fingerprint fingerprint, Long userId, String model) {
+        if (!enabled || fingerprint.clauses.isEmpty()) return Optional.empty();
+
+        try {
+            Optional<Candidate> best = userId != null
+                    ? best(fingerprint, candidates(fingerprint, model, Criteria.where("userId").is(userId)))
+                    : Optional.empty();
+            String scope = "user";
+            if (best.isEmpty() && global) {
+                Criteria others = userId != null ? Criteria.where("userId").ne(userId) : new Criteria();
+                best = best(fingerprint, candidates(fingerprint, model, others));
+                scope = "global";
+            }
+            if (best.isEmpty()) {
+                count("miss");
+                return Optional.empty();
+            }
+
+            NearDuplicate match = diff(fingerprint, best.get(), scope);
+            double ratio = (double) match.changedChars / Math.max(1, fingerprint.length);
+            if (ratio > maxChangedRatio) {
+                count("too_different");
+                return Optional.empty();
+            }
+            changedRatio.record(ratio);
+            count("hit_" + scope);
+            log.info("Contrato casi igual a un análisis previo ({}): similitud {}, {} cláusulas distintas, {} eliminadas",
+                    scope, String.format("%.2f", match.similarity), match.changedClauses.size(), match.removedHeadings.size());
+            return Optional.of(match);
+        } catch (Exception e) {
+            log.warn("No se pudo buscar contratos casi iguales: {}", e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Guarda la huella de un contrato analizado por completo con IA. Los análisis obtenidos por
+     * diferencia no se indexan: así cada reutilización parte de un análisis completo y no se
+     * acumulan desviaciones de plantilla en plantilla.
+     */
+    public void index(Fingerprint fingerprint, Long userId, String model, String analysisKey) {
+        if (!enabled || fingerprint.clauses.isEmpty()) return;
+
+        ContractFingerprint entry = new ContractFingerprint();
+        entry.setId(analysisKey + ":" + (userId != null ? userId : "anon"));
+        entry.setUserId(userId);
+        entry.setAnalysisKey(analysisKey);
+        entry.setModel(model);
+        entry.setPromptVersion(PromptService.PROMPT_VERSION);
+        List<Integer> signature = new ArrayList<>(fingerprint.signature.length);
+        for (int h : fingerprint.signature) signature.add(h);
+        entry.setSignature(signature);
+        entry.setBands(fingerprint.bands);
+        entry.setClauses(fingerprint.clauses.stream().map(c -> new ClauseHash(c.hash, c.heading)).toList());
+        try {
+            mongoTemplate.save(entry);
+        } catch (Exception e) {
+            log.warn("No se pudo guardar la huella del contrato: {}", e.getMessage());
+        }
+    }
+
+    private List<ContractFingerprint> candidates(Fingerprint fingerprint, String model, Criteria scope) {
+        Query query = Query.query(new Criteria().andOperator(scope,
+                        Criteria.where("model").is(model)
+                                .and("promptVersion").is(PromptService.PROMPT_VERSION)
+                                .and("bands").in(fingerprint.bands)))
+                .limit(maxCandidates);
+        query.fields().exclude("bands");
+        return mongoTemplate.find(query, ContractFingerprint.class);
+    }
+
+    private Optional<Candidate> best(Fingerprint fingerprint, List<ContractFingerprint> candidates) {
+        Candidate best = null;
+        for (ContractFingerprint candidate : candidates) {
+            int[] signature = candidate.getSignature().stream().mapToInt(Integer::intValue).toArray();
+            double similarity = MinHash.similarity(fingerprint.signature, signature);
+            if (similarity >= threshold && (best == null || similarity > best.similarity)) {
+                best = new Candidate(candidate, similarity);
+            }
+        }
+        return Optional.ofNullable(best);
+    }
+
+    private NearDuplicate diff(Fingerprint fingerprint, Candidate candidate, String scope) {
+        Set<String> previous = new HashSet<>();
+        for (ClauseHash clause : candidate.entry.getClauses()) previous.add(clause.getHash());
+        Set<String> current = new HashSet<>();
+
+        Set<String> changedHeadings = new HashSet<>();
+        List<String> changed = new ArrayList<>();
+        int changedChars = 0;
+        for (Clause clause : fingerprint.clauses) {
+            current.add(clause.hash);
+            if (!previous.contains(clause.hash)) {
+                changed.add(clause.text);
+                changedHeadings.add(clause.heading);
+                changedChars += clause.text.length();
+            }
+        }
+        // Una cláusula modificada conserva su encabezado: no cuenta como eliminada.
+        // Las cláusulas partidas comparten encabezado
+        Set<String> removed = new LinkedHashSet<>();
+        for (ClauseHash clause : candidate.entry.getClauses()) {
+            String heading = clause.getHeading();
+            if (!current.contains(clause.getHash()) && heading != null && !changedHeadings.contains(heading)) {
+                removed.add(heading);
+            }
+        }
+        return new NearDuplicate(candidate.entry.getAnalysisKey(), candidate.similarity, scope,
+                changed, new ArrayList<>(removed), changedChars);
+    }
+
+    private void count(String result) {
+        meterRegistry.counter("analysis.near-duplicate", "result", result).increment();
+    }
+
+    private static final class Candidate {
+        private final ContractFingerprint entry;
+        private final double similarity;
+
+        private Candidate(ContractFingerprint entry, double similarity) {
+            this.entry = entry;
+            this.similarity = similarity;
+        }
+    }
+
+    private static final class Clause {
+        private final String hash;
+        private final String heading;
+        private final String text;
+
+        private Clause(String hash, String heading, String text) {
+            this.hash = hash;
+            this.heading = heading;
+            this.text = text;
+        }
+    }
+
+    /**
+     * Huella de un texto: firma MinHash, bandas LSH y cláusulas con su hash.
+     */
+    public static final class Fingerprint {
+        private final int[] signature;
+        private final List<String> bands;
+        private final List<Clause> clauses;
+        private final int length;
+
+        private Fingerprint(int[] signature, List<String> bands, List<Clause> clauses, int length) {
+            this.signature = signature;
+            this.bands = bands;
+            this.clauses = clauses;
+            this.length = length;
+        }
+    }
+
+    /**
+     * Análisis previo reutilizable: su clave en la cache, la similitud estimada, dónde se encontró
+     * (user o global), el texto de las cláusulas nuevas o modificadas y los encabezados de las que
+     * ya no están.
+     */
+    public static final class NearDuplicate {
+        private final String analysisKey;
+        private final double similarity;
+        private final String scope;
+        private final List<String> changedClauses;
+        private final List<String> removedHeadings;
+        private final int changedChars;
+
+        private NearDuplicate(String analysisKey, double similarity, String scope,
+                              List<String> changedClauses, List<String> removedHeadings, int changedChars) {
+            this.analysisKey = analysisKey;
+            this.similarity = similarity;
+            this.scope = scope;
+            this.changedClauses = changedClauses;
+            this.removedHeadings = removedHeadings;
+            this.changedChars = changedChars;
+        }
+
+        public String getAnalysisKey() { return analysisKey; }
+        public double getSimilarity() { return similarity; }
+        public String getScope() { return scope; }
+        public List<String> getChangedClauses() { return changedClauses; }
+        public List<String> getRemovedHeadings() { return removedHeadings; }
+        public int getChangedChars() { return changedChars; }
+    }
+}
@@ -1,10 +1,43 @@
 package com.acl.backend.service;
 
+import java.util.List;
+import java.util.Map;
+
 import org.springframework.stereotype.Service;
 
+import com.acl.backend.model.ChatMessage;
+import com.acl.backend.service.ClauseRetrievalService.RetrievedClause;
+
 @Service
 public class PromptService {
 
+    /**
+     * Versión de los prompts. Cambiarla invalida los análisis cacheados.
+     */
+    public static final String PROMPT_VERSION = "v2";
+
+    /**
+     * Esquema de la respuesta del análisis (modo JSON de Gemini, responseSchema).
+     * Una sola llamada devuelve tipo, base legal, cláusulas, riesgos, puntaje, resumen y fechas.
+     */
+    public static final Map<String, Object> ANALYSIS_SCHEMA = object(
+            List.of("type", "legalBasis", "keyClauses", "risks", "riskScore", "recommendations", "summary", "keyDates"),
+            Map.of(
+                    "type", string(),
+                    "legalBasis", array(string()),
+                    "keyClauses", array(string()),
+                    "risks", array(string()),
+                    "riskScore", Map.of("type", "NUMBER", "minimum", 0, "maximum", 100),
+                    "recommendations", array(string()),
+                    "summary", string(),
+                    "keyDates", array(object(
+                            List.of("type", "value", "importance"),
+                            Map.of("type", string(),
+                                    "value", string(),
+                                    "importance", Map.of("type", "STRING", "enum", List.of("high", "medium", "low"))),
+                            List.of("type", "value")))),
+            List.of("type", "keyClauses", "risks", "riskScore", "recommendations", "summary"));
+
     /**
      * Marco legal para Colombia, resumido para optimizar tokens.
      */
@@ -58,7 +91,14 @@ public class PromptService {
               "recommendations": [
                 "Recomendaciones puntuales basadas en el marco legal"
               ],
-              "summary": "Resumen ejecutivo del contrato"
+              "summary": "Resumen ejecutivo del contrato",
+              "keyDates": [
+                {
+                  "type": "inicio | terminación | pago | aviso | renovación",
+                  "value": "Fecha o plazo tal como aparece en el contrato",
+                  "importance": "high | medium | low"
+                }
+              ]
             }
 
             Consideraciones:
@@ -71,18 +111,136 @@ public class PromptService {
         """.formatted(legalFramework, contractText);
     }
 
+    /**
+     * Prompt para actualizar el análisis de un contrato casi igual (misma plantilla): se envían
+     * el análisis previo y solo las cláusulas que cambian, no el contrato completo.
+     */
+    public String buildChangedClausesPrompt(String previousAnalysisJson, String changedClauses, List<String> removedHeadings,
+                                            boolean regenerateSummary) {
+        String removed = removedHeadings.isEmpty()
+                ? "(ninguna)"
+                : "- " + String.join("\n- ", removedHeadings);
+        String summaryNote = regenerateSummary
+                ? "\n- El análisis anterior no trae summary ni keyDates: genéralos para el contrato nuevo a partir\n"
+                  + "  de las cláusulas nuevas o modificadas y del resto del análisis."
+                : "";
+        return """
+            Eres un abogado experto en contratación en Colombia.
+            Ya existe el análisis de un contrato de la misma plantilla. El contrato nuevo es igual
+            salvo por las cláusulas indicadas abajo. Actualiza el análisis para el contrato nuevo,
+            considerando el marco legal aplicable:
+
+            %s
+
+            ANÁLISIS DEL CONTRATO ANTERIOR:
+            ```
+            %s
+            ```
+
+            CLÁUSULAS NUEVAS O MODIFICADAS EN EL CONTRATO NUEVO:
+            ```
+            %s
+            ```
+
+            CLÁUSULAS DEL CONTRATO ANTERIOR QUE YA NO ESTÁN:
+            %s
+
+            Responde SOLO con un JSON con la misma estructura del análisis anterior
+            (type, legalBasis, keyClauses, risks, riskScore, recommendations, summary, keyDates).
+
+            Consideraciones:
+            - Conserva lo que sigue aplicando a las cláusulas que no cambian.
+            - Reemplaza partes, fechas, plazos y montos del análisis anterior por los del contrato nuevo;
+              no menciones datos que solo aparecían en el contrato anterior.
+            - Revisa riesgos, puntaje y recomendaciones según las cláusulas modificadas o eliminadas.%s
+            - No incluyas texto fuera del JSON.
+            """.formatted(legalFramework, previousAnalysisJson, changedClauses, removed, summaryNote);
+    }
+
+    /**
+     * Prompt para analizar una sección de un contrato largo (análisis por bloques).
+     */
+    public String buildChunkAnalysisPrompt(String chunkText, int index, int total) {
+        return """
+            Eres un abogado experto en contratación en Colombia.
+            El contrato es extenso y se analiza por partes. Esta es la PARTE %d de %d.
+            Analiza SOLO esta parte, considerando el marco legal aplicable:
+
+            %s
+
+            PARTE DEL CONTRATO:
+            ```
+            %s
+            ```
+
+            Responde SOLO con un JSON con esta estructura:
+
+            {
+              "type": "Tipo de contrato identificado (o \"Indeterminado\" si esta parte no lo permite)",
+              "keyClauses": [
+                "Cláusulas relevantes encontradas en esta parte"
+              ],
+              "risks": [
+                "Riesgos jurídicos específicos de esta parte"
+              ],
+              "riskScore": 0-100,
+              "recommendations": [
+                "Recomendaciones puntuales para esta parte"
+              ],
+              "summary": "Resumen breve de esta parte",
+              "keyDates": [
+                {
+                  "type": "inicio | terminación | pago | aviso | renovación",
+                  "value": "Fecha o plazo tal como aparece en esta parte",
+                  "importance": "high | medium | low"
+                }
+              ]
+            }
+
+            Consideraciones:
+            - No señales como ausentes cláusulas que podrían estar en otras partes.
+            - No incluyas texto fuera del JSON.
+            """.formatted(index, total, legalFramework, chunkText);
+    }
+
     /**
      * Prompt de preguntas y respuestas sobre el contrato.
      */
     public String buildQuestionPrompt(String contractText, String question) {
+        return buildContractContext(contractText) + "\n\n" + buildQuestionInstructions(question);
+    }
+
+    /**
+     * Prompt de preguntas y respuestas en texto plano, para respuestas en streaming.
+     */
+    public String buildStreamingQuestionPrompt(String contractText, String question) {
+        return buildContractContext(contractText) + "\n\n" + buildStreamingQuestionInstructions(question);
+    }
+
+    /**
+     * Parte fija de las preguntas sobre un contrato (rol + texto del contrato).
+     * Es idéntica para todas las preguntas, por lo que se puede cachear en Gemini.
+     */
+    public String buildContractContext(String contractText) {
         return """
             Eres un abogado consultor especializado en contratos colombianos.
 
             CONTRATO:
             ```
             %s
-            ```
+            ```""".formatted(contractText);
+    }
 
+    /**
+     * Parte variable de una pregunta con respuesta JSON (va después de buildContractContext).
+     */
+    public String buildQuestionInstructions(String question) {
+        return buildQuestionInstructions(question, null);
+    }
+
+    // Igual, precedida por la memoria de la conversación (ver ConversationMemoryService)
+    public String buildQuestionInstructions(String question, String history) {
+        return historyBlock(history) + """
             PREGUNTA:
             "%s"
 
@@ -100,33 +258,115 @@ public class PromptService {
             }
 
             Si el contrato no contiene la respuesta, indícalo explícitamente.
-            """.formatted(contractText, question);
+            """.formatted(question);
     }
 
     /**
-     * Prompt para resumen ejecutivo profesional.
+     * Parte variable de una pregunta con respuesta en texto plano (streaming).
      */
-    public String buildSummaryPrompt(String contractText) {
+    public String buildStreamingQuestionInstructions(String question) {
+        return buildStreamingQuestionInstructions(question, null);
+    }
+
+    public String buildStreamingQuestionInstructions(String question, String history) {
+        return historyBlock(history) + """
+            PREGUNTA:
+            "%s"
+
+            Responde en texto plano, SIN formato JSON, basándote únicamente en el contrato.
+            Al final, cita las cláusulas del contrato que respaldan la respuesta.
+            Si el contrato no contiene la respuesta, indícalo explícitamente.
+            """.formatted(question);
+    }
+
+    /**
+     * Pregunta con respuesta JSON sobre las cláusulas recuperadas (ClauseRetrievalService)
+     * en lugar del contrato completo.
+     */
+    public String buildRetrievedQuestionPrompt(List<RetrievedClause> clauses, String question, String history) {
+        return buildRetrievedContext(clauses) + "\n\n" + buildQuestionInstructions(question, history);
+    }
+
+    /**
+     * Pregunta en texto plano (streaming) sobre las cláusulas recuperadas.
+     */
+    public String buildStreamingRetrievedQuestionPrompt(List<RetrievedClause> clauses, String question, String history) {
+        return buildRetrievedContext(clauses) + "\n\n" + buildStreamingQuestionInstructions(question, history);
+    }
+
+    // Fragmentos numerados por su posición en el contrato para que la respuesta los cite
+    private String buildRetrievedContext(List<RetrievedClause> clauses) {
+        StringBuilder fragments = new StringBuilder();
+        for (RetrievedClause clause : clauses) {
+            fragments.append("[").append(clause.getNumber()).append("] ")
+                    .append(clause.getHeading()).append("\n")
+                    .append(clause.getText()).append("\n\n");
+        }
         return """
-            Resume profesionalmente el contrato con enfoque colombiano.
+            Eres un abogado consultor especializado en contratos colombianos.
 
-            CONTRATO:
-            ```
-            %s
+            FRAGMENTOS DEL CONTRATO (cláusulas más relevantes para la pregunta, en orden):
             ```
+            %s```
 
-            Devuelve SOLO JSON:
-            {
-              "type": "Tipo de contrato",
-              "legalBasis": ["Normas aplicables al tipo de contrato"],
-              "summary": "Descripción ejecutiva clara",
-              "keyPoints": ["Puntos clave"],
-              "parties": ["Parte 1", "Parte 2"],
-              "duration": "Vigencia o plazo identificado",
-              "financialTerms": ["Obligaciones económicas"],
-              "termination": ["Condiciones de terminación"]
+            El resto del contrato no se incluye. Cita las cláusulas por su número entre corchetes,
+            por ejemplo "[3] CLÁUSULA TERCERA".""".formatted(fragments);
+    }
+
+    /**
+     * Memoria de la conversación para el prompt: resumen de lo anterior y mensajes recientes
+     * en orden cronológico. Devuelve null si no hay nada que recordar.
+     */
+    public String buildConversationHistory(String summary, List<ChatMessage> recent) {
+        StringBuilder history = new StringBuilder();
+        if (summary != null && !summary.isBlank()) {
+            history.append("Resumen de lo conversado antes:\n").append(summary.strip()).append("\n\n");
+        }
+        if (!recent.isEmpty()) {
+            history.append("Mensajes recientes:\n");
+            for (ChatMessage message : recent) {
+                history.append(conversationLine(message)).append("\n");
             }
-            """.formatted(contractText);
+        }
+        return history.isEmpty() ? null : history.toString().strip();
+    }
+
+    /**
+     * Prompt para incorporar mensajes antiguos al resumen de la conversación.
+     */
+    public String buildConversationSummaryPrompt(String previousSummary, List<ChatMessage> messages, int maxWords) {
+        StringBuilder transcript = new StringBuilder();
+        for (ChatMessage message : messages) {
+            transcript.append(conversationLine(message)).append("\n");
+        }
+        return """
+            Actualiza el resumen de una conversación entre un usuario y un asistente legal.
+
+            RESUMEN ACTUAL:
+            %s
+
+            MENSAJES NUEVOS:
+            %s
+            Escribe el resumen actualizado en texto plano, SIN formato JSON, en máximo %d palabras.
+            Conserva los hechos que el usuario dio (partes, montos, fechas, cláusulas consultadas),
+            las preguntas hechas y las conclusiones del asistente. Omite saludos y repeticiones.
+            """.formatted(previousSummary == null || previousSummary.isBlank() ? "(vacío)" : previousSummary.strip(),
+                transcript, maxWords);
+    }
+
+    private String conversationLine(ChatMessage message) {
+        String role = "assistant".equalsIgnoreCase(message.getRole()) ? "Asistente" : "Usuario";
+        return role + ": " + message.getMessage();
+    }
+
+    // Conversación previa antes de la pregunta; vacío si no hay historial
+    private String historyBlock(String history) {
+        if (history == null || history.isBlank()) return "";
+        return """
+            CONVERSACIÓN PREVIA (úsala solo para entender a qué se refiere la pregunta):
+            %s
+
+            """.formatted(history);
     }
 
     /**
@@ -164,56 +404,17 @@ public class PromptService {
             """.formatted(c1, c2);
     }
 
-    /**
-     * Prompt para detección de tipo contractual con marco legal colombiano.
-     */
-    public String buildTypeDetectionPrompt(String contractText) {
-        return """
-            Identifica el tipo exacto de contrato y su marco legal colombiano.
-
-            %s
+    // ========== ESQUEMAS (subconjunto OpenAPI que acepta Gemini) ==========
 
-            CONTRATO:
-            ```
-            %s
-            ```
-
-            Devuelve SOLO JSON:
-            {
-              "type": "Tipo principal",
-              "subtype": "Subtipo específico",
-              "legalBasis": ["Normas aplicables"],
-              "confidence": "0-100",
-              "reasoning": "Explicación breve"
-            }
-            """.formatted(legalFramework, contractText);
+    private static Map<String, Object> object(List<String> ordering, Map<String, Object> properties, List<String> required) {
+        return Map.of("type", "OBJECT", "properties", properties, "required", required, "propertyOrdering", ordering);
     }
 
-    /**
-     * Prompt para extraer fechas del contrato.
-     */
-    public String buildDatesExtractionPrompt(String contractText) {
-        return """
-            Extrae fechas y plazos relevantes del contrato.
-
-            CONTRATO:
-            ```
-            %s
-            ```
+    private static Map<String, Object> array(Map<String, Object> items) {
+        return Map.of("type", "ARRAY", "items", items);
+    }
 
-            Devuelve SOLO JSON:
-            {
-              "dates": [
-                {
-                  "type": "inicio | terminación | pago | aviso | renovación",
-                  "value": "Fecha o descripción",
-                  "importance": "high | medium | low"
-                }
-              ],
-              "criticalDeadlines": [
-                "Fechas que requieren especial atención"
-              ]
-            }
-            """.formatted(contractText);
+    private static Map<String, Object> string() {
+        return Map.of("type", "STRING");
     }
 }
@@ -0,0 +1,118 @@
+package com.acl.backend.service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.acl.backend.exception.QuotaExceededException;
+import com.acl.backend.model.Contract;
+
+/**
+ * Re-analiza en segundo plano los contratos que quedaron con análisis provisional
+ * (por reglas) mientras Gemini no estaba disponible.
+ *
+ * Cada intento que vuelve a quedar provisional cuenta como fallo y el siguiente se aplaza con
+ * backoff exponencial (backoff-minutes, 2x, 4x... hasta un día). Tras max-attempts fallos el
+ * contrato deja de reintentarse: uno que siempre falla (JSON inválido, contenido bloqueado) no
+ * ocupa el lote para siempre. Si el dueño agotó su cuota diaria el contrato se aplaza hasta el
+ * próximo día UTC sin contar el intento.
+ */
+@Component
+public class ReanalysisScheduler {
+
+    private static final Logger log = LoggerFactory.getLogger(ReanalysisScheduler.class);
+    private static final Duration MAX_BACKOFF = Duration.ofDays(1);
+
+    private final ContractService contractService;
+    private final GeminiService geminiService;
+    private final boolean useAI;
+    private final int batchSize;
+    private final int maxAttempts;
+    private final Duration backoff;
+
+    public ReanalysisScheduler(ContractService contractService, GeminiService geminiService,
+                               @Value("${analysis.use-ai:true}") boolean useAI,
+                               @Value("${analysis.reanalysis.batch-size:20}") int batchSize,
+                               @Value("${analysis.reanalysis.max-attempts:5}") int maxAttempts,
+                               @Value("${analysis.reanalysis.backoff-minutes:15}") long backoffMinutes) {
+        this.contractService = contractService;
+        this.geminiService = geminiService;
+        this.useAI = useAI;
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+        this.backoff = Duration.ofMinutes(backoffMinutes);
+    }
+
+    @Scheduled(initialDelayString = "${analysis.reanalysis.interval-ms:300000}",
+            fixedDelayString = "${analysis.reanalysis.interval-ms:300000}")
+    public void reanalyzePending() {
+        if (!useAI || !geminiService.isAvailable()) return;
+
+        List<Contract> pending;
+        try {
+            pending = contractService.findPendingReanalysis(maxAttempts, batchSize);
+        } catch (Exception e) {
+            log.warn("No se pudieron consultar contratos pendientes de re-análisis: {}", e.getMessage());
+            return;
+        }
+        if (pending.isEmpty()) return;
+
+        log.info("Re-analizando {} contratos con análisis provisional", pending.size());
+        for (Contract contract : pending) {
+            // Si Gemini vuelve a caer se detiene el lote sin contar el intento; se reintenta en la próxima ejecución
+            if (!geminiService.isAvailable()) break;
+            try {
+                Contract updated = contractService.reanalyze(contract);
+                if (updated.isPendingReanalysis()) {
+                    // Si el circuito se abrió durante el intento no es un fallo del contrato
+                    if (!geminiService.isAvailable()) break;
+                    recordFailure(updated, "sigue provisional");
+                }
+            } catch (QuotaExceededException e) {
+                deferUntilTomorrow(contract);
+            } catch (Exception e) {
+                recordFailure(contract, e.getMessage());
+            }
+        }
+    }
+
+    // La cuota se renueva al empezar el día UTC (TokenUsageService); reintentar antes solo gasta el lote
+    private void deferUntilTomorrow(Contract contract) {
+        Instant tomorrow = LocalDate.now(ZoneOffset.UTC).plusDays(1).atStartOfDay(ZoneOffset.UTC).toInstant();
+        log.info("Contrato {} sin cuota de IA; re-análisis aplazado hasta {}", contract.getId(), tomorrow);
+        try {
+            contractService.scheduleReanalysis(contract, contract.getReanalysisAttempts(), tomorrow);
+        } catch (Exception e) {
+            log.warn("No se pudo guardar el próximo re-análisis del contrato {}: {}", contract.getId(), e.getMessage());
+        }
+    }
+
+    private void recordFailure(Contract contract, String reason) {
+        int attempts = contract.getReanalysisAttempts() + 1;
+        if (attempts >= maxAttempts) {
+            log.warn("Contrato {} sin análisis con IA tras {} intentos ({}); no se reintenta más",
+                    contract.getId(), attempts, reason);
+        } else {
+            log.warn("Re-análisis del contrato {} falló (intento {}/{}): {}", contract.getId(), attempts, maxAttempts, reason);
+        }
+        try {
+            contractService.scheduleReanalysis(contract, attempts, Instant.now().plus(backoffFor(attempts)));
+        } catch (Exception e) {
+            log.warn("No se pudo guardar el próximo re-análisis del contrato {}: {}", contract.getId(), e.getMessage());
+        }
+    }
+
+    // backoff, 2x, 4x... acotado a un día
+    public Duration backoffFor(int attempts) {
+        Duration delay = backoff.multipliedBy(1L << Math.min(attempts - 1, 20));
+        return delay.compareTo(MAX_BACKOFF) > 0 ? MAX_BACKOFF : delay;
+    }
+}
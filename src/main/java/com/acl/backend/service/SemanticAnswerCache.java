@@ -0,0 +1,265 @@
+package com.acl.backend.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.acl.backend.util.TextEmbedding;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Cache semántica de respuestas del chat legal general.
+ *
+ * Cada pregunta se normaliza y se convierte en un vector local (TextEmbedding). Las preguntas
+ * casi iguales ("¿Qué es una cláusula de confidencialidad?" / "que es la clausula de
+ * confidencialidad") reciben la respuesta guardada si la similitud coseno supera el umbral.
+ *
+ * Búsqueda aproximada (ANN) con LSH de hiperplanos aleatorios: cada entrada se indexa en
+ * varias tablas por el signo de su proyección; solo se compara con las entradas que comparten
+ * cubeta en alguna tabla. Las entradas vencen por TTL y se desalojan por LRU al llegar al máximo.
+ */
+@Service
+public class SemanticAnswerCache {
+
+    private static final Logger log = LoggerFactory.getLogger(SemanticAnswerCache.class);
+
+    // Semilla fija: los hiperplanos son iguales en todas las instancias
+    private static final long SEED = 0x5eed_c4c3L;
+
+    private final MeterRegistry meterRegistry;
+    private final boolean enabled;
+    private final int dimensions;
+    private final double threshold;
+    private final long ttlMs;
+    private final int maxEntries;
+    private final int maxQuestionTerms;
+    private final int tables;
+    private final int bitsPerTable;
+    private final float[][] hyperplanes;
+
+    private final AtomicLong ids = new AtomicLong();
+    // Entradas por id en orden de uso (LRU); los índices se actualizan bajo el mismo lock
+    private final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, Long> exact = new HashMap<>();
+    private final List<Map<Integer, Set<Long>>> buckets = new ArrayList<>();
+
+    public SemanticAnswerCache(MeterRegistry meterRegistry,
+                               @Value("${chat.semantic-cache.enabled:true}") boolean enabled,
+                               @Value("${chat.semantic-cache.dimensions:512}") int dimensions,
+                               @Value("${chat.semantic-cache.threshold:0.9}") double threshold,
+                               @Value("${chat.semantic-cache.ttl-minutes:1440}") long ttlMinutes,
+                               @Value("${chat.semantic-cache.max-entries:2000}") int maxEntries,
+                               @Value("${chat.semantic-cache.max-question-terms:30}") int maxQuestionTerms,
+                               @Value("${chat.semantic-cache.lsh-tables:12}") int tables,
+                               @Value("${chat.semantic-cache.lsh-bits:8}") int bitsPerTable) {
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.dimensions = dimensions;
+        this.threshold = threshold;
+        this.ttlMs = ttlMinutes * 60_000;
+        this.maxEntries = maxEntries;
+        this.maxQuestionTerms = maxQuestionTerms;
+        this.tables = tables;
+        this.bitsPerTable = bitsPerTable;
+
+        Random random = new Random(SEED);
+        this.hyperplanes = new float[tables * bitsPerTable][dimensions];
+        for (float[] plane : hyperplanes) {
+            for (int i = 0; i < dimensions; i++) plane[i] = (float) random.nextGaussian();
+        }
+        for (int t = 0; t < tables; t++) buckets.add(new HashMap<>());
+
+        meterRegistry.gauge("chat.semantic-cache.entries", entries, this::sizeOf);
+    }
+
+    /**
+     * Respuesta guardada para una pregunta igual o casi igual, si existe y no venció.
+     */
+    public Optional<String> lookup(String question) {
+        List<String> terms = TextEmbedding.terms(question);
+        if (!cacheable(terms)) {
+            count("bypass");
+            return Optional.empty();
+        }
+
+        String key = String.join(" ", terms);
+        float[] vector = TextEmbedding.embedTerms(terms, dimensions);
+        int[] signatures = signatures(vector);
+        long now = System.currentTimeMillis();
+
+        Entry best = null;
+        double bestSimilarity = threshold;
+        synchronized (entries) {
+            Long exactId = exact.get(key);
+            Entry exactEntry = exactId != null ? entries.get(exactId) : null;
+            if (exactEntry != null && !exactEntry.isExpired(now)) {
+                best = exactEntry;
+                bestSimilarity = 1.0;
+            } else {
+                for (Long id : candidates(signatures)) {
+                    Entry e = entries.get(id);
+                    if (e == null || e.isExpired(now)) continue;
+                    double similarity = TextEmbedding.cosine(vector, e.vector);
+                    if (similarity >= bestSimilarity) {
+                        best = e;
+                        bestSimilarity = similarity;
+                    }
+                }
+                // Marcar como usada para el LRU
+                if (best != null) entries.get(best.id);
+            }
+        }
+
+        if (best == null) {
+            count("miss");
+            return Optional.empty();
+        }
+        count("hit");
+        log.debug("Respuesta del chat general desde cache semántica (similitud {})", String.format("%.3f", bestSimilarity));
+        return Optional.of(best.answer);
+    }
+
+    // Guarda la respuesta de una pregunta (reemplaza la de una pregunta idéntica ya guardada)
+    public void put(String question, String answer) {
+        List<String> terms = TextEmbedding.terms(question);
+        if (!cacheable(terms) || answer == null || answer.isBlank()) return;
+
+        String key = String.join(" ", terms);
+        float[] vector = TextEmbedding.embedTerms(terms, dimensions);
+        Entry entry = new Entry(ids.incrementAndGet(), key, vector, signatures(vector), answer,
+                System.currentTimeMillis() + ttlMs);
+
+        synchronized (entries) {
+            Long previous = exact.get(key);
+            if (previous != null) remove(previous);
+
+            entries.put(entry.id, entry);
+            exact.put(key, entry.id);
+            for (int t = 0; t < tables; t++) {
+                buckets.get(t).computeIfAbsent(entry.signatures[t], k -> new HashSet<>()).add(entry.id);
+            }
+
+            while (entries.size() > maxEntries) {
+                Long eldest = entries.keySet().iterator().next();
+                remove(eldest);
+                evicted("size");
+            }
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    // Elimina las entradas vencidas
+    @Scheduled(fixedDelayString = "${chat.semantic-cache.cleanup-interval-ms:300000}")
+    public void evictExpired() {
+        long now = System.currentTimeMillis();
+        synchronized (entries) {
+            List<Long> expired = new ArrayList<>();
+            for (Entry e : entries.values()) {
+                if (e.isExpired(now)) expired.add(e.id);
+            }
+            expired.forEach(id -> {
+                remove(id);
+                evicted("ttl");
+            });
+        }
+    }
+
+    // Preguntas vacías o largas (casos particulares) no se cachean
+    private boolean cacheable(List<String> terms) {
+        return enabled && !terms.isEmpty() && terms.size() <= maxQuestionTerms;
+    }
+
+    // Firma por tabla: un bit por hiperplano según el lado en que cae el vector
+    private int[] signatures(float[] vector) {
+        int[] signatures = new int[tables];
+        for (int t = 0; t < tables; t++) {
+            int signature = 0;
+            for (int b = 0; b < bitsPerTable; b++) {
+                float[] plane = hyperplanes[t * bitsPerTable + b];
+                double dot = 0;
+                for (int i = 0; i < dimensions; i++) dot += plane[i] * vector[i];
+                if (dot >= 0) signature |= 1 << b;
+            }
+            signatures[t] = signature;
+        }
+        return signatures;
+    }
+
+    private Set<Long> candidates(int[] signatures) {
+        Set<Long> candidates = new HashSet<>();
+        for (int t = 0; t < tables; t++) {
+            Set<Long> bucket = buckets.get(t).get(signatures[t]);
+            if (bucket != null) candidates.addAll(bucket);
+        }
+        return candidates;
+    }
+
+    // Requiere el lock de entries
+    private void remove(Long id) {
+        Entry e = entries.remove(id);
+        if (e == null) return;
+        exact.remove(e.key, id);
+        for (int t = 0; t < tables; t++) {
+            Set<Long> bucket = buckets.get(t).get(e.signatures[t]);
+            if (bucket != null) {
+                bucket.remove(id);
+                if (bucket.isEmpty()) buckets.get(t).remove(e.signatures[t]);
+            }
+        }
+    }
+
+    private void count(String result) {
+        meterRegistry.counter("chat.semantic-cache.requests", "result", result).increment();
+    }
+
+    private void evicted(String reason) {
+        meterRegistry.counter("chat.semantic-cache.evictions", "reason", reason).increment();
+    }
+
+    private double sizeOf(Map<Long, Entry> map) {
+        synchronized (entries) {
+            return map.size();
+        }
+    }
+
+    private static final class Entry {
+        private final long id;
+        private final String key;
+        private final float[] vector;
+        private final int[] signatures;
+        private final String answer;
+        private final long expiresAt;
+
+        private Entry(long id, String key, float[] vector, int[] signatures, String answer, long expiresAt) {
+            this.id = id;
+            this.key = key;
+            this.vector = vector;
+            this.signatures = signatures;
+            this.answer = answer;
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean isExpired(long now) {
+            return now >= expiresAt;
+        }
+    }
+}
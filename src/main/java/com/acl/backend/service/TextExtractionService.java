@@ -13,18 +13,29 @@ import org.springframework.web.multipart.MultipartFile;
 public class TextExtractionService {
 
     public String extractText(MultipartFile file) throws Exception {
-        String filename = file.getOriginalFilename() != null ? file.getOriginalFilename().toLowerCase() : "file";
+        return extractText(file.getOriginalFilename(), file.getInputStream());
+    }
+
+    // Extracción desde un archivo ya leído (p. ej. guardado en un job asíncrono)
+    public String extractText(String originalFilename, InputStream in) throws Exception {
+        String filename = originalFilename != null ? originalFilename.toLowerCase() : "file";
         if (filename.endsWith(".pdf")) {
-            return extractFromPdf(file.getInputStream());
+            return extractFromPdf(in);
         } else if (filename.endsWith(".docx")) {
-            return extractFromDocx(file.getInputStream());
+            return extractFromDocx(in);
         } else if (filename.endsWith(".doc")) {
-            return extractFromDoc(file.getInputStream());
+            return extractFromDoc(in);
         }else {
             throw new IllegalArgumentException("Formato no soportado. Use PDF o DOCX.");
         }
     }
 
+    // Valida la extensión antes de encolar un archivo
+    public boolean isSupported(String originalFilename) {
+        String filename = originalFilename != null ? originalFilename.toLowerCase() : "";
+        return filename.endsWith(".pdf") || filename.endsWith(".docx") || filename.endsWith(".doc");
+    }
+
     private String extractFromPdf(InputStream in) throws Exception {
         try (PDDocument doc = PDDocument.load(in)) {
             PDFTextStripper stripper = new PDFTextStripper();
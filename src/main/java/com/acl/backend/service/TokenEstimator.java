@@ -0,0 +1,178 @@
+package com.acl.backend.service;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import com.acl.backend.data.GeminiData.UsageMetadata;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Estimador local de tokens para texto legal en español.
+ *
+ * Recorre el texto por segmentos (palabras, números, signos, saltos de línea) con reglas
+ * aproximadas del tokenizador de Gemini: las palabras largas, en mayúsculas o con tildes se
+ * parten en más piezas y cada dígito cuenta como un token. El resultado se multiplica por un
+ * factor de calibración que se ajusta con el promptTokenCount real de cada respuesta.
+ *
+ * También guarda, por operación, los tokens de salida y la latencia por token observados
+ * para estimar el costo de un análisis antes de hacerlo.
+ */
+@Service
+public class TokenEstimator {
+
+    private static final Logger log = LoggerFactory.getLogger(TokenEstimator.class);
+
+    private static final double ALPHA = 0.1;
+    private static final double MIN_FACTOR = 0.5;
+    private static final double MAX_FACTOR = 2.0;
+    // Prompts muy cortos no sirven para calibrar
+    private static final int MIN_CALIBRATION_TOKENS = 50;
+
+    private static final double DEFAULT_OUTPUT_TOKENS = 1500;
+    private static final double DEFAULT_MS_PER_TOKEN = 2.0;
+
+    private volatile double factor = 1.0;
+    private final ConcurrentHashMap<String, Stats> statsByOperation = new ConcurrentHashMap<>();
+
+    public TokenEstimator(MeterRegistry meterRegistry) {
+        meterRegistry.gauge("gemini.tokens.estimator.factor", this, TokenEstimator::getFactor);
+    }
+
+    // Tokens estimados (calibrados) del texto
+    public int estimateTokens(String text) {
+        if (text == null || text.isEmpty()) return 0;
+        return (int) Math.ceil(rawTokens(text, Integer.MAX_VALUE)[0] * factor);
+    }
+
+    /**
+     * Corta el texto en un límite de palabra para que quepa en maxTokens.
+     * Devuelve el texto original si ya cabe.
+     */
+    public String truncateToTokens(String text, int maxTokens) {
+        if (text == null || estimateTokens(text) <= maxTokens) return text;
+        int budget = (int) Math.floor(maxTokens / factor);
+        int cut = (int) rawTokens(text, budget)[1];
+        return text.substring(0, cut);
+    }
+
+    /**
+     * Caracteres que ocupan aproximadamente maxTokens en este texto (relación propia del documento).
+     * Sirve para cortar por tamaño con herramientas que trabajan en caracteres.
+     */
+    public int charsForTokens(String text, int maxTokens) {
+        int tokens = estimateTokens(text);
+        if (tokens == 0) return maxTokens * 4;
+        double charsPerToken = (double) text.length() / tokens;
+        return Math.max(1, (int) (maxTokens * charsPerToken));
+    }
+
+    /**
+     * Ajusta la calibración con el consumo real de una llamada y actualiza las
+     * estadísticas de salida y latencia de la operación.
+     */
+    public void observe(String operation, String prompt, UsageMetadata usage, long latencyMs) {
+        if (usage == null) return;
+
+        Integer promptTokens = usage.getPromptTokenCount();
+        if (promptTokens != null && prompt != null) {
+            double raw = rawTokens(prompt, Integer.MAX_VALUE)[0];
+            if (raw >= MIN_CALIBRATION_TOKENS) {
+                double ratio = Math.max(MIN_FACTOR, Math.min(MAX_FACTOR, promptTokens / raw));
+                factor = factor + ALPHA * (ratio - factor);
+                log.debug("Calibración de tokens: real={} estimado={} factor={}", promptTokens, (long) raw, factor);
+            }
+        }
+
+        int output = usage.getCandidatesTokenCount() != null ? usage.getCandidatesTokenCount() : 0;
+        int total = (promptTokens != null ? promptTokens : 0) + output;
+        statsByOperation.computeIfAbsent(operation, k -> new Stats()).update(output, total, latencyMs);
+    }
+
+    // Tokens de salida esperados para una llamada de la operación
+    public int expectedOutputTokens(String operation) {
+        Stats s = statsByOperation.get(operation);
+        return (int) Math.round(s != null ? s.outputTokens : DEFAULT_OUTPUT_TOKENS);
+    }
+
+    // Latencia esperada (ms) de una llamada con esa cantidad de tokens
+    public long expectedLatencyMs(String operation, int inputTokens, int outputTokens) {
+        Stats s = statsByOperation.get(operation);
+        double msPerToken = s != null ? s.msPerToken : DEFAULT_MS_PER_TOKEN;
+        return Math.round(msPerToken * (inputTokens + outputTokens));
+    }
+
+    public double getFactor() {
+        return factor;
+    }
+
+    /**
+     * Tokens sin calibrar del texto hasta agotar maxTokens.
+     * Devuelve {tokens, índice de corte}; el corte cae siempre al final de un segmento.
+     */
+    private static double[] rawTokens(String text, double maxTokens) {
+        double tokens = 0;
+        int i = 0;
+        int n = text.length();
+        while (i < n) {
+            char c = text.charAt(i);
+            int start = i;
+            double cost;
+            if (Character.isLetter(c)) {
+                boolean accented = false;
+                boolean upper = true;
+                while (i < n && Character.isLetter(text.charAt(i))) {
+                    char ch = text.charAt(i);
+                    if (ch > 127) accented = true;
+                    if (Character.isLowerCase(ch)) upper = false;
+                    i++;
+                }
+                int len = i - start;
+                // Palabras comunes cortas son una pieza; las largas se parten cada ~4 letras
+                cost = len <= 4 ? 1 : Math.ceil(len / (upper ? 3.0 : 4.0));
+                if (accented && len > 4) cost += 0.5;
+            } else if (Character.isDigit(c)) {
+                while (i < n && Character.isDigit(text.charAt(i))) i++;
+                cost = i - start;
+            } else if (c == '\n' || c == '\r') {
+                while (i < n && (text.charAt(i) == '\n' || text.charAt(i) == '\r')) i++;
+                cost = 1;
+            } else if (Character.isWhitespace(c)) {
+                // Los espacios simples se funden con la palabra siguiente
+                while (i < n && Character.isWhitespace(text.charAt(i))
+                        && text.charAt(i) != '\n' && text.charAt(i) != '\r') i++;
+                cost = i - start > 1 ? 1 : 0;
+            } else {
+                // Signos repetidos (----, ....) se agrupan
+                while (i < n && text.charAt(i) == c) i++;
+                cost = Math.ceil((i - start) / 4.0);
+            }
+            if (tokens + cost > maxTokens) {
+                return new double[]{tokens, start};
+            }
+            tokens += cost;
+        }
+        return new double[]{tokens, n};
+    }
+
+    private static final class Stats {
+        private volatile double outputTokens = DEFAULT_OUTPUT_TOKENS;
+        private volatile double msPerToken = DEFAULT_MS_PER_TOKEN;
+        private boolean initialized;
+
+        private synchronized void update(int output, int total, long latencyMs) {
+            double ms = total > 0 ? (double) latencyMs / total : msPerToken;
+            if (!initialized) {
+                outputTokens = output;
+                msPerToken = ms;
+                initialized = true;
+                return;
+            }
+            outputTokens += ALPHA * (output - outputTokens);
+            msPerToken += ALPHA * (ms - msPerToken);
+        }
+    }
+}
@@ -0,0 +1,307 @@
+package com.acl.backend.service;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import com.acl.backend.data.GeminiData.UsageMetadata;
+import com.acl.backend.data.UsageData.UsageReport;
+import com.acl.backend.data.UsageData.UsageTotals;
+import com.acl.backend.data.UsageData.UserUsage;
+import com.acl.backend.exception.QuotaExceededException;
+import com.acl.backend.model.TokenUsageBucket;
+import com.acl.backend.repository.TokenUsageRepository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Contabilidad de tokens por llamada a Gemini y cuotas diarias por usuario.
+ *
+ * Cada llamada se acumula en un documento por día/usuario/operación/nivel de modelo (token_usage).
+ * La cuota se verifica antes de llamar con un contador en memoria que se sincroniza
+ * periódicamente con Mongo, para no consultar la base en cada petición.
+ */
+@Service
+public class TokenUsageService {
+
+    private static final Logger log = LoggerFactory.getLogger(TokenUsageService.class);
+
+    private final MongoTemplate mongoTemplate;
+    private final TokenUsageRepository tokenUsageRepository;
+    private final MeterRegistry meterRegistry;
+    private final Counter quotaRejectedCounter;
+
+    private final long dailyTokenBudget;
+    private final long refreshMs;
+
+    // Tokens consumidos hoy por usuario
+    private final ConcurrentHashMap<Long, DailyTokens> usedToday = new ConcurrentHashMap<>();
+
+    public TokenUsageService(MongoTemplate mongoTemplate,
+                             TokenUsageRepository tokenUsageRepository,
+                             MeterRegistry meterRegistry,
+                             @Value("${usage.quota.daily-tokens:500000}") long dailyTokenBudget,
+                             @Value("${usage.quota.refresh-ms:60000}") long refreshMs) {
+        this.mongoTemplate = mongoTemplate;
+        this.tokenUsageRepository = tokenUsageRepository;
+        this.meterRegistry = meterRegistry;
+        this.dailyTokenBudget = dailyTokenBudget;
+        this.refreshMs = refreshMs;
+        this.quotaRejectedCounter = Counter.builder("usage.quota.rejected")
+                .description("Llamadas a Gemini rechazadas por cuota diaria agotada")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Completa vacío si el usuario aún tiene presupuesto hoy; si no, falla con QuotaExceededException.
+     * Sin usuario (tareas internas) o con presupuesto 0 no hay límite.
+     */
+    public Mono<Void> checkQuota(Long userId) {
+        if (userId == null || dailyTokenBudget <= 0) {
+            return Mono.empty();
+        }
+
+        DailyTokens current = usedToday.get(userId);
+        Mono<Long> used = current != null && current.isFresh(today(), refreshMs)
+                ? Mono.just(current.tokens.get())
+                : Mono.fromCallable(() -> refresh(userId)).subscribeOn(Schedulers.boundedElastic());
+
+        return used.flatMap(tokens -> {
+            if (tokens >= dailyTokenBudget) {
+                quotaRejectedCounter.increment();
+                log.warn("Cuota diaria de IA agotada para usuario {} ({} tokens)", userId, tokens);
+                return Mono.error(new QuotaExceededException(
+                        "Se alcanzó el límite diario de uso de IA. Intenta de nuevo mañana."));
+            }
+            return Mono.<Void>empty();
+        });
+    }
+
+    /**
+     * Registra una llamada (exitosa o no). Las métricas se actualizan al instante;
+     * el documento de Mongo se actualiza en segundo plano.
+     */
+    public void record(Long userId, String operation, UsageMetadata usage, long latencyMs, boolean success) {
+        record(userId, operation, GeminiModelRouter.Tier.STANDARD.tag(), usage, latencyMs, success);
+    }
+
+    /**
+     * Igual que record, indicando el nivel de modelo que atendió la llamada (etiqueta tier).
+     */
+    public void record(Long userId, String operation, String tier, UsageMetadata usage, long latencyMs,
+                       boolean success) {
+        long prompt = usage != null && usage.getPromptTokenCount() != null ? usage.getPromptTokenCount() : 0;
+        long candidates = usage != null && usage.getCandidatesTokenCount() != null ? usage.getCandidatesTokenCount() : 0;
+        long total = usage != null && usage.getTotalTokenCount() != null ? usage.getTotalTokenCount() : prompt + candidates;
+
+        // Sin etiqueta de usuario en Micrometer para no disparar la cardinalidad
+        tokens(operation, tier, "prompt", false).increment(prompt);
+        tokens(operation, tier, "candidates", false).increment(candidates);
+        if (usage != null && usage.getCachedContentTokenCount() != null) {
+            // Parte del prompt servida desde un contexto cacheado (se factura con descuento)
+            tokens(operation, tier, "cached", false).increment(usage.getCachedContentTokenCount());
+        }
+        Timer.builder("gemini.calls")
+                .description("Latencia de llamadas a Gemini por operación")
+                .tags("operation", operation, "tier", tier, "outcome", success ? "success" : "error")
+                .register(meterRegistry)
+                .record(latencyMs, TimeUnit.MILLISECONDS);
+
+        LocalDate day = today();
+        if (userId != null && total > 0) {
+            usedToday.compute(userId, (id, d) -> d != null && d.day.equals(day) ? d : new DailyTokens(day))
+                    .tokens.addAndGet(total);
+        }
+
+        Mono.fromRunnable(() -> persist(day, userId, operation, tier, prompt, candidates, total, latencyMs, success))
+                .subscribeOn(Schedulers.boundedElastic())
+                .subscribe(null, e -> log.warn("No se pudo registrar el consumo de tokens: {}", e.getMessage()));
+    }
+
+    /**
+     * Registra el intento perdedor de una carrera con cobertura (GeminiHedger): se canceló antes de
+     * responder, así que no hay usageMetadata, pero Gemini ya recibió el prompt y lo factura.
+     * Se cuentan los tokens estimados del prompt con la etiqueta hedged=true; sin latencia de llamada.
+     */
+    public void recordHedged(Long userId, String operation, String tier, long promptTokens) {
+        if (promptTokens <= 0) return;
+        tokens(operation, tier, "prompt", true).increment(promptTokens);
+
+        LocalDate day = today();
+        if (userId != null) {
+            usedToday.compute(userId, (id, d) -> d != null && d.day.equals(day) ? d : new DailyTokens(day))
+                    .tokens.addAndGet(promptTokens);
+        }
+
+        Mono.fromRunnable(() -> persist(day, userId, operation, tier, promptTokens, 0, promptTokens, 0, true))
+                .subscribeOn(Schedulers.boundedElastic())
+                .subscribe(null, e -> log.warn("No se pudo registrar el consumo de tokens: {}", e.getMessage()));
+    }
+
+    private Counter tokens(String operation, String tier, String type, boolean hedged) {
+        return meterRegistry.counter("gemini.tokens", "operation", operation, "tier", tier, "type", type,
+                "hedged", String.valueOf(hedged));
+    }
+
+    // Tokens consumidos hoy por el usuario según el contador local
+    public long getUsedToday(Long userId) {
+        DailyTokens d = usedToday.get(userId);
+        return d != null && d.day.equals(today()) ? d.tokens.get() : 0;
+    }
+
+    // Presupuesto restante hoy (bloqueante: puede releer el consumo desde Mongo)
+    public long getRemainingToday(Long userId) {
+        DailyTokens current = usedToday.get(userId);
+        long used = current != null && current.isFresh(today(), refreshMs) ? current.tokens.get() : refresh(userId);
+        return Math.max(0, dailyTokenBudget - used);
+    }
+
+    public long getDailyTokenBudget() {
+        return dailyTokenBudget;
+    }
+
+    /**
+     * Totales del rango [from, to] (días UTC) por operación, por día y por usuario
+     */
+    public UsageReport report(LocalDate from, LocalDate to, int topUsers) {
+        List<String> days = new ArrayList<>();
+        for (LocalDate d = from; !d.isAfter(to); d = d.plusDays(1)) {
+            days.add(d.toString());
+        }
+
+        List<TokenUsageBucket> buckets = tokenUsageRepository.findByDayIn(days);
+
+        UsageTotals totals = new UsageTotals();
+        Map<String, UsageTotals> byOperation = new TreeMap<>();
+        Map<String, UsageTotals> byTier = new TreeMap<>();
+        Map<String, UsageTotals> byDay = new TreeMap<>();
+        Map<Long, UsageTotals> byUser = new HashMap<>();
+        for (TokenUsageBucket b : buckets) {
+            add(totals, b);
+            add(byOperation.computeIfAbsent(b.getOperation(), k -> new UsageTotals()), b);
+            // Los documentos anteriores al enrutamiento usaban siempre el modelo estándar
+            String tier = b.getTier() != null ? b.getTier() : GeminiModelRouter.Tier.STANDARD.tag();
+            add(byTier.computeIfAbsent(tier, k -> new UsageTotals()), b);
+            add(byDay.computeIfAbsent(b.getDay(), k -> new UsageTotals()), b);
+            if (b.getUserId() != null) {
+                add(byUser.computeIfAbsent(b.getUserId(), k -> new UsageTotals()), b);
+            }
+        }
+
+        List<UserUsage> users = byUser.entrySet().stream()
+                .sorted(Comparator.comparingLong((Map.Entry<Long, UsageTotals> e) -> e.getValue().getTotalTokens())
+                        .reversed())
+                .limit(topUsers)
+                .map(e -> {
+                    UserUsage u = new UserUsage();
+                    u.setUserId(e.getKey());
+                    u.setTotals(e.getValue());
+                    return u;
+                })
+                .toList();
+
+        UsageReport report = new UsageReport();
+        report.setFrom(from.toString());
+        report.setTo(to.toString());
+        report.setDailyTokenBudget(dailyTokenBudget);
+        report.setTotals(totals);
+        report.setByOperation(byOperation);
+        report.setByTier(byTier);
+        report.setByDay(byDay);
+        report.setTopUsers(users);
+        return report;
+    }
+
+    private void persist(LocalDate day, Long userId, String operation, String tier, long prompt, long candidates,
+                         long total, long latencyMs, boolean success) {
+        String id = day + ":" + (userId != null ? userId : "system") + ":" + operation + ":" + tier;
+
+        Update update = new Update()
+                .setOnInsert("day", day.toString())
+                .setOnInsert("userId", userId)
+                .setOnInsert("operation", operation)
+                .setOnInsert("tier", tier)
+                .setOnInsert("bucketStart", day.atStartOfDay(ZoneOffset.UTC).toInstant())
+                .inc("calls", 1)
+                .inc("errors", success ? 0 : 1)
+                .inc("promptTokens", prompt)
+                .inc("candidateTokens", candidates)
+                .inc("totalTokens", total)
+                .inc("latencyMs", latencyMs);
+
+        mongoTemplate.upsert(Query.query(Criteria.where("_id").is(id)), update, TokenUsageBucket.class);
+    }
+
+    /**
+     * Relee el consumo del día desde Mongo (incluye llamadas de otras instancias).
+     * Se conserva el mayor valor porque las escrituras locales pueden no haber llegado aún.
+     */
+    private long refresh(Long userId) {
+        LocalDate day = today();
+        long stored;
+        try {
+            stored = tokenUsageRepository.findByUserIdAndDay(userId, day.toString()).stream()
+                    .mapToLong(TokenUsageBucket::getTotalTokens)
+                    .sum();
+        } catch (Exception e) {
+            // Si Mongo falla no se bloquea al usuario
+            log.warn("No se pudo leer el consumo de tokens del usuario {}: {}", userId, e.getMessage());
+            stored = 0;
+        }
+
+        DailyTokens d = usedToday.compute(userId, (id, old) -> old != null && old.day.equals(day) ? old : new DailyTokens(day));
+        d.tokens.accumulateAndGet(stored, Math::max);
+        d.syncedAt = System.currentTimeMillis();
+        return d.tokens.get();
+    }
+
+    private static void add(UsageTotals t, TokenUsageBucket b) {
+        long calls = t.getCalls() + b.getCalls();
+        double latencySum = t.getAvgLatencyMs() * t.getCalls() + b.getLatencyMs();
+        t.setCalls(calls);
+        t.setErrors(t.getErrors() + b.getErrors());
+        t.setPromptTokens(t.getPromptTokens() + b.getPromptTokens());
+        t.setCandidateTokens(t.getCandidateTokens() + b.getCandidateTokens());
+        t.setTotalTokens(t.getTotalTokens() + b.getTotalTokens());
+        t.setAvgLatencyMs(calls > 0 ? latencySum / calls : 0);
+    }
+
+    private static LocalDate today() {
+        return LocalDate.now(ZoneOffset.UTC);
+    }
+
+    private static final class DailyTokens {
+        private final LocalDate day;
+        private final AtomicLong tokens = new AtomicLong();
+        private volatile long syncedAt;
+
+        private DailyTokens(LocalDate day) {
+            this.day = day;
+        }
+
+        private boolean isFresh(LocalDate today, long refreshMs) {
+            return day.equals(today) && syncedAt > 0 && System.currentTimeMillis() - syncedAt < refreshMs;
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package com.acl.backend.service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import com.acl.backend.data.AnalysisData.AnalysisResult;
+import com.acl.backend.model.Contract;
+import com.acl.backend.model.ContractClause;
+import com.acl.backend.model.User;
+import com.acl.backend.repository.UserRepository;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Subida síncrona de un contrato (POST /api/contracts/upload) en etapas concurrentes.
+ *
+ * Cada grupo de etapas independientes corre en hilos virtuales dentro de un Scope: si una
+ * falla o se vence el plazo, se cancelan las demás (interrupción; la llamada a Gemini se
+ * cancela al interrumpir el block()) y el error sube al controlador.
+ *
+ *   1. extracción del texto  ||  búsqueda del usuario en Postgres
+ *   2. análisis (tipo, resumen, fechas, cláusulas y riesgos en una sola llamada cacheada)
+ *      ||  segmentación de cláusulas para Q&A
+ *   3. guardado en Mongo
+ *
+ * La duración de cada etapa se publica en upload.stage y se devuelve en Server-Timing.
+ */
+@Service
+public class UploadPipeline {
+
+    private static final Logger log = LoggerFactory.getLogger(UploadPipeline.class);
+
+    private final TextExtractionService textExtractionService;
+    private final UserRepository userRepository;
+    private final NLPAnalysisService nlpAnalysisService;
+    private final ClauseRetrievalService clauseRetrievalService;
+    private final ContractService contractService;
+    private final MeterRegistry meterRegistry;
+    private final long timeoutNanos;
+
+    private final ThreadFactory threads = Thread.ofVirtual().name("upload-", 0).factory();
+    // El hilo que coordina las etapas también es virtual: bloquearlo no ocupa un hilo de plataforma
+    private final Scheduler coordinator = Schedulers.fromExecutorService(
+            Executors.newThreadPerTaskExecutor(threads), "upload");
+
+    public UploadPipeline(TextExtractionService textExtractionService,
+                          UserRepository userRepository,
+                          NLPAnalysisService nlpAnalysisService,
+                          ClauseRetrievalService clauseRetrievalService,
+                          ContractService contractService,
+                          MeterRegistry meterRegistry,
+                          @Value("${upload.pipeline.timeout-seconds:180}") long timeoutSeconds) {
+        this.textExtractionService = textExtractionService;
+        this.userRepository = userRepository;
+        this.nlpAnalysisService = nlpAnalysisService;
+        this.clauseRetrievalService = clauseRetrievalService;
+        this.contractService = contractService;
+        this.meterRegistry = meterRegistry;
+        this.timeoutNanos = TimeUnit.SECONDS.toNanos(timeoutSeconds);
+    }
+
+    // upload() sin bloquear al que llama
+    public Mono<UploadResult> uploadAsync(MultipartFile file, String contractName, String userEmail,
+                                          AnalysisDepth depth) {
+        return Mono.fromCallable(() -> upload(file, contractName, userEmail, depth))
+                .subscribeOn(coordinator);
+    }
+
+    /**
+     * Extrae, analiza y guarda el contrato. userEmail null = subida anónima.
+     * Lanza TimeoutException si no termina dentro del plazo configurado.
+     */
+    public UploadResult upload(MultipartFile file, String contractName, String userEmail, AnalysisDepth depth)
+            throws Exception {
+        long start = System.nanoTime();
+        long deadline = start + timeoutNanos;
+        StageTimings timings = new StageTimings();
+        String outcome = "error";
+        try {
+            String text;
+            Long userId;
+            try (Scope scope = new Scope()) {
+                CompletableFuture<String> extraction = scope.fork(
+                        () -> timings.time("extract", () -> textExtractionService.extractText(file)));
+                CompletableFuture<Long> user = scope.fork(
+                        () -> timings.time("user", () -> findUserId(userEmail)));
+                scope.join(deadline);
+                text = extraction.resultNow();
+                userId = user.resultNow();
+            }
+
+            AnalysisResult analysis;
+            List<ContractClause> clauses;
+            try (Scope scope = new Scope()) {
+                CompletableFuture<AnalysisResult> analyzed = scope.fork(() -> timings.time("analyze",
+                        () -> nlpAnalysisService.analyzeAsync(text, depth)
+                                .contextWrite(UsageContext.user(userId))
+                                .block()));
+                CompletableFuture<List<ContractClause>> segmented = scope.fork(
+                        () -> timings.time("segment", () -> clauseRetrievalService.segment(text)));
+                scope.join(deadline);
+                analysis = analyzed.resultNow();
+                clauses = segmented.resultNow();
+            }
+
+            Contract saved = timings.time("save",
+                    () -> contractService.saveAnalyzed(contractName, text, clauses, userId, analysis));
+            outcome = "success";
+            timings.record("total", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            return new UploadResult(saved, timings.snapshot());
+        } catch (TimeoutException e) {
+            outcome = "timeout";
+            throw e;
+        } finally {
+            long totalNanos = System.nanoTime() - start;
+            Timer.builder("upload.pipeline")
+                    .description("Duración total de la subida síncrona de un contrato")
+                    .tag("outcome", outcome)
+                    .register(meterRegistry)
+                    .record(totalNanos, TimeUnit.NANOSECONDS);
+            log.debug("Subida de {} ({}): {}", contractName, outcome, timings.serverTiming());
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        coordinator.dispose();
+    }
+
+    private Long findUserId(String email) {
+        if (email == null) return null;
+        User user = userRepository.findByEmail(email)
+                .orElseThrow(() -> new RuntimeException("Usuario no encontrado"));
+        return user.getId();
+    }
+
+    /**
+     * Tiempos por etapa de una subida, en el orden en que terminaron.
+     */
+    private final class StageTimings {
+        private final Map<String, Long> millis = new LinkedHashMap<>();
+
+        private <T> T time(String stage, Callable<T> task) throws Exception {
+            long start = System.nanoTime();
+            try {
+                return task.call();
+            } finally {
+                long elapsed = System.nanoTime() - start;
+                Timer.builder("upload.stage")
+                        .description("Duración de cada etapa de la subida síncrona")
+                        .tag("stage", stage)
+                        .register(meterRegistry)
+                        .record(elapsed, TimeUnit.NANOSECONDS);
+                record(stage, TimeUnit.NANOSECONDS.toMillis(elapsed));
+            }
+        }
+
+        private synchronized void record(String stage, long ms) {
+            millis.put(stage, ms);
+        }
+
+        private synchronized Map<String, Long> snapshot() {
+            return new LinkedHashMap<>(millis);
+        }
+
+        private String serverTiming() {
+            return UploadResult.serverTiming(snapshot());
+        }
+    }
+
+    /**
+     * Grupo de tareas en hilos virtuales con falla rápida: join() espera a todas, pero ante
+     * la primera falla o el vencimiento del plazo interrumpe las que siguen corriendo.
+     * StructuredTaskScope hace lo mismo pero en Java 21 todavía es preview.
+     */
+    private final class Scope implements AutoCloseable {
+        private final ExecutorService executor = Executors.newThreadPerTaskExecutor(threads);
+        private final List<CompletableFuture<?>> forks = new ArrayList<>();
+        private final CompletableFuture<Void> firstFailure = new CompletableFuture<>();
+
+        private <T> CompletableFuture<T> fork(Callable<T> task) {
+            CompletableFuture<T> result = new CompletableFuture<>();
+            executor.execute(() -> {
+                try {
+                    result.complete(task.call());
+                } catch (Throwable e) {
+                    result.completeExceptionally(e);
+                    firstFailure.completeExceptionally(e);
+                }
+            });
+            forks.add(result);
+            return result;
+        }
+
+        private void join(long deadline) throws Exception {
+            CompletableFuture<Void> all = CompletableFuture.allOf(forks.toArray(new CompletableFuture[0]));
+            try {
+                CompletableFuture.anyOf(all, firstFailure).get(Math.max(0, deadline - System.nanoTime()),
+                        TimeUnit.NANOSECONDS);
+            } catch (ExecutionException e) {
+                executor.shutdownNow();
+                Throwable cause = e.getCause();
+                if (cause instanceof Exception ex) throw ex;
+                throw e;
+            } catch (TimeoutException e) {
+                executor.shutdownNow();
+                throw new TimeoutException("La subida superó el tiempo máximo de procesamiento");
+            }
+        }
+
+        // No espera a las tareas interrumpidas: PDFBox no atiende la interrupción y el
+        // plazo de la petición tiene que cumplirse igual
+        @Override
+        public void close() {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Contrato guardado y duración de cada etapa (ms), incluida "total".
+     */
+    public static class UploadResult {
+        private final Contract contract;
+        private final Map<String, Long> stageMillis;
+
+        public UploadResult(Contract contract, Map<String, Long> stageMillis) {
+            this.contract = contract;
+            this.stageMillis = stageMillis;
+        }
+
+        public Contract getContract() {
+            return contract;
+        }
+
+        public Map<String, Long> getStageMillis() {
+            return stageMillis;
+        }
+
+        // Valor de la cabecera Server-Timing (visible en las devtools del navegador)
+        public String serverTiming() {
+            return serverTiming(stageMillis);
+        }
+
+        private static String serverTiming(Map<String, Long> stageMillis) {
+            StringBuilder sb = new StringBuilder();
+            for (Map.Entry<String, Long> e : stageMillis.entrySet()) {
+                if (!sb.isEmpty()) sb.append(", ");
+                sb.append(e.getKey()).append(";dur=").append(e.getValue());
+            }
+            return sb.toString();
+        }
+    }
+}
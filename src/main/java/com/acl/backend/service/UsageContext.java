@@ -0,0 +1,54 @@
+package com.acl.backend.service;
+
+import java.util.function.Function;
+
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+
+/**
+ * Claves del contexto de Reactor con las que se atribuye cada llamada a Gemini
+ * a un usuario y a una operación (contabilidad de tokens y cuotas diarias).
+ *
+ * Uso: {@code mono.contextWrite(UsageContext.user(userId))}
+ */
+public final class UsageContext {
+
+    public static final String ANALYSIS = "analysis";
+    public static final String QA = "qa";
+    public static final String GENERAL_CHAT = "general_chat";
+    public static final String CONTEXT_CACHE = "context_cache";
+    public static final String CHAT_MEMORY = "chat_memory";
+    public static final String OTHER = "other";
+
+    private static final String USER_KEY = "usage.userId";
+    private static final String OPERATION_KEY = "usage.operation";
+    private static final String DEPTH_KEY = "usage.depth";
+
+    private UsageContext() {
+    }
+
+    public static Function<Context, Context> user(Long userId) {
+        return ctx -> userId == null ? ctx : ctx.put(USER_KEY, userId);
+    }
+
+    public static Function<Context, Context> operation(String operation) {
+        return ctx -> ctx.put(OPERATION_KEY, operation);
+    }
+
+    // Profundidad pedida por el cliente; define el nivel de modelo (ver GeminiModelRouter)
+    public static Function<Context, Context> depth(AnalysisDepth depth) {
+        return ctx -> depth == null ? ctx : ctx.put(DEPTH_KEY, depth);
+    }
+
+    static AnalysisDepth depth(ContextView ctx) {
+        return ctx.getOrDefault(DEPTH_KEY, null);
+    }
+
+    static Long userId(ContextView ctx) {
+        return ctx.getOrDefault(USER_KEY, null);
+    }
+
+    static String operation(ContextView ctx) {
+        return ctx.getOrDefault(OPERATION_KEY, OTHER);
+    }
+}
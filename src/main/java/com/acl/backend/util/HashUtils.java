@@ -0,0 +1,76 @@
+package com.acl.backend.util;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.Normalizer;
+import java.util.HexFormat;
+
+/**
+ * Utilidades de hash para identificar contenido de forma estable
+ */
+public final class HashUtils {
+
+    private HashUtils() {
+    }
+
+    // Normaliza el texto para que diferencias de espacios o de codificación Unicode no cambien el hash
+    public static String normalize(String text) {
+        if (text == null) return "";
+        String nfc = Normalizer.normalize(text, Normalizer.Form.NFC);
+        return nfc.replaceAll("\\s+", " ").trim();
+    }
+
+    public static String sha256(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(text.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 no disponible", e);
+        }
+    }
+
+    /**
+     * SHA-256 de las partes separadas por '|', igual que sha256(a + "|" + b + ...),
+     * pero codificando cada parte por bloques: no se copia un prompt grande en un String nuevo.
+     */
+    public static String sha256(Object... parts) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            // Mismo reemplazo que String.getBytes para surrogates sueltos
+            CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            ByteBuffer buffer = ByteBuffer.allocate(8192);
+            for (int i = 0; i < parts.length; i++) {
+                if (i > 0) digest.update((byte) '|');
+                CharBuffer chars = CharBuffer.wrap(String.valueOf(parts[i]));
+                encoder.reset();
+                boolean done;
+                do {
+                    done = !encoder.encode(chars, buffer, true).isOverflow();
+                    buffer.flip();
+                    digest.update(buffer);
+                    buffer.clear();
+                } while (!done);
+                encoder.flush(buffer);
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 no disponible", e);
+        }
+    }
+
+    // Hash del contenido normalizado
+    public static String contentHash(String text) {
+        return sha256(normalize(text));
+    }
+}
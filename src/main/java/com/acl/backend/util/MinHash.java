@@ -0,0 +1,115 @@
+package com.acl.backend.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Firma MinHash de un texto para detectar contratos casi iguales (misma plantilla con otros
+ * nombres, fechas o montos).
+ *
+ * El texto se normaliza (TextEmbedding.normalize), las palabras con dígitos se reemplazan por
+ * "#" y se toman shingles de k palabras consecutivas. La fracción de posiciones iguales entre dos
+ * firmas estima la similitud de Jaccard de sus conjuntos de shingles. Para buscar candidatos sin
+ * comparar con todo (LSH) la firma se divide en bandas: dos textos comparten alguna banda con
+ * alta probabilidad si su similitud es alta.
+ */
+public final class MinHash {
+
+    // Semilla fija: las firmas son comparables entre instancias y reinicios
+    private static final long SEED = 0x6d1b_4a5eL;
+
+    private final int[] seeds;
+    private final int shingleSize;
+
+    public MinHash(int numHashes, int shingleSize) {
+        Random random = new Random(SEED);
+        this.seeds = new int[numHashes];
+        for (int i = 0; i < numHashes; i++) seeds[i] = random.nextInt();
+        this.shingleSize = Math.max(1, shingleSize);
+    }
+
+    public int size() {
+        return seeds.length;
+    }
+
+    // Hashes de los shingles de palabras del texto; vacío si no tiene palabras
+    public Set<Long> shingles(String text) {
+        String normalized = TextEmbedding.normalize(text);
+        Set<Long> shingles = new HashSet<>();
+        if (normalized.isEmpty()) return shingles;
+
+        String[] words = normalized.split(" ");
+        for (int i = 0; i < words.length; i++) {
+            if (words[i].chars().anyMatch(Character::isDigit)) words[i] = "#";
+        }
+        int last = Math.max(0, words.length - shingleSize);
+        for (int i = 0; i <= last; i++) {
+            long hash = 0xcbf29ce484222325L;
+            for (int j = i; j < Math.min(words.length, i + shingleSize); j++) {
+                hash = fnv(hash, words[j]);
+                hash = (hash ^ ' ') * 0x100000001b3L;
+            }
+            shingles.add(hash);
+        }
+        return shingles;
+    }
+
+    public int[] signature(String text) {
+        return signature(shingles(text));
+    }
+
+    public int[] signature(Set<Long> shingles) {
+        int[] signature = new int[seeds.length];
+        Arrays.fill(signature, Integer.MAX_VALUE);
+        for (long shingle : shingles) {
+            for (int i = 0; i < seeds.length; i++) {
+                int h = (int) mix(shingle ^ seeds[i]);
+                if (h < signature[i]) signature[i] = h;
+            }
+        }
+        return signature;
+    }
+
+    // Claves de las bandas de la firma ("banda.hash"): dos firmas son candidatas si comparten una
+    public static List<String> bands(int[] signature, int bands) {
+        int rows = Math.max(1, signature.length / bands);
+        List<String> keys = new ArrayList<>(bands);
+        for (int b = 0; b < bands && (b + 1) * rows <= signature.length; b++) {
+            int hash = Arrays.hashCode(Arrays.copyOfRange(signature, b * rows, (b + 1) * rows));
+            keys.add(b + "." + Integer.toHexString(hash));
+        }
+        return keys;
+    }
+
+    // Similitud de Jaccard estimada: fracción de posiciones iguales
+    public static double similarity(int[] a, int[] b) {
+        int n = Math.min(a.length, b.length);
+        if (n == 0) return 0;
+        int equal = 0;
+        for (int i = 0; i < n; i++) {
+            if (a[i] == b[i]) equal++;
+        }
+        return (double) equal / n;
+    }
+
+    // FNV-1a de 64 bits
+    private static long fnv(long hash, String word) {
+        for (int i = 0; i < word.length(); i++) {
+            hash ^= word.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    // Mezcla de splitmix64: una función hash distinta por semilla
+    private static long mix(long z) {
+        z += 0x9e3779b97f4a7c15L;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
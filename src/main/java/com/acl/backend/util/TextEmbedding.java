@@ -0,0 +1,119 @@
+package com.acl.backend.util;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Embedding léxico local (sin servicios externos) para comparar textos cortos en español.
+ *
+ * El texto se normaliza (minúsculas, sin tildes ni signos, sin palabras vacías, plurales en
+ * singular) y se proyecta
+ * con feature hashing a un vector de dimensión fija: palabras, pares de palabras consecutivas
+ * y trigramas de caracteres (tolera errores de tipeo y variaciones como singular/plural).
+ * Los vectores salen normalizados (norma 1), así la similitud coseno es el producto punto.
+ */
+public final class TextEmbedding {
+
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+    private static final Pattern NON_ALNUM = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private static final double WORD_WEIGHT = 1.0;
+    private static final double BIGRAM_WEIGHT = 0.7;
+    private static final double TRIGRAM_WEIGHT = 0.3;
+
+    // Palabras vacías; "no" y "sin" se conservan porque cambian el sentido de la pregunta, igual
+    // que los interrogativos (qué, quién, cuándo, dónde, cómo, cuál): "¿quién paga?" no es "¿cuándo se paga?"
+    private static final Set<String> STOPWORDS = Set.of(
+            "a", "al", "algo", "ante", "con", "de", "del", "el", "en", "es",
+            "esta", "este", "esto", "la", "las", "le", "les", "lo", "los", "me", "mi", "mis", "para",
+            "pero", "por", "se", "ser", "si", "su", "sus", "un", "una", "unas", "unos", "y", "o",
+            "mas", "muy", "hay", "puede", "tiene", "son", "sobre", "entre",
+            "favor", "hola", "gracias", "explicame", "dime", "quiero", "saber", "significa");
+
+    private TextEmbedding() {
+    }
+
+    // Minúsculas, sin tildes ni signos de puntuación, espacios simples
+    public static String normalize(String text) {
+        if (text == null) return "";
+        String lower = text.toLowerCase(Locale.ROOT);
+        String noAccents = DIACRITICS.matcher(Normalizer.normalize(lower, Normalizer.Form.NFD)).replaceAll("");
+        return NON_ALNUM.matcher(noAccents).replaceAll(" ").trim();
+    }
+
+    // Palabras significativas del texto normalizado
+    public static List<String> terms(String text) {
+        String normalized = normalize(text);
+        List<String> terms = new ArrayList<>();
+        if (normalized.isEmpty()) return terms;
+        for (String word : normalized.split(" ")) {
+            if (!STOPWORDS.contains(word)) terms.add(singular(word));
+        }
+        return terms;
+    }
+
+    // Plural a singular con reglas simples del español (cláusulas → clausula, legales → legal)
+    private static String singular(String word) {
+        int n = word.length();
+        if (n <= 4 || word.charAt(n - 1) != 's') return word;
+        if (word.endsWith("iones")) return word.substring(0, n - 2);
+        if (word.endsWith("es") && "lrndz".indexOf(word.charAt(n - 3)) >= 0) return word.substring(0, n - 2);
+        if (word.endsWith("es") || "aeiou".indexOf(word.charAt(n - 2)) >= 0) return word.substring(0, n - 1);
+        return word;
+    }
+
+    public static float[] embed(String text, int dimensions) {
+        return embedTerms(terms(text), dimensions);
+    }
+
+    public static float[] embedTerms(List<String> terms, int dimensions) {
+        float[] v = new float[dimensions];
+        for (int i = 0; i < terms.size(); i++) {
+            String word = terms.get(i);
+            add(v, word, WORD_WEIGHT);
+            if (i + 1 < terms.size()) {
+                add(v, word + " " + terms.get(i + 1), BIGRAM_WEIGHT);
+            }
+            String padded = "#" + word + "#";
+            for (int j = 0; j + 3 <= padded.length(); j++) {
+                add(v, padded.substring(j, j + 3), TRIGRAM_WEIGHT);
+            }
+        }
+
+        double norm = 0;
+        for (float x : v) norm += x * x;
+        if (norm > 0) {
+            float inv = (float) (1.0 / Math.sqrt(norm));
+            for (int i = 0; i < v.length; i++) v[i] *= inv;
+        }
+        return v;
+    }
+
+    // Similitud coseno de dos vectores normalizados
+    public static double cosine(float[] a, float[] b) {
+        double dot = 0;
+        for (int i = 0; i < a.length; i++) dot += a[i] * b[i];
+        return dot;
+    }
+
+    // Feature hashing con signo: las colisiones se cancelan en promedio en vez de sumarse
+    private static void add(float[] v, String feature, double weight) {
+        int h = mix(feature.hashCode());
+        int index = Math.floorMod(h, v.length);
+        v[index] += (h & 0x80000000) == 0 ? weight : -weight;
+    }
+
+    // Mezcla de bits (finalizador de MurmurHash3) para repartir mejor String.hashCode
+    public static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
@@ -0,0 +1,108 @@
+package com.acl.backend;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.acl.backend.data.AnalysisData.AnalysisResult;
+import com.acl.backend.model.AnalysisCacheEntry;
+import com.acl.backend.repository.AnalysisCacheRepository;
+import com.acl.backend.service.AnalysisCacheService;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Tests unitarios de la cache de análisis (sin Mongo real)
+ */
+public class AnalysisCacheServiceTest {
+
+    private AnalysisCacheRepository repository;
+    private SimpleMeterRegistry registry;
+    private AnalysisCacheService cache;
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(AnalysisCacheRepository.class);
+        when(repository.findById(any())).thenReturn(Optional.empty());
+        registry = new SimpleMeterRegistry();
+        cache = new AnalysisCacheService(repository, registry, 2);
+    }
+
+    @Test
+    void keyIgnoresWhitespaceDifferences() {
+        assertEquals(cache.keyFor("CONTRATO  de\n arrendamiento "), cache.keyFor("CONTRATO de arrendamiento"));
+        assertNotEquals(cache.keyFor("CONTRATO A"), cache.keyFor("CONTRATO B"));
+    }
+
+    @Test
+    void localHitAvoidsSharedLookup() {
+        String key = cache.keyFor("texto");
+        cache.put(key, "texto", result("NDA"));
+
+        Optional<AnalysisResult> hit = cache.get(key);
+
+        assertTrue(hit.isPresent());
+        assertEquals("NDA", hit.get().getType());
+        verify(repository, never()).findById(key);
+        assertEquals(1.0, registry.get("analysis.cache.requests").tag("result", "hit_local").counter().count());
+    }
+
+    @Test
+    void mutatingAReturnedResultDoesNotChangeTheCache() {
+        String key = cache.keyFor("texto");
+        AnalysisResult stored = result("NDA");
+        stored.setRisks(new ArrayList<>(List.of("Plazo indefinido")));
+        cache.put(key, "texto", stored);
+        stored.setType("Modificado después de guardar");
+
+        AnalysisResult first = cache.get(key).orElseThrow();
+        first.setType("Otro");
+        first.getRisks().add("Riesgo agregado por un llamador");
+
+        AnalysisResult second = cache.get(key).orElseThrow();
+        assertEquals("NDA", second.getType());
+        assertEquals(List.of("Plazo indefinido"), second.getRisks());
+        assertNotSame(first, second);
+    }
+
+    @Test
+    void sharedHitIsPromotedToLocal() {
+        AnalysisCacheEntry entry = new AnalysisCacheEntry();
+        entry.setResult(result("Laboral"));
+        when(repository.findById("k")).thenReturn(Optional.of(entry));
+
+        assertTrue(cache.get("k").isPresent());
+        assertTrue(cache.get("k").isPresent());
+
+        verify(repository, times(1)).findById("k");
+        assertEquals(1.0, registry.get("analysis.cache.requests").tag("result", "hit_shared").counter().count());
+    }
+
+    @Test
+    void localTierEvictsLeastRecentlyUsed() {
+        cache.put("a", "a", result("A"));
+        cache.put("b", "b", result("B"));
+        cache.get("a");
+        cache.put("c", "c", result("C"));
+
+        assertTrue(cache.get("a").isPresent());
+        assertFalse(cache.get("b").isPresent());
+        assertEquals(1.0, registry.get("analysis.cache.requests").tag("result", "miss").counter().count());
+    }
+
+    private AnalysisResult result(String type) {
+        AnalysisResult r = new AnalysisResult();
+        r.setType(type);
+        r.setKeyClauses(List.of());
+        r.setRisks(List.of());
+        r.setRecommendations(List.of());
+        return r;
+    }
+}
@@ -0,0 +1,161 @@
+package com.acl.backend;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+import java.time.Duration;
+import java.util.List;
+
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import com.acl.backend.data.JobData.JobStatus;
+import com.acl.backend.model.AnalysisJob;
+import com.acl.backend.model.Contract;
+import com.acl.backend.service.AnalysisJobService;
+import com.acl.backend.service.AnalysisProgress;
+import com.acl.backend.service.ContractService;
+import com.acl.backend.service.TextExtractionService;
+import com.mongodb.client.result.UpdateResult;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.publisher.Mono;
+
+/**
+ * Tests unitarios de la cola de análisis asíncronos (Mongo simulado)
+ */
+public class AnalysisJobServiceTest {
+
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+    private final TextExtractionService extraction = mock(TextExtractionService.class);
+    private final ContractService contractService = mock(ContractService.class);
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private final AnalysisJobService service = new AnalysisJobService(mongoTemplate, extraction, contractService,
+            registry, "instancia-1", 1, 1, 120, 3, 50, 1);
+
+    private AnalysisJob claimedJob() {
+        AnalysisJob job = new AnalysisJob();
+        job.setId("job1");
+        job.setFileName("contrato.pdf");
+        job.setFile(new byte[]{1, 2, 3});
+        job.setContractName("Contrato");
+        job.setUserId(7L);
+        job.setStatus(AnalysisJob.Status.RUNNING);
+        job.setLeaseOwner("instancia-1");
+        job.setAttempts(1);
+        return job;
+    }
+
+    @Test
+    void claimsJobAndReportsProgressUntilSaved() throws Exception {
+        AnalysisJob job = claimedJob();
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class),
+                eq(AnalysisJob.class))).thenReturn(job, (AnalysisJob) null);
+        when(mongoTemplate.updateFirst(any(Query.class), any(Update.class), eq(AnalysisJob.class)))
+                .thenReturn(UpdateResult.acknowledged(1, 1L, null));
+        when(mongoTemplate.findOne(any(Query.class), eq(AnalysisJob.class))).thenReturn(job);
+        when(extraction.extractText(eq("contrato.pdf"), any())).thenReturn("CLÁUSULA PRIMERA. Objeto.");
+        Contract saved = new Contract();
+        saved.setId("c1");
+        when(contractService.saveWithAnalysisAsync(anyString(), anyString(), eq(7L), any()))
+                .thenReturn(Mono.deferContextual(ctx -> {
+                    AnalysisProgress progress = AnalysisProgress.from(ctx);
+                    progress.onChunks(0, 2);
+                    progress.onChunks(1, 2);
+                    progress.onChunks(2, 2);
+                    return Mono.just(saved);
+                }).delaySubscription(Duration.ofMillis(100)));
+
+        // Suscribirse a los eventos antes de que el job avance
+        var events = service.events("job1").collectList().toFuture();
+        service.dispatch();
+
+        List<JobStatus> statuses = events.get();
+        JobStatus last = statuses.get(statuses.size() - 1);
+        assertEquals("DONE", last.getStatus());
+        assertEquals("saved", last.getStage());
+        assertEquals("c1", last.getContractId());
+        assertTrue(statuses.stream().anyMatch(s -> "analyzing".equals(s.getStage()) && s.getChunksDone() == 1
+                && s.getChunksTotal() == 2));
+
+        ArgumentCaptor<Update> updates = ArgumentCaptor.forClass(Update.class);
+        verify(mongoTemplate, atLeastOnce()).updateFirst(any(Query.class), updates.capture(), eq(AnalysisJob.class));
+        Update done = updates.getAllValues().get(updates.getAllValues().size() - 1);
+        assertEquals(AnalysisJob.Status.DONE, done.getUpdateObject().get("$set", Document.class).get("status"));
+        // El contador se incrementa en el finally del worker, después de publicar el último evento
+        long deadline = System.currentTimeMillis() + 2000;
+        while (registry.counter("jobs.completed", "status", "done").count() == 0
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1.0, registry.counter("jobs.completed", "status", "done").count());
+    }
+
+    @Test
+    void failsJobAfterMaxAttempts() {
+        AnalysisJob job = claimedJob();
+        job.setAttempts(4);
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class),
+                eq(AnalysisJob.class))).thenReturn(job, (AnalysisJob) null);
+        when(mongoTemplate.updateFirst(any(Query.class), any(Update.class), eq(AnalysisJob.class)))
+                .thenReturn(UpdateResult.acknowledged(1, 1L, null));
+
+        service.dispatch();
+
+        verify(mongoTemplate, timeout(2000)).updateFirst(any(Query.class), any(Update.class), eq(AnalysisJob.class));
+        verifyNoInteractions(contractService);
+        assertEquals("Se agotaron los intentos de análisis", job.getError());
+    }
+
+    @Test
+    void upgradeJobReplacesProvisionalAnalysisOfExistingContract() throws Exception {
+        AnalysisJob job = claimedJob();
+        job.setFile(null);
+        job.setContractId("c1");
+        job.setProvisional(true);
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class),
+                eq(AnalysisJob.class))).thenReturn(job, (AnalysisJob) null);
+        when(mongoTemplate.updateFirst(any(Query.class), any(Update.class), eq(AnalysisJob.class)))
+                .thenReturn(UpdateResult.acknowledged(1, 1L, null));
+        when(mongoTemplate.findOne(any(Query.class), eq(AnalysisJob.class))).thenReturn(job);
+        Contract upgraded = new Contract();
+        upgraded.setId("c1");
+        upgraded.setPendingReanalysis(false);
+        when(contractService.upgradeAnalysisAsync(eq("c1"), any()))
+                .thenReturn(Mono.just(upgraded).delaySubscription(Duration.ofMillis(100)));
+
+        var events = service.events("job1").collectList().toFuture();
+        service.dispatch();
+
+        List<JobStatus> statuses = events.get();
+        JobStatus last = statuses.get(statuses.size() - 1);
+        assertEquals("DONE", last.getStatus());
+        assertEquals("c1", last.getContractId());
+        assertFalse(last.isProvisional());
+        verify(extraction, never()).extractText(anyString(), any());
+        verify(contractService, never()).saveWithAnalysisAsync(anyString(), anyString(), any(), any());
+    }
+
+    @Test
+    void statusReadsExcludeUploadedFileAndText() {
+        when(mongoTemplate.findOne(any(Query.class), eq(AnalysisJob.class))).thenReturn(claimedJob());
+
+        assertTrue(service.find("job1").isPresent());
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).findOne(query.capture(), eq(AnalysisJob.class));
+        assertEquals("job1", query.getValue().getQueryObject().get("_id"));
+        assertEquals(0, query.getValue().getFieldsObject().get("file"));
+        assertEquals(0, query.getValue().getFieldsObject().get("text"));
+        verify(mongoTemplate, never()).findById(any(), eq(AnalysisJob.class));
+    }
+}
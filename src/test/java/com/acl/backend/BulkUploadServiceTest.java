@@ -0,0 +1,179 @@
+package com.acl.backend;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import com.acl.backend.data.JobData.BatchStatus;
+import com.acl.backend.model.AnalysisBatch;
+import com.acl.backend.model.AnalysisBatch.BatchFile;
+import com.acl.backend.model.AnalysisJob;
+import com.acl.backend.service.AnalysisJobService;
+import com.acl.backend.service.BulkUploadService;
+import com.acl.backend.service.TextExtractionService;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Tests unitarios de la carga masiva desde ZIP (Mongo y cola simulados)
+ */
+public class BulkUploadServiceTest {
+
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+    private final TextExtractionService extraction = mock(TextExtractionService.class);
+    private final AnalysisJobService jobs = mock(AnalysisJobService.class);
+
+    private BulkUploadService service(long maxFileBytes) {
+        return new BulkUploadService(mongoTemplate, extraction, jobs, new SimpleMeterRegistry(),
+                10, maxFileBytes, 1_000_000, 2);
+    }
+
+    private static byte[] zip(String... namesAndContents) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(out)) {
+            for (int i = 0; i < namesAndContents.length; i += 2) {
+                zip.putNextEntry(new ZipEntry(namesAndContents[i]));
+                zip.write(namesAndContents[i + 1].getBytes(StandardCharsets.UTF_8));
+                zip.closeEntry();
+            }
+        }
+        return out.toByteArray();
+    }
+
+    // Lote guardado al terminar la lectura en segundo plano (el primer save es el de submit)
+    private AnalysisBatch processed(BulkUploadService service, byte[] zip) throws Exception {
+        AnalysisBatch submitted = service.submit(new ByteArrayInputStream(zip), 7L, null);
+        assertEquals(AnalysisBatch.Status.EXTRACTING, submitted.getStatus());
+        ArgumentCaptor<AnalysisBatch> saved = ArgumentCaptor.forClass(AnalysisBatch.class);
+        verify(mongoTemplate, timeout(2000).times(2)).save(saved.capture());
+        AnalysisBatch batch = saved.getAllValues().get(1);
+        assertEquals(submitted.getId(), batch.getId());
+        return batch;
+    }
+
+    private void mockExtraction() throws Exception {
+        when(extraction.isSupported(anyString())).thenAnswer(inv -> {
+            String name = inv.getArgument(0);
+            return name.endsWith(".pdf") || name.endsWith(".docx");
+        });
+        when(extraction.extractText(anyString(), any())).thenAnswer(inv ->
+                new String(((ByteArrayInputStream) inv.getArgument(1)).readAllBytes(), StandardCharsets.UTF_8));
+        when(mongoTemplate.save(any(AnalysisBatch.class))).thenAnswer(inv -> inv.getArgument(0));
+        when(jobs.submitText(anyString(), anyString(), anyString(), anyString(), any(), any())).thenAnswer(inv -> {
+            AnalysisJob job = new AnalysisJob();
+            job.setId("job-" + inv.getArgument(1));
+            return job;
+        });
+    }
+
+    @Test
+    void analyzesEachUniqueContractOnceAndMarksDuplicates() throws Exception {
+        mockExtraction();
+        byte[] zip = zip(
+                "lote/a.pdf", "CLÁUSULA PRIMERA. Objeto del contrato.",
+                "lote/b.docx", "CLÁUSULA PRIMERA. Arrendamiento.",
+                "lote/copia-a.pdf", "CLÁUSULA PRIMERA.\n   Objeto del contrato.",
+                "lote/notas.txt", "sin contrato",
+                "__MACOSX/lote/._a.pdf", "metadatos");
+
+        AnalysisBatch batch = processed(service(1_000), zip);
+
+        assertEquals(AnalysisBatch.Status.READY, batch.getStatus());
+        List<BatchFile> files = batch.getFiles();
+        assertEquals(4, files.size());
+        assertEquals("a.pdf", files.get(0).getFileName());
+        assertEquals(BatchFile.Status.QUEUED, files.get(0).getStatus());
+        assertEquals(BatchFile.Status.QUEUED, files.get(1).getStatus());
+        assertEquals(BatchFile.Status.DUPLICATE, files.get(2).getStatus());
+        assertEquals("a.pdf", files.get(2).getDuplicateOf());
+        assertEquals("job-a.pdf", files.get(2).getJobId());
+        assertEquals(BatchFile.Status.SKIPPED, files.get(3).getStatus());
+
+        verify(jobs, times(2)).submitText(eq(batch.getId()), anyString(), anyString(), anyString(), eq(7L), any());
+        verify(jobs, timeout(2000)).dispatch();
+    }
+
+    @Test
+    void oversizedEntryFailsWithoutStoppingTheBatch() throws Exception {
+        mockExtraction();
+        byte[] zip = zip(
+                "grande.pdf", "x".repeat(200),
+                "chico.pdf", "CLÁUSULA PRIMERA. Objeto.");
+
+        AnalysisBatch batch = processed(service(100), zip);
+
+        assertEquals(BatchFile.Status.FAILED, batch.getFiles().get(0).getStatus());
+        assertEquals(BatchFile.Status.QUEUED, batch.getFiles().get(1).getStatus());
+        verify(extraction, never()).extractText(eq("grande.pdf"), any());
+    }
+
+    @Test
+    void duplicateReportsContractOfOriginalJob() throws Exception {
+        mockExtraction();
+        byte[] zip = zip("a.pdf", "CLÁUSULA PRIMERA.", "b.pdf", "CLÁUSULA PRIMERA.");
+        BulkUploadService service = service(1_000);
+        AnalysisBatch batch = processed(service, zip);
+
+        AnalysisJob done = new AnalysisJob();
+        done.setId("job-a.pdf");
+        done.setStatus(AnalysisJob.Status.DONE);
+        done.setContractId("c1");
+        when(jobs.findByBatch(batch.getId())).thenReturn(List.of(done));
+
+        BatchStatus status = service.status(batch);
+        assertTrue(status.isFinished());
+        assertEquals(1, status.getDone());
+        assertEquals(1, status.getDuplicates());
+        assertEquals("c1", status.getFiles().get(1).getContractId());
+    }
+
+    @Test
+    void submitReturnsBeforeExtractionFinishes() throws Exception {
+        mockExtraction();
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(inv -> {
+            release.await(5, TimeUnit.SECONDS);
+            return "CLÁUSULA PRIMERA. Objeto.";
+        }).when(extraction).extractText(anyString(), any());
+        BulkUploadService service = service(1_000);
+
+        AnalysisBatch submitted = service.submit(new ByteArrayInputStream(zip("a.pdf", "contrato")), 7L, null);
+
+        // El lote ya existe y no tiene archivos: la extracción sigue bloqueada
+        assertEquals(AnalysisBatch.Status.EXTRACTING, submitted.getStatus());
+        BatchStatus status = service.status(submitted);
+        assertEquals("EXTRACTING", status.getExtraction());
+        assertFalse(status.isFinished());
+        verify(jobs, never()).submitText(anyString(), anyString(), anyString(), anyString(), any(), any());
+
+        release.countDown();
+        verify(jobs, timeout(2000)).submitText(eq(submitted.getId()), anyString(), anyString(), anyString(), eq(7L), any());
+    }
+
+    @Test
+    void invalidZipFailsTheBatchInBackground() throws Exception {
+        mockExtraction();
+
+        AnalysisBatch batch = processed(service(1_000), zip());
+
+        assertEquals(AnalysisBatch.Status.FAILED, batch.getStatus());
+        assertEquals("El ZIP no contiene archivos", batch.getError());
+        assertTrue(service(1_000).status(batch).isFinished());
+    }
+}
@@ -0,0 +1,123 @@
+package com.acl.backend;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.acl.backend.model.Contract;
+import com.acl.backend.service.ClauseRetrievalService;
+import com.acl.backend.service.ClauseRetrievalService.RetrievedClause;
+import com.acl.backend.service.ContractChunkingService;
+import com.acl.backend.service.TokenEstimator;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Tests unitarios de la recuperación de cláusulas para preguntas sobre contratos
+ */
+public class ClauseRetrievalServiceTest {
+
+    private static final String[] ORDINALS = {
+            "PRIMERA", "SEGUNDA", "TERCERA", "CUARTA", "QUINTA", "SEXTA", "SÉPTIMA", "OCTAVA", "NOVENA", "DÉCIMA"
+    };
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final ClauseRetrievalService retrieval = new ClauseRetrievalService(
+            new ContractChunkingService(), new TokenEstimator(registry), registry,
+            true, 4, 2500, 12000, 1200, 1500, 0.3, 256, 10);
+
+    // Contrato de ~40 cláusulas de relleno con dos cláusulas específicas, la última al final
+    private static Contract longContract() {
+        StringBuilder text = new StringBuilder("CONTRATO DE PRESTACIÓN DE SERVICIOS\n"
+                + "Entre ACME S.A.S., en adelante EL CONTRATANTE, y Juan Pérez, en adelante EL CONTRATISTA, "
+                + "se celebra el presente contrato.\n\n");
+        for (int i = 0; i < 40; i++) {
+            text.append("CLÁUSULA ").append(ORDINALS[i % 10]).append(" (").append(i + 1).append("). OBLIGACIONES GENERALES\n")
+                    .append("El contratista ejecutará las actividades del anexo técnico con diligencia, "
+                            .repeat(12))
+                    .append("\n\n");
+            if (i == 12) {
+                text.append("CLÁUSULA DE TERMINACIÓN. Cualquiera de las partes podrá dar por terminado el contrato "
+                        + "con un preaviso escrito de treinta (30) días calendario.\n\n");
+            }
+        }
+        text.append("CLÁUSULA DE CONFIDENCIALIDAD. El contratista guardará reserva sobre la información "
+                + "confidencial durante cinco (5) años después de la terminación.\n");
+
+        Contract contract = new Contract();
+        contract.setId("c1");
+        contract.setContent(text.toString());
+        return contract;
+    }
+
+    @Test
+    void retrievesRelevantClausesInDocumentOrder() {
+        Contract contract = longContract();
+        assertTrue(retrieval.shouldRetrieve(contract.getContent()));
+
+        List<RetrievedClause> clauses = retrieval.retrieve(contract, "¿Con cuánto preaviso se puede terminar el contrato?");
+
+        assertTrue(clauses.size() <= 5);
+        assertEquals(1, clauses.get(0).getNumber());
+        assertTrue(clauses.get(0).getText().contains("ACME S.A.S."));
+        assertTrue(clauses.stream().anyMatch(c -> c.getText().contains("treinta (30) días")));
+        for (int i = 1; i < clauses.size(); i++) {
+            assertTrue(clauses.get(i - 1).getNumber() < clauses.get(i).getNumber());
+        }
+
+        // El prompt lleva una fracción pequeña del contrato
+        int chars = clauses.stream().mapToInt(c -> c.getText().length()).sum();
+        assertTrue(chars * 10 < contract.getContent().length(), "Contexto demasiado grande: " + chars);
+    }
+
+    @Test
+    void reachesClausesPastTheTruncationLimit() {
+        Contract contract = longContract();
+        assertTrue(contract.getContent().length() > 30000);
+
+        List<RetrievedClause> clauses = retrieval.retrieve(contract, "¿Cuánto dura la obligación de confidencialidad?");
+
+        assertTrue(clauses.stream().anyMatch(c -> c.getText().contains("cinco (5) años")));
+    }
+
+    @Test
+    void firstClauseIsRankedLikeTheRest() {
+        // Sin preámbulo: la primera cláusula es larga y el dato está pasado el recorte del preámbulo
+        StringBuilder text = new StringBuilder("CLÁUSULA PRIMERA. OBJETO\n")
+                .append("El contratista ejecutará las actividades del anexo técnico con diligencia, ".repeat(18))
+                .append("y en caso de retraso pagará una multa de cien salarios mínimos.\n\n");
+        for (int i = 1; i < 40; i++) {
+            text.append("CLÁUSULA ").append(ORDINALS[i % 10]).append(" (").append(i + 1).append("). OBLIGACIONES GENERALES\n")
+                    .append("Las partes cumplirán las condiciones pactadas en el cronograma de entregas, ".repeat(12))
+                    .append("\n\n");
+        }
+        text.append("CLÁUSULA DE CONFIDENCIALIDAD. El contratista guardará reserva sobre la información "
+                + "confidencial durante cinco (5) años después de la terminación.\n");
+        Contract contract = new Contract();
+        contract.setId("c2");
+        contract.setContent(text.toString());
+        assertTrue(contract.getContent().indexOf("multa") > 1200);
+
+        List<RetrievedClause> fine = retrieval.retrieve(contract, "¿De cuánto es la multa por retraso?");
+        assertEquals(1, fine.get(0).getNumber());
+        assertTrue(fine.get(0).getText().contains("cien salarios mínimos"));
+
+        // Con encabezado no hay copia forzada del primer segmento: solo las top-k por relevancia
+        List<RetrievedClause> secrecy = retrieval.retrieve(contract, "¿Cuánto dura la confidencialidad?");
+        assertTrue(secrecy.size() <= 4);
+        assertTrue(secrecy.stream().anyMatch(c -> c.getText().contains("cinco (5) años")));
+    }
+
+    @Test
+    void reusesIndexAndSkipsShortContracts() {
+        Contract contract = longContract();
+        retrieval.retrieve(contract, "preaviso");
+        retrieval.retrieve(contract, "confidencialidad");
+
+        assertEquals(1, retrieval.indexCount());
+        assertEquals(1.0, registry.counter("qa.retrieval.index.requests", "result", "hit").count());
+        assertFalse(retrieval.shouldRetrieve("CLÁUSULA PRIMERA. El canon es de un millón de pesos."));
+    }
+}
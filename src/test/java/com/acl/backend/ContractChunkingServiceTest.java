@@ -0,0 +1,91 @@
+package com.acl.backend;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.acl.backend.model.ContractClause;
+import com.acl.backend.service.ContractChunkingService;
+
+/**
+ * Tests unitarios de la división de contratos en bloques
+ */
+public class ContractChunkingServiceTest {
+
+    private final ContractChunkingService chunking = new ContractChunkingService();
+
+    private static final String CONTRACT = """
+            CONTRATO DE ARRENDAMIENTO
+            Entre los suscritos ARRENDADOR y ARRENDATARIO se celebra el presente contrato.
+
+            CLÁUSULA PRIMERA. OBJETO: El arrendador entrega el inmueble.
+            CLÁUSULA SEGUNDA. CANON: El canon mensual es de un millón de pesos.
+            TERCERA: DURACIÓN. El contrato tendrá una duración de doce meses.
+            4. TERMINACIÓN. Cualquiera de las partes podrá terminarlo con aviso previo.
+            """;
+
+    @Test
+    void splitsAtClauseHeadings() {
+        List<String> sections = chunking.splitSections(CONTRACT);
+
+        assertEquals(5, sections.size());
+        assertTrue(sections.get(0).startsWith("CONTRATO DE ARRENDAMIENTO"));
+        assertTrue(sections.get(1).startsWith("CLÁUSULA PRIMERA"));
+        assertTrue(sections.get(3).startsWith("TERCERA"));
+        assertTrue(sections.get(4).startsWith("4. TERMINACIÓN"));
+    }
+
+    @Test
+    void packsSectionsWithoutCuttingClauses() {
+        List<String> chunks = chunking.chunk(CONTRACT, 160);
+
+        assertTrue(chunks.size() > 1);
+        for (String chunk : chunks) {
+            assertTrue(chunk.length() <= 160, "Bloque excede el límite: " + chunk.length());
+        }
+        // Ninguna cláusula queda partida entre dos bloques
+        long withCanon = chunks.stream().filter(c -> c.contains("El canon mensual es de un millón de pesos.")).count();
+        assertEquals(1, withCanon);
+    }
+
+    @Test
+    void splitsOversizedSectionBySentences() {
+        String longClause = "CLÁUSULA ÚNICA. " + "El contratista cumplirá sus obligaciones. ".repeat(50);
+
+        List<String> chunks = chunking.chunk(longClause, 200);
+
+        assertTrue(chunks.size() > 1);
+        chunks.forEach(c -> assertTrue(c.length() <= 200));
+        assertEquals(longClause.replaceAll("\\s+", ""), String.join("", chunks).replaceAll("\\s+", ""));
+    }
+
+    @Test
+    void shortTextIsSingleChunk() {
+        assertEquals(1, chunking.chunk(CONTRACT, 30000).size());
+        assertTrue(chunking.chunk("   ", 100).isEmpty());
+    }
+
+    @Test
+    void segmentsClausesWithOffsetsIntoContent() {
+        List<ContractClause> clauses = chunking.segmentClauses(CONTRACT, 2500);
+
+        assertEquals(5, clauses.size());
+        assertEquals("CONTRATO DE ARRENDAMIENTO", clauses.get(0).getHeading());
+        assertEquals("CLÁUSULA SEGUNDA. CANON: El canon mensual es de un millón de pesos.", clauses.get(2).textOf(CONTRACT));
+        assertTrue(clauses.get(4).getHeading().startsWith("4. TERMINACIÓN"));
+        for (int i = 0; i < clauses.size(); i++) {
+            assertEquals(i, clauses.get(i).getIndex());
+        }
+
+        // Una cláusula más larga que el límite se parte con el mismo encabezado
+        String longClause = "CLÁUSULA ÚNICA. OBLIGACIONES\n" + "El contratista cumplirá sus obligaciones. ".repeat(50);
+        List<ContractClause> pieces = chunking.segmentClauses(longClause, 300);
+        assertTrue(pieces.size() > 1);
+        pieces.forEach(c -> {
+            assertTrue(c.getEnd() - c.getStart() <= 300);
+            assertEquals("CLÁUSULA ÚNICA. OBLIGACIONES", c.getHeading());
+        });
+    }
+}
@@ -0,0 +1,140 @@
+package com.acl.backend;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.domain.Pageable;
+
+import com.acl.backend.model.ChatMessage;
+import com.acl.backend.model.ConversationMemory;
+import com.acl.backend.repository.ChatRepository;
+import com.acl.backend.repository.ConversationMemoryRepository;
+import com.acl.backend.service.ConversationMemoryService;
+import com.acl.backend.service.ConversationMemoryService.Memory;
+import com.acl.backend.service.GeminiService;
+import com.acl.backend.service.PromptService;
+import com.acl.backend.service.TokenEstimator;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.publisher.Mono;
+
+/**
+ * Tests unitarios de la memoria de conversaciones del chat
+ */
+public class ConversationMemoryServiceTest {
+
+    private static final Instant T0 = Instant.parse("2026-01-01T10:00:00Z");
+
+    private final ChatRepository chatRepository = mock(ChatRepository.class);
+    private final ConversationMemoryRepository memoryRepository = mock(ConversationMemoryRepository.class);
+    private final GeminiService geminiService = mock(GeminiService.class);
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private ConversationMemoryService service(int maxTokens) {
+        return new ConversationMemoryService(chatRepository, memoryRepository, geminiService, new PromptService(),
+                new TokenEstimator(registry), registry, true, 2, maxTokens, 100, 200, 2);
+    }
+
+    // Turnos alternados usuario/asistente, un minuto entre mensajes
+    private static List<ChatMessage> turns(int count) {
+        List<ChatMessage> messages = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            ChatMessage m = new ChatMessage(null, 1L, (i % 2 == 0 ? "Pregunta " : "Respuesta ") + i,
+                    i % 2 == 0 ? "user" : "assistant");
+            m.setConversationId("conv");
+            m.setTimestamp(T0.plusSeconds(60L * i));
+            messages.add(m);
+        }
+        return messages;
+    }
+
+    @Test
+    void loadsSummaryAndRecentTurnsInOrder() {
+        ConversationMemory memory = new ConversationMemory("conv");
+        memory.setSummary("El usuario consultó el contrato de arrendamiento con ACME.");
+        memory.setSummarizedUntil(T0);
+        when(memoryRepository.findById("conv")).thenReturn(Optional.of(memory));
+        List<ChatMessage> newestFirst = new ArrayList<>(turns(4).subList(1, 4));
+        Collections.reverse(newestFirst);
+        when(chatRepository.findByConversationIdAndTimestampBetweenOrderByTimestampDesc(eq("conv"), eq(T0), any(), any()))
+                .thenReturn(newestFirst);
+
+        Memory loaded = service(1500).load("conv", T0.plusSeconds(600)).block();
+
+        String history = loaded.getHistory();
+        assertTrue(history.contains("ACME"));
+        assertTrue(history.indexOf("Respuesta 1") < history.indexOf("Pregunta 2"));
+        assertTrue(history.indexOf("Pregunta 2") < history.indexOf("Respuesta 3"));
+        assertEquals("Pregunta 2", loaded.getLastUserMessage());
+    }
+
+    @Test
+    void keepsMessagesOutsideWindowUntilSummarized() {
+        ConversationMemory memory = new ConversationMemory("conv");
+        memory.setSummary("El usuario consultó el contrato de arrendamiento con ACME.");
+        memory.setSummarizedUntil(T0);
+        when(memoryRepository.findById("conv")).thenReturn(Optional.of(memory));
+        // 5 mensajes sin resumir: la ventana (4) y uno que aún no alcanza el lote del resumen (2)
+        List<ChatMessage> newestFirst = new ArrayList<>(turns(6).subList(1, 6));
+        Collections.reverse(newestFirst);
+        ArgumentCaptor<Pageable> page = ArgumentCaptor.forClass(Pageable.class);
+        when(chatRepository.findByConversationIdAndTimestampBetweenOrderByTimestampDesc(eq("conv"), eq(T0), any(),
+                page.capture())).thenReturn(newestFirst);
+
+        Memory loaded = service(1500).load("conv", T0.plusSeconds(600)).block();
+
+        assertEquals(6, page.getValue().getPageSize());
+        assertTrue(loaded.getHistory().contains("Respuesta 1"));
+        assertTrue(loaded.getHistory().indexOf("Respuesta 1") < loaded.getHistory().indexOf("Respuesta 5"));
+    }
+
+    @Test
+    void staysWithinTokenBudget() {
+        when(memoryRepository.findById("conv")).thenReturn(Optional.empty());
+        ChatMessage older = turns(1).get(0);
+        older.setMessage("Pregunta antigua con mucho detalle sobre las obligaciones del arrendatario. ".repeat(5));
+        ChatMessage newest = new ChatMessage(null, 1L, "Respuesta corta", "assistant");
+        when(chatRepository.findByConversationIdAndTimestampBetweenOrderByTimestampDesc(eq("conv"), any(), any(), any()))
+                .thenReturn(List.of(newest, older));
+
+        Memory loaded = service(20).load("conv", T0.plusSeconds(600)).block();
+
+        assertTrue(loaded.getHistory().contains("Respuesta corta"));
+        assertFalse(loaded.getHistory().contains("Pregunta antigua"));
+        assertSame(Memory.EMPTY, service(20).load(null, Instant.now()).block());
+    }
+
+    @Test
+    void foldsOlderMessagesIntoSummaryInBackground() {
+        when(memoryRepository.findById("conv")).thenReturn(Optional.empty());
+        List<ChatMessage> messages = turns(8);
+        when(chatRepository.findByConversationIdAndTimestampAfterOrderByTimestampAsc(eq("conv"), eq(Instant.EPOCH), any()))
+                .thenReturn(messages);
+        when(geminiService.generateContentAsync(anyString())).thenReturn(Mono.just("Resumen nuevo"));
+
+        service(1500).onTurnCompleted("conv", 1L);
+
+        // La ventana reciente (2 turnos = 4 mensajes) queda fuera del resumen
+        ArgumentCaptor<ConversationMemory> saved = ArgumentCaptor.forClass(ConversationMemory.class);
+        verify(memoryRepository, timeout(2000)).save(saved.capture());
+        assertEquals("Resumen nuevo", saved.getValue().getSummary());
+        assertEquals(messages.get(3).getTimestamp(), saved.getValue().getSummarizedUntil());
+        assertEquals(4, saved.getValue().getSummarizedMessages());
+
+        ArgumentCaptor<String> prompt = ArgumentCaptor.forClass(String.class);
+        verify(geminiService).generateContentAsync(prompt.capture());
+        assertTrue(prompt.getValue().contains("Respuesta 3"));
+        assertFalse(prompt.getValue().contains("Pregunta 4"));
+    }
+}
@@ -0,0 +1,478 @@
+package com.acl.backend;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import com.acl.backend.util.HashUtils;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Servidor Gemini simulado para pruebas y benchmarks sin red ni API key.
+ *
+ * Atiende generateContent, streamGenerateContent (alt=sse) y cachedContents con el mismo
+ * formato JSON que la API real. Permite configurar:
+ *  - latencia por petición (fija, uniforme o log-normal) y entre fragmentos del stream;
+ *  - errores 429/5xx por probabilidad o en secuencia (failNext);
+ *  - truncado por MAX_TOKENS según maxOutputTokens del request (o un límite forzado);
+ *  - respuestas grabadas: record() las guarda desde una API real, replayFrom() las reproduce.
+ *
+ * Uso: {@code try (FakeGeminiServer gemini = FakeGeminiServer.start()) { ...gemini.baseUrl()... }}
+ * y configurar gemini.api.url con esa URL.
+ */
+public class FakeGeminiServer implements AutoCloseable {
+
+    private static final Gson GSON = new Gson();
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    private volatile LatencyModel latency = LatencyModel.fixed(0);
+    private volatile LatencyModel chunkLatency = LatencyModel.fixed(0);
+    private volatile double rate429;
+    private volatile double rate5xx;
+    private volatile Integer forcedMaxTokens;
+    private volatile int streamChunks = 4;
+    private volatile Function<String, String> responder = FakeGeminiServer::defaultResponse;
+
+    private volatile Path replayDir;
+    private volatile Path recordDir;
+    private volatile String upstreamUrl;
+    private volatile String upstreamKey;
+
+    private final Deque<Integer> scriptedFailures = new ArrayDeque<>();
+    private final Map<String, String> cachedContents = new ConcurrentHashMap<>();
+    private final List<String> prompts = Collections.synchronizedList(new ArrayList<>());
+    private volatile JsonObject lastGenerationConfig;
+    private volatile String lastModel;
+
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger failures = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger peakInFlight = new AtomicInteger();
+
+    private FakeGeminiServer(int port) throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+        this.executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.createContext("/v1beta/", this::handle);
+        server.start();
+    }
+
+    // Inicia el servidor en un puerto libre
+    public static FakeGeminiServer start() throws IOException {
+        return new FakeGeminiServer(0);
+    }
+
+    public String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    // ========== CONFIGURACIÓN ==========
+
+    public FakeGeminiServer latency(LatencyModel model) {
+        this.latency = model;
+        return this;
+    }
+
+    public FakeGeminiServer chunkLatency(LatencyModel model) {
+        this.chunkLatency = model;
+        return this;
+    }
+
+    // Probabilidad (0-1) de responder 429 y 503 en cada petición
+    public FakeGeminiServer failureRates(double rate429, double rate5xx) {
+        this.rate429 = rate429;
+        this.rate5xx = rate5xx;
+        return this;
+    }
+
+    // Las próximas 'count' peticiones fallan con 'status'
+    public FakeGeminiServer failNext(int count, int status) {
+        synchronized (scriptedFailures) {
+            for (int i = 0; i < count; i++) scriptedFailures.add(status);
+        }
+        return this;
+    }
+
+    // Trunca todas las respuestas a este número de tokens (finishReason MAX_TOKENS)
+    public FakeGeminiServer maxTokens(int tokens) {
+        this.forcedMaxTokens = tokens;
+        return this;
+    }
+
+    public FakeGeminiServer streamChunks(int chunks) {
+        this.streamChunks = Math.max(1, chunks);
+        return this;
+    }
+
+    // Texto de respuesta en función del prompt completo
+    public FakeGeminiServer responder(Function<String, String> responder) {
+        this.responder = responder;
+        return this;
+    }
+
+    // Reproduce respuestas grabadas en dir; los prompts sin grabación usan el responder
+    public FakeGeminiServer replayFrom(Path dir) {
+        this.replayDir = dir;
+        return this;
+    }
+
+    // Reenvía a la API real (upstreamUrl) y guarda cada respuesta en dir para reproducirla luego
+    public FakeGeminiServer record(Path dir, String upstreamUrl, String apiKey) {
+        this.recordDir = dir;
+        this.upstreamUrl = upstreamUrl;
+        this.upstreamKey = apiKey;
+        return this;
+    }
+
+    // ========== ESTADÍSTICAS ==========
+
+    public int requestCount() {
+        return requests.get();
+    }
+
+    public int failureCount() {
+        return failures.get();
+    }
+
+    public int peakConcurrency() {
+        return peakInFlight.get();
+    }
+
+    public List<String> prompts() {
+        synchronized (prompts) {
+            return List.copyOf(prompts);
+        }
+    }
+
+    // Modelo de la última petición generateContent/streamGenerateContent
+    public String lastModel() {
+        return lastModel;
+    }
+
+    // generationConfig de la última petición (p. ej. para verificar responseSchema)
+    public JsonObject lastGenerationConfig() {
+        return lastGenerationConfig;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    // ========== MANEJO DE PETICIONES ==========
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        peakInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+        try {
+            String path = exchange.getRequestURI().getPath();
+            String method = exchange.getRequestMethod();
+
+            if (path.startsWith("/v1beta/cachedContents")) {
+                handleCachedContents(exchange, method, path);
+                return;
+            }
+
+            sleep(latency.sampleMs());
+
+            Integer failure = nextFailure();
+            if (failure != null) {
+                failures.incrementAndGet();
+                sendError(exchange, failure);
+                return;
+            }
+
+            JsonObject request = JsonParser.parseString(readBody(exchange)).getAsJsonObject();
+            String model = path.substring(path.lastIndexOf('/') + 1, path.indexOf(':'));
+            String prompt = promptOf(request);
+            prompts.add(prompt);
+            lastModel = model;
+            lastGenerationConfig = request.has("generationConfig") ? request.getAsJsonObject("generationConfig") : null;
+
+            if (path.endsWith(":generateContent")) {
+                sendJson(exchange, 200, generate(model, prompt, request));
+            } else if (path.endsWith(":streamGenerateContent")) {
+                stream(exchange, prompt, maxOutputTokens(request));
+            } else {
+                sendError(exchange, 404);
+            }
+        } finally {
+            inFlight.decrementAndGet();
+            exchange.close();
+        }
+    }
+
+    private String generate(String model, String prompt, JsonObject request) throws IOException {
+        String key = HashUtils.sha256(model + "|" + prompt);
+
+        Path replayed = replayDir != null ? replayDir.resolve(key + ".json") : null;
+        if (replayed != null && Files.exists(replayed)) {
+            return Files.readString(replayed);
+        }
+
+        if (recordDir != null) {
+            String body = forwardUpstream(model, request);
+            Files.createDirectories(recordDir);
+            Files.writeString(recordDir.resolve(key + ".json"), body);
+            return body;
+        }
+
+        String text = responder.apply(prompt);
+        return GSON.toJson(response(prompt, text, maxOutputTokens(request), true));
+    }
+
+    private void stream(HttpExchange exchange, String prompt, int maxOutputTokens) throws IOException {
+        JsonObject full = response(prompt, responder.apply(prompt), maxOutputTokens, true);
+        String text = full.getAsJsonArray("candidates").get(0).getAsJsonObject()
+                .getAsJsonObject("content").getAsJsonArray("parts").get(0).getAsJsonObject()
+                .get("text").getAsString();
+
+        exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+        exchange.sendResponseHeaders(200, 0);
+        OutputStream out = exchange.getResponseBody();
+
+        int chunks = Math.min(streamChunks, Math.max(1, text.length()));
+        int size = (int) Math.ceil((double) text.length() / chunks);
+        for (int i = 0; i < chunks; i++) {
+            String piece = text.substring(Math.min(i * size, text.length()), Math.min((i + 1) * size, text.length()));
+            boolean last = i == chunks - 1;
+            JsonObject event = response(prompt, piece, Integer.MAX_VALUE, false);
+            if (last) {
+                // El último fragmento trae finishReason y el consumo total, como la API real
+                event.getAsJsonArray("candidates").get(0).getAsJsonObject()
+                        .add("finishReason", full.getAsJsonArray("candidates").get(0).getAsJsonObject().get("finishReason"));
+                event.add("usageMetadata", full.get("usageMetadata"));
+            }
+            out.write(("data: " + GSON.toJson(event) + "\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            if (!last) sleep(chunkLatency.sampleMs());
+        }
+    }
+
+    private void handleCachedContents(HttpExchange exchange, String method, String path) throws IOException {
+        if ("DELETE".equals(method)) {
+            cachedContents.remove(path.substring("/v1beta/".length()));
+            sendJson(exchange, 200, "{}");
+            return;
+        }
+        if (path.length() > "/v1beta/cachedContents".length()) {
+            sendError(exchange, 404);
+            return;
+        }
+
+        JsonObject request = JsonParser.parseString(readBody(exchange)).getAsJsonObject();
+        String text = promptOf(request);
+        String name = "cachedContents/" + UUID.randomUUID().toString().replace("-", "");
+        cachedContents.put(name, text);
+
+        JsonObject usage = new JsonObject();
+        usage.addProperty("totalTokenCount", tokens(text));
+        JsonObject body = new JsonObject();
+        body.addProperty("name", name);
+        body.add("usageMetadata", usage);
+        sendJson(exchange, 200, GSON.toJson(body));
+    }
+
+    /**
+     * Respuesta con el formato de la API. Si el texto supera el límite de tokens de salida
+     * se corta y finishReason es MAX_TOKENS.
+     */
+    private JsonObject response(String prompt, String text, int maxOutputTokens, boolean withUsage) {
+        int limit = forcedMaxTokens != null ? Math.min(forcedMaxTokens, maxOutputTokens) : maxOutputTokens;
+        String finishReason = "STOP";
+        if (tokens(text) > limit) {
+            text = text.substring(0, Math.min(text.length(), limit * 4));
+            finishReason = "MAX_TOKENS";
+        }
+
+        JsonObject part = new JsonObject();
+        part.addProperty("text", text);
+        JsonArray parts = new JsonArray();
+        parts.add(part);
+        JsonObject content = new JsonObject();
+        content.add("parts", parts);
+        content.addProperty("role", "model");
+        JsonObject candidate = new JsonObject();
+        candidate.add("content", content);
+        candidate.addProperty("finishReason", finishReason);
+        candidate.addProperty("index", 0);
+        JsonArray candidates = new JsonArray();
+        candidates.add(candidate);
+
+        JsonObject body = new JsonObject();
+        body.add("candidates", candidates);
+        if (withUsage) {
+            JsonObject usage = new JsonObject();
+            usage.addProperty("promptTokenCount", tokens(prompt));
+            usage.addProperty("candidatesTokenCount", tokens(text));
+            usage.addProperty("totalTokenCount", tokens(prompt) + tokens(text));
+            body.add("usageMetadata", usage);
+        }
+        return body;
+    }
+
+    private String forwardUpstream(String model, JsonObject request) throws IOException {
+        try {
+            HttpRequest upstream = HttpRequest.newBuilder()
+                    .uri(URI.create(upstreamUrl + "/v1beta/models/" + model + ":generateContent?key=" + upstreamKey))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(GSON.toJson(request)))
+                    .build();
+            HttpResponse<String> response = HttpClient.newHttpClient()
+                    .send(upstream, HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 200) {
+                throw new IOException("Gemini respondió " + response.statusCode() + " al grabar");
+            }
+            return response.body();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+    }
+
+    private Integer nextFailure() {
+        synchronized (scriptedFailures) {
+            if (!scriptedFailures.isEmpty()) return scriptedFailures.poll();
+        }
+        double r = ThreadLocalRandom.current().nextDouble();
+        if (r < rate429) return 429;
+        if (r < rate429 + rate5xx) return 503;
+        return null;
+    }
+
+    // Texto del prompt; con cachedContent se antepone el contexto guardado
+    private String promptOf(JsonObject request) {
+        StringBuilder sb = new StringBuilder();
+        if (request.has("cachedContent") && !request.get("cachedContent").isJsonNull()) {
+            String cached = cachedContents.get(request.get("cachedContent").getAsString());
+            if (cached != null) sb.append(cached).append("\n\n");
+        }
+        if (request.has("contents")) {
+            for (JsonElement content : request.getAsJsonArray("contents")) {
+                JsonObject c = content.getAsJsonObject();
+                if (!c.has("parts")) continue;
+                for (JsonElement part : c.getAsJsonArray("parts")) {
+                    JsonObject p = part.getAsJsonObject();
+                    if (p.has("text")) sb.append(p.get("text").getAsString());
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    private static int maxOutputTokens(JsonObject request) {
+        if (request.has("generationConfig")) {
+            JsonObject config = request.getAsJsonObject("generationConfig");
+            if (config.has("maxOutputTokens") && !config.get("maxOutputTokens").isJsonNull()) {
+                return config.get("maxOutputTokens").getAsInt();
+            }
+        }
+        return Integer.MAX_VALUE;
+    }
+
+    private static int tokens(String text) {
+        return Math.max(1, text.length() / 4);
+    }
+
+    private static String readBody(HttpExchange exchange) throws IOException {
+        return new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+    }
+
+    private static void sendJson(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    private static void sendError(HttpExchange exchange, int status) throws IOException {
+        String reason = status == 429 ? "RESOURCE_EXHAUSTED" : status == 404 ? "NOT_FOUND" : "UNAVAILABLE";
+        sendJson(exchange, status, "{\"error\":{\"code\":" + status + ",\"status\":\"" + reason + "\"}}");
+    }
+
+    private static void sleep(long ms) {
+        if (ms <= 0) return;
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Respuestas simuladas válidas para los prompts de PromptService, según el JSON que piden.
+     */
+    public static String defaultResponse(String prompt) {
+        if (prompt.contains("\"riskScore\"")) {
+            return """
+                {"type": "Servicios", "legalBasis": ["Código Civil"],
+                 "keyClauses": ["Cláusula de confidencialidad", "Cláusula de terminación"],
+                 "risks": ["Penalidad desproporcionada por terminación anticipada"],
+                 "riskScore": 65, "recommendations": ["Negociar la penalidad"],
+                 "summary": "Contrato de prestación de servicios simulado.",
+                 "keyDates": [{"type": "inicio", "value": "1 de enero de 2025", "importance": "high"}]}""";
+        }
+        if (prompt.contains("\"answer\"")) {
+            return """
+                {"answer": "Respuesta simulada basada en el contrato.",
+                 "references": ["CLÁUSULA PRIMERA"], "legalContext": [], "confidence": "medium"}""";
+        }
+        if (prompt.contains("\"keyPoints\"")) {
+            return "{\"summary\": \"Resumen simulado del contrato.\", \"keyPoints\": []}";
+        }
+        if (prompt.contains("\"subtype\"")) {
+            return "{\"type\": \"Servicios\", \"subtype\": \"Prestación de servicios\", \"confidence\": \"80\"}";
+        }
+        return "Respuesta simulada en texto plano para la consulta.";
+    }
+
+    /**
+     * Distribución de latencia en milisegundos
+     */
+    @FunctionalInterface
+    public interface LatencyModel {
+        long sampleMs();
+
+        static LatencyModel fixed(long ms) {
+            return () -> ms;
+        }
+
+        static LatencyModel uniform(long minMs, long maxMs) {
+            return () -> ThreadLocalRandom.current().nextLong(minMs, maxMs + 1);
+        }
+
+        // Cola larga típica de APIs de LLM: mediana y dispersión (sigma) del logaritmo
+        static LatencyModel logNormal(long medianMs, double sigma) {
+            return () -> Math.round(medianMs * Math.exp(sigma * ThreadLocalRandom.current().nextGaussian()));
+        }
+    }
+}
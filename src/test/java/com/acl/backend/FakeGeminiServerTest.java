@@ -0,0 +1,340 @@
+package com.acl.backend;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import com.acl.backend.config.WebClientConfig;
+import com.acl.backend.data.AnalysisData.AnalysisResult;
+import com.acl.backend.data.AnalysisData.KeyDate;
+import com.acl.backend.repository.TokenUsageRepository;
+import com.acl.backend.service.AIAnalysisService;
+import com.acl.backend.service.AnalysisDepth;
+import com.acl.backend.service.AnalysisProgress;
+import com.acl.backend.service.ContractChunkingService;
+import com.acl.backend.service.GeminiCircuitBreaker;
+import com.acl.backend.service.GeminiConcurrencyLimiter;
+import com.acl.backend.service.GeminiContextCacheService;
+import com.acl.backend.service.GeminiHedger;
+import com.acl.backend.service.GeminiModelRouter;
+import com.acl.backend.service.GeminiService;
+import com.acl.backend.service.PromptService;
+import com.acl.backend.service.SemanticAnswerCache;
+import com.acl.backend.service.TokenEstimator;
+import com.acl.backend.service.TokenUsageService;
+import com.acl.backend.service.UsageContext;
+import com.acl.backend.util.HashUtils;
+import com.google.gson.JsonParseException;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.publisher.Flux;
+
+/**
+ * GeminiService y el análisis con IA contra el servidor Gemini simulado (sin red ni API key)
+ */
+@SpringBootTest(classes = {
+        FakeGeminiServerTest.TestConfig.class,
+        WebClientConfig.class,
+        GeminiConcurrencyLimiter.class,
+        GeminiCircuitBreaker.class,
+        TokenUsageService.class,
+        TokenEstimator.class,
+        GeminiModelRouter.class,
+        GeminiHedger.class,
+        GeminiService.class,
+        GeminiContextCacheService.class,
+        ContractChunkingService.class,
+        SemanticAnswerCache.class,
+        PromptService.class,
+        AIAnalysisService.class
+})
+@TestPropertySource(properties = {
+        "gemini.api.key=test-key",
+        "gemini.api.model=gemini-2.5-flash",
+        "gemini.models.lite=test-lite",
+        "gemini.models.deep=test-deep",
+        "gemini.retry.initial-backoff-ms=10",
+        "gemini.retry.max-backoff-ms=50",
+        // Los errores inyectados no deben abrir el circuito entre tests
+        "gemini.circuit.min-calls=100000",
+        "gemini.context-cache.mode=remote",
+        // Cobertura rápida en Q&A para probarla sin esperar el retardo de producción; la cobertura
+        // necesita un permiso libre aunque los tests con errores hayan bajado el límite adaptativo
+        "gemini.hedging.initial-delay-ms=200",
+        "gemini.limiter.min-limit=2",
+        "usage.quota.daily-tokens=0"
+})
+public class FakeGeminiServerTest {
+
+    private static final FakeGeminiServer GEMINI = startServer();
+
+    @Configuration
+    static class TestConfig {
+        @Bean
+        public MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+    }
+
+    @DynamicPropertySource
+    static void geminiUrl(DynamicPropertyRegistry registry) {
+        registry.add("gemini.api.url", GEMINI::baseUrl);
+    }
+
+    @MockitoBean
+    private MongoTemplate mongoTemplate;
+
+    @MockitoBean
+    private TokenUsageRepository tokenUsageRepository;
+
+    @Autowired
+    private GeminiService geminiService;
+
+    @Autowired
+    private AIAnalysisService aiAnalysisService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @TempDir
+    Path tempDir;
+
+    private static FakeGeminiServer startServer() {
+        try {
+            return FakeGeminiServer.start();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @AfterAll
+    static void stopServer() {
+        GEMINI.close();
+    }
+
+    @BeforeEach
+    void resetServer() {
+        GEMINI.latency(FakeGeminiServer.LatencyModel.fixed(0))
+                .failureRates(0, 0)
+                .maxTokens(Integer.MAX_VALUE)
+                .responder(FakeGeminiServer::defaultResponse)
+                .replayFrom(null);
+    }
+
+    @Test
+    void usesConfiguredBaseUrl() {
+        int before = GEMINI.requestCount();
+
+        String text = geminiService.generateContent("Hola, ¿qué es un contrato?");
+
+        assertEquals(FakeGeminiServer.defaultResponse("Hola, ¿qué es un contrato?"), text);
+        assertEquals(before + 1, GEMINI.requestCount());
+    }
+
+    @Test
+    void retriesInjectedServerErrors() {
+        GEMINI.failNext(2, 503);
+        int before = GEMINI.requestCount();
+
+        String text = geminiService.generateContentAsync("Pregunta con reintentos").block(Duration.ofSeconds(10));
+
+        assertNotNull(text);
+        assertEquals(before + 3, GEMINI.requestCount());
+    }
+
+    @Test
+    void surfacesRateLimitAfterRetriesAreExhausted() {
+        GEMINI.failNext(3, 429);
+
+        WebClientResponseException error = assertThrows(WebClientResponseException.class,
+                () -> geminiService.generateContentAsync("Pregunta limitada").block(Duration.ofSeconds(10)));
+        assertEquals(429, error.getStatusCode().value());
+    }
+
+    @Test
+    void truncatesAtMaxTokens() {
+        GEMINI.maxTokens(5);
+
+        String text = geminiService.generateContentAsync("Respuesta larga").block(Duration.ofSeconds(10));
+
+        assertTrue(text.length() <= 20, "La respuesta debe cortarse en 5 tokens");
+    }
+
+    @Test
+    void streamsChunksInOrder() {
+        GEMINI.streamChunks(5);
+
+        List<String> chunks = geminiService.generateContentStream("Consulta en streaming")
+                .collectList()
+                .block(Duration.ofSeconds(10));
+
+        assertEquals(5, chunks.size());
+        assertEquals(FakeGeminiServer.defaultResponse("Consulta en streaming"), String.join("", chunks));
+    }
+
+    @Test
+    void firedHedgeRecordsTheDiscardedAttempt() {
+        AtomicInteger calls = new AtomicInteger();
+        GEMINI.latency(() -> calls.getAndIncrement() == 0 ? 3000 : 0);
+        int before = GEMINI.requestCount();
+
+        String text = geminiService.generateContentAsync("Pregunta lenta con cobertura")
+                .contextWrite(UsageContext.operation(UsageContext.QA))
+                .block(Duration.ofSeconds(10));
+
+        assertEquals(FakeGeminiServer.defaultResponse("Pregunta lenta con cobertura"), text);
+        assertEquals(before + 2, GEMINI.requestCount());
+        Counter hedged = meterRegistry.find("gemini.tokens")
+                .tags("operation", UsageContext.QA, "type", "prompt", "hedged", "true")
+                .counter();
+        assertNotNull(hedged, "El intento descartado debe contabilizarse");
+        assertTrue(hedged.count() > 0);
+    }
+
+    @Test
+    void replaysRecordedResponses() throws Exception {
+        String prompt = "Prompt grabado";
+        Files.writeString(tempDir.resolve(HashUtils.sha256("test-lite|" + prompt) + ".json"), """
+                {"candidates":[{"content":{"parts":[{"text":"respuesta grabada"}]},"finishReason":"STOP"}]}""");
+        GEMINI.replayFrom(tempDir);
+
+        assertEquals("respuesta grabada", geminiService.generateContentAsync(prompt).block(Duration.ofSeconds(10)));
+    }
+
+    @Test
+    void analyzesWithSingleSchemaConstrainedCall() {
+        int before = GEMINI.requestCount();
+
+        AnalysisResult result = aiAnalysisService.analyzeContractAsync(
+                "CONTRATO DE PRESTACIÓN DE SERVICIOS con esquema. CLÁUSULA PRIMERA. Objeto.")
+                .block(Duration.ofSeconds(10));
+
+        assertEquals(before + 1, GEMINI.requestCount());
+        assertEquals("application/json", GEMINI.lastGenerationConfig().get("responseMimeType").getAsString());
+        assertEquals("OBJECT", GEMINI.lastGenerationConfig().getAsJsonObject("responseSchema").get("type").getAsString());
+        assertEquals(List.of("Código Civil"), result.getLegalBasis());
+        assertEquals("inicio", result.getKeyDates().get(0).getType());
+        assertEquals(65.0, result.getRiskScore());
+    }
+
+    @Test
+    void emptyStructuredResponseIsAParseError() {
+        GEMINI.responder(prompt -> "");
+
+        assertThrows(JsonParseException.class, () -> geminiService
+                .generateStructuredAsync("Análisis sin respuesta", PromptService.ANALYSIS_SCHEMA, AnalysisResult.class)
+                .block(Duration.ofSeconds(10)));
+    }
+
+    @Test
+    void foreignAnalysisIsReusedWithoutItsSummaryOrDates() {
+        AnalysisResult previous = new AnalysisResult();
+        previous.setType("Arrendamiento");
+        previous.setRiskScore(40);
+        previous.setSummary("Arrendamiento de Ana María Gómez en la calle 80");
+        KeyDate start = new KeyDate();
+        start.setType("inicio");
+        start.setValue("2031-02-17");
+        previous.setKeyDates(List.of(start));
+        List<String> changed = List.of("CLÁUSULA SEGUNDA. CANON. El arrendatario pagará 2.300.000 pesos.");
+
+        aiAnalysisService.analyzeChangesAsync(previous, changed, List.of(), false).block(Duration.ofSeconds(10));
+        String own = GEMINI.prompts().get(GEMINI.prompts().size() - 1);
+        assertTrue(own.contains("Ana María Gómez") && own.contains("2031-02-17"));
+
+        aiAnalysisService.analyzeChangesAsync(previous, changed, List.of(), true).block(Duration.ofSeconds(10));
+        String foreign = GEMINI.prompts().get(GEMINI.prompts().size() - 1);
+        assertFalse(foreign.contains("Ana María Gómez"));
+        assertFalse(foreign.contains("2031-02-17"));
+        assertTrue(foreign.contains("Arrendamiento") && foreign.contains("2.300.000"));
+    }
+
+    @Test
+    void routesAnalysisDepthToModelTier() {
+        String contract = "CONTRATO DE ARRENDAMIENTO por niveles. CLÁUSULA PRIMERA. Objeto.";
+
+        aiAnalysisService.analyzeContractAsync(contract).block(Duration.ofSeconds(10));
+        assertEquals("gemini-2.5-flash", GEMINI.lastModel());
+
+        aiAnalysisService.analyzeContractAsync(contract)
+                .contextWrite(UsageContext.depth(AnalysisDepth.QUICK))
+                .block(Duration.ofSeconds(10));
+        assertEquals("test-lite", GEMINI.lastModel());
+
+        aiAnalysisService.analyzeContractAsync(contract)
+                .contextWrite(UsageContext.depth(AnalysisDepth.DEEP))
+                .block(Duration.ofSeconds(10));
+        assertEquals("test-deep", GEMINI.lastModel());
+    }
+
+    @Test
+    void analyzesContractsConcurrentlyWithLatencyAndFailures() {
+        GEMINI.latency(FakeGeminiServer.LatencyModel.logNormal(30, 0.5)).failureRates(0.1, 0.05);
+
+        List<AnalysisResult> results = Flux.range(0, 20)
+                .flatMap(i -> aiAnalysisService.analyzeContractAsync(
+                        "CONTRATO DE PRESTACIÓN DE SERVICIOS número " + i + ". CLÁUSULA PRIMERA. Objeto."))
+                .collectList()
+                .block(Duration.ofSeconds(60));
+
+        assertEquals(20, results.size());
+        results.forEach(r -> assertEquals("Servicios", r.getType()));
+    }
+
+    @Test
+    void answersFollowUpQuestionsFromCachedContext() {
+        String contract = "CLÁUSULA PRIMERA. El contratista prestará servicios de consultoría jurídica. ".repeat(120);
+
+        aiAnalysisService.answerQuestionAsync(contract, "¿Cuál es el objeto?").block(Duration.ofSeconds(10));
+        aiAnalysisService.answerQuestionAsync(contract, "¿Hay penalidades?").block(Duration.ofSeconds(10));
+
+        List<String> prompts = GEMINI.prompts();
+        String last = prompts.get(prompts.size() - 1);
+        // El servidor reconstruye el prompt completo a partir del contexto cacheado
+        assertTrue(last.contains("¿Hay penalidades?") && last.contains("consultoría jurídica"));
+    }
+
+    @Test
+    void reportsChunkProgressForLongContracts() {
+        StringBuilder contract = new StringBuilder();
+        for (int i = 1; i <= 60; i++) {
+            contract.append(i).append(". OBLIGACIONES DEL CONTRATISTA\n")
+                    .append("El contratista prestará los servicios de consultoría jurídica con diligencia. ".repeat(15))
+                    .append("\n\n");
+        }
+        List<int[]> progress = new CopyOnWriteArrayList<>();
+
+        AnalysisResult result = aiAnalysisService.analyzeContractAsync(contract.toString())
+                .contextWrite(AnalysisProgress.listener((done, total) -> progress.add(new int[]{done, total})))
+                .block(Duration.ofSeconds(30));
+
+        assertNotNull(result);
+        int total = progress.get(0)[1];
+        assertTrue(total > 1, "Se esperaba análisis por bloques");
+        assertEquals(0, progress.get(0)[0]);
+        assertEquals(total + 1, progress.size());
+        assertArrayEquals(new int[]{total, total}, progress.get(progress.size() - 1));
+    }
+}
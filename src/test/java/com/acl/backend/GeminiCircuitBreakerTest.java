@@ -0,0 +1,66 @@
+package com.acl.backend;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import com.acl.backend.service.GeminiCircuitBreaker;
+import com.acl.backend.service.GeminiCircuitBreaker.State;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Tests unitarios del circuit breaker de Gemini
+ */
+public class GeminiCircuitBreakerTest {
+
+    private static final WebClientResponseException SERVER_ERROR =
+            WebClientResponseException.create(503, "Service Unavailable", HttpHeaders.EMPTY, new byte[0], null);
+
+    private GeminiCircuitBreaker breaker(long openDurationMs) {
+        return new GeminiCircuitBreaker(new SimpleMeterRegistry(), 10, 4, 0.5, openDurationMs, 1);
+    }
+
+    @Test
+    void opensAfterFailureRateExceeded() {
+        GeminiCircuitBreaker breaker = breaker(60000);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(breaker.tryAcquire());
+            breaker.onError(SERVER_ERROR);
+        }
+        assertEquals(State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire());
+    }
+
+    @Test
+    void clientErrorsDoNotOpenCircuit() {
+        GeminiCircuitBreaker breaker = breaker(60000);
+        WebClientResponseException badRequest =
+                WebClientResponseException.create(400, "Bad Request", HttpHeaders.EMPTY, new byte[0], null);
+        for (int i = 0; i < 6; i++) {
+            assertTrue(breaker.tryAcquire());
+            breaker.onError(badRequest);
+        }
+        assertEquals(State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void halfOpenProbeClosesOnSuccess() throws InterruptedException {
+        GeminiCircuitBreaker breaker = breaker(50);
+        for (int i = 0; i < 4; i++) {
+            breaker.tryAcquire();
+            breaker.onError(SERVER_ERROR);
+        }
+        Thread.sleep(80);
+
+        assertTrue(breaker.tryAcquire());
+        assertEquals(State.HALF_OPEN, breaker.getState());
+        // Solo se permite una llamada de prueba a la vez
+        assertFalse(breaker.tryAcquire());
+
+        breaker.onSuccess();
+        assertEquals(State.CLOSED, breaker.getState());
+    }
+}
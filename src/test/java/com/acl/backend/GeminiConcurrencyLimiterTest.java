@@ -0,0 +1,94 @@
+package com.acl.backend;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import com.acl.backend.service.GeminiConcurrencyLimiter;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+/**
+ * Tests unitarios del limitador adaptativo de concurrencia
+ */
+public class GeminiConcurrencyLimiterTest {
+
+    private GeminiConcurrencyLimiter limiter(int initial, int maxQueue, long maxWaitMs) {
+        return new GeminiConcurrencyLimiter(new SimpleMeterRegistry(), initial, 1, 8, maxQueue, maxWaitMs, 2.0);
+    }
+
+    @Test
+    void neverExceedsLimitAndDrainsQueue() {
+        // Límite máximo fijo en 2 para que el aumento aditivo no lo mueva
+        GeminiConcurrencyLimiter limiter = new GeminiConcurrencyLimiter(new SimpleMeterRegistry(), 2, 1, 2, 10, 5000, 2.0);
+        AtomicInteger current = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+
+        Integer done = Flux.range(0, 6)
+                .flatMap(i -> limiter.execute(() -> Mono.fromCallable(() -> {
+                            peak.accumulateAndGet(current.incrementAndGet(), Math::max);
+                            return i;
+                        })
+                        .delayElement(Duration.ofMillis(50))
+                        .doOnNext(v -> current.decrementAndGet())))
+                .count()
+                .map(Long::intValue)
+                .block(Duration.ofSeconds(5));
+
+        assertEquals(6, done);
+        assertTrue(peak.get() <= 2, "Concurrencia máxima observada: " + peak.get());
+        assertEquals(0, limiter.getInFlight());
+        assertEquals(0, limiter.getQueueDepth());
+    }
+
+    @Test
+    void rejectsWhenQueueIsFull() {
+        GeminiConcurrencyLimiter limiter = limiter(1, 0, 5000);
+        Sinks.One<String> hold = Sinks.one();
+
+        limiter.execute(hold::asMono).subscribe();
+
+        RuntimeException ex = assertThrows(RuntimeException.class,
+                () -> limiter.execute(() -> Mono.just("x")).block(Duration.ofSeconds(1)));
+        assertTrue(ex.getMessage().contains("cola"));
+
+        hold.tryEmitValue("ok");
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    void queuedCallerTimesOut() {
+        GeminiConcurrencyLimiter limiter = limiter(1, 5, 100);
+        Sinks.One<String> hold = Sinks.one();
+        limiter.execute(hold::asMono).subscribe();
+
+        assertThrows(RuntimeException.class,
+                () -> limiter.execute(() -> Mono.just("x")).block(Duration.ofSeconds(2)));
+        assertEquals(0, limiter.getQueueDepth());
+        hold.tryEmitValue("ok");
+    }
+
+    @Test
+    void overloadShrinksAndSuccessGrowsLimit() {
+        GeminiConcurrencyLimiter limiter = limiter(4, 10, 1000);
+        WebClientResponseException tooMany = WebClientResponseException.create(
+                429, "Too Many Requests", HttpHeaders.EMPTY, new byte[0], null);
+
+        assertThrows(WebClientResponseException.class,
+                () -> limiter.execute(() -> Mono.error(tooMany)).block());
+        assertEquals(2.0, limiter.getLimit(), 0.001);
+
+        for (int i = 0; i < 10; i++) {
+            limiter.execute(() -> Mono.just("ok")).block();
+        }
+        assertTrue(limiter.getLimit() > 2.0);
+    }
+}
@@ -0,0 +1,104 @@
+package com.acl.backend;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import com.acl.backend.data.GeminiData.CachedContent;
+import com.acl.backend.service.GeminiContextCacheService;
+import com.acl.backend.service.GeminiService;
+import com.acl.backend.service.TokenEstimator;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.publisher.Mono;
+
+/**
+ * Tests unitarios del cache de contexto de Gemini (modo local y remoto simulado)
+ */
+public class GeminiContextCacheServiceTest {
+
+    private static final String CONTRACT = "Cláusula de confidencialidad y plazo de doce meses. ".repeat(40);
+
+    private GeminiService gemini;
+    private SimpleMeterRegistry registry;
+    private TokenEstimator estimator;
+
+    @BeforeEach
+    void setUp() {
+        gemini = mock(GeminiService.class);
+        registry = new SimpleMeterRegistry();
+        estimator = new TokenEstimator(registry);
+        when(gemini.generateContentAsync(anyString())).thenReturn(Mono.just("respuesta"));
+    }
+
+    private GeminiContextCacheService service(String mode, int minTokens, int maxEntries) {
+        return new GeminiContextCacheService(gemini, estimator, registry, mode, 1800, minTokens, maxEntries);
+    }
+
+    private double count(String result) {
+        var counter = registry.find("gemini.context-cache.requests").tag("result", result).counter();
+        return counter == null ? 0 : counter.count();
+    }
+
+    @Test
+    void localModeReusesEntryAcrossQuestions() {
+        GeminiContextCacheService cache = service("local", 100, 10);
+
+        assertEquals("respuesta", cache.generate(CONTRACT, "¿Plazo?").block());
+        assertEquals("respuesta", cache.generate(CONTRACT, "¿Confidencialidad?").block());
+
+        assertEquals(1, count("miss"));
+        assertEquals(1, count("hit"));
+        assertEquals(1, cache.size());
+        // El sustituto local envía el prompt completo
+        verify(gemini).generateContentAsync(CONTRACT + "\n\n¿Plazo?");
+    }
+
+    @Test
+    void shortPrefixBypassesCache() {
+        GeminiContextCacheService cache = service("local", 100_000, 10);
+
+        cache.generate(CONTRACT, "¿Plazo?").block();
+
+        assertEquals(1, count("bypass"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedEntry() {
+        GeminiContextCacheService cache = service("local", 100, 1);
+
+        cache.generate(CONTRACT, "¿Plazo?").block();
+        cache.generate(CONTRACT + " Anexo.", "¿Plazo?").block();
+
+        assertEquals(1, cache.size());
+        assertEquals(1.0, registry.get("gemini.context-cache.evictions").tag("reason", "evicted").counter().count());
+    }
+
+    @Test
+    void remoteModeSendsOnlySuffixAndRecoversFromMissingCache() {
+        CachedContent created = new CachedContent();
+        created.setName("cachedContents/abc");
+        when(gemini.createCachedContent(eq(CONTRACT), anyLong())).thenReturn(Mono.just(created));
+        when(gemini.deleteCachedContent(anyString())).thenReturn(Mono.empty());
+        when(gemini.generateContentAsync("¿Plazo?", "cachedContents/abc")).thenReturn(Mono.just("desde cache"));
+        when(gemini.generateContentAsync("¿Multa?", "cachedContents/abc")).thenReturn(Mono.error(
+                WebClientResponseException.create(404, "Not Found", HttpHeaders.EMPTY, new byte[0], null)));
+
+        GeminiContextCacheService cache = service("remote", 100, 10);
+
+        assertEquals("desde cache", cache.generate(CONTRACT, "¿Plazo?").block());
+        // Contexto perdido en Gemini: se responde con el prompt completo y se olvida la entrada
+        assertEquals("respuesta", cache.generate(CONTRACT, "¿Multa?").block());
+        assertEquals(0, cache.size());
+        verify(gemini, times(1)).createCachedContent(eq(CONTRACT), anyLong());
+        assertEquals(1, count("fallback"));
+    }
+}
@@ -0,0 +1,130 @@
+package com.acl.backend;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import com.acl.backend.service.GeminiHedger;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Tests unitarios del hedging de llamadas interactivas a Gemini
+ */
+public class GeminiHedgerTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private GeminiHedger hedger(double maxRate, double burst) {
+        // Espera inicial de 100 ms hasta juntar 3 muestras; después el p50 acotado a [50, 1000]
+        return new GeminiHedger(registry, true, "qa,general_chat", 0.5, 50, 1000, 100, 10, 3, maxRate, burst);
+    }
+
+    private double count(String name) {
+        var counter = registry.find(name).tag("operation", "qa").counter();
+        return counter != null ? counter.count() : 0;
+    }
+
+    @Test
+    void slowPrimaryIsHedgedAndLoserCancelled() {
+        GeminiHedger hedger = hedger(0.05, 5);
+        AtomicInteger attempts = new AtomicInteger();
+        AtomicBoolean primaryCancelled = new AtomicBoolean();
+        AtomicInteger discarded = new AtomicInteger();
+
+        String result = hedger.hedge("qa", () -> attempts.getAndIncrement() == 0
+                        ? Mono.delay(Duration.ofSeconds(5)).map(t -> "original")
+                                .doOnCancel(() -> primaryCancelled.set(true))
+                        : Mono.delay(Duration.ofMillis(20)).map(t -> "cobertura"),
+                        discarded::incrementAndGet)
+                .block(Duration.ofSeconds(2));
+
+        assertEquals("cobertura", result);
+        assertEquals(2, attempts.get());
+        assertTrue(primaryCancelled.get());
+        // El intento cancelado se informa para contabilizar sus tokens
+        assertEquals(1, discarded.get());
+        assertEquals(1, count("gemini.hedge.fired"));
+        assertEquals(1, count("gemini.hedge.won"));
+    }
+
+    @Test
+    void fastPrimaryDoesNotHedge() {
+        GeminiHedger hedger = hedger(0.05, 5);
+        AtomicInteger attempts = new AtomicInteger();
+
+        AtomicInteger discarded = new AtomicInteger();
+
+        String result = hedger.hedge("qa", () -> {
+            attempts.incrementAndGet();
+            return Mono.just("rápida");
+        }, discarded::incrementAndGet).block(Duration.ofSeconds(1));
+
+        assertEquals("rápida", result);
+        assertEquals(1, attempts.get());
+        assertEquals(0, discarded.get());
+        assertEquals(0, count("gemini.hedge.fired"));
+    }
+
+    @Test
+    void hedgeRateIsCappedByBudget() {
+        // Una sola cobertura disponible y el presupuesto casi no se recarga
+        GeminiHedger hedger = hedger(0.01, 1);
+        for (int i = 0; i < 2; i++) {
+            AtomicInteger attempts = new AtomicInteger();
+            hedger.hedge("qa", () -> attempts.getAndIncrement() == 0
+                    ? Mono.delay(Duration.ofMillis(300)).map(t -> "original")
+                    : Mono.just("cobertura")).block(Duration.ofSeconds(2));
+        }
+
+        assertEquals(1, count("gemini.hedge.fired"));
+        assertEquals(1, count("gemini.hedge.skipped"));
+    }
+
+    @Test
+    void primaryFailureBeforeDelayIsNotRetried() {
+        GeminiHedger hedger = hedger(0.05, 5);
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertThrows(IllegalStateException.class, () -> hedger.hedge("qa", () -> {
+            attempts.incrementAndGet();
+            return Mono.<String>error(new IllegalStateException("400"));
+        }).block(Duration.ofSeconds(1)));
+        assertEquals(1, attempts.get());
+    }
+
+    @Test
+    void streamRaceIsDecidedByFirstFragment() {
+        GeminiHedger hedger = hedger(0.05, 5);
+        AtomicInteger attempts = new AtomicInteger();
+
+        var fragments = hedger.hedgeMany("qa", () -> attempts.getAndIncrement() == 0
+                        ? Flux.just("a1", "a2").delaySubscription(Duration.ofSeconds(5))
+                        : Flux.just("b1", "b2", "b3").delayElements(Duration.ofMillis(10)))
+                .collectList().block(Duration.ofSeconds(2));
+
+        assertEquals(List.of("b1", "b2", "b3"), fragments);
+        assertEquals(1, count("gemini.hedge.won"));
+    }
+
+    @Test
+    void delayFollowsPercentileOfRecentLatencies() {
+        GeminiHedger hedger = hedger(0.05, 5);
+        assertEquals(100, hedger.delayMs("qa"));
+        for (long ms : new long[]{60, 70, 80}) {
+            hedger.hedge("qa", () -> Mono.delay(Duration.ofMillis(ms)).map(t -> "ok")).block(Duration.ofSeconds(1));
+        }
+        long delay = hedger.delayMs("qa");
+        assertTrue(delay >= 60 && delay < 150, "p50 esperado ~70 ms, fue " + delay);
+
+        // Operaciones no interactivas pasan sin cobertura
+        assertFalse(hedger.appliesTo("analysis"));
+    }
+}
@@ -0,0 +1,59 @@
+package com.acl.backend;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import com.acl.backend.service.AnalysisDepth;
+import com.acl.backend.service.GeminiModelRouter;
+import com.acl.backend.service.GeminiModelRouter.Tier;
+import com.acl.backend.service.TokenEstimator;
+import com.acl.backend.service.UsageContext;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Tests unitarios del enrutamiento de modelos por operación, tamaño y profundidad
+ */
+public class GeminiModelRouterTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private GeminiModelRouter router(boolean enabled) {
+        return new GeminiModelRouter(new TokenEstimator(registry), registry,
+                "lite-model", "standard-model", "deep-model", enabled, 50, "general_chat,other");
+    }
+
+    @Test
+    void shortLightOperationsUseLiteModel() {
+        GeminiModelRouter router = router(true);
+
+        assertEquals(Tier.LITE, router.route(UsageContext.GENERAL_CHAT, null, "¿Qué es una cláusula penal?", false));
+        assertEquals(Tier.STANDARD, router.route(UsageContext.GENERAL_CHAT, null,
+                "Explique la cláusula de terminación anticipada del contrato. ".repeat(40), false));
+        assertEquals(Tier.STANDARD, router.route(UsageContext.ANALYSIS, null, "Contrato corto", false));
+        assertEquals("lite-model", router.modelFor(Tier.LITE));
+        assertEquals(1.0, registry.counter("gemini.routing.decisions", "operation", "general_chat", "tier", "lite").count());
+    }
+
+    @Test
+    void depthOverridesOperationButNotCachedContext() {
+        GeminiModelRouter router = router(true);
+
+        assertEquals(Tier.LITE, router.route(UsageContext.ANALYSIS, AnalysisDepth.QUICK, "texto", false));
+        assertEquals(Tier.DEEP, router.route(UsageContext.ANALYSIS, AnalysisDepth.DEEP, "texto", false));
+        // El contexto cacheado pertenece al modelo estándar
+        assertEquals(Tier.STANDARD, router.route(UsageContext.QA, AnalysisDepth.DEEP, "texto", true));
+        assertEquals(Tier.STANDARD, router.tierFor(null));
+    }
+
+    @Test
+    void disabledRoutingAlwaysUsesStandardModel() {
+        GeminiModelRouter router = router(false);
+
+        assertEquals(Tier.STANDARD, router.route(UsageContext.GENERAL_CHAT, AnalysisDepth.QUICK, "hola", false));
+        assertThrows(IllegalArgumentException.class, () -> AnalysisDepth.parse("extreme"));
+        assertNull(AnalysisDepth.parse(null));
+        assertEquals(AnalysisDepth.DEEP, AnalysisDepth.parse("Deep"));
+    }
+}
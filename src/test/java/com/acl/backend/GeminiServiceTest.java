@@ -4,12 +4,25 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
 
 import com.acl.backend.config.WebClientConfig;
+import com.acl.backend.repository.TokenUsageRepository;
+import com.acl.backend.service.GeminiCircuitBreaker;
+import com.acl.backend.service.GeminiConcurrencyLimiter;
+import com.acl.backend.service.GeminiHedger;
+import com.acl.backend.service.GeminiModelRouter;
 import com.acl.backend.service.GeminiService;
 import com.acl.backend.service.PromptService;
+import com.acl.backend.service.TokenEstimator;
+import com.acl.backend.service.TokenUsageService;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -20,6 +33,12 @@ import static org.junit.jupiter.api.Assertions.*;
 @SpringBootTest(classes = {
         GeminiServiceTest.TestConfig.class,
         WebClientConfig.class,
+        GeminiConcurrencyLimiter.class,
+        GeminiCircuitBreaker.class,
+        TokenUsageService.class,
+        TokenEstimator.class,
+        GeminiModelRouter.class,
+        GeminiHedger.class,
         GeminiService.class,
         PromptService.class
 })
@@ -32,8 +51,20 @@ public class GeminiServiceTest {
     @Configuration
     static class TestConfig {
         // Configuración base para el contexto de Spring
+
+        @Bean
+        public MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
     }
 
+    // Sin Mongo en este contexto: el registro de consumo no persiste nada
+    @MockitoBean
+    private MongoTemplate mongoTemplate;
+
+    @MockitoBean
+    private TokenUsageRepository tokenUsageRepository;
+
     @Autowired
     private GeminiService geminiService;
 
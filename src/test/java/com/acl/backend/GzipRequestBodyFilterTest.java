@@ -0,0 +1,107 @@
+package com.acl.backend;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.codec.HttpMessageWriter;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.mock.http.client.reactive.MockClientHttpRequest;
+import org.springframework.web.reactive.function.BodyInserter;
+import org.springframework.web.reactive.function.BodyInserters;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeStrategies;
+
+import com.acl.backend.config.GzipRequestBodyFilter;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Tests unitarios de la compresión gzip de cuerpos de petición a Gemini
+ */
+public class GzipRequestBodyFilterTest {
+
+    private final GzipRequestBodyFilter filter = new GzipRequestBodyFilter(1024);
+
+    private MockClientHttpRequest send(String body) {
+        ClientRequest request = ClientRequest.create(HttpMethod.POST, URI.create("http://gemini/v1beta/models/x:generateContent"))
+                .body(BodyInserters.fromValue(body))
+                .build();
+        AtomicReference<ClientRequest> sent = new AtomicReference<>();
+        filter.filter(request, r -> {
+            sent.set(r);
+            return Mono.just(ClientResponse.create(HttpStatus.OK).build());
+        }).block(Duration.ofSeconds(1));
+
+        MockClientHttpRequest written = new MockClientHttpRequest(HttpMethod.POST, "/");
+        sent.get().body().insert(written, context()).block(Duration.ofSeconds(1));
+        return written;
+    }
+
+    private static BodyInserter.Context context() {
+        ExchangeStrategies strategies = ExchangeStrategies.withDefaults();
+        return new BodyInserter.Context() {
+            @Override
+            public List<HttpMessageWriter<?>> messageWriters() {
+                return strategies.messageWriters();
+            }
+
+            @Override
+            public Optional<ServerHttpRequest> serverRequest() {
+                return Optional.empty();
+            }
+
+            @Override
+            public Map<String, Object> hints() {
+                return Map.of();
+            }
+        };
+    }
+
+    private static byte[] bytes(MockClientHttpRequest request) {
+        return DataBufferUtils.join(request.getBody()).map(buffer -> {
+            byte[] bytes = new byte[buffer.readableByteCount()];
+            buffer.read(bytes);
+            DataBufferUtils.release(buffer);
+            return bytes;
+        }).block(Duration.ofSeconds(1));
+    }
+
+    @Test
+    void largeBodyIsGzipped() throws IOException {
+        String body = "CLÁUSULA PRIMERA. El arrendatario pagará la renta mensual. ".repeat(100);
+
+        MockClientHttpRequest written = send(body);
+        byte[] compressed = bytes(written);
+
+        assertEquals("gzip", written.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        assertEquals(compressed.length, written.getHeaders().getContentLength());
+        assertTrue(compressed.length < body.getBytes(StandardCharsets.UTF_8).length / 4);
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            assertEquals(body, new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void smallBodyIsSentAsIs() {
+        MockClientHttpRequest written = send("¿Qué plazo tiene el contrato?");
+
+        assertNull(written.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        assertEquals("¿Qué plazo tiene el contrato?", new String(bytes(written), StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,29 @@
+package com.acl.backend;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import com.acl.backend.util.HashUtils;
+
+/**
+ * Tests unitarios de HashUtils
+ */
+public class HashUtilsTest {
+
+    @Test
+    void partsHashMatchesConcatenatedHash() {
+        // Más grande que el buffer de codificación y con caracteres multibyte
+        String prompt = "CLÁUSULA ÚNICA. Año, señal y pago en 30 días. ✓ ".repeat(500);
+
+        assertEquals(HashUtils.sha256("gemini-2.5-flash|0.2|15000|null|" + prompt),
+                HashUtils.sha256("gemini-2.5-flash", 0.2, 15000, null, prompt));
+    }
+
+    @Test
+    void loneSurrogatesAreReplacedLikeGetBytes() {
+        String broken = "texto \uD800 roto";
+
+        assertEquals(HashUtils.sha256("a|" + broken), HashUtils.sha256("a", broken));
+    }
+}
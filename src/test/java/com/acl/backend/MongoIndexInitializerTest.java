@@ -0,0 +1,82 @@
+package com.acl.backend;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+
+import com.acl.backend.config.MongoIndexInitializer;
+import com.acl.backend.model.AnalysisCacheEntry;
+import com.acl.backend.model.TokenUsageBucket;
+
+/**
+ * Tests unitarios de la creación de índices al arrancar (Mongo simulado)
+ */
+public class MongoIndexInitializerTest {
+
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+    private final Map<Class<?>, IndexOperations> indexOps = new HashMap<>();
+
+    private List<IndexDefinition> createdFor(Class<?> document) {
+        ArgumentCaptor<IndexDefinition> created = ArgumentCaptor.forClass(IndexDefinition.class);
+        verify(indexOps.get(document), atLeastOnce()).createIndex(created.capture());
+        return created.getAllValues();
+    }
+
+    private int createIndexes() {
+        // Como el MongoTemplate real: las conversiones registran Instant y demás como tipos simples
+        MongoMappingContext mappingContext = new MongoMappingContext();
+        mappingContext.setSimpleTypeHolder(new MongoCustomConversions(List.of()).getSimpleTypeHolder());
+        when(mongoTemplate.getConverter())
+                .thenReturn(new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, mappingContext));
+        when(mongoTemplate.indexOps(any(Class.class)))
+                .thenAnswer(inv -> indexOps.computeIfAbsent(inv.getArgument(0), c -> mock(IndexOperations.class)));
+        return new MongoIndexInitializer(mongoTemplate).createIndexes();
+    }
+
+    @Test
+    void ttlIndexOfAnalysisCacheIsCreated() {
+        createIndexes();
+
+        IndexDefinition ttl = createdFor(AnalysisCacheEntry.class).stream()
+                .filter(index -> index.getIndexKeys().containsKey("createdAt"))
+                .findFirst()
+                .orElseThrow();
+        assertEquals(Duration.ofDays(30).getSeconds(),
+                ((Number) ttl.getIndexOptions().get("expireAfterSeconds")).longValue());
+    }
+
+    @Test
+    void compoundIndexesAreCreated() {
+        createIndexes();
+
+        assertTrue(createdFor(TokenUsageBucket.class).stream()
+                .map(IndexDefinition::getIndexKeys)
+                .anyMatch(keys -> keys.equals(new Document("userId", 1).append("day", 1))));
+    }
+
+    @Test
+    void failingIndexDoesNotStopTheRest() {
+        IndexOperations failing = mock(IndexOperations.class);
+        when(failing.createIndex(any())).thenThrow(new IllegalStateException("IndexOptionsConflict"));
+        indexOps.put(AnalysisCacheEntry.class, failing);
+
+        assertTrue(createIndexes() > 0);
+        assertFalse(createdFor(TokenUsageBucket.class).isEmpty());
+    }
+}
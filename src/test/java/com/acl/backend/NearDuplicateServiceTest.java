@@ -0,0 +1,120 @@
+package com.acl.backend;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+
+import com.acl.backend.model.ContractFingerprint;
+import com.acl.backend.service.ClauseRetrievalService;
+import com.acl.backend.service.ContractChunkingService;
+import com.acl.backend.service.NearDuplicateService;
+import com.acl.backend.service.NearDuplicateService.NearDuplicate;
+import com.acl.backend.service.TokenEstimator;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Tests unitarios de la detección de contratos casi iguales (Mongo simulado)
+ */
+public class NearDuplicateServiceTest {
+
+    private static final String MODEL = "gemini-2.5-flash";
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+    private final NearDuplicateService service = new NearDuplicateService(mongoTemplate,
+            new ClauseRetrievalService(new ContractChunkingService(), new TokenEstimator(registry), registry,
+                    true, 4, 2500, 12000, 1200, 1500, 0.3, 256, 10),
+            registry, true, true, 0.7, 100, 20, 5, 20, 0.5);
+
+    private static String lease(String tenant, String rent) {
+        return "CONTRATO DE ARRENDAMIENTO DE VIVIENDA URBANA\n"
+                + "Entre Inmobiliaria Andina S.A.S., en adelante EL ARRENDADOR, y " + tenant
+                + ", en adelante EL ARRENDATARIO, se celebra el presente contrato.\n\n"
+                + "CLÁUSULA PRIMERA. OBJETO\nEl arrendador entrega a título de arrendamiento el inmueble ubicado "
+                + "en la ciudad de Bogotá, con sus servicios públicos, muebles y enseres descritos en el inventario anexo.\n\n"
+                + "CLÁUSULA SEGUNDA. CANON\nEl arrendatario pagará un canon mensual de " + rent
+                + " pesos dentro de los cinco primeros días de cada período mensual en la cuenta que indique el arrendador.\n\n"
+                + "CLÁUSULA TERCERA. DURACIÓN\nEl término de duración del contrato es de doce meses, prorrogable "
+                + "automáticamente por períodos iguales si ninguna de las partes manifiesta lo contrario.\n\n"
+                + "CLÁUSULA CUARTA. REAJUSTE\nCada doce mensualidades el canon se reajustará en una proporción que no "
+                + "exceda el cien por ciento del incremento del índice de precios al consumidor del año anterior.\n\n"
+                + "CLÁUSULA QUINTA. SERVICIOS PÚBLICOS\nEstarán a cargo del arrendatario los servicios de energía, "
+                + "acueducto, alcantarillado y gas, así como las cuotas ordinarias de administración.\n\n"
+                + "CLÁUSULA SEXTA. REPARACIONES\nLas reparaciones locativas corresponden al arrendatario y las "
+                + "necesarias al arrendador, conforme a la ley 820 de 2003 y al Código Civil.\n\n"
+                + "CLÁUSULA SÉPTIMA. TERMINACIÓN\nCualquiera de las partes podrá dar por terminado el contrato con "
+                + "un preaviso escrito de tres meses, pagando la indemnización prevista en la ley.\n\n"
+                + "CLÁUSULA OCTAVA. CLÁUSULA PENAL\nEl incumplimiento de cualquiera de las obligaciones hará exigible "
+                + "una pena equivalente a tres cánones vigentes, sin perjuicio de la indemnización de perjuicios.\n";
+    }
+
+    private ContractFingerprint indexed(String text) {
+        service.index(service.fingerprint(text), 7L, MODEL, "hash-original:v2:" + MODEL);
+        ArgumentCaptor<ContractFingerprint> saved = ArgumentCaptor.forClass(ContractFingerprint.class);
+        verify(mongoTemplate).save(saved.capture());
+        return saved.getValue();
+    }
+
+    @Test
+    void templateVariantReusesAnalysisAndSendsOnlyChangedClauses() {
+        ContractFingerprint original = indexed(lease("Ana María Gómez", "1.500.000"));
+        when(mongoTemplate.find(any(Query.class), eq(ContractFingerprint.class))).thenReturn(List.of(original));
+
+        Optional<NearDuplicate> match = service.find(service.fingerprint(lease("Carlos Rodríguez", "2.300.000")), 7L, MODEL);
+
+        assertTrue(match.isPresent());
+        assertEquals("hash-original:v2:" + MODEL, match.get().getAnalysisKey());
+        assertEquals("user", match.get().getScope());
+        assertTrue(match.get().getSimilarity() >= 0.7, "similitud " + match.get().getSimilarity());
+        // Solo el preámbulo (arrendatario) y el canon cambian
+        assertEquals(2, match.get().getChangedClauses().size());
+        assertTrue(match.get().getChangedClauses().get(0).contains("Carlos Rodríguez"));
+        assertTrue(match.get().getChangedClauses().get(1).contains("2.300.000"));
+        assertTrue(match.get().getRemovedHeadings().isEmpty());
+        assertEquals(1, registry.get("analysis.near-duplicate").tag("result", "hit_user").counter().count());
+    }
+
+    @Test
+    void userIndexIsSearchedBeforeGlobal() {
+        ContractFingerprint original = indexed(lease("Ana María Gómez", "1.500.000"));
+        when(mongoTemplate.find(any(Query.class), eq(ContractFingerprint.class)))
+                .thenReturn(List.of())
+                .thenReturn(List.of(original));
+
+        // Otro arrendatario y sin la cláusula penal
+        String full = lease("Carlos Rodríguez", "1.500.000");
+        String variant = full.substring(0, full.indexOf("CLÁUSULA OCTAVA"));
+        Optional<NearDuplicate> match = service.find(service.fingerprint(variant), 9L, MODEL);
+
+        assertTrue(match.isPresent());
+        assertEquals("global", match.get().getScope());
+        assertEquals(List.of("CLÁUSULA OCTAVA. CLÁUSULA PENAL"), match.get().getRemovedHeadings());
+        verify(mongoTemplate, times(2)).find(any(Query.class), eq(ContractFingerprint.class));
+    }
+
+    @Test
+    void unrelatedContractIsNotReused() {
+        ContractFingerprint original = indexed(lease("Ana María Gómez", "1.500.000"));
+        // Aunque compartan una cubeta, la similitud estimada decide
+        when(mongoTemplate.find(any(Query.class), eq(ContractFingerprint.class))).thenReturn(List.of(original));
+
+        String nda = "ACUERDO DE CONFIDENCIALIDAD\nLas partes se obligan a no divulgar la información técnica, "
+                + "comercial y financiera que reciban durante la negociación.\n\n"
+                + "CLÁUSULA PRIMERA. INFORMACIÓN CONFIDENCIAL\nSe considera confidencial toda información marcada "
+                + "como tal o que por su naturaleza deba entenderse reservada.\n\n"
+                + "CLÁUSULA SEGUNDA. VIGENCIA\nLa obligación de reserva se mantendrá durante cinco años contados "
+                + "desde la terminación de las conversaciones.\n";
+        assertTrue(service.find(service.fingerprint(nda), 7L, MODEL).isEmpty());
+        assertEquals(1, registry.get("analysis.near-duplicate").tag("result", "miss").counter().count());
+    }
+}
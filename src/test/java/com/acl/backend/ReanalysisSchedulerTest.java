@@ -0,0 +1,101 @@
+package com.acl.backend;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import com.acl.backend.exception.QuotaExceededException;
+import com.acl.backend.model.Contract;
+import com.acl.backend.service.ContractService;
+import com.acl.backend.service.GeminiService;
+import com.acl.backend.service.ReanalysisScheduler;
+
+/**
+ * Tests unitarios de los reintentos del re-análisis en segundo plano (servicios simulados)
+ */
+public class ReanalysisSchedulerTest {
+
+    private final ContractService contractService = mock(ContractService.class);
+    private final GeminiService geminiService = mock(GeminiService.class);
+    private final ReanalysisScheduler scheduler = new ReanalysisScheduler(contractService, geminiService, true, 20, 3, 15);
+
+    private static Contract pending(String id, int attempts) {
+        Contract contract = new Contract();
+        contract.setId(id);
+        contract.setPendingReanalysis(true);
+        contract.setReanalysisAttempts(attempts);
+        return contract;
+    }
+
+    @Test
+    void failedAttemptIsCountedAndBackedOff() {
+        when(geminiService.isAvailable()).thenReturn(true);
+        Contract failing = pending("c1", 1);
+        Contract ok = pending("c2", 0);
+        when(contractService.findPendingReanalysis(3, 20)).thenReturn(List.of(failing, ok));
+        when(contractService.reanalyze(failing)).thenReturn(failing);
+        when(contractService.reanalyze(ok)).thenAnswer(inv -> {
+            Contract analyzed = pending("c2", 0);
+            analyzed.setPendingReanalysis(false);
+            return analyzed;
+        });
+
+        Instant before = Instant.now();
+        scheduler.reanalyzePending();
+
+        ArgumentCaptor<Instant> next = ArgumentCaptor.forClass(Instant.class);
+        verify(contractService).scheduleReanalysis(eq(failing), eq(2), next.capture());
+        // Segundo fallo: el doble del backoff base
+        assertFalse(next.getValue().isBefore(before.plus(Duration.ofMinutes(30))));
+        verify(contractService, never()).scheduleReanalysis(argThat(c -> "c2".equals(c.getId())), anyInt(), any());
+    }
+
+    @Test
+    void exceptionDoesNotStopTheBatch() {
+        when(geminiService.isAvailable()).thenReturn(true);
+        Contract broken = pending("c1", 0);
+        Contract next = pending("c2", 0);
+        when(contractService.findPendingReanalysis(3, 20)).thenReturn(List.of(broken, next));
+        when(contractService.reanalyze(broken)).thenThrow(new IllegalStateException("JSON inválido"));
+        when(contractService.reanalyze(next)).thenReturn(next);
+
+        scheduler.reanalyzePending();
+
+        verify(contractService).reanalyze(next);
+        verify(contractService).scheduleReanalysis(eq(broken), eq(1), any());
+    }
+
+    @Test
+    void quotaExceededDefersToNextUtcDayWithoutCountingAttempt() {
+        when(geminiService.isAvailable()).thenReturn(true);
+        Contract blocked = pending("c1", 1);
+        Contract next = pending("c2", 0);
+        when(contractService.findPendingReanalysis(3, 20)).thenReturn(List.of(blocked, next));
+        when(contractService.reanalyze(blocked)).thenThrow(new QuotaExceededException("Cuota diaria agotada"));
+        when(contractService.reanalyze(next)).thenReturn(next);
+
+        scheduler.reanalyzePending();
+
+        Instant tomorrow = LocalDate.now(ZoneOffset.UTC).plusDays(1).atStartOfDay(ZoneOffset.UTC).toInstant();
+        verify(contractService).scheduleReanalysis(blocked, 1, tomorrow);
+        verify(contractService).reanalyze(next);
+    }
+
+    @Test
+    void backoffDoublesUpToOneDay() {
+        assertEquals(Duration.ofMinutes(15), scheduler.backoffFor(1));
+        assertEquals(Duration.ofMinutes(60), scheduler.backoffFor(3));
+        assertEquals(Duration.ofDays(1), scheduler.backoffFor(12));
+    }
+}
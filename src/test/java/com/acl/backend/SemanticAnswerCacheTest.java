@@ -0,0 +1,75 @@
+package com.acl.backend;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Optional;
+
+import org.junit.jupiter.api.Test;
+
+import com.acl.backend.service.SemanticAnswerCache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Tests unitarios de la cache semántica del chat general
+ */
+public class SemanticAnswerCacheTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private SemanticAnswerCache cache(long ttlMinutes, int maxEntries) {
+        return new SemanticAnswerCache(registry, true, 512, 0.9, ttlMinutes, maxEntries, 30, 12, 8);
+    }
+
+    @Test
+    void nearDuplicateQuestionsShareAnswer() {
+        SemanticAnswerCache cache = cache(60, 100);
+        cache.put("¿Qué es una cláusula de confidencialidad?", "Respuesta confidencialidad");
+
+        assertEquals(Optional.of("Respuesta confidencialidad"), cache.lookup("que es la clausula de confidencialidad"));
+        assertEquals(Optional.of("Respuesta confidencialidad"), cache.lookup("¿Qué es la cláusula de confidencialidad??"));
+        assertEquals(Optional.of("Respuesta confidencialidad"), cache.lookup("Qué son las cláusulas de confidencialidad"));
+        assertEquals(3.0, registry.counter("chat.semantic-cache.requests", "result", "hit").count());
+    }
+
+    @Test
+    void differentQuestionsMiss() {
+        SemanticAnswerCache cache = cache(60, 100);
+        cache.put("¿Qué es una cláusula de confidencialidad?", "Respuesta confidencialidad");
+
+        assertTrue(cache.lookup("¿Qué es una cláusula penal?").isEmpty());
+        assertTrue(cache.lookup("¿Cuándo no aplica la cláusula de confidencialidad?").isEmpty());
+        // Preguntas largas (casos particulares) no se cachean
+        assertTrue(cache.lookup("confidencialidad ".repeat(40)).isEmpty());
+        assertEquals(1.0, registry.counter("chat.semantic-cache.requests", "result", "bypass").count());
+    }
+
+    @Test
+    void interrogativesDistinguishQuestions() {
+        SemanticAnswerCache cache = cache(60, 100);
+        cache.put("¿Quién paga el impuesto predial?", "El arrendador");
+
+        assertTrue(cache.lookup("¿Cuándo se paga el impuesto predial?").isEmpty());
+        assertTrue(cache.lookup("¿Dónde se paga el impuesto predial?").isEmpty());
+        assertEquals(Optional.of("El arrendador"), cache.lookup("quien paga el impuesto predial"));
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedAndExpired() {
+        SemanticAnswerCache cache = cache(60, 2);
+        cache.put("¿Qué es un contrato de arrendamiento?", "A");
+        cache.put("¿Qué es un contrato laboral?", "B");
+        cache.lookup("¿Qué es un contrato de arrendamiento?");
+        cache.put("¿Qué es una póliza de cumplimiento?", "C");
+
+        assertEquals(2, cache.size());
+        assertTrue(cache.lookup("¿Qué es un contrato laboral?").isEmpty());
+        assertTrue(cache.lookup("¿Qué es un contrato de arrendamiento?").isPresent());
+
+        SemanticAnswerCache expired = cache(0, 10);
+        expired.put("¿Qué es un pagaré?", "D");
+        assertTrue(expired.lookup("¿Qué es un pagaré?").isEmpty());
+        expired.evictExpired();
+        assertEquals(0, expired.size());
+    }
+}
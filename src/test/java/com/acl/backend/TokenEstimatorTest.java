@@ -0,0 +1,65 @@
+package com.acl.backend;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import com.acl.backend.data.GeminiData.UsageMetadata;
+import com.acl.backend.service.TokenEstimator;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Tests unitarios del estimador de tokens
+ */
+public class TokenEstimatorTest {
+
+    private static final String CLAUSE = "CLÁUSULA TERCERA. El arrendatario se obliga a pagar la suma de "
+            + "1.250.000 pesos mensuales, dentro de los cinco (5) primeros días de cada período, "
+            + "más la indemnización correspondiente por la terminación anticipada.\n\n";
+
+    private static UsageMetadata usage(int prompt, int candidates) {
+        UsageMetadata u = new UsageMetadata();
+        u.setPromptTokenCount(prompt);
+        u.setCandidatesTokenCount(candidates);
+        return u;
+    }
+
+    @Test
+    void spanishLegalTextCostsMoreThanCharsOverFour() {
+        TokenEstimator estimator = new TokenEstimator(new SimpleMeterRegistry());
+        // Números, tildes y mayúsculas hacen que chars/4 subestime
+        assertTrue(estimator.estimateTokens(CLAUSE) > CLAUSE.length() / 4);
+        assertEquals(0, estimator.estimateTokens(""));
+    }
+
+    @Test
+    void calibratesTowardsObservedUsage() {
+        TokenEstimator estimator = new TokenEstimator(new SimpleMeterRegistry());
+        String prompt = CLAUSE.repeat(5);
+        int before = estimator.estimateTokens(prompt);
+
+        for (int i = 0; i < 50; i++) {
+            estimator.observe("analysis", prompt, usage(before * 3 / 2, 800), 4000);
+        }
+
+        int after = estimator.estimateTokens(prompt);
+        assertEquals(before * 1.5, after, before * 0.05);
+        assertEquals(800, estimator.expectedOutputTokens("analysis"));
+    }
+
+    @Test
+    void truncatesWithinBudgetAtWordBoundary() {
+        TokenEstimator estimator = new TokenEstimator(new SimpleMeterRegistry());
+        String text = CLAUSE.repeat(40);
+
+        String cut = estimator.truncateToTokens(text, 500);
+
+        assertTrue(estimator.estimateTokens(cut) <= 500);
+        assertTrue(cut.length() < text.length());
+        assertTrue(text.startsWith(cut));
+        assertFalse(Character.isLetter(text.charAt(cut.length())) && Character.isLetter(cut.charAt(cut.length() - 1)),
+                "No debe cortar una palabra a la mitad");
+        assertSame(CLAUSE, estimator.truncateToTokens(CLAUSE, 10_000));
+    }
+}
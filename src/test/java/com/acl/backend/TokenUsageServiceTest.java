@@ -0,0 +1,114 @@
+package com.acl.backend;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import com.acl.backend.data.GeminiData.UsageMetadata;
+import com.acl.backend.data.UsageData.UsageReport;
+import com.acl.backend.exception.QuotaExceededException;
+import com.acl.backend.model.TokenUsageBucket;
+import com.acl.backend.repository.TokenUsageRepository;
+import com.acl.backend.service.TokenUsageService;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Tests unitarios de la contabilidad de tokens y la cuota diaria
+ */
+public class TokenUsageServiceTest {
+
+    private TokenUsageRepository repository;
+    private SimpleMeterRegistry registry;
+    private TokenUsageService service;
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(TokenUsageRepository.class);
+        registry = new SimpleMeterRegistry();
+        service = new TokenUsageService(mock(MongoTemplate.class), repository, registry, 1000, 60000);
+    }
+
+    private static UsageMetadata usage(int prompt, int candidates) {
+        UsageMetadata u = new UsageMetadata();
+        u.setPromptTokenCount(prompt);
+        u.setCandidatesTokenCount(candidates);
+        u.setTotalTokenCount(prompt + candidates);
+        return u;
+    }
+
+    @Test
+    void allowsUntilBudgetIsSpent() {
+        when(repository.findByUserIdAndDay(eq(1L), anyString())).thenReturn(List.of());
+
+        assertDoesNotThrow(() -> service.checkQuota(1L).block());
+
+        service.record(1L, "qa", usage(700, 400), 120, true);
+
+        assertEquals(1100, service.getUsedToday(1L));
+        assertThrows(QuotaExceededException.class, () -> service.checkQuota(1L).block());
+        // Otro usuario no se ve afectado
+        when(repository.findByUserIdAndDay(eq(2L), anyString())).thenReturn(List.of());
+        assertDoesNotThrow(() -> service.checkQuota(2L).block());
+        assertEquals(1.0, registry.get("usage.quota.rejected").counter().count());
+    }
+
+    @Test
+    void seedsUsageFromStoredBuckets() {
+        TokenUsageBucket stored = new TokenUsageBucket();
+        stored.setTotalTokens(1500);
+        when(repository.findByUserIdAndDay(eq(3L), anyString())).thenReturn(List.of(stored));
+
+        assertThrows(QuotaExceededException.class, () -> service.checkQuota(3L).block());
+    }
+
+    @Test
+    void internalCallsAreNotLimited() {
+        service.record(null, "analysis", usage(5000, 5000), 50, true);
+
+        assertDoesNotThrow(() -> service.checkQuota(null).block());
+        verify(repository, never()).findByUserIdAndDay(any(), anyString());
+        assertEquals(5000.0, registry.get("gemini.tokens").tag("type", "prompt").counter().count());
+    }
+
+    @Test
+    void reportAggregatesByOperationAndUser() {
+        String today = LocalDate.now(ZoneOffset.UTC).toString();
+        when(repository.findByDayIn(any())).thenReturn(List.of(
+                bucket(today, 1L, "qa", 2, 300, 100),
+                bucket(today, 1L, "analysis", 1, 900, 300),
+                bucket(today, 2L, "qa", 1, 50, 20)));
+
+        LocalDate day = LocalDate.parse(today);
+        UsageReport report = service.report(day, day, 1);
+
+        assertEquals(4, report.getTotals().getCalls());
+        assertEquals(1250, report.getTotals().getTotalTokens());
+        assertEquals(350, report.getByOperation().get("qa").getTotalTokens());
+        assertEquals(1, report.getTopUsers().size());
+        assertEquals(1L, report.getTopUsers().get(0).getUserId());
+        assertEquals(105.0, report.getTotals().getAvgLatencyMs(), 0.001);
+    }
+
+    private static TokenUsageBucket bucket(String day, Long userId, String operation, long calls,
+                                           long totalTokens, long latencyMs) {
+        TokenUsageBucket b = new TokenUsageBucket();
+        b.setDay(day);
+        b.setUserId(userId);
+        b.setOperation(operation);
+        b.setCalls(calls);
+        b.setTotalTokens(totalTokens);
+        b.setLatencyMs(latencyMs);
+        return b;
+    }
+}
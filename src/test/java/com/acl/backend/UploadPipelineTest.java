@@ -0,0 +1,115 @@
+package com.acl.backend;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.web.multipart.MultipartFile;
+
+import com.acl.backend.data.AnalysisData.AnalysisResult;
+import com.acl.backend.model.Contract;
+import com.acl.backend.model.User;
+import com.acl.backend.repository.UserRepository;
+import com.acl.backend.service.ClauseRetrievalService;
+import com.acl.backend.service.ContractService;
+import com.acl.backend.service.NLPAnalysisService;
+import com.acl.backend.service.TextExtractionService;
+import com.acl.backend.service.UploadPipeline;
+import com.acl.backend.service.UploadPipeline.UploadResult;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.publisher.Mono;
+
+/**
+ * Tests unitarios del pipeline de subida en hilos virtuales (servicios simulados)
+ */
+public class UploadPipelineTest {
+
+    private final TextExtractionService extraction = mock(TextExtractionService.class);
+    private final UserRepository userRepository = mock(UserRepository.class);
+    private final NLPAnalysisService nlp = mock(NLPAnalysisService.class);
+    private final ClauseRetrievalService retrieval = mock(ClauseRetrievalService.class);
+    private final ContractService contractService = mock(ContractService.class);
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final MockMultipartFile file = new MockMultipartFile("file", "contrato.pdf", "application/pdf", new byte[]{1});
+
+    private UploadPipeline pipeline() {
+        return new UploadPipeline(extraction, userRepository, nlp, retrieval, contractService, registry, 1);
+    }
+
+    private static User user() {
+        User user = new User();
+        user.setId(7L);
+        return user;
+    }
+
+    @Test
+    void overlapsExtractionWithUserLookupAndReportsStages() throws Exception {
+        when(extraction.extractText(any(MultipartFile.class))).thenAnswer(inv -> {
+            Thread.sleep(300);
+            return "CLÁUSULA PRIMERA. Objeto.";
+        });
+        when(userRepository.findByEmail("ana@test.com")).thenAnswer(inv -> {
+            Thread.sleep(300);
+            return Optional.of(user());
+        });
+        when(nlp.analyzeAsync(anyString(), any())).thenReturn(Mono.just(new AnalysisResult()));
+        when(retrieval.segment(anyString())).thenReturn(List.of());
+        Contract saved = new Contract();
+        saved.setId("c1");
+        when(contractService.saveAnalyzed(eq("Contrato"), anyString(), any(), eq(7L), any())).thenReturn(saved);
+
+        long start = System.nanoTime();
+        UploadResult result = pipeline().upload(file, "Contrato", "ana@test.com", null);
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertEquals("c1", result.getContract().getId());
+        assertTrue(elapsedMs < 550, "extracción y usuario deberían solaparse: " + elapsedMs + "ms");
+        assertTrue(result.getStageMillis().keySet().containsAll(List.of("extract", "user", "analyze", "segment", "save", "total")));
+        assertTrue(result.serverTiming().contains("extract;dur="));
+        assertEquals(1, registry.get("upload.stage").tag("stage", "analyze").timer().count());
+    }
+
+    @Test
+    void firstFailureCancelsSiblingStage() throws Exception {
+        CountDownLatch interrupted = new CountDownLatch(1);
+        when(extraction.extractText(any(MultipartFile.class)))
+                .thenThrow(new IllegalArgumentException("Formato no soportado. Use PDF o DOCX."));
+        when(userRepository.findByEmail("ana@test.com")).thenAnswer(inv -> {
+            try {
+                Thread.sleep(5_000);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+                throw e;
+            }
+            return Optional.of(user());
+        });
+
+        long start = System.nanoTime();
+        assertThrows(IllegalArgumentException.class, () -> pipeline().upload(file, "Contrato", "ana@test.com", null));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1_000);
+        assertTrue(interrupted.await(1, TimeUnit.SECONDS), "la búsqueda del usuario debería cancelarse");
+        verify(nlp, never()).analyzeAsync(anyString(), any());
+    }
+
+    @Test
+    void timesOutWhenAnalysisDoesNotFinish() throws Exception {
+        when(extraction.extractText(any(MultipartFile.class))).thenReturn("texto");
+        when(nlp.analyzeAsync(anyString(), any())).thenReturn(Mono.never());
+        when(retrieval.segment(anyString())).thenReturn(List.of());
+
+        assertThrows(TimeoutException.class, () -> pipeline().upload(file, "Contrato", null, null));
+        assertEquals(1, registry.get("upload.pipeline").tag("outcome", "timeout").timer().count());
+        verify(contractService, never()).saveAnalyzed(any(), any(), any(), any(), any());
+    }
+}
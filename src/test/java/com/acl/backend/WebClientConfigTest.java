@@ -0,0 +1,25 @@
+package com.acl.backend;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import com.acl.backend.config.WebClientConfig;
+
+/**
+ * Tests unitarios de la etiqueta uri de las métricas del cliente de Gemini
+ */
+public class WebClientConfigTest {
+
+    @Test
+    void uriTagIsATemplateWithoutKeyOrIds() {
+        assertEquals("/v1beta/models/{model}:generateContent",
+                WebClientConfig.uriTemplate("/v1beta/models/gemini-2.5-flash:generateContent?key=secreta"));
+        assertEquals("/v1beta/models/{model}:streamGenerateContent",
+                WebClientConfig.uriTemplate("/v1beta/models/gemini-2.5-pro:streamGenerateContent?alt=sse&key=secreta"));
+        assertEquals("/v1beta/cachedContents/{id}",
+                WebClientConfig.uriTemplate("/v1beta/cachedContents/abc123xyz?key=secreta"));
+        assertEquals("/v1beta/cachedContents", WebClientConfig.uriTemplate("/v1beta/cachedContents?key=secreta"));
+        assertEquals("/v1beta/models", WebClientConfig.uriTemplate("/v1beta/models?pageSize=1&key=secreta"));
+    }
+}